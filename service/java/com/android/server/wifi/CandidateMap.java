@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.util.SparseArray;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Map of network selection candidates keyed on (BSSID, network id), backing
+ * {@link WifiCandidates}.
+ *
+ * Entries are stored densely in insertion order, and found through an open addressing table
+ * with linear probing over primitive keys, so that lookups hash and compare no objects. The
+ * candidates are also grouped by network config id as they are added, so that the groups do not
+ * have to be rebuilt for every scoring. Adding a candidate allocates only when the arrays grow
+ * or a network is seen for the first time.
+ *
+ * Not thread safe.
+ */
+class CandidateMap {
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Dense entries, in insertion order until a removal moves the last entry into the gap.
+    private long[] mBssids = new long[INITIAL_CAPACITY];
+    private int[] mNetworkIds = new int[INITIAL_CAPACITY];
+    private WifiCandidates.Candidate[] mValues = new WifiCandidates.Candidate[INITIAL_CAPACITY];
+    private int mSize;
+
+    // Open addressing table of (dense index + 1), 0 for an empty slot. Kept at most half full.
+    private int[] mTable = new int[2 * INITIAL_CAPACITY];
+
+    // Candidates per network config id, and their read-only views at the same indexes.
+    private final SparseArray<List<WifiCandidates.Candidate>> mGroups = new SparseArray<>();
+    private final SparseArray<Collection<WifiCandidates.Candidate>> mGroupViews =
+            new SparseArray<>();
+
+    private final List<WifiCandidates.Candidate> mValuesView =
+            new AbstractList<WifiCandidates.Candidate>() {
+                @Override
+                public WifiCandidates.Candidate get(int index) {
+                    if (index < 0 || index >= mSize) {
+                        throw new IndexOutOfBoundsException("index=" + index + " size=" + mSize);
+                    }
+                    return mValues[index];
+                }
+
+                @Override
+                public int size() {
+                    return mSize;
+                }
+            };
+
+    private final List<Collection<WifiCandidates.Candidate>> mGroupsView =
+            new AbstractList<Collection<WifiCandidates.Candidate>>() {
+                @Override
+                public Collection<WifiCandidates.Candidate> get(int index) {
+                    return mGroupViews.valueAt(index);
+                }
+
+                @Override
+                public int size() {
+                    return mGroupViews.size();
+                }
+            };
+
+    /**
+     * Number of candidates.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Candidate at |index|, in [0, size()).
+     */
+    public @NonNull WifiCandidates.Candidate valueAt(int index) {
+        return mValues[index];
+    }
+
+    /**
+     * Candidate of |bssid| and |networkId|, or null if none.
+     */
+    public @Nullable WifiCandidates.Candidate get(long bssid, int networkId) {
+        int slot = findSlot(bssid, networkId);
+        int index = mTable[slot] - 1;
+        return index < 0 ? null : mValues[index];
+    }
+
+    /**
+     * Add |candidate| for |bssid| and |networkId|, replacing any previous candidate in place.
+     *
+     * @return the replaced candidate, or null if none.
+     */
+    public @Nullable WifiCandidates.Candidate put(long bssid, int networkId,
+            @NonNull WifiCandidates.Candidate candidate) {
+        int slot = findSlot(bssid, networkId);
+        int index = mTable[slot] - 1;
+        if (index >= 0) {
+            WifiCandidates.Candidate old = mValues[index];
+            removeFromGroup(old);
+            mValues[index] = candidate;
+            addToGroup(candidate);
+            return old;
+        }
+        if (mSize == mValues.length) {
+            int capacity = 2 * mValues.length;
+            mBssids = Arrays.copyOf(mBssids, capacity);
+            mNetworkIds = Arrays.copyOf(mNetworkIds, capacity);
+            mValues = Arrays.copyOf(mValues, capacity);
+        }
+        mBssids[mSize] = bssid;
+        mNetworkIds[mSize] = networkId;
+        mValues[mSize] = candidate;
+        mSize++;
+        if (2 * mSize > mTable.length) {
+            rehash(2 * mTable.length);
+        } else {
+            mTable[slot] = mSize;
+        }
+        addToGroup(candidate);
+        return null;
+    }
+
+    /**
+     * Remove the entry of |bssid| and |networkId| if its candidate is |candidate|.
+     *
+     * @return true if removed.
+     */
+    public boolean remove(long bssid, int networkId, @NonNull WifiCandidates.Candidate candidate) {
+        int slot = findSlot(bssid, networkId);
+        int index = mTable[slot] - 1;
+        if (index < 0 || mValues[index] != candidate) return false;
+        deleteSlot(slot);
+        removeFromGroup(candidate);
+        int last = mSize - 1;
+        if (index != last) {
+            // Move the last entry into the gap.
+            mTable[findSlot(mBssids[last], mNetworkIds[last])] = index + 1;
+            mBssids[index] = mBssids[last];
+            mNetworkIds[index] = mNetworkIds[last];
+            mValues[index] = mValues[last];
+        }
+        mValues[last] = null;
+        mSize--;
+        return true;
+    }
+
+    /**
+     * Number of networks with candidates.
+     */
+    public int groupCount() {
+        return mGroups.size();
+    }
+
+    /**
+     * Candidates of the network at |index|, in [0, groupCount()). The list is owned by the map
+     * and must not be modified.
+     */
+    public @NonNull List<WifiCandidates.Candidate> groupAt(int index) {
+        return mGroups.valueAt(index);
+    }
+
+    /**
+     * Read-only view of the candidates, in the order of {@link #valueAt(int)}. The view follows
+     * later changes of the map.
+     */
+    public @NonNull List<WifiCandidates.Candidate> values() {
+        return mValuesView;
+    }
+
+    /**
+     * Read-only view of the candidates of each network, in the order of {@link #groupAt(int)}.
+     * The view follows later changes of the map.
+     */
+    public @NonNull List<Collection<WifiCandidates.Candidate>> groups() {
+        return mGroupsView;
+    }
+
+    private void addToGroup(WifiCandidates.Candidate candidate) {
+        List<WifiCandidates.Candidate> group = mGroups.get(candidate.getNetworkConfigId());
+        if (group == null) {
+            group = new ArrayList<>(2); // Guess 2 bssids per network
+            mGroups.put(candidate.getNetworkConfigId(), group);
+            mGroupViews.put(candidate.getNetworkConfigId(), Collections.unmodifiableList(group));
+        }
+        group.add(candidate);
+    }
+
+    private void removeFromGroup(WifiCandidates.Candidate candidate) {
+        int groupIndex = mGroups.indexOfKey(candidate.getNetworkConfigId());
+        if (groupIndex < 0) return;
+        List<WifiCandidates.Candidate> group = mGroups.valueAt(groupIndex);
+        for (int i = 0; i < group.size(); i++) {
+            if (group.get(i) == candidate) {
+                group.remove(i);
+                break;
+            }
+        }
+        if (group.isEmpty()) {
+            mGroups.removeAt(groupIndex);
+            mGroupViews.removeAt(groupIndex);
+        }
+    }
+
+    private static int hash(long bssid, int networkId) {
+        long h = (bssid ^ ((long) networkId << 48)) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Slot of |bssid| and |networkId| in the table, or the empty slot ending its probe sequence.
+     */
+    private int findSlot(long bssid, int networkId) {
+        int mask = mTable.length - 1;
+        int slot = hash(bssid, networkId) & mask;
+        while (true) {
+            int index = mTable[slot] - 1;
+            if (index < 0 || (mBssids[index] == bssid && mNetworkIds[index] == networkId)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Empty |slot|, shifting back the entries of the probe sequence so that no tombstone is
+     * needed.
+     */
+    private void deleteSlot(int slot) {
+        int mask = mTable.length - 1;
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (mTable[next] != 0) {
+            int index = mTable[next] - 1;
+            int home = hash(mBssids[index], mNetworkIds[index]) & mask;
+            // Move the entry into the gap unless its home slot is cyclically in (gap, next].
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                mTable[gap] = mTable[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        mTable[gap] = 0;
+    }
+
+    private void rehash(int tableLength) {
+        mTable = new int[tableLength];
+        int mask = tableLength - 1;
+        for (int index = 0; index < mSize; index++) {
+            int slot = hash(mBssids[index], mNetworkIds[index]) & mask;
+            while (mTable[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            mTable[slot] = index + 1;
+        }
+    }
+}
@@ -21,19 +21,53 @@ import android.net.wifi.WifiConfiguration;
 import android.os.UserHandle;
 import android.os.UserManager;
 
+import com.android.server.wifi.util.ScanResultUtil;
+
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 
 public class ConfigurationMap {
     private final Map<Integer, WifiConfiguration> mPerID = new HashMap<>();
 
     private final Map<Integer, WifiConfiguration> mPerIDForCurrentUser = new HashMap<>();
-    private final Map<ScanResultMatchInfo, WifiConfiguration>
-            mScanResultMatchInfoMapForCurrentUser = new HashMap<>();
+
+    /**
+     * Networks of the current user that scan results can be matched against, keyed by unquoted
+     * SSID so that a {@link ScanResult#SSID} can be looked up as is. Only networks with a quoted
+     * SSID are indexed, the SSID of a scan result is always compared in its quoted form.
+     */
+    private final Map<String, ScanResultMatchEntry> mScanResultMatchIndexForCurrentUser =
+            new HashMap<>();
+    /** Index entry of each indexed network, to remove it without knowing its key. */
+    private final Map<Integer, ScanResultMatchEntry> mScanResultMatchEntryPerID = new HashMap<>();
+
+    /**
+     * Networks sharing an SSID, by security type.
+     */
+    private static class ScanResultMatchEntry {
+        public final String ssid;
+        /** Bitmask of the security types with a network in |configs|. */
+        public int securityTypes;
+        public final WifiConfiguration[] configs = new WifiConfiguration[Integer.SIZE];
+
+        ScanResultMatchEntry(String ssid) {
+            this.ssid = ssid;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("{");
+            for (int type = 0; type < Integer.SIZE; type++) {
+                if ((securityTypes & (1 << type)) == 0) continue;
+                if (sb.length() > 1) sb.append(", ");
+                sb.append(type).append('=').append(configs[type].networkId);
+            }
+            return sb.append('}').toString();
+        }
+    }
 
     private final UserManager mUserManager;
 
@@ -47,25 +81,19 @@ public class ConfigurationMap {
     public void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
         pw.println("mPerId=" + mPerID);
         pw.println("mPerIDForCurrentUser=" + mPerIDForCurrentUser);
-        pw.println("mScanResultMatchInfoMapForCurrentUser="
-                + mScanResultMatchInfoMapForCurrentUser);
+        pw.println("mScanResultMatchIndexForCurrentUser="
+                + mScanResultMatchIndexForCurrentUser);
         pw.println("mCurrentUserId=" + mCurrentUserId);
     }
 
     // RW methods:
     public WifiConfiguration put(WifiConfiguration config) {
         final WifiConfiguration current = mPerID.put(config.networkId, config);
-        final UserHandle currentUser = UserHandle.of(mCurrentUserId);
-        final UserHandle creatorUser = UserHandle.getUserHandleForUid(config.creatorUid);
-        if (config.shared || currentUser.equals(creatorUser)
-                || mUserManager.isSameProfileGroup(currentUser, creatorUser)) {
-            mPerIDForCurrentUser.put(config.networkId, config);
-            // TODO (b/142035508): Add a more generic fix. This cache should only hold saved
-            // networks.
-            if (!config.fromWifiNetworkSpecifier) {
-                mScanResultMatchInfoMapForCurrentUser.put(
-                        ScanResultMatchInfo.fromWifiConfiguration(config), config);
-            }
+        if (current != null) {
+            removeForCurrentUser(config.networkId);
+        }
+        if (isVisibleToCurrentUser(config)) {
+            putForCurrentUser(config);
         }
         return current;
     }
@@ -76,32 +104,85 @@ public class ConfigurationMap {
             return null;
         }
 
-        mPerIDForCurrentUser.remove(netID);
-
-        Iterator<Map.Entry<ScanResultMatchInfo, WifiConfiguration>> scanResultMatchInfoEntries =
-                mScanResultMatchInfoMapForCurrentUser.entrySet().iterator();
-        while (scanResultMatchInfoEntries.hasNext()) {
-            if (scanResultMatchInfoEntries.next().getValue().networkId == netID) {
-                scanResultMatchInfoEntries.remove();
-                break;
-            }
-        }
+        removeForCurrentUser(netID);
         return config;
     }
 
     public void clear() {
         mPerID.clear();
         mPerIDForCurrentUser.clear();
-        mScanResultMatchInfoMapForCurrentUser.clear();
+        mScanResultMatchIndexForCurrentUser.clear();
+        mScanResultMatchEntryPerID.clear();
     }
 
     /**
-     * Sets the new foreground user ID.
+     * Sets the new foreground user ID, and updates the networks visible to the current user.
      *
      * @param userId the id of the new foreground user
      */
     public void setNewUser(int userId) {
+        if (userId == mCurrentUserId) {
+            return;
+        }
         mCurrentUserId = userId;
+        mPerIDForCurrentUser.clear();
+        mScanResultMatchIndexForCurrentUser.clear();
+        mScanResultMatchEntryPerID.clear();
+        for (WifiConfiguration config : mPerID.values()) {
+            if (isVisibleToCurrentUser(config)) {
+                putForCurrentUser(config);
+            }
+        }
+    }
+
+    private boolean isVisibleToCurrentUser(WifiConfiguration config) {
+        final UserHandle currentUser = UserHandle.of(mCurrentUserId);
+        final UserHandle creatorUser = UserHandle.getUserHandleForUid(config.creatorUid);
+        return config.shared || currentUser.equals(creatorUser)
+                || mUserManager.isSameProfileGroup(currentUser, creatorUser);
+    }
+
+    private void putForCurrentUser(WifiConfiguration config) {
+        mPerIDForCurrentUser.put(config.networkId, config);
+        // TODO (b/142035508): Add a more generic fix. This cache should only hold saved
+        // networks.
+        if (config.fromWifiNetworkSpecifier) {
+            return;
+        }
+        // Throws IllegalArgumentException for an invalid network, as before the index existed.
+        int securityType = ScanResultMatchInfo.getNetworkType(config);
+        String ssid = config.SSID;
+        if (ssid == null || ssid.length() < 2 || ssid.charAt(0) != '"'
+                || ssid.charAt(ssid.length() - 1) != '"') {
+            return;
+        }
+        ssid = ssid.substring(1, ssid.length() - 1);
+        ScanResultMatchEntry entry = mScanResultMatchIndexForCurrentUser.get(ssid);
+        if (entry == null) {
+            entry = new ScanResultMatchEntry(ssid);
+            mScanResultMatchIndexForCurrentUser.put(ssid, entry);
+        }
+        // A network with the same SSID and security type replaces the previous one.
+        entry.configs[securityType] = config;
+        entry.securityTypes |= 1 << securityType;
+        mScanResultMatchEntryPerID.put(config.networkId, entry);
+    }
+
+    private void removeForCurrentUser(int netID) {
+        mPerIDForCurrentUser.remove(netID);
+        ScanResultMatchEntry entry = mScanResultMatchEntryPerID.remove(netID);
+        if (entry == null) {
+            return;
+        }
+        for (int type = 0; type < Integer.SIZE; type++) {
+            if (entry.configs[type] != null && entry.configs[type].networkId == netID) {
+                entry.configs[type] = null;
+                entry.securityTypes &= ~(1 << type);
+            }
+        }
+        if (entry.securityTypes == 0) {
+            mScanResultMatchIndexForCurrentUser.remove(entry.ssid);
+        }
     }
 
     // RO methods:
@@ -136,11 +217,33 @@ public class ConfigurationMap {
     /**
      * Retrieves the |WifiConfiguration| object matching the provided |scanResult| from the internal
      * map.
-     * Essentially checks if network config and scan result have the same SSID and encryption type.
+     * Essentially checks if network config and scan result have the same SSID and encryption type,
+     * with the same rules as {@link ScanResultMatchInfo#equals(Object)}: a PSK/SAE transition
+     * mode scan result also matches a PSK network, and an OWE transition mode scan result also
+     * matches an open network. A network of the exact security type is preferred.
+     *
+     * This is called for every scan result, and does not allocate.
      */
     public WifiConfiguration getByScanResultForCurrentUser(ScanResult scanResult) {
-        return mScanResultMatchInfoMapForCurrentUser.get(
-                ScanResultMatchInfo.fromScanResult(scanResult));
+        // Same as the string concatenation in ScanResultUtil.createQuotedSSID().
+        ScanResultMatchEntry entry = mScanResultMatchIndexForCurrentUser.get(
+                scanResult.SSID == null ? "null" : scanResult.SSID);
+        if (entry == null) {
+            return null;
+        }
+        int securityType = ScanResultMatchInfo.getNetworkType(scanResult);
+        if ((entry.securityTypes & (1 << securityType)) != 0) {
+            return entry.configs[securityType];
+        }
+        if (securityType == WifiConfiguration.SECURITY_TYPE_SAE
+                && ScanResultUtil.isScanResultForPskSaeTransitionNetwork(scanResult)) {
+            return entry.configs[WifiConfiguration.SECURITY_TYPE_PSK];
+        }
+        if (securityType == WifiConfiguration.SECURITY_TYPE_OWE
+                && ScanResultUtil.isScanResultForOweTransitionNetwork(scanResult)) {
+            return entry.configs[WifiConfiguration.SECURITY_TYPE_OPEN];
+        }
+        return null;
     }
 
     public Collection<WifiConfiguration> valuesForAllUsers() {
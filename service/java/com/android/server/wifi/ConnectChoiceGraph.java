@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.util.ArraySet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Graph of the user connect choices between networks, keyed on config key, mirroring
+ * {@link android.net.wifi.WifiConfiguration.NetworkSelectionStatus#getConnectChoice()}.
+ *
+ * A network has at most one connect choice, so the networks reachable from a network form a
+ * chain. The chain of each network is computed on first use and kept until an edge it goes
+ * through changes, so that it is only walked again after a user choice. The networks choosing
+ * each network are indexed, so that dropping the choices of a network does not go through all
+ * the networks.
+ *
+ * Not thread safe.
+ */
+class ConnectChoiceGraph {
+    // Connect choice of each network.
+    private final Map<String, String> mChoices = new HashMap<>();
+    // Networks having each network as their connect choice.
+    private final Map<String, Set<String>> mChoosers = new HashMap<>();
+    // Memoized chains, see getChoiceChain().
+    private final Map<String, List<String>> mChains = new HashMap<>();
+
+    /**
+     * Set the connect choice of network |key| to |choiceKey|, or clear it if null.
+     */
+    public void setConnectChoice(@NonNull String key, @Nullable String choiceKey) {
+        String oldChoiceKey = mChoices.get(key);
+        if (choiceKey == null ? oldChoiceKey == null : choiceKey.equals(oldChoiceKey)) return;
+        invalidateChainsThrough(key);
+        if (oldChoiceKey != null) {
+            Set<String> choosers = mChoosers.get(oldChoiceKey);
+            choosers.remove(key);
+            if (choosers.isEmpty()) {
+                mChoosers.remove(oldChoiceKey);
+            }
+        }
+        if (choiceKey == null) {
+            mChoices.remove(key);
+            return;
+        }
+        mChoices.put(key, choiceKey);
+        Set<String> choosers = mChoosers.get(choiceKey);
+        if (choosers == null) {
+            choosers = new ArraySet<>();
+            mChoosers.put(choiceKey, choosers);
+        }
+        choosers.add(key);
+    }
+
+    /**
+     * Connect choice of network |key|, or null if none.
+     */
+    public @Nullable String getConnectChoice(@NonNull String key) {
+        return mChoices.get(key);
+    }
+
+    /**
+     * Networks having network |key| as their connect choice.
+     *
+     * @return a copy, so that the choices can be cleared while going through it.
+     */
+    public @NonNull Set<String> getNetworksChoosing(@NonNull String key) {
+        Set<String> choosers = mChoosers.get(key);
+        if (choosers == null) return Collections.emptySet();
+        return new ArraySet<>(choosers);
+    }
+
+    /**
+     * Networks reached by following the connect choices from network |key|, in order, each at
+     * most once. The last network may have been removed, if a choice was left pointing to it.
+     *
+     * @return an unmodifiable list, empty if network |key| has no connect choice.
+     */
+    public @NonNull List<String> getChoiceChain(@NonNull String key) {
+        List<String> chain = mChains.get(key);
+        if (chain != null) return chain;
+        String choiceKey = mChoices.get(key);
+        if (choiceKey == null) return Collections.emptyList();
+        List<String> keys = new ArrayList<>();
+        Set<String> seen = new ArraySet<>();
+        seen.add(key);
+        while (choiceKey != null && seen.add(choiceKey)) {
+            keys.add(choiceKey);
+            choiceKey = mChoices.get(choiceKey);
+        }
+        chain = Collections.unmodifiableList(keys);
+        mChains.put(key, chain);
+        return chain;
+    }
+
+    /**
+     * Drop the connect choice of network |key|, which is being removed. The choices of other
+     * networks for it are kept, see {@link #getNetworksChoosing(String)}.
+     */
+    public void removeNetwork(@NonNull String key) {
+        setConnectChoice(key, null);
+    }
+
+    /**
+     * Drop all the connect choices.
+     */
+    public void clear() {
+        mChoices.clear();
+        mChoosers.clear();
+        mChains.clear();
+    }
+
+    /**
+     * Drop the memoized chains going through the connect choice of network |key|, which are the
+     * chains of |key| and of the networks it can be reached from.
+     */
+    private void invalidateChainsThrough(String key) {
+        if (mChains.isEmpty()) return;
+        Set<String> seen = new ArraySet<>();
+        ArrayDeque<String> pending = new ArrayDeque<>();
+        seen.add(key);
+        pending.add(key);
+        while (!pending.isEmpty()) {
+            String next = pending.poll();
+            mChains.remove(next);
+            Set<String> choosers = mChoosers.get(next);
+            if (choosers == null) continue;
+            for (String chooser : choosers) {
+                if (seen.add(chooser)) {
+                    pending.add(chooser);
+                }
+            }
+        }
+    }
+}
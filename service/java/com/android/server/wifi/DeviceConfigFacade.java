@@ -193,6 +193,15 @@ public class DeviceConfigFacade {
     private int mMinConfirmationDurationSendLowScoreMs;
     private int mMinConfirmationDurationSendHighScoreMs;
     private int mRssiThresholdNotSendLowScoreToCsDbm;
+    private boolean mIsScanResultDeltaEnabled;
+    private boolean mIsBackgroundScanCostModelEnabled;
+    private boolean mIsPartialScanChannelPlannerEnabled;
+    private boolean mConcurrentNetworkNominationEnabled;
+    private boolean mThroughputPredictionCacheEnabled;
+    private boolean mIsCompactPnoNetworkListEnabled;
+    private boolean mIsBinaryConfigStoreEnabled;
+    private boolean mIsAsyncConfigStoreWriteEnabled;
+    private boolean mIsParallelConfigStoreReadEnabled;
 
     public DeviceConfigFacade(Context context, Handler handler, WifiMetrics wifiMetrics) {
         mContext = context;
@@ -349,6 +358,24 @@ public class DeviceConfigFacade {
         mRssiThresholdNotSendLowScoreToCsDbm = DeviceConfig.getInt(NAMESPACE,
                 "rssi_threshold_not_send_low_score_to_cs_dbm",
                 DEFAULT_RSSI_THRESHOLD_NOT_SEND_LOW_SCORE_TO_CS_DBM);
+        mIsScanResultDeltaEnabled = DeviceConfig.getBoolean(NAMESPACE,
+                "scan_result_delta_enabled", false);
+        mIsBackgroundScanCostModelEnabled = DeviceConfig.getBoolean(NAMESPACE,
+                "background_scan_cost_model_enabled", false);
+        mIsPartialScanChannelPlannerEnabled = DeviceConfig.getBoolean(NAMESPACE,
+                "partial_scan_channel_planner_enabled", false);
+        mConcurrentNetworkNominationEnabled = DeviceConfig.getBoolean(NAMESPACE,
+                "concurrent_network_nomination_enabled", false);
+        mThroughputPredictionCacheEnabled = DeviceConfig.getBoolean(NAMESPACE,
+                "throughput_prediction_cache_enabled", false);
+        mIsCompactPnoNetworkListEnabled = DeviceConfig.getBoolean(NAMESPACE,
+                "compact_pno_network_list_enabled", false);
+        mIsBinaryConfigStoreEnabled = DeviceConfig.getBoolean(NAMESPACE,
+                "binary_config_store_enabled", false);
+        mIsAsyncConfigStoreWriteEnabled = DeviceConfig.getBoolean(NAMESPACE,
+                "async_config_store_write_enabled", false);
+        mIsParallelConfigStoreReadEnabled = DeviceConfig.getBoolean(NAMESPACE,
+                "parallel_config_store_read_enabled", false);
     }
 
     private Set<String> getUnmodifiableSetQuoted(String key) {
@@ -721,4 +748,71 @@ public class DeviceConfigFacade {
     public int getRssiThresholdNotSendLowScoreToCsDbm() {
         return mRssiThresholdNotSendLowScoreToCsDbm;
     }
+
+    /**
+     * Gets the feature flag for delivering single scan results to in-process consumers as deltas.
+     */
+    public boolean isScanResultDeltaEnabled() {
+        return mIsScanResultDeltaEnabled;
+    }
+
+    /**
+     * Gets the feature flag for scheduling background scan buckets to minimize the estimated scan time.
+     */
+    public boolean isBackgroundScanCostModelEnabled() {
+        return mIsBackgroundScanCostModelEnabled;
+    }
+
+    /**
+     * Gets the feature flag for planning connected mode partial scan channels from candidate yield.
+     */
+    public boolean isPartialScanChannelPlannerEnabled() {
+        return mIsPartialScanChannelPlannerEnabled;
+    }
+
+    /**
+     * Gets the feature flag for running thread safe network nominators concurrently.
+     */
+    public boolean isConcurrentNetworkNominationEnabled() {
+        return mConcurrentNetworkNominationEnabled;
+    }
+
+    /**
+     * Gets the feature flag for memoizing the predicted throughput of each BSSID across network
+     * selections.
+     */
+    public boolean isThroughputPredictionCacheEnabled() {
+        return mThroughputPredictionCacheEnabled;
+    }
+
+    /**
+     * Gets the feature flag for building a ranked, frequency hinted and compacted PNO list.
+     */
+    public boolean isCompactPnoNetworkListEnabled() {
+        return mIsCompactPnoNetworkListEnabled;
+    }
+
+    /**
+     * Gets the feature flag for writing the config store files in the binary format.
+     * The flag needs to be off, and the store files written once, before a rollback to a build
+     * that cannot read the binary format, see {@link WifiConfigStore#setBinaryFormatEnabled}.
+     */
+    public boolean isBinaryConfigStoreEnabled() {
+        return mIsBinaryConfigStoreEnabled;
+    }
+
+    /**
+     * Whether the store files are written on a dedicated thread rather than the wifi thread.
+     */
+    public boolean isAsyncConfigStoreWriteEnabled() {
+        return mIsAsyncConfigStoreWriteEnabled;
+    }
+
+    /**
+     * Whether the store files are opened and read ahead on a dedicated thread while the store
+     * files before them are parsed.
+     */
+    public boolean isParallelConfigStoreReadEnabled() {
+        return mIsParallelConfigStoreReadEnabled;
+    }
 }
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.util.ArraySet;
+import android.util.SparseArray;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the configured networks by default gateway MAC address and by BSSID prefix, used by
+ * {@link WifiConfigManager} to find the networks a network may be linked with without going
+ * through all of them.
+ *
+ * The index may keep stale entries, e.g for BSSIDs trimmed from a scan detail cache, so the
+ * networks it returns are only candidates that must still be checked. It never misses a network
+ * having the same gateway or a BSSID with the same prefix, as long as every gateway and BSSID
+ * change is reported to it.
+ *
+ * Not thread safe.
+ */
+class NetworkLinkingIndex {
+    private final int mBssidPrefixLength;
+
+    // Network ids per default gateway MAC address, and default gateway of each network.
+    private final Map<String, Set<Integer>> mNetworksByGateway = new HashMap<>();
+    private final SparseArray<String> mGateways = new SparseArray<>();
+    // Network ids per lowercase BSSID prefix, and BSSID prefixes of each network.
+    private final Map<String, Set<Integer>> mNetworksByBssidPrefix = new HashMap<>();
+    private final SparseArray<Set<String>> mBssidPrefixes = new SparseArray<>();
+
+    /**
+     * @param bssidPrefixLength Number of leading BSSID characters that must match, ignoring case.
+     */
+    NetworkLinkingIndex(int bssidPrefixLength) {
+        mBssidPrefixLength = bssidPrefixLength;
+    }
+
+    /**
+     * Set the default gateway MAC address of network |networkId|, or clear it if null.
+     */
+    public void setDefaultGateway(int networkId, @Nullable String gatewayMac) {
+        String oldGatewayMac = mGateways.get(networkId);
+        if (gatewayMac == null ? oldGatewayMac == null : gatewayMac.equals(oldGatewayMac)) return;
+        if (oldGatewayMac != null) {
+            removeFrom(mNetworksByGateway, oldGatewayMac, networkId);
+            mGateways.remove(networkId);
+        }
+        if (gatewayMac != null) {
+            addTo(mNetworksByGateway, gatewayMac, networkId);
+            mGateways.put(networkId, gatewayMac);
+        }
+    }
+
+    /**
+     * Add a BSSID seen for network |networkId|.
+     */
+    public void addBssid(int networkId, @NonNull String bssid) {
+        if (bssid.length() < mBssidPrefixLength) return; // Cannot match any other BSSID
+        String prefix = bssid.substring(0, mBssidPrefixLength).toLowerCase(Locale.ROOT);
+        Set<String> prefixes = mBssidPrefixes.get(networkId);
+        if (prefixes == null) {
+            prefixes = new ArraySet<>();
+            mBssidPrefixes.put(networkId, prefixes);
+        }
+        if (prefixes.add(prefix)) {
+            addTo(mNetworksByBssidPrefix, prefix, networkId);
+        }
+    }
+
+    /**
+     * Drop network |networkId| from the index.
+     */
+    public void removeNetwork(int networkId) {
+        setDefaultGateway(networkId, null);
+        clearBssids(networkId);
+    }
+
+    /**
+     * Drop the BSSIDs of network |networkId|, e.g when its scan detail cache is dropped.
+     */
+    public void clearBssids(int networkId) {
+        Set<String> prefixes = mBssidPrefixes.get(networkId);
+        if (prefixes == null) return;
+        for (String prefix : prefixes) {
+            removeFrom(mNetworksByBssidPrefix, prefix, networkId);
+        }
+        mBssidPrefixes.remove(networkId);
+    }
+
+    /**
+     * Drop the BSSIDs of all the networks, e.g when the scan detail caches are dropped.
+     */
+    public void clearAllBssids() {
+        mNetworksByBssidPrefix.clear();
+        mBssidPrefixes.clear();
+    }
+
+    /**
+     * Drop all the networks.
+     */
+    public void clear() {
+        mNetworksByGateway.clear();
+        mGateways.clear();
+        mNetworksByBssidPrefix.clear();
+        mBssidPrefixes.clear();
+    }
+
+    /**
+     * Networks that have the same default gateway as network |networkId|, or a BSSID with the
+     * same prefix as one of its BSSIDs. Network |networkId| itself is not included.
+     */
+    public @NonNull Set<Integer> getLinkCandidates(int networkId) {
+        Set<Integer> candidates = new ArraySet<>();
+        String gatewayMac = mGateways.get(networkId);
+        if (gatewayMac != null) {
+            candidates.addAll(mNetworksByGateway.get(gatewayMac));
+        }
+        Set<String> prefixes = mBssidPrefixes.get(networkId);
+        if (prefixes != null) {
+            for (String prefix : prefixes) {
+                candidates.addAll(mNetworksByBssidPrefix.get(prefix));
+            }
+        }
+        candidates.remove(networkId);
+        return candidates;
+    }
+
+    private static void addTo(Map<String, Set<Integer>> index, String key, int networkId) {
+        Set<Integer> networkIds = index.get(key);
+        if (networkIds == null) {
+            networkIds = new ArraySet<>();
+            index.put(key, networkIds);
+        }
+        networkIds.add(networkId);
+    }
+
+    private static void removeFrom(Map<String, Set<Integer>> index, String key, int networkId) {
+        Set<Integer> networkIds = index.get(key);
+        if (networkIds == null) return;
+        networkIds.remove(networkId);
+        if (networkIds.isEmpty()) {
+            index.remove(key);
+        }
+    }
+}
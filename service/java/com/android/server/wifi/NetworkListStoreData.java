@@ -101,6 +101,11 @@ public abstract class NetworkListStoreData implements WifiConfigStore.StoreData
         return true;
     }
 
+    @Override
+    public boolean supportsBinaryEncoding() {
+        return true;
+    }
+
     @Override
     public String getName() {
         return XML_TAG_SECTION_HEADER_NETWORK_LIST;
@@ -141,6 +141,11 @@ public class NetworkSuggestionStoreData implements WifiConfigStore.StoreData {
         return mDataSource.hasNewDataToSerialize();
     }
 
+    @Override
+    public boolean supportsBinaryEncoding() {
+        return true;
+    }
+
     @Override
     public String getName() {
         return XML_TAG_SECTION_HEADER_NETWORK_SUGGESTION_MAP;
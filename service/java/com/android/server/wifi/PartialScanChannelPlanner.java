@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.net.wifi.ScanResult;
+import android.text.TextUtils;
+import android.util.ArraySet;
+import android.util.SparseArray;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.server.wifi.util.InformationElementUtil.BssLoad;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Plans the channels of connected mode partial scans from the history of the channels where
+ * the connected network was seen.
+ *
+ * Per connected network, every full band scan credits each channel with the number of BSSIDs of
+ * the network (other than the connected BSSID) found on it; older scans are decayed. BSSIDs are
+ * matched by SSID, like the channels WifiScoreCard records for the network. A partial scan then
+ * covers the connected channel plus the smallest set of channels that captures
+ * {@link #TARGET_YIELD_SHARE} of the decayed yield. Channels are ranked by yield per unit of
+ * scan cost, where busy channels (see {@link WifiChannelUtilization}) cost more as the radio
+ * has to contend for the medium to probe them.
+ *
+ * To verify that planned scans do not miss BSSIDs, each full band scan is also checked against
+ * the last plan of the network: the hit rate is the share of BSSIDs that were on planned
+ * channels.
+ */
+public class PartialScanChannelPlanner {
+    /** Share of the BSSID yield that planned channels must capture. */
+    @VisibleForTesting
+    static final double TARGET_YIELD_SHARE = 0.9;
+    /** Weight of the history kept at each full band scan. */
+    @VisibleForTesting
+    static final double YIELD_DECAY = 0.8;
+    /** Full band scans needed for a network before channels are planned. */
+    @VisibleForTesting
+    static final int MIN_FULL_SCANS = 3;
+    /** Networks whose history is kept, least recently used is dropped first. */
+    @VisibleForTesting
+    static final int MAX_NETWORKS = 16;
+
+    private final WifiChannelUtilization mWifiChannelUtilization;
+    private final boolean mEnabled;
+
+    private static class NetworkHistory {
+        public final SparseArray<Double> yieldByFrequency = new SparseArray<>();
+        public int fullScans;
+        @Nullable public Set<Integer> lastPlan;
+    }
+
+    private final Map<Integer, NetworkHistory> mHistories =
+            new LinkedHashMap<Integer, NetworkHistory>(MAX_NETWORKS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, NetworkHistory> eldest) {
+                    return size() > MAX_NETWORKS;
+                }
+            };
+
+    private long mPlanCount;
+    private long mPlannedChannelCount;
+    private long mDefaultChannelCount;
+    private long mCheckedBssidCount;
+    private long mPlannedBssidHitCount;
+
+    public PartialScanChannelPlanner(@NonNull WifiChannelUtilization wifiChannelUtilization,
+            boolean enabled) {
+        mWifiChannelUtilization = wifiChannelUtilization;
+        mEnabled = enabled;
+    }
+
+    /**
+     * Returns true if partial scan channels should be planned by this class.
+     */
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Record the BSSIDs of the connected network found by a full band scan.
+     *
+     * @param networkId network ID of the connected network.
+     * @param networkSsid quoted SSID of the connected network.
+     * @param currentBssid connected BSSID, not counted.
+     * @param scanDetails results of the full band scan.
+     */
+    public void updateFromFullBandScan(int networkId, @Nullable String networkSsid,
+            @Nullable String currentBssid, @Nullable List<ScanDetail> scanDetails) {
+        if (networkSsid == null || scanDetails == null) return;
+        NetworkHistory history = mHistories.get(networkId);
+        if (history == null) {
+            history = new NetworkHistory();
+            mHistories.put(networkId, history);
+        }
+        for (int i = 0; i < history.yieldByFrequency.size(); i++) {
+            history.yieldByFrequency.setValueAt(i,
+                    history.yieldByFrequency.valueAt(i) * YIELD_DECAY);
+        }
+        for (ScanDetail scanDetail : scanDetails) {
+            ScanResult scanResult = scanDetail.getScanResult();
+            if (!isSameSsid(networkSsid, scanResult.SSID)
+                    || TextUtils.equals(currentBssid, scanResult.BSSID)) {
+                continue;
+            }
+            int frequency = scanResult.frequency;
+            history.yieldByFrequency.put(frequency,
+                    history.yieldByFrequency.get(frequency, 0.0) + 1.0);
+            if (history.lastPlan != null) {
+                mCheckedBssidCount++;
+                if (history.lastPlan.contains(frequency)) {
+                    mPlannedBssidHitCount++;
+                }
+            }
+        }
+        history.fullScans++;
+    }
+
+    private static boolean isSameSsid(@NonNull String quotedSsid, @Nullable String ssid) {
+        // Compare without allocating a quoted copy of each scanned SSID.
+        return ssid != null && quotedSsid.length() == ssid.length() + 2
+                && quotedSsid.charAt(0) == '"'
+                && quotedSsid.regionMatches(1, ssid, 0, ssid.length());
+    }
+
+    /**
+     * Plan the channels of a partial scan while connected to |networkId|.
+     *
+     * @param currentFrequency frequency of the connection, always scanned.
+     * @param maxChannels max number of channels to return, 0 for no limit.
+     * @param defaultChannelCount number of channels the scan would cover without planning, for
+     *                            metrics.
+     * @return the channels to scan, or null if there is not enough history for the network.
+     */
+    public @Nullable Set<Integer> planChannels(int networkId, int currentFrequency,
+            int maxChannels, int defaultChannelCount) {
+        NetworkHistory history = mHistories.get(networkId);
+        if (history == null || history.fullScans < MIN_FULL_SCANS) {
+            return null;
+        }
+        Set<Integer> channels = new ArraySet<>();
+        if (currentFrequency > 0) {
+            channels.add(currentFrequency);
+        }
+        List<Integer> ranked = new ArrayList<>(history.yieldByFrequency.size());
+        double totalYield = 0;
+        for (int i = 0; i < history.yieldByFrequency.size(); i++) {
+            ranked.add(history.yieldByFrequency.keyAt(i));
+            totalYield += history.yieldByFrequency.valueAt(i);
+        }
+        ranked.sort((f1, f2) -> Double.compare(getYieldPerCost(history, f2),
+                getYieldPerCost(history, f1)));
+        double capturedYield = history.yieldByFrequency.get(currentFrequency, 0.0);
+        for (int frequency : ranked) {
+            if (capturedYield >= TARGET_YIELD_SHARE * totalYield) break;
+            if (maxChannels > 0 && channels.size() >= maxChannels) break;
+            if (channels.add(frequency)) {
+                capturedYield += history.yieldByFrequency.get(frequency);
+            }
+        }
+        history.lastPlan = channels;
+        mPlanCount++;
+        mPlannedChannelCount += channels.size();
+        mDefaultChannelCount += defaultChannelCount;
+        return channels;
+    }
+
+    private double getYieldPerCost(NetworkHistory history, int frequency) {
+        int utilization = mWifiChannelUtilization.getUtilizationRatio(frequency);
+        double busyRatio = utilization == BssLoad.INVALID
+                ? 0 : (double) utilization / BssLoad.MAX_CHANNEL_UTILIZATION;
+        return history.yieldByFrequency.get(frequency) / (1 + busyRatio);
+    }
+
+    /**
+     * Drop the history of |networkId|, e.g. when the network is removed.
+     */
+    public void removeNetwork(int networkId) {
+        mHistories.remove(networkId);
+    }
+
+    /**
+     * Share of the BSSIDs found by full band scans that were on the channels last planned for
+     * the connected network, or -1 if no BSSID was checked yet.
+     */
+    public double getHitRate() {
+        if (mCheckedBssidCount == 0) return -1;
+        return (double) mPlannedBssidHitCount / mCheckedBssidCount;
+    }
+
+    /**
+     * Average number of channels per planned partial scan, or -1 if none was planned.
+     */
+    public double getAveragePlannedChannels() {
+        if (mPlanCount == 0) return -1;
+        return (double) mPlannedChannelCount / mPlanCount;
+    }
+
+    /**
+     * Dump the planner state and hit rate metrics.
+     */
+    public void dump(PrintWriter pw) {
+        pw.println("PartialScanChannelPlanner: enabled=" + mEnabled
+                + " networks=" + mHistories.size());
+        pw.println("  plans=" + mPlanCount
+                + " plannedChannels=" + mPlannedChannelCount
+                + " defaultChannels=" + mDefaultChannelCount);
+        pw.println("  checkedBssids=" + mCheckedBssidCount
+                + " hits=" + mPlannedBssidHitCount
+                + " hitRate=" + getHitRate());
+    }
+}
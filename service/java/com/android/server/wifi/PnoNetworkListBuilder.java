@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import static com.android.server.wifi.WifiScoreCard.CNT_CONNECTION_ATTEMPT;
+import static com.android.server.wifi.WifiScoreCard.CNT_CONNECTION_FAILURE;
+
+import android.annotation.NonNull;
+import android.net.wifi.ScanResult;
+import android.net.wifi.WifiConfiguration;
+import android.net.wifi.WifiScanner.PnoSettings.PnoNetwork;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds the compact list of networks handed to the firmware for PNO scans.
+ *
+ * The firmware only has a few PNO slots, so the networks are ranked by the number of successful
+ * connections recorded by {@link WifiScoreCard}, and the networks only differing by security
+ * type share one entry. When PNO frequency culling is enabled, each entry is given the
+ * frequencies the network was recently seen on, from both {@link WifiScoreCard} and the
+ * {@link ScanDetailCache} of the network, so that the firmware does not wake up the host for
+ * matches on other frequencies.
+ *
+ * Only the score card entries already in memory are used, building the list does not create
+ * entries for networks that were never connected.
+ */
+class PnoNetworkListBuilder {
+    private final WifiConfigManager mConfigManager;
+    private final WifiScoreCard mWifiScoreCard;
+    private final Clock mClock;
+    private final boolean mEnabled;
+
+    // Stats of the last built list, for dumpsys.
+    private int mLastNumNetworks;
+    private int mLastNumMerged;
+    private int mLastNumDropped;
+    private int mLastNumWithFrequencies;
+
+    PnoNetworkListBuilder(WifiConfigManager configManager, WifiScoreCard wifiScoreCard,
+            Clock clock, boolean enabled) {
+        mConfigManager = configManager;
+        mWifiScoreCard = wifiScoreCard;
+        mClock = clock;
+        mEnabled = enabled;
+    }
+
+    /**
+     * Whether the list should be built by this class rather than from the scan list order.
+     */
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Build the PNO network list.
+     *
+     * @param networks networks to look for, in scan list order, which breaks ranking ties.
+     * @param maxPnoNetworks maximum number of entries in the list.
+     * @param maxFrequencyAgeMs frequencies the network was last seen on longer ago are dropped.
+     * @param frequencyCullingEnabled whether to give the entries the frequencies to scan, see
+     *                                R.bool.config_wifiPnoFrequencyCullingEnabled.
+     * @return the entries, most likely network first.
+     */
+    public @NonNull List<PnoNetwork> build(@NonNull List<WifiConfiguration> networks,
+            int maxPnoNetworks, long maxFrequencyAgeMs, boolean frequencyCullingEnabled) {
+        Map<WifiConfiguration, Integer> successes = new ArrayMap<>();
+        for (WifiConfiguration config : networks) {
+            successes.put(config, getConnectionSuccessCount(config));
+        }
+        List<WifiConfiguration> ranked = new ArrayList<>(networks);
+        // Stable, so that the scan list order is kept among networks with the same count.
+        ranked.sort(Comparator.comparingInt((WifiConfiguration config) -> successes.get(config))
+                .reversed());
+
+        // Entries by SSID and flags, in rank order, with the frequencies of each entry. A null
+        // set of frequencies means one of the networks has none known, so all are scanned.
+        Map<String, PnoNetwork> entries = new ArrayMap<>();
+        Map<String, Set<Integer>> frequencies = new ArrayMap<>();
+        List<String> keys = new ArrayList<>();
+        int numMerged = 0;
+        for (WifiConfiguration config : ranked) {
+            PnoNetwork pnoNetwork = WifiConfigurationUtil.createPnoNetwork(config);
+            Set<Integer> networkFrequencies = frequencyCullingEnabled
+                    ? getRecentFrequencies(config, maxFrequencyAgeMs) : null;
+            String key = pnoNetwork.ssid + "-" + pnoNetwork.flags;
+            PnoNetwork entry = entries.get(key);
+            if (entry == null) {
+                if (keys.size() >= maxPnoNetworks) continue;
+                entries.put(key, pnoNetwork);
+                frequencies.put(key, networkFrequencies);
+                keys.add(key);
+                continue;
+            }
+            numMerged++;
+            entry.authBitField |= pnoNetwork.authBitField;
+            Set<Integer> entryFrequencies = frequencies.get(key);
+            if (entryFrequencies == null || networkFrequencies == null) {
+                frequencies.put(key, null);
+            } else {
+                entryFrequencies.addAll(networkFrequencies);
+            }
+        }
+        List<PnoNetwork> pnoList = new ArrayList<>();
+        int numWithFrequencies = 0;
+        for (String key : keys) {
+            PnoNetwork pnoNetwork = entries.get(key);
+            pnoList.add(pnoNetwork);
+            Set<Integer> entryFrequencies = frequencies.get(key);
+            if (entryFrequencies == null) continue;
+            pnoNetwork.frequencies =
+                    entryFrequencies.stream().mapToInt(Integer::intValue).toArray();
+            numWithFrequencies++;
+        }
+
+        mLastNumNetworks = networks.size();
+        mLastNumMerged = numMerged;
+        mLastNumDropped = networks.size() - numMerged - pnoList.size();
+        mLastNumWithFrequencies = numWithFrequencies;
+        return pnoList;
+    }
+
+    /**
+     * Number of connections to the network that did not fail, over the current and previous
+     * software builds.
+     */
+    private int getConnectionSuccessCount(WifiConfiguration config) {
+        WifiScoreCard.PerNetwork network = mWifiScoreCard.peekNetwork(config.SSID);
+        if (network == null) return 0;
+        return getConnectionSuccessCount(network.getStatsCurrBuild())
+                + getConnectionSuccessCount(network.getStatsPrevBuild());
+    }
+
+    private static int getConnectionSuccessCount(WifiScoreCard.NetworkConnectionStats stats) {
+        return Math.max(stats.getCount(CNT_CONNECTION_ATTEMPT)
+                - stats.getCount(CNT_CONNECTION_FAILURE), 0);
+    }
+
+    /**
+     * Frequencies the network was seen on within |maxAgeMs|, or null if none is known.
+     */
+    private Set<Integer> getRecentFrequencies(WifiConfiguration config, long maxAgeMs) {
+        Set<Integer> frequencies = new ArraySet<>();
+        WifiScoreCard.PerNetwork network = mWifiScoreCard.peekNetwork(config.SSID);
+        if (network != null) {
+            frequencies.addAll(network.getFrequencies(maxAgeMs));
+        }
+        ScanDetailCache scanDetailCache =
+                mConfigManager.getScanDetailCacheForNetwork(config.networkId);
+        if (scanDetailCache != null) {
+            long nowMs = mClock.getWallClockMillis();
+            for (String bssid : scanDetailCache.keySet()) {
+                ScanResult scanResult = scanDetailCache.getScanResult(bssid);
+                if (scanResult != null && nowMs - scanResult.seen <= maxAgeMs) {
+                    frequencies.add(scanResult.frequency);
+                }
+            }
+        }
+        return frequencies.isEmpty() ? null : frequencies;
+    }
+
+    /**
+     * Dump the stats of the last built list.
+     */
+    public void dump(PrintWriter pw) {
+        pw.println("PnoNetworkListBuilder: enabled=" + mEnabled
+                + " lastNumNetworks=" + mLastNumNetworks
+                + " lastNumMerged=" + mLastNumMerged
+                + " lastNumDropped=" + mLastNumDropped
+                + " lastNumWithFrequencies=" + mLastNumWithFrequencies);
+    }
+}
@@ -24,15 +24,19 @@ import android.util.LocalLog;
 import android.util.Pair;
 
 import com.android.server.wifi.hotspot2.PasspointNetworkNominateHelper;
+import com.android.server.wifi.util.ScanResultUtil;
 import com.android.server.wifi.util.WifiPermissionsUtil;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This class is the WifiNetworkSelector.NetworkNominator implementation for
  * saved networks.
  */
-public class SavedNetworkNominator implements WifiNetworkSelector.NetworkNominator {
+public class SavedNetworkNominator implements WifiNetworkSelector.ConcurrentNetworkNominator {
     private static final String NAME = "SavedNetworkNominator";
     private final WifiConfigManager mWifiConfigManager;
     private final LocalLog mLocalLog;
@@ -93,11 +97,91 @@ public class SavedNetworkNominator implements WifiNetworkSelector.NetworkNominat
         findMatchedPasspointNetworks(scanDetails, onConnectableListener);
     }
 
+    /**
+     * The saved networks are matched against the snapshot on the worker thread. The scan detail
+     * cache, the checks that read other components and the Passpoint networks are left to the
+     * returned nomination.
+     */
+    @Override
+    public @NonNull PendingNomination nominateNetworksConcurrently(List<ScanDetail> scanDetails,
+            List<WifiConfiguration> configuredNetworks, WifiConfiguration currentNetwork,
+            String currentBssid, boolean connected, boolean untrustedNetworkAllowed) {
+        // Scan details matching a saved network, and the saved networks passing the checks that
+        // only read the network.
+        List<ScanDetail> matchedScanDetails = new ArrayList<>();
+        List<Pair<ScanDetail, WifiConfiguration>> matchedNetworks = new ArrayList<>();
+        Map<String, List<WifiConfiguration>> networksBySsid = new HashMap<>();
+        for (WifiConfiguration network : configuredNetworks) {
+            // Same networks as ConfigurationMap#getByScanResultForCurrentUser() matches.
+            if (network.fromWifiNetworkSpecifier) {
+                continue;
+            }
+            List<WifiConfiguration> networks = networksBySsid.get(network.SSID);
+            if (networks == null) {
+                networks = new ArrayList<>(1);
+                networksBySsid.put(network.SSID, networks);
+            }
+            networks.add(network);
+        }
+        for (ScanDetail scanDetail : scanDetails) {
+            WifiConfiguration network = findSavedNetwork(networksBySsid,
+                    scanDetail.getScanResult());
+            if (network == null) {
+                continue;
+            }
+            matchedScanDetails.add(scanDetail);
+            if (isAutojoinAllowed(network)
+                    && isNetworkNominatable(network, scanDetail.getScanResult())) {
+                matchedNetworks.add(Pair.create(scanDetail, new WifiConfiguration(network)));
+            }
+        }
+        return (selectionScanDetails, onConnectableListener) -> {
+            for (ScanDetail scanDetail : matchedScanDetails) {
+                mWifiConfigManager.getConfiguredNetworkForScanDetailAndCache(scanDetail);
+            }
+            for (Pair<ScanDetail, WifiConfiguration> matched : matchedNetworks) {
+                if (isNetworkNominatableOnSelectionThread(matched.second,
+                        selectionScanDetails)) {
+                    onConnectableListener.onConnectable(matched.first, matched.second);
+                }
+            }
+            findMatchedPasspointNetworks(selectionScanDetails, onConnectableListener);
+        };
+    }
+
+    /**
+     * Find the saved network matching |scanResult| with the same rules as
+     * {@link ConfigurationMap#getByScanResultForCurrentUser(ScanResult)}.
+     */
+    private static WifiConfiguration findSavedNetwork(
+            Map<String, List<WifiConfiguration>> networksBySsid, ScanResult scanResult) {
+        List<WifiConfiguration> networks =
+                networksBySsid.get(ScanResultUtil.createQuotedSSID(scanResult.SSID));
+        if (networks == null) {
+            return null;
+        }
+        int securityType = ScanResultMatchInfo.getNetworkType(scanResult);
+        ScanResultMatchInfo matchInfo = null;
+        WifiConfiguration transitionMatch = null;
+        for (WifiConfiguration network : networks) {
+            if (ScanResultMatchInfo.getNetworkType(network) == securityType) {
+                return network;
+            }
+            if (transitionMatch == null) {
+                if (matchInfo == null) {
+                    matchInfo = ScanResultMatchInfo.fromScanResult(scanResult);
+                }
+                if (matchInfo.equals(ScanResultMatchInfo.fromWifiConfiguration(network))) {
+                    transitionMatch = network;
+                }
+            }
+        }
+        return transitionMatch;
+    }
+
     private void findMatchedSavedNetworks(List<ScanDetail> scanDetails,
             OnConnectableListener onConnectableListener) {
         for (ScanDetail scanDetail : scanDetails) {
-            ScanResult scanResult = scanDetail.getScanResult();
-
             // One ScanResult can be associated with more than one network, hence we calculate all
             // the scores and use the highest one as the ScanResult's score.
             WifiConfiguration network =
@@ -106,69 +190,91 @@ public class SavedNetworkNominator implements WifiNetworkSelector.NetworkNominat
             if (network == null) {
                 continue;
             }
-
-            /**
-             * Ignore Passpoint and Ephemeral networks. They are configured networks,
-             * but without being persisted to the storage. They are nominated by
-             * {@link PasspointNetworkNominator} and {@link ScoredNetworkNominator}
-             * respectively.
-             */
-            if (network.isPasspoint() || network.isEphemeral()) {
-                continue;
-            }
-
-            // Ignore networks that the user has disallowed auto-join for.
-            if (!network.allowAutojoin) {
-                localLog("Ignoring auto join disabled SSID: " + network.SSID);
+            if (!isAutojoinAllowed(network)) {
                 continue;
             }
-
             WifiConfiguration.NetworkSelectionStatus status =
                     network.getNetworkSelectionStatus();
             status.setSeenInLastQualifiedNetworkSelection(true);
-
-            if (mWifiConfigManager.isNetworkTemporarilyDisabledByUser(network.SSID)) {
-                localLog("Ignoring user disabled SSID: " + network.SSID);
+            if (!isNetworkNominatable(network, scanDetail.getScanResult())
+                    || !isNetworkNominatableOnSelectionThread(network, scanDetails)) {
                 continue;
             }
 
-            if (!status.isNetworkEnabled()) {
-                localLog("Ignoring network selection disabled SSID: " + network.SSID);
-                continue;
-            }
-            if (network.BSSID != null &&  !network.BSSID.equals("any")
-                    && !network.BSSID.equals(scanResult.BSSID)) {
-                // App has specified the only BSSID to connect for this
-                // configuration. So only the matching ScanResult can be a candidate.
-                localLog("Network " + WifiNetworkSelector.toNetworkString(network)
-                        + " has specified BSSID " + network.BSSID + ". Skip "
-                        + scanResult.BSSID);
-                continue;
-            }
-            if (isNetworkSimBasedCredential(network) && !isSimBasedNetworkAbleToAutoJoin(network)) {
-                localLog("Ignoring SIM auto join disabled SSID: " + network.SSID);
-                continue;
-            }
+            onConnectableListener.onConnectable(scanDetail,
+                    mWifiConfigManager.getConfiguredNetwork(network.networkId));
+        }
+    }
 
-            // If the network is marked to use external scores, or is an open network with
-            // curate saved open networks enabled, do not consider it for network selection.
-            if (network.useExternalScores) {
-                localLog("Network " + WifiNetworkSelector.toNetworkString(network)
-                        + " has external score.");
-                continue;
-            }
+    private boolean isAutojoinAllowed(WifiConfiguration network) {
+        /**
+         * Ignore Passpoint and Ephemeral networks. They are configured networks,
+         * but without being persisted to the storage. They are nominated by
+         * {@link PasspointNetworkNominator} and {@link ScoredNetworkNominator}
+         * respectively.
+         */
+        if (network.isPasspoint() || network.isEphemeral()) {
+            return false;
+        }
 
-            if (mWifiNetworkSuggestionsManager
-                    .shouldBeIgnoredBySecureSuggestionFromSameCarrier(network,
-                            scanDetails)) {
-                localLog("Open Network " + WifiNetworkSelector.toNetworkString(network)
-                        + " has a secure network suggestion from same carrier.");
-                continue;
-            }
+        // Ignore networks that the user has disallowed auto-join for.
+        if (!network.allowAutojoin) {
+            localLog("Ignoring auto join disabled SSID: " + network.SSID);
+            return false;
+        }
+        return true;
+    }
 
-            onConnectableListener.onConnectable(scanDetail,
-                    mWifiConfigManager.getConfiguredNetwork(network.networkId));
+    /**
+     * Checks of a saved network that only read the network, and so may run on any thread.
+     */
+    private boolean isNetworkNominatable(WifiConfiguration network, ScanResult scanResult) {
+        if (!network.getNetworkSelectionStatus().isNetworkEnabled()) {
+            localLog("Ignoring network selection disabled SSID: " + network.SSID);
+            return false;
+        }
+        if (network.BSSID != null &&  !network.BSSID.equals("any")
+                && !network.BSSID.equals(scanResult.BSSID)) {
+            // App has specified the only BSSID to connect for this
+            // configuration. So only the matching ScanResult can be a candidate.
+            localLog("Network " + WifiNetworkSelector.toNetworkString(network)
+                    + " has specified BSSID " + network.BSSID + ". Skip "
+                    + scanResult.BSSID);
+            return false;
+        }
+
+        // If the network is marked to use external scores, or is an open network with
+        // curate saved open networks enabled, do not consider it for network selection.
+        if (network.useExternalScores) {
+            localLog("Network " + WifiNetworkSelector.toNetworkString(network)
+                    + " has external score.");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks of a saved network that read or update other components, and so must run on the
+     * network selection thread.
+     */
+    private boolean isNetworkNominatableOnSelectionThread(WifiConfiguration network,
+            List<ScanDetail> scanDetails) {
+        if (mWifiConfigManager.isNetworkTemporarilyDisabledByUser(network.SSID)) {
+            localLog("Ignoring user disabled SSID: " + network.SSID);
+            return false;
         }
+        if (isNetworkSimBasedCredential(network) && !isSimBasedNetworkAbleToAutoJoin(network)) {
+            localLog("Ignoring SIM auto join disabled SSID: " + network.SSID);
+            return false;
+        }
+        if (mWifiNetworkSuggestionsManager
+                .shouldBeIgnoredBySecureSuggestionFromSameCarrier(network,
+                        scanDetails)) {
+            localLog("Open Network " + WifiNetworkSelector.toNetworkString(network)
+                    + " has a secure network suggestion from same carrier.");
+            return false;
+        }
+        return true;
     }
 
     private void findMatchedPasspointNetworks(List<ScanDetail> scanDetails,
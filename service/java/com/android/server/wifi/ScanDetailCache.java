@@ -27,19 +27,59 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.PriorityQueue;
 
 /**
  * Maps BSSIDs to their individual ScanDetails for a given WifiConfiguration.
+ *
+ * Entries are evicted oldest first (by {@link ScanDetail#getSeen()}, then BSSID) using a
+ * min-heap kept next to the map. Heap entries are snapshots: entries for BSSIDs that were
+ * replaced, removed or seen again since they were queued are skipped or requeued when they reach
+ * the top, and the heap is rebuilt from the map once stale entries make up half of it.
  */
 public class ScanDetailCache {
 
     private static final String TAG = "ScanDetailCache";
     private static final boolean DBG = false;
 
+    /** Oldest first, ties broken by BSSID. */
+    private static final Comparator<EvictionEntry> EVICTION_ORDER = (a, b) -> {
+        if (a.seen != b.seen) {
+            return Long.compare(a.seen, b.seen);
+        }
+        return a.bssid.compareTo(b.bssid);
+    };
+
+    /** Most recently seen first, then strongest first, ties broken by BSSID. */
+    private static final Comparator<ScanDetail> DUMP_ORDER = (o1, o2) -> {
+        ScanResult a = o1.getScanResult();
+        ScanResult b = o2.getScanResult();
+        if (a.seen != b.seen) {
+            return Long.compare(b.seen, a.seen);
+        }
+        if (a.level != b.level) {
+            return Integer.compare(b.level, a.level);
+        }
+        return a.BSSID.compareTo(b.BSSID);
+    };
+
+    private static class EvictionEntry {
+        public final ScanDetail scanDetail;
+        public final String bssid;
+        public final long seen;
+
+        EvictionEntry(ScanDetail scanDetail) {
+            this.scanDetail = scanDetail;
+            this.bssid = scanDetail.getBSSIDString();
+            this.seen = scanDetail.getSeen();
+        }
+    }
+
     private final WifiConfiguration mConfig;
     private final int mMaxSize;
     private final int mTrimSize;
     private final HashMap<String, ScanDetail> mMap;
+    private PriorityQueue<EvictionEntry> mEvictionQueue;
 
     /**
      * Scan Detail cache associated with each configured network.
@@ -57,6 +97,7 @@ public class ScanDetailCache {
         mMaxSize = maxSize;
         mTrimSize = trimSize;
         mMap = new HashMap(16, 0.75f);
+        mEvictionQueue = new PriorityQueue<>(16, EVICTION_ORDER);
     }
 
     void put(ScanDetail scanDetail) {
@@ -66,6 +107,11 @@ public class ScanDetailCache {
         }
 
         mMap.put(scanDetail.getBSSIDString(), scanDetail);
+        mEvictionQueue.add(new EvictionEntry(scanDetail));
+        // Every scan puts the same BSSIDs again, drop the stale entries once they dominate.
+        if (mEvictionQueue.size() > 2 * Math.max(mMap.size(), 16)) {
+            rebuildEvictionQueue();
+        }
     }
 
     /**
@@ -111,61 +157,45 @@ public class ScanDetailCache {
 
     /**
      * Method to reduce the cache to |mTrimSize| size by removing the oldest entries.
-     * TODO: Investigate if this method can be further optimized.
      */
     private void trim() {
-        int currentSize = mMap.size();
-        if (currentSize < mTrimSize) {
+        if (mMap.size() < mTrimSize) {
             return; // Nothing to trim
         }
-        ArrayList<ScanDetail> list = new ArrayList<ScanDetail>(mMap.values());
-        if (list.size() != 0) {
-            // Sort by descending timestamp
-            Collections.sort(list, new Comparator() {
-                public int compare(Object o1, Object o2) {
-                    ScanDetail a = (ScanDetail) o1;
-                    ScanDetail b = (ScanDetail) o2;
-                    if (a.getSeen() > b.getSeen()) {
-                        return 1;
-                    }
-                    if (a.getSeen() < b.getSeen()) {
-                        return -1;
-                    }
-                    return a.getBSSIDString().compareTo(b.getBSSIDString());
-                }
-            });
-        }
-        for (int i = 0; i < currentSize - mTrimSize; i++) {
+        while (mMap.size() > mTrimSize) {
+            EvictionEntry entry = mEvictionQueue.poll();
+            if (entry == null) {
+                break; // Every entry of the map is queued, should not happen.
+            }
+            ScanDetail current = mMap.get(entry.bssid);
+            if (current != entry.scanDetail) {
+                continue; // Replaced or removed since queued.
+            }
+            if (current.getSeen() != entry.seen) {
+                // Seen again since queued (see ScanDetail#setSeen()), requeue at its new age.
+                mEvictionQueue.add(new EvictionEntry(current));
+                continue;
+            }
             // Remove oldest results from scan cache
-            ScanDetail result = list.get(i);
-            mMap.remove(result.getBSSIDString());
+            mMap.remove(entry.bssid);
+        }
+    }
+
+    private void rebuildEvictionQueue() {
+        PriorityQueue<EvictionEntry> queue =
+                new PriorityQueue<>(Math.max(mMap.size(), 16), EVICTION_ORDER);
+        for (ScanDetail scanDetail : mMap.values()) {
+            queue.add(new EvictionEntry(scanDetail));
         }
+        mEvictionQueue = queue;
     }
 
-    /* @hide */
+    /**
+     * Sorted view of the cache, only built for dumps.
+     */
     private ArrayList<ScanDetail> sort() {
         ArrayList<ScanDetail> list = new ArrayList<ScanDetail>(mMap.values());
-        if (list.size() != 0) {
-            Collections.sort(list, new Comparator() {
-                public int compare(Object o1, Object o2) {
-                    ScanResult a = ((ScanDetail) o1).getScanResult();
-                    ScanResult b = ((ScanDetail) o2).getScanResult();
-                    if (a.seen > b.seen) {
-                        return -1;
-                    }
-                    if (a.seen < b.seen) {
-                        return 1;
-                    }
-                    if (a.level > b.level) {
-                        return -1;
-                    }
-                    if (a.level < b.level) {
-                        return 1;
-                    }
-                    return a.BSSID.compareTo(b.BSSID);
-                }
-            });
-        }
+        Collections.sort(list, DUMP_ORDER);
         return list;
     }
 
@@ -38,13 +38,17 @@ import android.util.Log;
 import android.util.Pair;
 
 import com.android.internal.annotations.VisibleForTesting;
+import com.android.server.wifi.scanner.ScanResultDelta;
+import com.android.server.wifi.scanner.ScanResultDeltaPublisher;
 import com.android.server.wifi.util.WifiPermissionsUtil;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.concurrent.NotThreadSafe;
 
@@ -108,6 +112,9 @@ public class ScanRequestProxy {
             new ArrayMap();
     // Scan results cached from the last full single scan request.
     private final List<ScanResult> mLastScanResults = new ArrayList<>();
+    // Scan results cached from the last full single scan request, keyed by BSSID. Used instead of
+    // |mLastScanResults| when scan result deltas are enabled.
+    private final Map<String, ScanResult> mLastScanResultsByBssid = new LinkedHashMap<>();
     // external ScanResultCallback tracker
     private final RemoteCallbackList<IScanResultsCallback> mRegisteredScanResultsCallbacks;
     // Global scan listener for listening to all scan requests.
@@ -159,6 +166,9 @@ public class ScanRequestProxy {
         }
     };
 
+    // Delta listener used instead of the global scan listener, when enabled.
+    private ScanResultDeltaPublisher.Listener mScanResultDeltaListener;
+
     // Common scan listener for scan requests initiated by this class.
     private class ScanRequestProxyScanListener implements WifiScanner.ScanListener {
         @Override
@@ -227,8 +237,8 @@ public class ScanRequestProxy {
             if (mVerboseLoggingEnabled) {
                 Log.v(TAG, "Scan throttle enabled " + mThrottleEnabled);
             }
-            // Register the global scan listener.
-            if (mWifiScanner != null) {
+            // Register the global scan listener, or the delta listener replacing it.
+            if (mWifiScanner != null && !registerScanResultDeltaListenerIfEnabled()) {
                 mWifiScanner.registerScanListener(
                         new HandlerExecutor(mHandler), new GlobalScanListener());
             }
@@ -236,6 +246,31 @@ public class ScanRequestProxy {
         return mWifiScanner != null;
     }
 
+    /**
+     * Register the delta listener if scan result deltas are enabled.
+     *
+     * @return true if the listener was registered.
+     */
+    private boolean registerScanResultDeltaListenerIfEnabled() {
+        ScanResultDeltaPublisher publisher = mWifiInjector.getScanResultDeltaPublisher();
+        if (publisher == null || !publisher.isEnabled()) return false;
+        mScanResultDeltaListener = (ScanResultDelta delta) -> {
+            // Only process full band scan results.
+            if (!WifiScanner.isFullBandScan(delta.getBandScanned(), false)) {
+                return;
+            }
+            if (mVerboseLoggingEnabled) {
+                Log.d(TAG, "Received scan result delta " + delta);
+            }
+            // Patch the stored scan results & send out the scan completion broadcast.
+            delta.applyToScanResults(mLastScanResultsByBssid);
+            sendScanResultBroadcast(true);
+            sendScanResultsAvailableToCallbacks();
+        };
+        publisher.registerListener(new HandlerExecutor(mHandler), mScanResultDeltaListener);
+        return true;
+    }
+
     /**
      * Method that lets public apps know that scans are available.
      *
@@ -465,6 +500,9 @@ public class ScanRequestProxy {
      */
     public List<ScanResult> getScanResults() {
         // return a copy to prevent external modification
+        if (mScanResultDeltaListener != null) {
+            return new ArrayList<>(mLastScanResultsByBssid.values());
+        }
         return new ArrayList<>(mLastScanResults);
     }
 
@@ -473,6 +511,7 @@ public class ScanRequestProxy {
      */
     private void clearScanResults() {
         mLastScanResults.clear();
+        mLastScanResultsByBssid.clear();
         mLastScanTimestampForBgApps = 0;
         mLastScanTimestampsForFgApps.clear();
     }
@@ -51,7 +51,7 @@ public class ScanResultMatchInfo {
     /**
      * Fetch network type from network configuration.
      */
-    private static @WifiConfiguration.SecurityType int getNetworkType(WifiConfiguration config) {
+    static @WifiConfiguration.SecurityType int getNetworkType(WifiConfiguration config) {
         if (WifiConfigurationUtil.isConfigForSaeNetwork(config)) {
             return WifiConfiguration.SECURITY_TYPE_SAE;
         } else if (WifiConfigurationUtil.isConfigForPskNetwork(config)) {
@@ -87,7 +87,7 @@ public class ScanResultMatchInfo {
     /**
      * Fetch network type from scan result.
      */
-    private static @WifiConfiguration.SecurityType int getNetworkType(ScanResult scanResult) {
+    static @WifiConfiguration.SecurityType int getNetworkType(ScanResult scanResult) {
         if (ScanResultUtil.isScanResultForSaeNetwork(scanResult)) {
             return WifiConfiguration.SECURITY_TYPE_SAE;
         } else if (ScanResultUtil.isScanResultForWapiPskNetwork(scanResult)) {
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.net.wifi.ScanResult;
+
+import com.android.server.wifi.hotspot2.NetworkDetail;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of parsed scan result information elements, keyed by BSSID.
+ *
+ * Most BSSIDs advertise byte-identical IEs from one scan to the next. An entry is only reused
+ * when the raw IE bytes (checked by hash first, then by content), the frequency and the beacon
+ * capability field all match the previous result for the same BSSID.
+ */
+public class ScanResultParseCache {
+    public static final int DEFAULT_MAX_SIZE = 512;
+
+    /**
+     * Parsed state of a single scan result. All fields are shared between scan results that hit
+     * the same entry and must be treated as read only.
+     */
+    public static class Entry {
+        public final NetworkDetail networkDetail;
+        public final ScanResult.InformationElement[] informationElements;
+        public final String capabilities;
+        private final byte[] mRawIes;
+        private final int mRawIesHash;
+        private final int mFrequency;
+        private final int mBeaconCap;
+        private final boolean mIsOweSupported;
+
+        public Entry(@NonNull NetworkDetail networkDetail,
+                @NonNull ScanResult.InformationElement[] informationElements,
+                @NonNull String capabilities, @Nullable byte[] rawIes, int frequency,
+                int beaconCap, boolean isOweSupported) {
+            this.networkDetail = networkDetail;
+            this.informationElements = informationElements;
+            this.capabilities = capabilities;
+            mRawIes = rawIes;
+            mRawIesHash = Arrays.hashCode(rawIes);
+            mFrequency = frequency;
+            mBeaconCap = beaconCap;
+            mIsOweSupported = isOweSupported;
+        }
+
+        private boolean matches(byte[] rawIes, int rawIesHash, int frequency, int beaconCap,
+                boolean isOweSupported) {
+            return mRawIesHash == rawIesHash
+                    && mFrequency == frequency
+                    && mBeaconCap == beaconCap
+                    && mIsOweSupported == isOweSupported
+                    && Arrays.equals(mRawIes, rawIes);
+        }
+    }
+
+    private final int mMaxSize;
+    private final LinkedHashMap<Long, Entry> mEntries;
+    private long mHits;
+    private long mMisses;
+    private long mStale;
+
+    public ScanResultParseCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public ScanResultParseCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Invalid cache size: " + maxSize);
+        }
+        mMaxSize = maxSize;
+        mEntries = new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > mMaxSize;
+            }
+        };
+    }
+
+    /**
+     * Look up the parsed state of a scan result.
+     *
+     * @return the cached entry, or null if the BSSID is unknown or any input changed.
+     */
+    public synchronized @Nullable Entry get(long bssid, @Nullable byte[] rawIes, int frequency,
+            int beaconCap, boolean isOweSupported) {
+        Entry entry = mEntries.get(bssid);
+        if (entry == null) {
+            mMisses++;
+            return null;
+        }
+        if (!entry.matches(rawIes, Arrays.hashCode(rawIes), frequency, beaconCap,
+                isOweSupported)) {
+            mStale++;
+            mEntries.remove(bssid);
+            return null;
+        }
+        mHits++;
+        return entry;
+    }
+
+    /**
+     * Store the parsed state of a scan result, replacing any previous entry for the BSSID.
+     */
+    public synchronized void put(long bssid, @NonNull Entry entry) {
+        mEntries.put(bssid, entry);
+    }
+
+    /**
+     * Drop all entries. Counters are preserved.
+     */
+    public synchronized void clear() {
+        mEntries.clear();
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return mHits;
+    }
+
+    /**
+     * Number of lookups for a BSSID with no entry.
+     */
+    public synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    /**
+     * Number of lookups for a known BSSID whose IEs or parameters changed.
+     */
+    public synchronized long getStaleCount() {
+        return mStale;
+    }
+
+    /**
+     * Dump the cache statistics.
+     */
+    public synchronized void dump(PrintWriter pw) {
+        long lookups = mHits + mMisses + mStale;
+        pw.println("ScanResultParseCache: size=" + mEntries.size() + "/" + mMaxSize
+                + " hits=" + mHits + " misses=" + mMisses + " stale=" + mStale
+                + " hitRate=" + (lookups == 0 ? 0 : (100 * mHits / lookups)) + "%");
+    }
+}
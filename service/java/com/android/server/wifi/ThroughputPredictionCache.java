@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.net.wifi.WifiAnnotations.WifiStandard;
+import android.net.wifi.nl80211.DeviceWiphyCapabilities;
+
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-BSSID memo of the throughput predicted by {@link ThroughputPredictor}, so that network
+ * selection only predicts again for the BSSIDs whose inputs changed since the previous cycle.
+ *
+ * An entry is reused only if all the prediction inputs are the same: the scan RSSI, the BssLoad
+ * and link layer stats utilization of the channel, the bluetooth state and the capabilities of
+ * the AP and the device. A channel utilization update from {@link WifiChannelUtilization} thus
+ * invalidates the entries of that channel. The least recently used BSSIDs are evicted first.
+ *
+ * Not thread safe.
+ */
+public class ThroughputPredictionCache {
+    /** Max number of BSSIDs kept. */
+    @VisibleForTesting
+    static final int MAX_ENTRIES = 256;
+
+    private final ThroughputPredictor mThroughputPredictor;
+
+    private static class Entry {
+        @Nullable public DeviceWiphyCapabilities deviceCapabilities;
+        public int wifiStandard;
+        public int channelWidth;
+        public int rssiDbm;
+        public int frequency;
+        public int maxNumSpatialStream;
+        public int channelUtilizationBssLoad;
+        public int channelUtilizationLinkLayerStats;
+        public boolean isBluetoothConnected;
+        public int throughputMbps;
+    }
+
+    private final Map<String, Entry> mEntries =
+            new LinkedHashMap<String, Entry>(MAX_ENTRIES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    if (size() > MAX_ENTRIES) {
+                        mEvictionCount++;
+                        return true;
+                    }
+                    return false;
+                }
+            };
+
+    private long mHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+
+    public ThroughputPredictionCache(@NonNull ThroughputPredictor throughputPredictor) {
+        mThroughputPredictor = throughputPredictor;
+    }
+
+    /**
+     * Get the predicted throughput of |bssid|, predicting it again only if an input changed.
+     *
+     * See {@link ThroughputPredictor#predictThroughput} for the other parameters.
+     */
+    public int predictThroughput(@NonNull String bssid,
+            @Nullable DeviceWiphyCapabilities deviceCapabilities,
+            @WifiStandard int wifiStandardAp, int channelWidthAp, int rssiDbm, int frequency,
+            int maxNumSpatialStreamAp, int channelUtilizationBssLoad,
+            int channelUtilizationLinkLayerStats, boolean isBluetoothConnected) {
+        Entry entry = mEntries.get(bssid);
+        if (entry != null
+                && entry.deviceCapabilities == deviceCapabilities
+                && entry.wifiStandard == wifiStandardAp
+                && entry.channelWidth == channelWidthAp
+                && entry.rssiDbm == rssiDbm
+                && entry.frequency == frequency
+                && entry.maxNumSpatialStream == maxNumSpatialStreamAp
+                && entry.channelUtilizationBssLoad == channelUtilizationBssLoad
+                && entry.channelUtilizationLinkLayerStats == channelUtilizationLinkLayerStats
+                && entry.isBluetoothConnected == isBluetoothConnected) {
+            mHitCount++;
+            return entry.throughputMbps;
+        }
+        mMissCount++;
+        int throughputMbps = mThroughputPredictor.predictThroughput(deviceCapabilities,
+                wifiStandardAp, channelWidthAp, rssiDbm, frequency, maxNumSpatialStreamAp,
+                channelUtilizationBssLoad, channelUtilizationLinkLayerStats,
+                isBluetoothConnected);
+        if (entry == null) {
+            entry = new Entry();
+            mEntries.put(bssid, entry);
+        }
+        entry.deviceCapabilities = deviceCapabilities;
+        entry.wifiStandard = wifiStandardAp;
+        entry.channelWidth = channelWidthAp;
+        entry.rssiDbm = rssiDbm;
+        entry.frequency = frequency;
+        entry.maxNumSpatialStream = maxNumSpatialStreamAp;
+        entry.channelUtilizationBssLoad = channelUtilizationBssLoad;
+        entry.channelUtilizationLinkLayerStats = channelUtilizationLinkLayerStats;
+        entry.isBluetoothConnected = isBluetoothConnected;
+        entry.throughputMbps = throughputMbps;
+        return throughputMbps;
+    }
+
+    /**
+     * Number of BSSIDs currently memoized.
+     */
+    public int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Share of the predictions served from the memo, or -1 if nothing was predicted yet.
+     */
+    public double getHitRate() {
+        long total = mHitCount + mMissCount;
+        if (total == 0) return -1;
+        return (double) mHitCount / total;
+    }
+
+    /**
+     * Dump the memo size and hit rate.
+     */
+    public void dump(PrintWriter pw) {
+        pw.println("  throughput prediction cache: size=" + mEntries.size()
+                + " hits=" + mHitCount
+                + " misses=" + mMissCount
+                + " evictions=" + mEvictionCount
+                + " hitRate=" + getHitRate());
+    }
+}
@@ -27,6 +27,7 @@ import android.net.wifi.WifiInfo;
 import android.net.wifi.nl80211.DeviceWiphyCapabilities;
 import android.util.Log;
 
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.wifi.resources.R;
 
 /**
@@ -100,6 +101,53 @@ public class ThroughputPredictor {
     private static final int MAX_NUM_SPATIAL_STREAM_11N = 4;
     private static final int MAX_NUM_SPATIAL_STREAM_LEGACY = 1;
 
+    // Transmission modes, i.e. the wifi standard and channel width pairs with distinct PHY
+    // parameters. The mode of a given pair is MODE_BASE_XXX + channelWidthFactor.
+    private static final int MODE_LEGACY = 0;
+    private static final int MODE_BASE_11N = 1;
+    private static final int MODE_BASE_11AC = 3;
+    private static final int MODE_BASE_11AX = 7;
+    private static final int NUM_MODES = 11;
+    private static final int MAX_CHANNEL_WIDTH_FACTOR = 3;
+
+    // PHY parameters per mode
+    private static final int[] MODE_CHANNEL_WIDTH_FACTOR = {0, 0, 1, 0, 1, 2, 3, 0, 1, 2, 3};
+    private static final int[] MODE_NUM_TONE_PER_SYM = {NUM_TONE_PER_SYM_LEGACY,
+            NUM_TONE_PER_SYM_11N_20MHZ, NUM_TONE_PER_SYM_11N_40MHZ,
+            NUM_TONE_PER_SYM_11AC_20MHZ, NUM_TONE_PER_SYM_11AC_40MHZ,
+            NUM_TONE_PER_SYM_11AC_80MHZ, NUM_TONE_PER_SYM_11AC_160MHZ,
+            NUM_TONE_PER_SYM_11AX_20MHZ, NUM_TONE_PER_SYM_11AX_40MHZ,
+            NUM_TONE_PER_SYM_11AX_80MHZ, NUM_TONE_PER_SYM_11AX_160MHZ};
+    private static final int[] MODE_SYM_DURATION_NS = {SYM_DURATION_LEGACY_NS,
+            SYM_DURATION_11N_NS, SYM_DURATION_11N_NS,
+            SYM_DURATION_11AC_NS, SYM_DURATION_11AC_NS, SYM_DURATION_11AC_NS, SYM_DURATION_11AC_NS,
+            SYM_DURATION_11AX_NS, SYM_DURATION_11AX_NS, SYM_DURATION_11AX_NS, SYM_DURATION_11AX_NS};
+    private static final int[] MODE_MAX_BITS_PER_TONE = {MAX_BITS_PER_TONE_LEGACY,
+            MAX_BITS_PER_TONE_11N, MAX_BITS_PER_TONE_11N,
+            MAX_BITS_PER_TONE_11AC, MAX_BITS_PER_TONE_11AC,
+            MAX_BITS_PER_TONE_11AC, MAX_BITS_PER_TONE_11AC,
+            MAX_BITS_PER_TONE_11AX, MAX_BITS_PER_TONE_11AX,
+            MAX_BITS_PER_TONE_11AX, MAX_BITS_PER_TONE_11AX};
+    private static final int[] MODE_MAX_NUM_SPATIAL_STREAM = {MAX_NUM_SPATIAL_STREAM_LEGACY,
+            MAX_NUM_SPATIAL_STREAM_11N, MAX_NUM_SPATIAL_STREAM_11N,
+            MAX_NUM_SPATIAL_STREAM_11AC, MAX_NUM_SPATIAL_STREAM_11AC,
+            MAX_NUM_SPATIAL_STREAM_11AC, MAX_NUM_SPATIAL_STREAM_11AC,
+            MAX_NUM_SPATIAL_STREAM_11AX, MAX_NUM_SPATIAL_STREAM_11AX,
+            MAX_NUM_SPATIAL_STREAM_11AX, MAX_NUM_SPATIAL_STREAM_11AX};
+
+    // Highest snrDb with a distinct bitPerTone: above it, bitPerTone exceeds the max bits per
+    // tone of every mode and is capped.
+    private static final int SNR_DB_TABLE_MAX =
+            MAX_BITS_PER_TONE_11AX / SNR_DB_TO_BIT_PER_TONE_HIGH_SNR_SCALE + 1;
+    private static final int SNR_DB_TABLE_SIZE =
+            SNR_DB_TABLE_MAX - SNR_DB_TO_BIT_PER_TONE_LUT_MIN + 1;
+
+    // PHY rate in Mbps, indexed by [mode][numSpatialStream - 1][snrDb - LUT_MIN], with snrDb
+    // clamped to [SNR_DB_TO_BIT_PER_TONE_LUT_MIN, SNR_DB_TABLE_MAX].
+    private static final int[][][] PHY_RATE_MBPS_TABLE = buildPhyRateTable();
+    // Airtime fraction, indexed by [channelWidthFactor][channelUtilization].
+    private static final int[][] AIR_TIME_FRACTION_TABLE = buildAirTimeFractionTable();
+
     private final Context mContext;
 
     ThroughputPredictor(Context context) {
@@ -263,103 +311,139 @@ public class ThroughputPredictor {
 
     private int predictThroughputInternal(@WifiStandard int wifiStandard,
             int channelWidth, int rssiDbm, int maxNumSpatialStream,  int channelUtilization) {
-
-        // channel bandwidth in MHz = 20MHz * (2 ^ channelWidthFactor);
-        int channelWidthFactor;
-        int numTonePerSym;
-        int symDurationNs;
-        int maxBitsPerTone;
         if (maxNumSpatialStream < 1) {
             Log.e(TAG, "maxNumSpatialStream < 1 due to wrong implementation. Overridden to 1");
             maxNumSpatialStream = 1;
         }
         if (wifiStandard == ScanResult.WIFI_STANDARD_UNKNOWN) {
             return WifiInfo.LINK_SPEED_UNKNOWN;
-        } else if (wifiStandard == ScanResult.WIFI_STANDARD_LEGACY) {
-            numTonePerSym = NUM_TONE_PER_SYM_LEGACY;
-            channelWidthFactor = 0;
-            maxNumSpatialStream = MAX_NUM_SPATIAL_STREAM_LEGACY;
-            maxBitsPerTone = MAX_BITS_PER_TONE_LEGACY;
-            symDurationNs = SYM_DURATION_LEGACY_NS;
-        } else if (wifiStandard == ScanResult.WIFI_STANDARD_11N) {
-            if (channelWidth == ScanResult.CHANNEL_WIDTH_20MHZ) {
-                numTonePerSym = NUM_TONE_PER_SYM_11N_20MHZ;
-                channelWidthFactor = 0;
-            } else {
-                numTonePerSym = NUM_TONE_PER_SYM_11N_40MHZ;
-                channelWidthFactor = 1;
-            }
-            maxNumSpatialStream = Math.min(maxNumSpatialStream, MAX_NUM_SPATIAL_STREAM_11N);
-            maxBitsPerTone = MAX_BITS_PER_TONE_11N;
-            symDurationNs = SYM_DURATION_11N_NS;
-        } else if (wifiStandard == ScanResult.WIFI_STANDARD_11AC) {
-            if (channelWidth == ScanResult.CHANNEL_WIDTH_20MHZ) {
-                numTonePerSym = NUM_TONE_PER_SYM_11AC_20MHZ;
-                channelWidthFactor = 0;
-            } else if (channelWidth == ScanResult.CHANNEL_WIDTH_40MHZ) {
-                numTonePerSym = NUM_TONE_PER_SYM_11AC_40MHZ;
-                channelWidthFactor = 1;
-            } else if (channelWidth == ScanResult.CHANNEL_WIDTH_80MHZ) {
-                numTonePerSym = NUM_TONE_PER_SYM_11AC_80MHZ;
-                channelWidthFactor = 2;
-            } else {
-                numTonePerSym = NUM_TONE_PER_SYM_11AC_160MHZ;
-                channelWidthFactor = 3;
-            }
-            maxNumSpatialStream = Math.min(maxNumSpatialStream, MAX_NUM_SPATIAL_STREAM_11AC);
-            maxBitsPerTone = MAX_BITS_PER_TONE_11AC;
-            symDurationNs = SYM_DURATION_11AC_NS;
-        } else { // ScanResult.WIFI_STANDARD_11AX
-            if (channelWidth == ScanResult.CHANNEL_WIDTH_20MHZ) {
-                numTonePerSym = NUM_TONE_PER_SYM_11AX_20MHZ;
-                channelWidthFactor = 0;
-            } else if (channelWidth == ScanResult.CHANNEL_WIDTH_40MHZ) {
-                numTonePerSym = NUM_TONE_PER_SYM_11AX_40MHZ;
-                channelWidthFactor = 1;
-            } else if (channelWidth == ScanResult.CHANNEL_WIDTH_80MHZ) {
-                numTonePerSym = NUM_TONE_PER_SYM_11AX_80MHZ;
-                channelWidthFactor = 2;
-            } else {
-                numTonePerSym = NUM_TONE_PER_SYM_11AX_160MHZ;
-                channelWidthFactor = 3;
-            }
-            maxNumSpatialStream = Math.min(maxNumSpatialStream, MAX_NUM_SPATIAL_STREAM_11AX);
-            maxBitsPerTone = MAX_BITS_PER_TONE_11AX;
-            symDurationNs = SYM_DURATION_11AX_NS;
         }
-        // noiseFloorDbBoost = 10 * log10 * (2 ^ channelWidthFactor)
-        int noiseFloorDbBoost = TWO_IN_DB * channelWidthFactor;
-        int noiseFloorDbm = NOISE_FLOOR_20MHZ_DBM + noiseFloorDbBoost + SNR_MARGIN_DB;
-        int snrDb  = rssiDbm - noiseFloorDbm;
-
-        int bitPerTone = calculateBitPerTone(snrDb);
-        bitPerTone = Math.min(bitPerTone, maxBitsPerTone);
-
-        long bitPerToneTotal = bitPerTone * maxNumSpatialStream;
-        long numBitPerSym = bitPerToneTotal * numTonePerSym;
-        int phyRateMbps =  (int) ((numBitPerSym * MICRO_TO_NANO_RATIO)
-                / (symDurationNs * BIT_PER_TONE_SCALE));
-
-        int airTimeFraction = calculateAirTimeFraction(channelUtilization, channelWidthFactor);
-
-        int throughputMbps = (phyRateMbps * airTimeFraction) / MAX_CHANNEL_UTILIZATION;
+        // Utilization is always valid when coming from getValidChannelUtilization(), anything
+        // else is out of the tables.
+        int throughputMbps = isValidUtilizationRatio(channelUtilization)
+                ? lookUpThroughput(wifiStandard, channelWidth, rssiDbm, maxNumSpatialStream,
+                        channelUtilization)
+                : calculateThroughput(wifiStandard, channelWidth, rssiDbm, maxNumSpatialStream,
+                        channelUtilization);
 
         if (mVerboseLoggingEnabled) {
+            int mode = getMode(wifiStandard, channelWidth);
             StringBuilder sb = new StringBuilder();
             Log.d(TAG, sb.append(" BW: ").append(channelWidth)
                     .append(" RSSI: ").append(rssiDbm)
-                    .append(" Nss: ").append(maxNumSpatialStream)
+                    .append(" Nss: ").append(
+                            Math.min(maxNumSpatialStream, MODE_MAX_NUM_SPATIAL_STREAM[mode]))
                     .append(" Mode: ").append(wifiStandard)
-                    .append(" symDur: ").append(symDurationNs)
-                    .append(" snrDb ").append(snrDb)
-                    .append(" bitPerTone: ").append(bitPerTone)
-                    .append(" rate: ").append(phyRateMbps)
+                    .append(" symDur: ").append(MODE_SYM_DURATION_NS[mode])
+                    .append(" snrDb ").append(getSnrDb(mode, rssiDbm))
+                    .append(" utilization: ").append(channelUtilization)
                     .append(" throughput: ").append(throughputMbps)
                     .toString());
         }
         return throughputMbps;
     }
 
+    /**
+     * Predict throughput with table reads only.
+     *
+     * @param wifiStandard a known wifi standard.
+     * @param maxNumSpatialStream at least 1.
+     * @param channelUtilization a valid channel utilization ratio.
+     */
+    @VisibleForTesting
+    static int lookUpThroughput(@WifiStandard int wifiStandard, int channelWidth, int rssiDbm,
+            int maxNumSpatialStream, int channelUtilization) {
+        int mode = getMode(wifiStandard, channelWidth);
+        int numSpatialStream = Math.min(maxNumSpatialStream, MODE_MAX_NUM_SPATIAL_STREAM[mode]);
+        int snrIndex = Math.min(Math.max(getSnrDb(mode, rssiDbm),
+                SNR_DB_TO_BIT_PER_TONE_LUT_MIN), SNR_DB_TABLE_MAX)
+                - SNR_DB_TO_BIT_PER_TONE_LUT_MIN;
+        int phyRateMbps = PHY_RATE_MBPS_TABLE[mode][numSpatialStream - 1][snrIndex];
+        int airTimeFraction =
+                AIR_TIME_FRACTION_TABLE[MODE_CHANNEL_WIDTH_FACTOR[mode]][channelUtilization];
+        return (phyRateMbps * airTimeFraction) / MAX_CHANNEL_UTILIZATION;
+    }
+
+    /**
+     * Predict throughput arithmetically, for the inputs of {@link #lookUpThroughput} and
+     * channel utilization values out of the tables.
+     */
+    @VisibleForTesting
+    static int calculateThroughput(@WifiStandard int wifiStandard, int channelWidth,
+            int rssiDbm, int maxNumSpatialStream, int channelUtilization) {
+        int mode = getMode(wifiStandard, channelWidth);
+        int numSpatialStream = Math.min(maxNumSpatialStream, MODE_MAX_NUM_SPATIAL_STREAM[mode]);
+        int phyRateMbps = calculatePhyRateMbps(mode, numSpatialStream,
+                calculateBitPerTone(getSnrDb(mode, rssiDbm)));
+        int airTimeFraction = calculateAirTimeFraction(channelUtilization,
+                MODE_CHANNEL_WIDTH_FACTOR[mode]);
+        return (phyRateMbps * airTimeFraction) / MAX_CHANNEL_UTILIZATION;
+    }
+
+    // Get the transmission mode of a known wifi standard and a channel width
+    private static int getMode(@WifiStandard int wifiStandard, int channelWidth) {
+        // channel bandwidth in MHz = 20MHz * (2 ^ channelWidthFactor);
+        int channelWidthFactor;
+        if (channelWidth == ScanResult.CHANNEL_WIDTH_20MHZ) {
+            channelWidthFactor = 0;
+        } else if (channelWidth == ScanResult.CHANNEL_WIDTH_40MHZ) {
+            channelWidthFactor = 1;
+        } else if (channelWidth == ScanResult.CHANNEL_WIDTH_80MHZ) {
+            channelWidthFactor = 2;
+        } else {
+            channelWidthFactor = MAX_CHANNEL_WIDTH_FACTOR;
+        }
+        if (wifiStandard == ScanResult.WIFI_STANDARD_LEGACY) {
+            return MODE_LEGACY;
+        } else if (wifiStandard == ScanResult.WIFI_STANDARD_11N) {
+            return MODE_BASE_11N + Math.min(channelWidthFactor, 1);
+        } else if (wifiStandard == ScanResult.WIFI_STANDARD_11AC) {
+            return MODE_BASE_11AC + channelWidthFactor;
+        } else { // ScanResult.WIFI_STANDARD_11AX
+            return MODE_BASE_11AX + channelWidthFactor;
+        }
+    }
+
+    private static int getSnrDb(int mode, int rssiDbm) {
+        // noiseFloorDbBoost = 10 * log10 * (2 ^ channelWidthFactor)
+        int noiseFloorDbBoost = TWO_IN_DB * MODE_CHANNEL_WIDTH_FACTOR[mode];
+        int noiseFloorDbm = NOISE_FLOOR_20MHZ_DBM + noiseFloorDbBoost + SNR_MARGIN_DB;
+        return rssiDbm - noiseFloorDbm;
+    }
+
+    private static int calculatePhyRateMbps(int mode, int numSpatialStream, int bitPerTone) {
+        bitPerTone = Math.min(bitPerTone, MODE_MAX_BITS_PER_TONE[mode]);
+        long bitPerToneTotal = bitPerTone * numSpatialStream;
+        long numBitPerSym = bitPerToneTotal * MODE_NUM_TONE_PER_SYM[mode];
+        return (int) ((numBitPerSym * MICRO_TO_NANO_RATIO)
+                / (MODE_SYM_DURATION_NS[mode] * BIT_PER_TONE_SCALE));
+    }
+
+    private static int[][][] buildPhyRateTable() {
+        int[][][] table = new int[NUM_MODES][][];
+        for (int mode = 0; mode < NUM_MODES; mode++) {
+            table[mode] = new int[MODE_MAX_NUM_SPATIAL_STREAM[mode]][SNR_DB_TABLE_SIZE];
+            for (int nss = 1; nss <= MODE_MAX_NUM_SPATIAL_STREAM[mode]; nss++) {
+                for (int i = 0; i < SNR_DB_TABLE_SIZE; i++) {
+                    table[mode][nss - 1][i] = calculatePhyRateMbps(mode, nss,
+                            calculateBitPerTone(i + SNR_DB_TO_BIT_PER_TONE_LUT_MIN));
+                }
+            }
+        }
+        return table;
+    }
+
+    private static int[][] buildAirTimeFractionTable() {
+        int[][] table = new int[MAX_CHANNEL_WIDTH_FACTOR + 1][MAX_CHANNEL_UTILIZATION + 1];
+        for (int factor = 0; factor <= MAX_CHANNEL_WIDTH_FACTOR; factor++) {
+            for (int utilization = MIN_CHANNEL_UTILIZATION;
+                    utilization <= MAX_CHANNEL_UTILIZATION; utilization++) {
+                table[factor][utilization] = calculateAirTimeFraction(utilization, factor);
+            }
+        }
+        return table;
+    }
+
     // Calculate the number of bits per tone based on the input of SNR in dB
     // The output is scaled up by BIT_PER_TONE_SCALE for integer representation
     private static int calculateBitPerTone(int snrDb) {
@@ -417,7 +501,8 @@ public class ThroughputPredictor {
     // Calculate the available airtime fraction value which is multiplied by
     // MAX_CHANNEL_UTILIZATION for integer representation. It is calculated as
     // (1 - channelUtilization / MAX_CHANNEL_UTILIZATION) * MAX_CHANNEL_UTILIZATION
-    private int calculateAirTimeFraction(int channelUtilization, int channelWidthFactor) {
+    private static int calculateAirTimeFraction(int channelUtilization,
+            int channelWidthFactor) {
         int airTimeFraction20MHz = MAX_CHANNEL_UTILIZATION - channelUtilization;
         int airTimeFraction = airTimeFraction20MHz;
         // For the cases of 40MHz or above, need to take
@@ -427,9 +512,6 @@ public class ThroughputPredictor {
             airTimeFraction *= airTimeFraction;
             airTimeFraction /= MAX_CHANNEL_UTILIZATION;
         }
-        if (mVerboseLoggingEnabled) {
-            Log.d(TAG, " airTime20: " + airTimeFraction20MHz + " airTime: " + airTimeFraction);
-        }
         return airTimeFraction;
     }
 }
@@ -29,14 +29,19 @@ import android.provider.Settings;
 import android.util.Log;
 
 import com.android.internal.annotations.VisibleForTesting;
+import com.android.server.wifi.scanner.ScanResultDelta;
+import com.android.server.wifi.scanner.ScanResultDeltaPublisher;
 
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 
@@ -76,7 +81,8 @@ public class WakeupController {
             // We treat any full band scans (with DFS or not) as "full".
             if (results.length == 1
                     && WifiScanner.isFullBandScan(results[0].getBandScanned(), true)) {
-                handleScanResults(filterDfsScanResults(Arrays.asList(results[0].getResults())));
+                handleScanResults(filterDfsScanResults(Arrays.asList(results[0].getResults())),
+                        ScanResultMatchInfo::fromScanResult);
             }
         }
 
@@ -96,6 +102,17 @@ public class WakeupController {
         }
     };
 
+    private final ScanResultDeltaPublisher.Listener mScanResultDeltaListener =
+            this::handleScanResultDelta;
+
+    /**
+     * Non DFS scan results of the last full band scan keyed by BSSID, with their
+     * {@link ScanResultMatchInfo}s. Only used when scan result deltas are enabled, in which case
+     * they are patched from every delta received since the delta listener was registered.
+     */
+    private final Map<String, ScanResult> mScanResultsByBssid = new HashMap<>();
+    private final Map<String, ScanResultMatchInfo> mMatchInfosByBssid = new HashMap<>();
+
     /** Whether this feature is enabled in Settings. */
     private boolean mWifiWakeupEnabled;
 
@@ -244,8 +261,14 @@ public class WakeupController {
             Log.i(TAG, "Ignore wakeup start since there are no good networks.");
             return;
         }
-        mWifiInjector.getWifiScanner().registerScanListener(
-                new HandlerExecutor(mHandler), mScanListener);
+        ScanResultDeltaPublisher deltaPublisher = mWifiInjector.getScanResultDeltaPublisher();
+        if (deltaPublisher != null && deltaPublisher.isEnabled()) {
+            deltaPublisher.registerListener(new HandlerExecutor(mHandler),
+                    mScanResultDeltaListener);
+        } else {
+            mWifiInjector.getWifiScanner().registerScanListener(
+                    new HandlerExecutor(mHandler), mScanListener);
+        }
 
         // If already active, we don't want to restart the session, so return early.
         if (mIsActive) {
@@ -295,7 +318,14 @@ public class WakeupController {
         Log.d(TAG, "stop()");
         mLastDisconnectTimestampMillis = 0;
         mLastDisconnectInfo = null;
-        mWifiInjector.getWifiScanner().unregisterScanListener(mScanListener);
+        ScanResultDeltaPublisher deltaPublisher = mWifiInjector.getScanResultDeltaPublisher();
+        if (deltaPublisher != null && deltaPublisher.isEnabled()) {
+            deltaPublisher.unregisterListener(mScanResultDeltaListener);
+            mScanResultsByBssid.clear();
+            mMatchInfosByBssid.clear();
+        } else {
+            mWifiInjector.getWifiScanner().unregisterScanListener(mScanListener);
+        }
         mWakeupOnboarding.onStop();
     }
 
@@ -313,16 +343,20 @@ public class WakeupController {
         mWakeupLock.enableVerboseLogging(mVerboseLoggingEnabled);
     }
 
-    /** Returns a list of ScanResults with DFS channels removed. */
-    private List<ScanResult> filterDfsScanResults(Collection<ScanResult> scanResults) {
+    /** Returns the set of DFS channel frequencies. */
+    private Set<Integer> getDfsChannelSet() {
         int[] dfsChannels = mWifiInjector.getWifiNative()
                 .getChannelsForBand(WifiScanner.WIFI_BAND_5_GHZ_DFS_ONLY);
         if (dfsChannels == null) {
             dfsChannels = new int[0];
         }
 
-        final Set<Integer> dfsChannelSet = Arrays.stream(dfsChannels).boxed()
-                .collect(Collectors.toSet());
+        return Arrays.stream(dfsChannels).boxed().collect(Collectors.toSet());
+    }
+
+    /** Returns a list of ScanResults with DFS channels removed. */
+    private List<ScanResult> filterDfsScanResults(Collection<ScanResult> scanResults) {
+        final Set<Integer> dfsChannelSet = getDfsChannelSet();
 
         return scanResults.stream()
                 .filter(scanResult -> !dfsChannelSet.contains(scanResult.frequency))
@@ -361,6 +395,48 @@ public class WakeupController {
         return false;
     }
 
+    /**
+     * Patches the stored non DFS scan results from |delta|, and handles them if the delta is the
+     * result of a full band scan.
+     *
+     * <p>Only the added and updated BSSIDs get their {@link ScanResultMatchInfo} computed; the
+     * beacon content of refreshed BSSIDs is unchanged, so only their ScanResult is replaced.
+     */
+    private void handleScanResultDelta(ScanResultDelta delta) {
+        for (ScanResult scanResult : delta.getRemoved()) {
+            mScanResultsByBssid.remove(scanResult.BSSID);
+            mMatchInfosByBssid.remove(scanResult.BSSID);
+        }
+        if (!delta.getAdded().isEmpty() || !delta.getUpdated().isEmpty()) {
+            Set<Integer> dfsChannelSet = getDfsChannelSet();
+            putNonDfsScanResults(delta.getAdded(), dfsChannelSet);
+            putNonDfsScanResults(delta.getUpdated(), dfsChannelSet);
+        }
+        for (ScanResult scanResult : delta.getRefreshed()) {
+            if (mScanResultsByBssid.containsKey(scanResult.BSSID)) {
+                mScanResultsByBssid.put(scanResult.BSSID, scanResult);
+            }
+        }
+        // We treat any full band scans (with DFS or not) as "full".
+        if (WifiScanner.isFullBandScan(delta.getBandScanned(), true)) {
+            handleScanResults(mScanResultsByBssid.values(),
+                    scanResult -> mMatchInfosByBssid.get(scanResult.BSSID));
+        }
+    }
+
+    private void putNonDfsScanResults(List<ScanResult> scanResults, Set<Integer> dfsChannelSet) {
+        for (ScanResult scanResult : scanResults) {
+            if (dfsChannelSet.contains(scanResult.frequency)) {
+                mScanResultsByBssid.remove(scanResult.BSSID);
+                mMatchInfosByBssid.remove(scanResult.BSSID);
+            } else {
+                mScanResultsByBssid.put(scanResult.BSSID, scanResult);
+                mMatchInfosByBssid.put(scanResult.BSSID,
+                        ScanResultMatchInfo.fromScanResult(scanResult));
+            }
+        }
+    }
+
     /**
      * Handles incoming scan results.
      *
@@ -374,8 +450,10 @@ public class WakeupController {
      * to handle scan results.
      *
      * @param scanResults The scan results with which to update the controller
+     * @param matchInfoOf Provides the {@link ScanResultMatchInfo} of each scan result
      */
-    private void handleScanResults(Collection<ScanResult> scanResults) {
+    private void handleScanResults(Collection<ScanResult> scanResults,
+            Function<ScanResult, ScanResultMatchInfo> matchInfoOf) {
         if (!isEnabledAndReady()) {
             Log.d(TAG, "Attempted to handleScanResults while not enabled");
             return;
@@ -392,7 +470,9 @@ public class WakeupController {
 
         // filter out unknown networks
         Set<ScanResultMatchInfo> goodNetworks = getGoodSavedNetworksAndSuggestions();
-        Set<ScanResultMatchInfo> matchInfos = toMatchInfos(scanResults);
+        Set<ScanResultMatchInfo> matchInfos = scanResults.stream()
+                .map(matchInfoOf)
+                .collect(Collectors.toSet());
         matchInfos.retainAll(goodNetworks);
 
         mWakeupLock.update(matchInfos);
@@ -400,7 +480,8 @@ public class WakeupController {
             return;
         }
 
-        ScanResult network = mWakeupEvaluator.findViableNetwork(scanResults, goodNetworks);
+        ScanResult network =
+                mWakeupEvaluator.findViableNetwork(scanResults, goodNetworks, matchInfoOf);
 
         if (network != null) {
             Log.d(TAG, "Enabling wifi for network: " + network.SSID);
@@ -19,6 +19,7 @@ package com.android.server.wifi;
 import android.net.wifi.ScanResult;
 
 import java.util.Collection;
+import java.util.function.Function;
 
 /**
  * Evaluates ScanResults for Wifi Wake.
@@ -45,13 +46,24 @@ public class WakeupEvaluator {
      */
     public ScanResult findViableNetwork(Collection<ScanResult> scanResults,
                                         Collection<ScanResultMatchInfo> networks) {
+        return findViableNetwork(scanResults, networks, ScanResultMatchInfo::fromScanResult);
+    }
+
+    /**
+     * Same as {@link #findViableNetwork(Collection, Collection)}, with the
+     * {@link ScanResultMatchInfo} of each ScanResult provided by |matchInfoOf| instead of being
+     * computed again.
+     */
+    public ScanResult findViableNetwork(Collection<ScanResult> scanResults,
+                                        Collection<ScanResultMatchInfo> networks,
+                                        Function<ScanResult, ScanResultMatchInfo> matchInfoOf) {
         ScanResult selectedScanResult = null;
 
         for (ScanResult scanResult : scanResults) {
             if (isBelowThreshold(scanResult)) {
                 continue;
             }
-            if (networks.contains(ScanResultMatchInfo.fromScanResult(scanResult))) {
+            if (networks.contains(matchInfoOf.apply(scanResult))) {
                 if (selectedScanResult == null || selectedScanResult.level < scanResult.level) {
                     selectedScanResult = scanResult;
                 }
@@ -22,20 +22,17 @@ import android.content.Context;
 import android.net.MacAddress;
 import android.net.wifi.ScanResult;
 import android.net.wifi.WifiConfiguration;
-import android.util.ArrayMap;
 
 import com.android.internal.util.Preconditions;
+import com.android.server.wifi.hotspot2.Utils;
 import com.android.server.wifi.proto.WifiScoreCardProto;
 import com.android.wifi.resources.R;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.StringJoiner;
-import java.util.stream.Collectors;
 
 /**
  * Candidates for network selection
@@ -52,7 +49,8 @@ public class WifiCandidates {
         mWifiScoreCard = Preconditions.checkNotNull(wifiScoreCard);
         mContext = context;
         for (Candidate c : candidates) {
-            mCandidates.put(c.getKey(), c);
+            Key key = c.getKey();
+            mCandidates.put(getBssidLong(key), getNetworkId(key), c);
         }
     }
 
@@ -397,13 +395,28 @@ public class WifiCandidates {
         public final ScanResultMatchInfo matchInfo; // Contains the SSID and security type
         public final MacAddress bssid;
         public final int networkId;                 // network configuration id
+        private final long mBssidLong;              // bssid as a long, for CandidateMap
 
         public Key(ScanResultMatchInfo matchInfo,
                    MacAddress bssid,
                    int networkId) {
+            this(matchInfo, bssid, networkId, bssid == null ? 0 : macToLong(bssid.toByteArray()));
+        }
+
+        private Key(ScanResultMatchInfo matchInfo, MacAddress bssid, int networkId,
+                long bssidLong) {
             this.matchInfo = matchInfo;
             this.bssid = bssid;
             this.networkId = networkId;
+            this.mBssidLong = bssidLong;
+        }
+
+        private static long macToLong(byte[] mac) {
+            long result = 0;
+            for (byte b : mac) {
+                result = (result << 8) | (b & 0xff);
+            }
+            return result;
         }
 
         @Override
@@ -421,7 +434,7 @@ public class WifiCandidates {
         }
     }
 
-    private final Map<Key, Candidate> mCandidates = new ArrayMap<>();
+    private final CandidateMap mCandidates = new CandidateMap();
 
     private int mCurrentNetworkId = -1;
     @Nullable private MacAddress mCurrentBssid = null;
@@ -467,10 +480,41 @@ public class WifiCandidates {
      */
     public @Nullable Key keyFromScanDetailAndConfig(ScanDetail scanDetail,
             WifiConfiguration config) {
-        if (!validConfigAndScanDetail(config, scanDetail)) return null;
-        ScanResult scanResult = scanDetail.getScanResult();
-        MacAddress bssid = MacAddress.fromString(scanResult.BSSID);
-        return new Key(ScanResultMatchInfo.fromScanResult(scanResult), bssid, config.networkId);
+        ScanResult scanResult = scanDetail == null ? null : scanDetail.getScanResult();
+        if (config == null || scanResult == null) {
+            failure(config, scanDetail);
+            return null;
+        }
+        MacAddress bssid;
+        long bssidLong;
+        try {
+            bssid = MacAddress.fromString(scanResult.BSSID);
+            bssidLong = Utils.parseMac(scanResult.BSSID);
+        } catch (RuntimeException e) {
+            failWithException(e);
+            return null;
+        }
+        ScanResultMatchInfo key1 = ScanResultMatchInfo.fromScanResult(scanResult);
+        if (!config.isPasspoint()) {
+            ScanResultMatchInfo key2 = ScanResultMatchInfo.fromWifiConfiguration(config);
+            if (!key1.matchForNetworkSelection(key2, mContext.getResources()
+                    .getBoolean(R.bool.config_wifiSaeUpgradeEnabled))) {
+                failure(key1, key2);
+                return null;
+            }
+        }
+        return new Key(key1, bssid, config.networkId, bssidLong);
+    }
+
+    /**
+     * Returns true if a candidate for |key| from |nominatorId| would not be added because a
+     * candidate from a preferred nominator is already present, so the caller can skip working
+     * out the other candidate properties.
+     */
+    public boolean hasPreferredCandidate(@NonNull Key key,
+            @WifiNetworkSelector.NetworkNominator.NominatorId int nominatorId) {
+        Candidate old = mCandidates.get(key.mBssidLong, key.networkId);
+        return old != null && nominatorId > old.getNominatorId();
     }
 
     /**
@@ -487,7 +531,7 @@ public class WifiCandidates {
             boolean isMetered,
             boolean isCarrierOrPrivileged,
             int predictedThroughputMbps) {
-        Candidate old = mCandidates.get(key);
+        Candidate old = mCandidates.get(key.mBssidLong, key.networkId);
         if (old != null) {
             // check if we want to replace this old candidate
             if (nominatorId > old.getNominatorId()) return false;
@@ -508,37 +552,7 @@ public class WifiCandidates {
                 isMetered,
                 isCarrierOrPrivileged,
                 predictedThroughputMbps);
-        mCandidates.put(key, candidate);
-        return true;
-    }
-
-    /**
-     * Checks that the supplied config and scan detail are valid (for the parts
-     * we care about) and consistent with each other.
-     *
-     * @param config to be validated
-     * @param scanDetail to be validated
-     * @return true if the config and scanDetail are consistent with each other
-     */
-    private boolean validConfigAndScanDetail(WifiConfiguration config, ScanDetail scanDetail) {
-        if (config == null) return failure();
-        if (scanDetail == null) return failure();
-        ScanResult scanResult = scanDetail.getScanResult();
-        if (scanResult == null) return failure();
-        MacAddress bssid;
-        try {
-            bssid = MacAddress.fromString(scanResult.BSSID);
-        } catch (RuntimeException e) {
-            return failWithException(e);
-        }
-        ScanResultMatchInfo key1 = ScanResultMatchInfo.fromScanResult(scanResult);
-        if (!config.isPasspoint()) {
-            ScanResultMatchInfo key2 = ScanResultMatchInfo.fromWifiConfiguration(config);
-            if (!key1.matchForNetworkSelection(key2, mContext.getResources()
-                    .getBoolean(R.bool.config_wifiSaeUpgradeEnabled))) {
-                return failure(key1, key2);
-            }
-        }
+        mCandidates.put(key.mBssidLong, key.networkId, candidate);
         return true;
     }
 
@@ -548,7 +562,17 @@ public class WifiCandidates {
      */
     public boolean remove(Candidate candidate) {
         if (!(candidate instanceof CandidateImpl)) return failure();
-        return mCandidates.remove(candidate.getKey(), candidate);
+        Key key = candidate.getKey();
+        return mCandidates.remove(getBssidLong(key), getNetworkId(key), candidate);
+    }
+
+    // Candidates without a key share a single entry.
+    private static long getBssidLong(@Nullable Key key) {
+        return key == null ? 0 : key.mBssidLong;
+    }
+
+    private static int getNetworkId(@Nullable Key key) {
+        return key == null ? WifiConfiguration.INVALID_NETWORK_ID : key.networkId;
     }
 
     /**
@@ -559,27 +583,18 @@ public class WifiCandidates {
     }
 
     /**
-     * Returns the candidates, grouped by network.
+     * Returns a read-only view of the candidates, grouped by network, which follows later
+     * changes.
      */
     public Collection<Collection<Candidate>> getGroupedCandidates() {
-        Map<Integer, Collection<Candidate>> candidatesForNetworkId = new ArrayMap<>();
-        for (Candidate candidate : mCandidates.values()) {
-            Collection<Candidate> cc = candidatesForNetworkId.get(candidate.getNetworkConfigId());
-            if (cc == null) {
-                cc = new ArrayList<>(2); // Guess 2 bssids per network
-                candidatesForNetworkId.put(candidate.getNetworkConfigId(), cc);
-            }
-            cc.add(candidate);
-        }
-        return candidatesForNetworkId.values();
+        return mCandidates.groups();
     }
 
     /**
-     * Return a copy of the Candidates.
+     * Return a read-only view of the Candidates, which follows later changes.
      */
     public List<Candidate> getCandidates() {
-        return mCandidates.entrySet().stream().map(entry -> entry.getValue())
-                .collect(Collectors.toList());
+        return mCandidates.values();
     }
 
     /**
@@ -589,7 +604,7 @@ public class WifiCandidates {
      */
     public @NonNull ScoredCandidate choose(@NonNull CandidateScorer candidateScorer) {
         Preconditions.checkNotNull(candidateScorer);
-        Collection<Candidate> candidates = new ArrayList<>(mCandidates.values());
+        Collection<Candidate> candidates = getCandidates();
         ScoredCandidate choice = candidateScorer.scoreCandidates(candidates);
         return choice == null ? ScoredCandidate.NONE : choice;
     }
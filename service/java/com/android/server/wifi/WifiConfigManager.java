@@ -282,6 +282,51 @@ public class WifiConfigManager {
      */
     private final List<OnNetworkUpdateListener> mListeners;
 
+    /**
+     * Generation of the configured networks, bumped whenever one of them may have changed. See
+     * {@link #getConfiguredNetworksGeneration()}.
+     */
+    private long mConfiguredNetworksGeneration = 0;
+    /**
+     * Shared copies of the configured networks handed out by
+     * {@link #getConfiguredNetworksSnapshot()} and
+     * {@link #getConfiguredNetworksWithPasswordsSnapshot()}, built on first use and dropped on
+     * the next generation change.
+     */
+    private List<WifiConfiguration> mConfiguredNetworksSnapshot;
+    private List<WifiConfiguration> mConfiguredNetworksWithPasswordsSnapshot;
+    /**
+     * Generation of the hidden networks and of the state their order in
+     * {@link #retrieveHiddenNetworkList()} depends on, see {@link #onHiddenNetworksChanged()}.
+     */
+    private long mHiddenNetworksGeneration = 0;
+    /**
+     * Hidden network scan list handed out by {@link #retrieveHiddenNetworkList()}, along with
+     * the hidden networks generation and the {@link LruConnectionTracker} modification count it
+     * was built at.
+     */
+    private List<WifiScanner.ScanSettings.HiddenNetwork> mHiddenNetworkList;
+    private long mHiddenNetworkListGeneration = -1;
+    private long mHiddenNetworkListLruModificationCount = -1;
+    /**
+     * Hidden networks seen in the last network selection whose seen flag was cleared for the
+     * next one, see {@link #clearNetworkCandidateScanResult(int)}. Every selection clears the
+     * flag and sets it again, so the change only counts if it is not set again before the list
+     * is retrieved.
+     */
+    private final Set<Integer> mClearedSeenHiddenNetworkIds = new ArraySet<>();
+    /**
+     * Connect choices of the configured networks of the current user, kept in sync with
+     * {@link NetworkSelectionStatus#getConnectChoice()}.
+     */
+    private final ConnectChoiceGraph mConnectChoiceGraph = new ConnectChoiceGraph();
+    /**
+     * Index of the configured networks used by {@link #attemptNetworkLinking}, kept in sync with
+     * the default gateways and {@link #mScanDetailCaches}.
+     */
+    private final NetworkLinkingIndex mNetworkLinkingIndex =
+            new NetworkLinkingIndex(LINK_CONFIGURATION_BSSID_MATCH_LENGTH);
+
     private final FrameworkFacade mFrameworkFacade;
     private final DeviceConfigFacade mDeviceConfigFacade;
 
@@ -517,6 +562,7 @@ public class WifiConfigManager {
         long expireDurationMs = (dhcpLeaseSeconds & 0xffffffffL) * 1000;
         expireDurationMs = Math.max(AGGRESSIVE_MAC_REFRESH_MS_MIN, expireDurationMs);
         expireDurationMs = Math.min(AGGRESSIVE_MAC_REFRESH_MS_MAX, expireDurationMs);
+        onConfiguredNetworksChanged();
         internalConfig.randomizedMacExpirationTimeMs = mClock.getWallClockMillis()
                 + expireDurationMs;
     }
@@ -534,6 +580,7 @@ public class WifiConfigManager {
             return persistentMac;
         }
         WifiConfiguration internalConfig = getInternalConfiguredNetwork(config.networkId);
+        onConfiguredNetworksChanged();
         internalConfig.setRandomizedMacAddress(persistentMac);
         return persistentMac;
     }
@@ -551,6 +598,7 @@ public class WifiConfigManager {
             return config.getRandomizedMacAddress();
         }
         WifiConfiguration internalConfig = getInternalConfiguredNetwork(config.networkId);
+        onConfiguredNetworksChanged();
         internalConfig.setRandomizedMacAddress(MacAddressUtils.createRandomUnicastAddress());
         return internalConfig.getRandomizedMacAddress();
     }
@@ -698,6 +746,71 @@ public class WifiConfigManager {
         return getConfiguredNetworks(false, false, Process.WIFI_UID);
     }
 
+    /**
+     * Retrieves a read-only snapshot of all configured networks with passwords masked.
+     *
+     * Unlike {@link #getConfiguredNetworks()}, the networks are only copied again once a
+     * configured network changed, so repeated calls between changes are cheap. The returned list
+     * and the WifiConfiguration objects in it are shared between callers and must not be
+     * modified. A snapshot is never updated in place, so it stays consistent after later
+     * changes.
+     *
+     * @return Unmodifiable list of WifiConfiguration objects representing the networks.
+     */
+    public List<WifiConfiguration> getConfiguredNetworksSnapshot() {
+        if (mConfiguredNetworksSnapshot == null) {
+            mConfiguredNetworksSnapshot = createConfiguredNetworksSnapshot(true);
+        }
+        return mConfiguredNetworksSnapshot;
+    }
+
+    /**
+     * Retrieves a read-only snapshot of all configured networks with the passwords in plaintext.
+     *
+     * WARNING: Don't use this to pass network configurations to external apps. See
+     * {@link #getConfiguredNetworksSnapshot()} for the sharing rules.
+     *
+     * @return Unmodifiable list of WifiConfiguration objects representing the networks.
+     */
+    public List<WifiConfiguration> getConfiguredNetworksWithPasswordsSnapshot() {
+        if (mConfiguredNetworksWithPasswordsSnapshot == null) {
+            mConfiguredNetworksWithPasswordsSnapshot = createConfiguredNetworksSnapshot(false);
+        }
+        return mConfiguredNetworksWithPasswordsSnapshot;
+    }
+
+    /**
+     * Retrieves the generation of the configured networks.
+     *
+     * The generation changes whenever a configured network is added, updated or removed, or its
+     * status changes, so callers can skip work when it did not change since their last look.
+     * It may also change when nothing visible changed.
+     */
+    public long getConfiguredNetworksGeneration() {
+        return mConfiguredNetworksGeneration;
+    }
+
+    private List<WifiConfiguration> createConfiguredNetworksSnapshot(boolean maskPasswords) {
+        Collection<WifiConfiguration> configs = getInternalConfiguredNetworks();
+        List<WifiConfiguration> networks = new ArrayList<>(configs.size());
+        for (WifiConfiguration config : configs) {
+            networks.add(createExternalWifiConfiguration(config, maskPasswords, Process.WIFI_UID));
+        }
+        return Collections.unmodifiableList(networks);
+    }
+
+    /**
+     * Helper method to note that a configured network changes, which drops the snapshots.
+     *
+     * This must be called before every change of {@link #mConfiguredNetworks} or of an internal
+     * WifiConfiguration object, and before the listeners are notified of it.
+     */
+    private void onConfiguredNetworksChanged() {
+        mConfiguredNetworksGeneration++;
+        mConfiguredNetworksSnapshot = null;
+        mConfiguredNetworksWithPasswordsSnapshot = null;
+    }
+
     /**
      * Retrieves the list of all configured networks with the passwords masked.
      *
@@ -1267,11 +1380,23 @@ public class WifiConfigManager {
         // Add it to our internal map. This will replace any existing network configuration for
         // updates.
         try {
+            onConfiguredNetworksChanged();
+            if (newInternalConfig.hiddenSSID
+                    || (existingInternalConfig != null && existingInternalConfig.hiddenSSID)) {
+                onHiddenNetworksChanged();
+            }
             mConfiguredNetworks.put(newInternalConfig);
         } catch (IllegalArgumentException e) {
             Log.e(TAG, "Failed to add network to config map", e);
             return new NetworkUpdateResult(WifiConfiguration.INVALID_NETWORK_ID);
         }
+        if (existingInternalConfig != null) {
+            // The config key changes if the update changed the SSID or security.
+            mConnectChoiceGraph.removeNetwork(existingInternalConfig.getKey());
+        }
+        updateConnectChoiceGraph(newInternalConfig);
+        mNetworkLinkingIndex.setDefaultGateway(
+                newInternalConfig.networkId, newInternalConfig.defaultGwMacAddress);
         // Only re-enable network: 1. add or update user saved network; 2. add or update a user
         // saved passpoint network framework consider it is a new network.
         if (!newInternalConfig.fromWifiNetworkSuggestion
@@ -1391,8 +1516,14 @@ public class WifiConfigManager {
         }
 
         removeConnectChoiceFromAllNetworks(config.getKey());
+        onConfiguredNetworksChanged();
+        if (config.hiddenSSID) {
+            onHiddenNetworksChanged();
+        }
         mConfiguredNetworks.remove(config.networkId);
+        mConnectChoiceGraph.removeNetwork(config.getKey());
         mScanDetailCaches.remove(config.networkId);
+        mNetworkLinkingIndex.removeNetwork(config.networkId);
         // Stage the backup of the SettingsProvider package which backs this up.
         mBackupManagerProxy.notifyDataChanged();
         mWifiInjector.getBssidBlocklistMonitor().handleNetworkRemoved(config.SSID);
@@ -1593,7 +1724,11 @@ public class WifiConfigManager {
             localLog("setNetworkSelectionEnabled: configKey=" + config.getKey()
                     + " old networkStatus=" + status.getNetworkStatusString()
                     + " disableReason=" + status.getNetworkSelectionDisableReasonString());
+            if (config.hiddenSSID) {
+                onHiddenNetworksChanged();
+            }
         }
+        onConfiguredNetworksChanged();
         status.setNetworkSelectionStatus(
                 NetworkSelectionStatus.NETWORK_SELECTION_ENABLED);
         status.setDisableTime(
@@ -1614,6 +1749,10 @@ public class WifiConfigManager {
     private void setNetworkSelectionTemporarilyDisabled(
             WifiConfiguration config, int disableReason) {
         NetworkSelectionStatus status = config.getNetworkSelectionStatus();
+        onConfiguredNetworksChanged();
+        if (config.hiddenSSID) {
+            onHiddenNetworksChanged();
+        }
         status.setNetworkSelectionStatus(
                 NetworkSelectionStatus.NETWORK_SELECTION_TEMPORARY_DISABLED);
         // Only need a valid time filled in for temporarily disabled networks.
@@ -1631,6 +1770,10 @@ public class WifiConfigManager {
     private void setNetworkSelectionPermanentlyDisabled(
             WifiConfiguration config, int disableReason) {
         NetworkSelectionStatus status = config.getNetworkSelectionStatus();
+        onConfiguredNetworksChanged();
+        if (config.hiddenSSID) {
+            onHiddenNetworksChanged();
+        }
         status.setNetworkSelectionStatus(
                 NetworkSelectionStatus.NETWORK_SELECTION_PERMANENTLY_DISABLED);
         status.setDisableTime(
@@ -1648,6 +1791,7 @@ public class WifiConfigManager {
      * status change broadcast.
      */
     private void setNetworkStatus(WifiConfiguration config, int status) {
+        onConfiguredNetworksChanged();
         config.status = status;
         sendConfiguredNetworkChangedBroadcast(WifiManager.CHANGE_REASON_CONFIG_CHANGE);
     }
@@ -1713,6 +1857,7 @@ public class WifiConfigManager {
                 }
             }
 
+            onConfiguredNetworksChanged();
             networkStatus.incrementDisableReasonCounter(reason);
             // For network disable reasons, we should only update the status if we cross the
             // threshold.
@@ -1905,6 +2050,7 @@ public class WifiConfigManager {
             return false;
         }
 
+        onConfiguredNetworksChanged();
         config.allowAutojoin = choice;
         if (!choice) {
             removeConnectChoiceFromAllNetworks(config.getKey());
@@ -1936,6 +2082,7 @@ public class WifiConfigManager {
         if (config == null) {
             return false;
         }
+        onConfiguredNetworksChanged();
         config.lastConnectUid = uid;
         return true;
     }
@@ -1966,6 +2113,7 @@ public class WifiConfigManager {
         if (!config.isPasspoint() && (config.fromWifiNetworkSuggestion || !config.ephemeral)) {
             mLruConnectionTracker.addNetwork(config);
         }
+        onConfiguredNetworksChanged();
         config.lastConnected = mClock.getWallClockMillis();
         config.numAssociation++;
         config.getNetworkSelectionStatus().clearDisableReasonCounter();
@@ -1993,6 +2141,7 @@ public class WifiConfigManager {
         if (config == null) {
             return false;
         }
+        onConfiguredNetworksChanged();
         config.lastDisconnected = mClock.getWallClockMillis();
         config.randomizedMacExpirationTimeMs = Math.max(config.randomizedMacExpirationTimeMs,
                 config.lastDisconnected + AGGRESSIVE_MAC_WAIT_AFTER_DISCONNECT_MS);
@@ -2017,7 +2166,9 @@ public class WifiConfigManager {
         if (config == null) {
             return false;
         }
+        onConfiguredNetworksChanged();
         config.defaultGwMacAddress = macAddress;
+        mNetworkLinkingIndex.setDefaultGateway(networkId, macAddress);
         return true;
     }
 
@@ -2040,9 +2191,19 @@ public class WifiConfigManager {
         if (config == null) {
             return false;
         }
-        config.getNetworkSelectionStatus().setCandidate(null);
-        config.getNetworkSelectionStatus().setCandidateScore(Integer.MIN_VALUE);
-        config.getNetworkSelectionStatus().setSeenInLastQualifiedNetworkSelection(false);
+        NetworkSelectionStatus status = config.getNetworkSelectionStatus();
+        if (status.getCandidate() == null && status.getCandidateScore() == Integer.MIN_VALUE
+                && !status.getSeenInLastQualifiedNetworkSelection()) {
+            // Already clear, keep the snapshots valid.
+            return true;
+        }
+        onConfiguredNetworksChanged();
+        if (config.hiddenSSID && status.getSeenInLastQualifiedNetworkSelection()) {
+            mClearedSeenHiddenNetworkIds.add(networkId);
+        }
+        status.setCandidate(null);
+        status.setCandidateScore(Integer.MIN_VALUE);
+        status.setSeenInLastQualifiedNetworkSelection(false);
         return true;
     }
 
@@ -2068,6 +2229,12 @@ public class WifiConfigManager {
             Log.e(TAG, "Cannot find network for " + networkId);
             return false;
         }
+        onConfiguredNetworksChanged();
+        if (config.hiddenSSID
+                && !config.getNetworkSelectionStatus().getSeenInLastQualifiedNetworkSelection()
+                && !mClearedSeenHiddenNetworkIds.remove(networkId)) {
+            onHiddenNetworksChanged();
+        }
         config.getNetworkSelectionStatus().setCandidate(scanResult);
         config.getNetworkSelectionStatus().setCandidateScore(score);
         config.getNetworkSelectionStatus().setSeenInLastQualifiedNetworkSelection(true);
@@ -2089,14 +2256,14 @@ public class WifiConfigManager {
         if (connectChoiceConfigKey == null) {
             return;
         }
-        for (WifiConfiguration config : getInternalConfiguredNetworks()) {
-            WifiConfiguration.NetworkSelectionStatus status = config.getNetworkSelectionStatus();
-            String connectChoice = status.getConnectChoice();
-            if (TextUtils.equals(connectChoice, connectChoiceConfigKey)) {
-                Log.d(TAG, "remove connect choice:" + connectChoice + " from " + config.SSID
-                        + " : " + config.networkId);
-                clearNetworkConnectChoice(config.networkId);
+        for (String key : mConnectChoiceGraph.getNetworksChoosing(connectChoiceConfigKey)) {
+            WifiConfiguration config = getInternalConfiguredNetwork(key);
+            if (config == null) {
+                continue;
             }
+            Log.d(TAG, "remove connect choice:" + connectChoiceConfigKey + " from " + config.SSID
+                    + " : " + config.networkId);
+            clearNetworkConnectChoice(config.networkId);
         }
     }
 
@@ -2114,7 +2281,9 @@ public class WifiConfigManager {
         if (config == null) {
             return false;
         }
+        onConfiguredNetworksChanged();
         config.getNetworkSelectionStatus().setConnectChoice(null);
+        updateConnectChoiceGraph(config);
         saveToStore(false);
         return true;
     }
@@ -2140,11 +2309,45 @@ public class WifiConfigManager {
         if (config == null) {
             return false;
         }
+        onConfiguredNetworksChanged();
         config.getNetworkSelectionStatus().setConnectChoice(connectChoiceConfigKey);
+        updateConnectChoiceGraph(config);
         saveToStore(false);
         return true;
     }
 
+    /**
+     * Retrieves the networks reached by following the user connect choices from the provided
+     * network, in order. See {@link NetworkSelectionStatus#getConnectChoice()}.
+     *
+     * The chains are maintained as the choices change, so this does not go through the
+     * networks. The last network may no longer be saved.
+     *
+     * @param configKey ConfigKey of the network to start from.
+     * @return Unmodifiable list of ConfigKeys, empty if the network has no connect choice.
+     */
+    public List<String> getConnectChoiceChain(String configKey) {
+        return mConnectChoiceGraph.getChoiceChain(configKey);
+    }
+
+    /**
+     * Helper method to update the connect choice graph from the provided internal config.
+     */
+    private void updateConnectChoiceGraph(WifiConfiguration config) {
+        mConnectChoiceGraph.setConnectChoice(
+                config.getKey(), config.getNetworkSelectionStatus().getConnectChoice());
+    }
+
+    /**
+     * Helper method to rebuild the connect choice graph after the current user changed.
+     */
+    private void rebuildConnectChoiceGraph() {
+        mConnectChoiceGraph.clear();
+        for (WifiConfiguration config : mConfiguredNetworks.valuesForCurrentUser()) {
+            updateConnectChoiceGraph(config);
+        }
+    }
+
     /**
      * Increments the number of no internet access reports in the provided network.
      *
@@ -2156,6 +2359,7 @@ public class WifiConfigManager {
         if (config == null) {
             return false;
         }
+        onConfiguredNetworksChanged();
         config.numNoInternetAccessReports++;
         return true;
     }
@@ -2172,6 +2376,7 @@ public class WifiConfigManager {
         if (config == null) {
             return false;
         }
+        onConfiguredNetworksChanged();
         config.validatedInternetAccess = validated;
         config.numNoInternetAccessReports = 0;
         saveToStore(false);
@@ -2190,6 +2395,7 @@ public class WifiConfigManager {
         if (config == null) {
             return false;
         }
+        onConfiguredNetworksChanged();
         config.noInternetAccessExpected = expected;
         return true;
     }
@@ -2313,6 +2519,7 @@ public class WifiConfigManager {
 
         // Add the scan detail to this network's scan detail cache.
         scanDetailCache.put(scanDetail);
+        mNetworkLinkingIndex.addBssid(config.networkId, scanDetail.getBSSIDString());
 
         // Since we added a scan result to this configuration, re-attempt linking.
         // TODO: Do we really need to do this after every scan result?
@@ -2330,6 +2537,7 @@ public class WifiConfigManager {
      * getSavedNetworkForScanDetail()).
      */
     public WifiConfiguration getConfiguredNetworkForScanDetail(ScanDetail scanDetail) {
+
         ScanResult scanResult = scanDetail.getScanResult();
         if (scanResult == null) {
             Log.e(TAG, "No scan result found in scan detail");
@@ -2388,7 +2596,9 @@ public class WifiConfigManager {
         // Frame), these scanResult DTIM's are negative and ignored.
         // Used for metrics collection.
         if (scanDetail.getNetworkDetail() != null
-                && scanDetail.getNetworkDetail().getDtimInterval() > 0) {
+                && scanDetail.getNetworkDetail().getDtimInterval() > 0
+                && network.dtimInterval != scanDetail.getNetworkDetail().getDtimInterval()) {
+            onConfiguredNetworksChanged();
             network.dtimInterval = scanDetail.getNetworkDetail().getDtimInterval();
         }
         return createExternalWifiConfiguration(network, true, Process.WIFI_UID);
@@ -2527,6 +2737,10 @@ public class WifiConfigManager {
         if (network1.linkedConfigurations == null) {
             network1.linkedConfigurations = new HashMap<>();
         }
+        if (!network2.linkedConfigurations.containsKey(network1.getKey())
+                || !network1.linkedConfigurations.containsKey(network2.getKey())) {
+            onConfiguredNetworksChanged();
+        }
         // TODO (b/30638473): This needs to become a set instead of map, but it will need
         // public interface changes and need some migration of existing store data.
         network2.linkedConfigurations.put(network1.getKey(), 1);
@@ -2546,6 +2760,7 @@ public class WifiConfigManager {
                 Log.v(TAG, "unlinkNetworks un-link " + network1.getKey()
                         + " from " + network2.getKey());
             }
+            onConfiguredNetworksChanged();
             network2.linkedConfigurations.remove(network1.getKey());
         }
         if (network1.linkedConfigurations != null
@@ -2554,6 +2769,7 @@ public class WifiConfigManager {
                 Log.v(TAG, "unlinkNetworks un-link " + network2.getKey()
                         + " from " + network1.getKey());
             }
+            onConfiguredNetworksChanged();
             network1.linkedConfigurations.remove(network2.getKey());
         }
     }
@@ -2576,8 +2792,22 @@ public class WifiConfigManager {
                 && scanDetailCache.size() > LINK_CONFIGURATION_MAX_SCAN_CACHE_ENTRIES) {
             return;
         }
-        for (WifiConfiguration linkConfig : getInternalConfiguredNetworks()) {
-            if (linkConfig.getKey().equals(config.getKey())) {
+        // Only the networks behind the same gateway or with a BSSID sharing a prefix may be
+        // linked. Any other network can only need to be unlinked, which only matters for the
+        // networks currently linked with this one, since networks are linked both ways.
+        Set<Integer> linkNetworkIds = mNetworkLinkingIndex.getLinkCandidates(config.networkId);
+        if (config.linkedConfigurations != null) {
+            for (String linkedConfigKey : config.linkedConfigurations.keySet()) {
+                WifiConfiguration linkedConfig =
+                        mConfiguredNetworks.getByConfigKeyForCurrentUser(linkedConfigKey);
+                if (linkedConfig != null) {
+                    linkNetworkIds.add(linkedConfig.networkId);
+                }
+            }
+        }
+        for (int linkNetworkId : linkNetworkIds) {
+            WifiConfiguration linkConfig = mConfiguredNetworks.getForCurrentUser(linkNetworkId);
+            if (linkConfig == null || linkConfig.getKey().equals(config.getKey())) {
                 continue;
             }
             if (linkConfig.ephemeral) {
@@ -2614,19 +2844,48 @@ public class WifiConfigManager {
      * So, re-sort the network list based on the frequency of connection to those networks
      * and whether it was last seen in the scan results.
      *
-     * @return list of networks in the order of priority.
+     * The list is kept until a hidden network, its selection status or the connection order
+     * changes, so that building scan requests does not sort the networks again every time.
+     *
+     * @return unmodifiable list of networks in the order of priority.
      */
     public List<WifiScanner.ScanSettings.HiddenNetwork> retrieveHiddenNetworkList() {
-        List<WifiScanner.ScanSettings.HiddenNetwork> hiddenList = new ArrayList<>();
-        List<WifiConfiguration> networks = getConfiguredNetworks();
-        // Remove any non hidden networks.
-        networks.removeIf(config -> !config.hiddenSSID);
+        if (!mClearedSeenHiddenNetworkIds.isEmpty()) {
+            mClearedSeenHiddenNetworkIds.clear();
+            onHiddenNetworksChanged();
+        }
+        long lruModificationCount = mLruConnectionTracker.getModificationCount();
+        if (mHiddenNetworkList != null
+                && mHiddenNetworkListGeneration == mHiddenNetworksGeneration
+                && mHiddenNetworkListLruModificationCount == lruModificationCount) {
+            return mHiddenNetworkList;
+        }
+        // Read the map directly, the list is only built from the internal configs.
+        List<WifiConfiguration> networks = new ArrayList<>();
+        for (WifiConfiguration config : mConfiguredNetworks.valuesForCurrentUser()) {
+            // Remove any non hidden networks.
+            if (config.hiddenSSID) {
+                networks.add(config);
+            }
+        }
         networks.sort(mScanListComparator);
+        List<WifiScanner.ScanSettings.HiddenNetwork> hiddenList = new ArrayList<>();
         // The most frequently connected network has the highest priority now.
         for (WifiConfiguration config : networks) {
             hiddenList.add(new WifiScanner.ScanSettings.HiddenNetwork(config.SSID));
         }
-        return hiddenList;
+        mHiddenNetworkList = Collections.unmodifiableList(hiddenList);
+        mHiddenNetworkListGeneration = mHiddenNetworksGeneration;
+        mHiddenNetworkListLruModificationCount = lruModificationCount;
+        return mHiddenNetworkList;
+    }
+
+    /**
+     * Helper method to note that a hidden network is added, updated or removed, or that its
+     * selection status or seen flag changes, which drops the hidden network list.
+     */
+    private void onHiddenNetworksChanged() {
+        mHiddenNetworksGeneration++;
     }
 
     /**
@@ -2727,6 +2986,7 @@ public class WifiConfigManager {
                     || !config.enterpriseConfig.isAuthenticationSimBased()) {
                 continue;
             }
+            onConfiguredNetworksChanged();
             if (config.enterpriseConfig.getEapMethod() == WifiEnterpriseConfig.Eap.PEAP) {
                 Pair<String, String> currentIdentity =
                         mWifiCarrierInfoManager.getSimIdentity(config);
@@ -2798,7 +3058,10 @@ public class WifiConfigManager {
         }
         if (mPendingStoreRead) {
             Log.w(TAG, "User switch before store is read!");
+            onConfiguredNetworksChanged();
+            onHiddenNetworksChanged();
             mConfiguredNetworks.setNewUser(userId);
+            rebuildConnectChoiceGraph();
             mCurrentUserId = userId;
             // Reset any state from previous user unlock.
             mDeferredUserUnlockRead = false;
@@ -2811,7 +3074,10 @@ public class WifiConfigManager {
         }
         // Remove any private networks of the old user before switching the userId.
         Set<Integer> removedNetworkIds = clearInternalDataForCurrentUser();
+        onConfiguredNetworksChanged();
+        onHiddenNetworksChanged();
         mConfiguredNetworks.setNewUser(userId);
+        rebuildConnectChoiceGraph();
         mCurrentUserId = userId;
 
         if (mUserManager.isUserUnlockingOrUnlocked(UserHandle.of(mCurrentUserId))) {
@@ -2878,10 +3144,14 @@ public class WifiConfigManager {
      */
     private void clearInternalData() {
         localLog("clearInternalData: Clearing all internal data");
+        onConfiguredNetworksChanged();
+        onHiddenNetworksChanged();
         mConfiguredNetworks.clear();
+        mConnectChoiceGraph.clear();
         mUserTemporarilyDisabledList.clear();
         mRandomizedMacAddressMapping.clear();
         mScanDetailCaches.clear();
+        mNetworkLinkingIndex.clear();
         clearLastSelectedNetwork();
     }
 
@@ -2907,7 +3177,13 @@ public class WifiConfigManager {
                 localLog("clearInternalUserData: removed config."
                         + " netId=" + config.networkId
                         + " configKey=" + config.getKey());
+                onConfiguredNetworksChanged();
+                if (config.hiddenSSID) {
+                    onHiddenNetworksChanged();
+                }
                 mConfiguredNetworks.remove(config.networkId);
+                mConnectChoiceGraph.removeNetwork(config.getKey());
+                mNetworkLinkingIndex.removeNetwork(config.networkId);
                 for (OnNetworkUpdateListener listener : mListeners) {
                     listener.onNetworkRemoved(
                             createExternalWifiConfiguration(config, true, Process.WIFI_UID));
@@ -2919,6 +3195,7 @@ public class WifiConfigManager {
         }
         mUserTemporarilyDisabledList.clear();
         mScanDetailCaches.clear();
+        mNetworkLinkingIndex.clearAllBssids();
         clearLastSelectedNetwork();
         return removedNetworkIds;
     }
@@ -2938,7 +3215,14 @@ public class WifiConfigManager {
                 Log.v(TAG, "Adding network from shared store " + configuration.getKey());
             }
             try {
+                onConfiguredNetworksChanged();
+                if (configuration.hiddenSSID) {
+                    onHiddenNetworksChanged();
+                }
                 mConfiguredNetworks.put(configuration);
+                updateConnectChoiceGraph(configuration);
+                mNetworkLinkingIndex.setDefaultGateway(
+                        configuration.networkId, configuration.defaultGwMacAddress);
             } catch (IllegalArgumentException e) {
                 Log.e(TAG, "Failed to add network to config map", e);
             }
@@ -2959,7 +3243,14 @@ public class WifiConfigManager {
                 Log.v(TAG, "Adding network from user store " + configuration.getKey());
             }
             try {
+                onConfiguredNetworksChanged();
+                if (configuration.hiddenSSID) {
+                    onHiddenNetworksChanged();
+                }
                 mConfiguredNetworks.put(configuration);
+                updateConnectChoiceGraph(configuration);
+                mNetworkLinkingIndex.setDefaultGateway(
+                        configuration.networkId, configuration.defaultGwMacAddress);
             } catch (IllegalArgumentException e) {
                 Log.e(TAG, "Failed to add network to config map", e);
             }
@@ -2993,6 +3284,7 @@ public class WifiConfigManager {
     private void generateRandomizedMacAddresses() {
         for (WifiConfiguration config : getInternalConfiguredNetworks()) {
             if (DEFAULT_MAC_ADDRESS.equals(config.getRandomizedMacAddress())) {
+                onConfiguredNetworksChanged();
                 initRandomizedMacForInternalConfig(config);
             }
         }
@@ -3159,7 +3451,15 @@ public class WifiConfigManager {
 
         // Remove the configurations for migrated Passpoint configurations.
         for (int networkId : legacyPasspointNetId) {
-            mConfiguredNetworks.remove(networkId);
+            onConfiguredNetworksChanged();
+            WifiConfiguration removedConfig = mConfiguredNetworks.remove(networkId);
+            if (removedConfig != null) {
+                if (removedConfig.hiddenSSID) {
+                    onHiddenNetworksChanged();
+                }
+                mConnectChoiceGraph.removeNetwork(removedConfig.getKey());
+            }
+            mNetworkLinkingIndex.removeNetwork(networkId);
         }
 
         // Setup store data for write.
@@ -3179,6 +3479,18 @@ public class WifiConfigManager {
         return true;
     }
 
+    /**
+     * Write out the buffered config store data and wait for the pending store file writes, e.g.
+     * before a shutdown.
+     */
+    public void flushStore() {
+        try {
+            mWifiConfigStore.flush();
+        } catch (IOException e) {
+            Log.wtf(TAG, "Writing to store failed. Saved networks maybe lost!", e);
+        }
+    }
+
     /**
      * Helper method for logging into local log buffer.
      */
@@ -3259,6 +3571,7 @@ public class WifiConfigManager {
         if (config == null) {
             return;
         }
+        onConfiguredNetworksChanged();
         config.recentFailure.setAssociationStatus(reason);
     }
 
@@ -3270,6 +3583,7 @@ public class WifiConfigManager {
         if (config == null) {
             return;
         }
+        onConfiguredNetworksChanged();
         config.recentFailure.clear();
     }
 
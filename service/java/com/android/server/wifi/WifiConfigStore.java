@@ -31,9 +31,12 @@ import android.util.Log;
 import android.util.SparseArray;
 import android.util.Xml;
 
+import com.android.internal.annotations.GuardedBy;
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.util.FastXmlSerializer;
 import com.android.internal.util.Preconditions;
+import com.android.server.wifi.util.BinaryXmlPullParser;
+import com.android.server.wifi.util.BinaryXmlSerializer;
 import com.android.server.wifi.util.EncryptedData;
 import com.android.server.wifi.util.Environment;
 import com.android.server.wifi.util.FileUtils;
@@ -44,24 +47,34 @@ import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlSerializer;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileDescriptor;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.PrintWriter;
+import java.io.SequenceInputStream;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -139,6 +152,28 @@ public class WifiConfigStore {
     @Retention(RetentionPolicy.SOURCE)
     public @interface Version { }
 
+    /**
+     * First bytes of a store file in the binary format. XML store files start with '<'.
+     */
+    private static final byte[] BINARY_STORE_MAGIC = {'W', 'C', 'S', 'B'};
+    /**
+     * Current version of the binary store file format, incremented for any change of the layout
+     * below. The version of the data itself is {@link #CURRENT_CONFIG_STORE_DATA_VERSION}.
+     *
+     * Layout: {@link #BINARY_STORE_MAGIC}, format version byte, data version varint, section
+     * count varint, then for each {@link StoreData}: name string, encoding byte, payload length
+     * varint and payload. The payload is the section written either as XML or with
+     * {@link BinaryXmlSerializer}, see {@link StoreData#supportsBinaryEncoding()}.
+     */
+    private static final int BINARY_STORE_FORMAT_VERSION = 1;
+    private static final int SECTION_ENCODING_XML = 0;
+    private static final int SECTION_ENCODING_BINARY = 1;
+    /**
+     * Bytes of each store file read ahead on the read executor, see
+     * {@link #setReadExecutor(Executor)}. The rest of the file is read while parsing it.
+     */
+    private static final int READ_AHEAD_SIZE = 16 * 1024;
+
     /**
      * Alarm tag to use for starting alarms for buffering file writes.
      */
@@ -206,6 +241,27 @@ public class WifiConfigStore {
      * Verbose logging flag.
      */
     private boolean mVerboseLoggingEnabled = false;
+    /**
+     * Whether store files are written in the binary format rather than as XML. Both are always
+     * read.
+     */
+    private boolean mBinaryFormatEnabled = false;
+    /**
+     * Number of sections of the binary format serialized and reused from the previous write,
+     * and of store file writes skipped because no section changed, for dumpsys.
+     */
+    private int mNumSectionsSerialized = 0;
+    private int mNumSectionsReused = 0;
+    private int mNumWritesSkipped = 0;
+    /**
+     * Writer of the store files on another thread, or null to write them on the wifi thread.
+     */
+    private WifiConfigStoreWriter mWriter;
+    /**
+     * Executor opening the store files and reading their first bytes before they are parsed, or
+     * null to open each store file when parsing it.
+     */
+    private Executor mReadExecutor;
     /**
      * Flag to indicate if there is a buffered write pending.
      */
@@ -372,6 +428,35 @@ public class WifiConfigStore {
         mVerboseLoggingEnabled = verbose;
     }
 
+    /**
+     * Write the store files in the binary format rather than as XML. Store files in the other
+     * format are rewritten on their next write.
+     *
+     * Builds without the binary reader cannot read the binary store files and start with no
+     * saved networks, so before rolling back to such a build, the format needs to be disabled
+     * and the store files written again as XML.
+     */
+    public void setBinaryFormatEnabled(boolean enabled) {
+        mBinaryFormatEnabled = enabled;
+    }
+
+    /**
+     * Write the store files on the thread of |writer| rather than on the wifi thread. The data
+     * is still serialized on the wifi thread.
+     */
+    public void setWriter(@Nullable WifiConfigStoreWriter writer) {
+        mWriter = writer;
+    }
+
+    /**
+     * Open the store files and read their first bytes ahead on |executor|, while the wifi thread
+     * parses the store files before them. The data is still parsed on the wifi thread, in the
+     * store file order, and the shared store files before the user store files.
+     */
+    public void setReadExecutor(@Nullable Executor executor) {
+        mReadExecutor = executor;
+    }
+
     /**
      * Retrieve the list of {@link StoreData} instances registered for the provided
      * {@link StoreFile}.
@@ -388,6 +473,11 @@ public class WifiConfigStore {
      * for the provided {@link StoreFile }have indicated that they have new data to serialize.
      */
     private boolean hasNewDataToSerialize(@NonNull StoreFile storeFile) {
+        if (storeFile.mReadInBinaryFormat != null
+                && storeFile.mReadInBinaryFormat != mBinaryFormatEnabled) {
+            // Migrate the file to the current format.
+            return true;
+        }
         List<StoreData> storeDataList = retrieveStoreDataListForStoreFile(storeFile);
         return storeDataList.stream().anyMatch(s -> s.hasNewDataToSerialize());
     }
@@ -408,16 +498,20 @@ public class WifiConfigStore {
         for (StoreFile sharedStoreFile : mSharedStores) {
             if (hasNewDataToSerialize(sharedStoreFile)) {
                 byte[] sharedDataBytes = serializeData(sharedStoreFile);
-                sharedStoreFile.storeRawDataToWrite(sharedDataBytes);
-                hasAnyNewData = true;
+                if (sharedDataBytes != null) {
+                    sharedStoreFile.storeRawDataToWrite(sharedDataBytes);
+                    hasAnyNewData = true;
+                }
             }
         }
         if (mUserStores != null) {
             for (StoreFile userStoreFile : mUserStores) {
                 if (hasNewDataToSerialize(userStoreFile)) {
                     byte[] userDataBytes = serializeData(userStoreFile);
-                    userStoreFile.storeRawDataToWrite(userDataBytes);
-                    hasAnyNewData = true;
+                    if (userDataBytes != null) {
+                        userStoreFile.storeRawDataToWrite(userDataBytes);
+                        hasAnyNewData = true;
+                    }
                 }
             }
         }
@@ -435,6 +529,22 @@ public class WifiConfigStore {
             // flush that out.
             writeBufferedData();
         }
+        if (forceSync && mWriter != null) {
+            mWriter.flush();
+        }
+    }
+
+    /**
+     * Write out any buffered data, and wait for all the writes to the store files to complete.
+     * To be used before a shutdown.
+     */
+    public void flush() throws IOException {
+        if (mBufferedWritePending) {
+            writeBufferedData();
+        }
+        if (mWriter != null) {
+            mWriter.flush();
+        }
     }
 
     /**
@@ -445,13 +555,19 @@ public class WifiConfigStore {
      * {@link EncryptedData} to the output.
      *
      * @param storeFile StoreFile that we want to write to.
-     * @return byte[] of serialized bytes
+     * @return byte[] of serialized bytes, or null if the file does not need to be written, see
+     * {@link #serializeDataInBinaryFormat(StoreFile, List)}.
      * @throws XmlPullParserException
      * @throws IOException
      */
-    private byte[] serializeData(@NonNull StoreFile storeFile)
+    private @Nullable byte[] serializeData(@NonNull StoreFile storeFile)
             throws XmlPullParserException, IOException {
         List<StoreData> storeDataList = retrieveStoreDataListForStoreFile(storeFile);
+        storeFile.mReadInBinaryFormat = null;
+        if (mBinaryFormatEnabled) {
+            return serializeDataInBinaryFormat(storeFile, storeDataList);
+        }
+        storeFile.clearSectionCache();
 
         final XmlSerializer out = new FastXmlSerializer();
         final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
@@ -471,6 +587,77 @@ public class WifiConfigStore {
         return outputStream.toByteArray();
     }
 
+    /**
+     * Serialize the provided {@link StoreData} clients of |storeFile| in the binary format, see
+     * {@link #BINARY_STORE_FORMAT_VERSION}.
+     *
+     * Each section is serialized independently, so the sections of the {@link StoreData} with
+     * no new data are reused from the previous write of the file. Sections serialized again are
+     * compared with the previous ones, so the file is not written again when no section changed.
+     *
+     * @return the serialized bytes, or null if they are the same as the ones of the previous
+     * write.
+     */
+    private @Nullable byte[] serializeDataInBinaryFormat(@NonNull StoreFile storeFile,
+            @NonNull List<StoreData> storeDataList)
+            throws XmlPullParserException, IOException {
+        // The cache is empty after a read, so the first write after it always happens.
+        boolean changed = false;
+        final Map<String, byte[]> sectionCache = new HashMap<>();
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        outputStream.write(BINARY_STORE_MAGIC);
+        outputStream.write(BINARY_STORE_FORMAT_VERSION);
+        BinaryXmlSerializer.writeVarInt(outputStream, CURRENT_CONFIG_STORE_DATA_VERSION);
+        BinaryXmlSerializer.writeVarInt(outputStream, storeDataList.size());
+        for (StoreData storeData : storeDataList) {
+            String tag = storeData.getName();
+            byte[] section = storeFile.getCachedSection(tag);
+            if (section != null && !storeData.hasNewDataToSerialize()) {
+                mNumSectionsReused++;
+            } else {
+                byte[] newSection = serializeSection(storeData, storeFile.getEncryptionUtil());
+                mNumSectionsSerialized++;
+                changed |= !Arrays.equals(section, newSection);
+                section = newSection;
+            }
+            sectionCache.put(tag, section);
+            BinaryXmlSerializer.writeString(outputStream, tag);
+            outputStream.write(storeData.supportsBinaryEncoding()
+                    ? SECTION_ENCODING_BINARY : SECTION_ENCODING_XML);
+            BinaryXmlSerializer.writeVarInt(outputStream, section.length);
+            outputStream.write(section);
+        }
+        // Sections of StoreData no longer in the file would be dropped by this write.
+        changed |= storeFile.replaceSectionCache(sectionCache);
+        if (!changed) {
+            mNumWritesSkipped++;
+            if (mVerboseLoggingEnabled) {
+                Log.v(TAG, "No section changed in " + storeFile.getName() + ", not written");
+            }
+            return null;
+        }
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Serialize the section of |storeData| in the binary format, see
+     * {@link StoreData#supportsBinaryEncoding()}.
+     */
+    private static byte[] serializeSection(@NonNull StoreData storeData,
+            @Nullable WifiConfigStoreEncryptionUtil encryptionUtil)
+            throws XmlPullParserException, IOException {
+        final XmlSerializer out = storeData.supportsBinaryEncoding()
+                ? new BinaryXmlSerializer() : new FastXmlSerializer();
+        final ByteArrayOutputStream sectionStream = new ByteArrayOutputStream();
+        out.setOutput(sectionStream, StandardCharsets.UTF_8.name());
+        String tag = storeData.getName();
+        XmlUtil.writeNextSectionStart(out, tag);
+        storeData.serializeData(out, encryptionUtil);
+        XmlUtil.writeNextSectionEnd(out, tag);
+        out.flush();
+        return sectionStream.toByteArray();
+    }
+
     /**
      * Helper method to start a buffered write alarm if one doesn't already exist.
      */
@@ -500,13 +687,25 @@ public class WifiConfigStore {
     private void writeBufferedData() throws IOException {
         stopBufferedWriteAlarm();
 
+        if (mWriter != null) {
+            // The writer notes the write duration.
+            for (StoreFile sharedStoreFile : mSharedStores) {
+                queueBufferedRawData(sharedStoreFile);
+            }
+            if (mUserStores != null) {
+                for (StoreFile userStoreFile : mUserStores) {
+                    queueBufferedRawData(userStoreFile);
+                }
+            }
+            return;
+        }
         long writeStartTime = mClock.getElapsedSinceBootMillis();
         for (StoreFile sharedStoreFile : mSharedStores) {
-            sharedStoreFile.writeBufferedRawData();
+            writeBufferedRawData(sharedStoreFile);
         }
         if (mUserStores != null) {
             for (StoreFile userStoreFile : mUserStores) {
-                userStoreFile.writeBufferedRawData();
+                writeBufferedRawData(userStoreFile);
             }
         }
         long writeTime = mClock.getElapsedSinceBootMillis() - writeStartTime;
@@ -518,6 +717,36 @@ public class WifiConfigStore {
         Log.d(TAG, "Writing to stores completed in " + writeTime + " ms.");
     }
 
+    /**
+     * Wait for the writes already queued to the writer, if any. Failed writes are only logged,
+     * as the read that follows does not depend on them.
+     */
+    private void waitForPendingWrites() {
+        if (mWriter == null) return;
+        try {
+            mWriter.flush();
+        } catch (IOException e) {
+            Log.e(TAG, "Pending writes failed", e);
+        }
+    }
+
+    private void queueBufferedRawData(@NonNull StoreFile storeFile) {
+        byte[] data = storeFile.takeRawDataToWrite();
+        if (data != null) {
+            mWriter.queueWrite(storeFile, data);
+        }
+    }
+
+    private static void writeBufferedRawData(@NonNull StoreFile storeFile) throws IOException {
+        try {
+            storeFile.writeBufferedRawData();
+        } catch (IOException e) {
+            // The cached sections were not persisted, so they must all be written next time.
+            storeFile.clearSectionCache();
+            throw e;
+        }
+    }
+
     /**
      * Note: This is a copy of {@link AtomicFile#readFully()} modified to use the passed in
      * {@link InputStream} which was returned using {@link AtomicFile#openRead()}.
@@ -585,59 +814,146 @@ public class WifiConfigStore {
     }
 
     /**
-     * Helper method to read from the shared store files.
+     * Migrate the data of the migration store file of |storeFile|, if any, to |storeFile| and
+     * remove the migration store file.
+     *
+     * @return the migrated data, or null if there is nothing to migrate.
+     */
+    private static @Nullable byte[] migrateStoreFile(@NonNull StoreFile storeFile,
+            boolean isShared) throws IOException {
+        byte[] dataBytes = isShared
+                ? readDataFromMigrationSharedStoreFile(storeFile.getFileId())
+                : readDataFromMigrationUserStoreFile(storeFile.getFileId(),
+                        storeFile.mUserHandle);
+        if (dataBytes == null) return null;
+        Log.i(TAG, "Read data out of " + (isShared ? "shared" : "user")
+                + " migration store file: " + storeFile.getName());
+        // Save the migrated file contents to the regular store file and delete the
+        // migrated stored file.
+        storeFile.storeRawDataToWrite(dataBytes);
+        storeFile.writeBufferedRawData();
+        // Note: If the migrated store file is at the same location as the store file,
+        // then the OEM implementation should ignore this remove.
+        if (isShared) {
+            WifiMigration.removeSharedConfigStoreFile(
+                    getMigrationStoreFileId(storeFile.getFileId()));
+        } else {
+            WifiMigration.removeUserConfigStoreFile(
+                    getMigrationStoreFileId(storeFile.getFileId()), storeFile.mUserHandle);
+        }
+        return dataBytes;
+    }
+
+    /**
+     * Helper method to read from the shared or user store files.
+     *
+     * The store files with data to migrate are migrated first. If {@link #mReadExecutor} is set,
+     * the other store files are then opened and their first bytes read ahead on it, while the
+     * store files before them are parsed. The rest of each file is parsed as it is read, see
+     * {@link #openReadAhead(StoreFile)}.
+     *
      * @throws XmlPullParserException
      * @throws IOException
      */
-    private void readFromSharedStoreFiles() throws XmlPullParserException, IOException {
-        for (StoreFile sharedStoreFile : mSharedStores) {
-            byte[] sharedDataBytes =
-                    readDataFromMigrationSharedStoreFile(sharedStoreFile.getFileId());
-            if (sharedDataBytes == null) {
-                // nothing to migrate, do normal read.
-                sharedDataBytes = sharedStoreFile.readRawData();
-            } else {
-                Log.i(TAG, "Read data out of shared migration store file: "
-                        + sharedStoreFile.getName());
-                // Save the migrated file contents to the regular store file and delete the
-                // migrated stored file.
-                sharedStoreFile.storeRawDataToWrite(sharedDataBytes);
-                sharedStoreFile.writeBufferedRawData();
-                // Note: If the migrated store file is at the same location as the store file,
-                // then the OEM implementation should ignore this remove.
-                WifiMigration.removeSharedConfigStoreFile(
-                        getMigrationStoreFileId(sharedStoreFile.getFileId()));
+    private void readFromStoreFiles(@NonNull List<StoreFile> storeFiles, boolean isShared)
+            throws XmlPullParserException, IOException {
+        // Migrate before reading ahead, so that no store file is written while being read.
+        Map<StoreFile, byte[]> migratedData = new HashMap<>();
+        for (StoreFile storeFile : storeFiles) {
+            byte[] dataBytes = migrateStoreFile(storeFile, isShared);
+            if (dataBytes != null) {
+                migratedData.put(storeFile, dataBytes);
+            }
+        }
+        Map<StoreFile, FutureTask<InputStream>> readAheadTasks = new HashMap<>();
+        if (mReadExecutor != null) {
+            for (StoreFile storeFile : storeFiles) {
+                if (migratedData.containsKey(storeFile)) continue;
+                FutureTask<InputStream> task = new FutureTask<>(() -> openReadAhead(storeFile));
+                readAheadTasks.put(storeFile, task);
+                mReadExecutor.execute(task);
+            }
+        }
+        try {
+            for (StoreFile storeFile : storeFiles) {
+                if (migratedData.containsKey(storeFile)) {
+                    deserializeData(new ByteArrayInputStream(migratedData.get(storeFile)),
+                            storeFile);
+                    continue;
+                }
+                FutureTask<InputStream> task = readAheadTasks.remove(storeFile);
+                try (InputStream dataStream = task != null
+                        ? awaitReadAhead(task) : storeFile.openRead()) {
+                    deserializeData(dataStream, storeFile);
+                }
+            }
+        } finally {
+            // Close the files read ahead but not parsed, after a parse failure.
+            for (FutureTask<InputStream> task : readAheadTasks.values()) {
+                try {
+                    InputStream dataStream = awaitReadAhead(task);
+                    if (dataStream != null) dataStream.close();
+                } catch (IOException e) {
+                    // Nothing to close.
+                }
             }
-            deserializeData(sharedDataBytes, sharedStoreFile);
         }
     }
 
     /**
-     * Helper method to read from the user store files.
-     * @throws XmlPullParserException
-     * @throws IOException
+     * Open |storeFile| and read its first {@link #READ_AHEAD_SIZE} bytes, on
+     * {@link #mReadExecutor}. Only that much is buffered, the rest of the file is read as it is
+     * parsed.
+     *
+     * @return stream of the file data, or null if the file is not found.
      */
-    private void readFromUserStoreFiles() throws XmlPullParserException, IOException {
-        for (StoreFile userStoreFile : mUserStores) {
-            byte[] userDataBytes = readDataFromMigrationUserStoreFile(
-                    userStoreFile.getFileId(), userStoreFile.mUserHandle);
-            if (userDataBytes == null) {
-                // nothing to migrate, do normal read.
-                userDataBytes = userStoreFile.readRawData();
-            } else {
-                Log.i(TAG, "Read data out of user migration store file: "
-                        + userStoreFile.getName());
-                // Save the migrated file contents to the regular store file and delete the
-                // migrated stored file.
-                userStoreFile.storeRawDataToWrite(userDataBytes);
-                userStoreFile.writeBufferedRawData();
-                // Note: If the migrated store file is at the same location as the store file,
-                // then the OEM implementation should ignore this remove.
-                WifiMigration.removeUserConfigStoreFile(
-                        getMigrationStoreFileId(userStoreFile.getFileId()),
-                        userStoreFile.mUserHandle);
+    private static @Nullable InputStream openReadAhead(@NonNull StoreFile storeFile)
+            throws IOException {
+        InputStream dataStream = storeFile.openRead();
+        if (dataStream == null) return null;
+        byte[] buffer = new byte[READ_AHEAD_SIZE];
+        int pos = 0;
+        try {
+            while (pos < buffer.length) {
+                int amt = dataStream.read(buffer, pos, buffer.length - pos);
+                if (amt < 0) {
+                    dataStream.close();
+                    return new ByteArrayInputStream(buffer, 0, pos);
+                }
+                pos += amt;
+            }
+        } catch (IOException e) {
+            dataStream.close();
+            throw e;
+        }
+        return new SequenceInputStream(new ByteArrayInputStream(buffer), dataStream);
+    }
+
+    /**
+     * Wait for a store file opened on {@link #mReadExecutor}.
+     *
+     * @return stream of the file data, or null if the file is not found.
+     * @throws IOException if the read failed or was interrupted.
+     */
+    private static @Nullable InputStream awaitReadAhead(@NonNull FutureTask<InputStream> task)
+            throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading the store files");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
             }
-            deserializeData(userDataBytes, userStoreFile);
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
         }
     }
 
@@ -647,6 +963,8 @@ public class WifiConfigStore {
      * shared configurations from the shared config store.
      */
     public void read() throws XmlPullParserException, IOException {
+        // Do not read files being written.
+        waitForPendingWrites();
         // Reset both share and user store data.
         for (StoreFile sharedStoreFile : mSharedStores) {
             resetStoreData(sharedStoreFile);
@@ -657,9 +975,9 @@ public class WifiConfigStore {
             }
         }
         long readStartTime = mClock.getElapsedSinceBootMillis();
-        readFromSharedStoreFiles();
+        readFromStoreFiles(mSharedStores, true);
         if (mUserStores != null) {
-            readFromUserStoreFiles();
+            readFromStoreFiles(mUserStores, false);
         }
         long readTime = mClock.getElapsedSinceBootMillis() - readStartTime;
         try {
@@ -688,11 +1006,12 @@ public class WifiConfigStore {
 
         // Stop any pending buffered writes, if any.
         stopBufferedWriteAlarm();
+        waitForPendingWrites();
         mUserStores = userStores;
 
         // Now read from the user store files.
         long readStartTime = mClock.getElapsedSinceBootMillis();
-        readFromUserStoreFiles();
+        readFromStoreFiles(mUserStores, false);
         long readTime = mClock.getElapsedSinceBootMillis() - readStartTime;
         mWifiMetrics.noteWifiConfigStoreReadDuration(toIntExact(readTime));
         Log.d(TAG, "Reading from user stores completed in " + readTime + " ms.");
@@ -719,27 +1038,36 @@ public class WifiConfigStore {
     /**
      * Deserialize data from a {@link StoreFile} for all {@link StoreData} instances registered.
      *
-     * This method also computes the integrity of the incoming |dataBytes| and compare with
-     * {@link EncryptedData} parsed from |dataBytes|. If the integrity check fails, the data
-     * is discarded.
+     * The data is parsed as it is read from |inputStream|, which is not read fully first.
      *
-     * @param dataBytes The data to parse
+     * @param inputStream The data to parse, or null if the file does not exist.
      * @param storeFile StoreFile that we read from. Will be used to retrieve the list of clients
      *                  who have data to deserialize from this file.
      *
      * @throws XmlPullParserException
      * @throws IOException
      */
-    private void deserializeData(@NonNull byte[] dataBytes, @NonNull StoreFile storeFile)
+    private void deserializeData(@Nullable InputStream inputStream, @NonNull StoreFile storeFile)
             throws XmlPullParserException, IOException {
         List<StoreData> storeDataList = retrieveStoreDataListForStoreFile(storeFile);
-        if (dataBytes == null) {
+        // The data is replaced by the one read, so the sections need to be serialized again.
+        storeFile.clearSectionCache();
+        if (inputStream == null) {
             indicateNoDataForStoreDatas(storeDataList, -1 /* unknown */,
                     storeFile.getEncryptionUtil());
             return;
         }
+        if (!inputStream.markSupported()) {
+            inputStream = new BufferedInputStream(inputStream);
+        }
+        if (isInBinaryFormat(inputStream)) {
+            storeFile.mReadInBinaryFormat = true;
+            deserializeDataInBinaryFormat(inputStream, storeDataList,
+                    storeFile.getEncryptionUtil());
+            return;
+        }
+        storeFile.mReadInBinaryFormat = false;
         final XmlPullParser in = Xml.newPullParser();
-        final ByteArrayInputStream inputStream = new ByteArrayInputStream(dataBytes);
         in.setInput(inputStream, StandardCharsets.UTF_8.name());
 
         // Start parsing the XML stream.
@@ -777,6 +1105,141 @@ public class WifiConfigStore {
         indicateNoDataForStoreDatas(storeDatasNotInvoked, version, storeFile.getEncryptionUtil());
     }
 
+    /**
+     * Whether |inputStream| starts with {@link #BINARY_STORE_MAGIC}. The stream is reset to its
+     * start.
+     */
+    private static boolean isInBinaryFormat(@NonNull InputStream inputStream)
+            throws IOException {
+        inputStream.mark(BINARY_STORE_MAGIC.length);
+        try {
+            for (byte magic : BINARY_STORE_MAGIC) {
+                if (inputStream.read() != (magic & 0xff)) return false;
+            }
+            return true;
+        } finally {
+            inputStream.reset();
+        }
+    }
+
+    /**
+     * Deserialize data in the binary format, see {@link #BINARY_STORE_FORMAT_VERSION}, for the
+     * provided {@link StoreData} clients.
+     */
+    private static void deserializeDataInBinaryFormat(@NonNull InputStream inputStream,
+            @NonNull List<StoreData> storeDataList,
+            @Nullable WifiConfigStoreEncryptionUtil encryptionUtil)
+            throws XmlPullParserException, IOException {
+        BinaryXmlPullParser.readBytes(inputStream, BINARY_STORE_MAGIC.length);
+        int formatVersion = inputStream.read();
+        if (formatVersion != BINARY_STORE_FORMAT_VERSION) {
+            throw new XmlPullParserException("Invalid binary format version: " + formatVersion);
+        }
+        @Version int version = checkVersion(BinaryXmlPullParser.readVarInt(inputStream));
+        int numSections = BinaryXmlPullParser.readLength(inputStream);
+
+        Set<StoreData> storeDatasInvoked = new HashSet<>();
+        for (int i = 0; i < numSections; i++) {
+            String name = BinaryXmlPullParser.readString(inputStream);
+            int encoding = inputStream.read();
+            SectionInputStream section = new SectionInputStream(inputStream,
+                    BinaryXmlPullParser.readLength(inputStream));
+            StoreData storeData = storeDataList.stream()
+                    .filter(s -> s.getName().equals(name))
+                    .findAny()
+                    .orElse(null);
+            if (storeData == null) {
+                Log.e(TAG, "Unknown store data: " + name + ". List of store data: "
+                        + storeDataList);
+                section.skipRemaining();
+                continue;
+            }
+            final XmlPullParser in;
+            if (encoding == SECTION_ENCODING_BINARY) {
+                in = new BinaryXmlPullParser();
+            } else if (encoding == SECTION_ENCODING_XML) {
+                in = Xml.newPullParser();
+            } else {
+                throw new XmlPullParserException("Invalid encoding of " + name + ": " + encoding);
+            }
+            in.setInput(section, StandardCharsets.UTF_8.name());
+            // The section is a document of its own, which root is the section tag.
+            XmlUtil.gotoDocumentStart(in, name);
+            storeData.deserializeData(in, in.getDepth(), version, encryptionUtil);
+            storeDatasInvoked.add(storeData);
+            // The StoreData may not read its section to the end.
+            section.skipRemaining();
+        }
+        Set<StoreData> storeDatasNotInvoked = new HashSet<>(storeDataList);
+        storeDatasNotInvoked.removeAll(storeDatasInvoked);
+        indicateNoDataForStoreDatas(storeDatasNotInvoked, version, encryptionUtil);
+    }
+
+    /**
+     * Stream of one section of the binary format, which is parsed straight from the stream of
+     * the file rather than copied first. It ends at the end of the section, so that parsers
+     * reading ahead do not read the next sections, and it does not close the file stream.
+     */
+    private static class SectionInputStream extends FilterInputStream {
+        private long mRemaining;
+
+        SectionInputStream(@NonNull InputStream in, long length) {
+            super(in);
+            mRemaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (mRemaining <= 0) return -1;
+            int b = in.read();
+            if (b >= 0) mRemaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (mRemaining <= 0) return -1;
+            int amt = in.read(b, off, (int) Math.min(len, mRemaining));
+            if (amt > 0) mRemaining -= amt;
+            return amt;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, mRemaining));
+            mRemaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), mRemaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            // The file stream is closed by the caller.
+        }
+
+        /**
+         * Skip to the end of the section.
+         *
+         * @throws EOFException if the file ends before.
+         */
+        public void skipRemaining() throws IOException {
+            while (mRemaining > 0) {
+                if (skip(mRemaining) <= 0 && read() < 0) {
+                    throw new EOFException("Unexpected end of section");
+                }
+            }
+        }
+    }
+
     /**
      * Parse the version from the XML stream.
      * This is used for both the shared and user config store data.
@@ -786,7 +1249,10 @@ public class WifiConfigStore {
      */
     private static @Version int parseVersionFromXml(XmlPullParser in)
             throws XmlPullParserException, IOException {
-        int version = (int) XmlUtil.readNextValueWithName(in, XML_TAG_VERSION);
+        return checkVersion((int) XmlUtil.readNextValueWithName(in, XML_TAG_VERSION));
+    }
+
+    private static @Version int checkVersion(int version) throws XmlPullParserException {
         if (version < INITIAL_CONFIG_STORE_DATA_VERSION
                 || version > CURRENT_CONFIG_STORE_DATA_VERSION) {
             throw new XmlPullParserException("Invalid version of data: " + version);
@@ -812,6 +1278,13 @@ public class WifiConfigStore {
     public void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
         pw.println("Dump of WifiConfigStore");
         pw.println("WifiConfigStore - Store File Begin ----");
+        pw.println("Binary format enabled: " + mBinaryFormatEnabled);
+        pw.println("Sections serialized: " + mNumSectionsSerialized
+                + ", reused: " + mNumSectionsReused
+                + ", writes skipped: " + mNumWritesSkipped);
+        if (mWriter != null) {
+            mWriter.dump(pw);
+        }
         Stream.of(mSharedStores, mUserStores)
                 .flatMap(List::stream)
                 .forEach((storeFile) -> {
@@ -869,6 +1342,17 @@ public class WifiConfigStore {
          * Integrity checking for the store file.
          */
         private final WifiConfigStoreEncryptionUtil mEncryptionUtil;
+        /**
+         * Whether the data last read from the file was in the binary format, or null if nothing
+         * was read since the last write.
+         */
+        private Boolean mReadInBinaryFormat;
+        /**
+         * Sections of the binary format last serialized for this file, by {@link StoreData}
+         * name, see {@link WifiConfigStore#serializeDataInBinaryFormat(StoreFile, List)}.
+         */
+        @GuardedBy("this")
+        private final Map<String, byte[]> mSectionCache = new HashMap<>();
 
         public StoreFile(File file, @StoreFileId int fileId,
                 @NonNull UserHandle userHandle,
@@ -884,6 +1368,31 @@ public class WifiConfigStore {
             return mAtomicFile.getBaseFile().getName();
         }
 
+        /**
+         * Drop the sections cached for the next binary serialization, so that they are all
+         * serialized again. Called on the I/O thread of {@link WifiConfigStoreWriter} when a
+         * write fails.
+         */
+        synchronized void clearSectionCache() {
+            mSectionCache.clear();
+        }
+
+        synchronized @Nullable byte[] getCachedSection(@NonNull String name) {
+            return mSectionCache.get(name);
+        }
+
+        /**
+         * Replace the cached sections by |sections|.
+         *
+         * @return true if the sections are not for the same {@link StoreData} as before.
+         */
+        synchronized boolean replaceSectionCache(@NonNull Map<String, byte[]> sections) {
+            boolean namesChanged = !sections.keySet().equals(mSectionCache.keySet());
+            mSectionCache.clear();
+            mSectionCache.putAll(sections);
+            return namesChanged;
+        }
+
         public @StoreFileId int getFileId() {
             return mFileId;
         }
@@ -896,21 +1405,19 @@ public class WifiConfigStore {
         }
 
         /**
-         * Read the entire raw data from the store file and return in a byte array.
+         * Open the store file to read its raw data. The data is meant to be parsed as it is read,
+         * rather than read in a byte array first.
          *
-         * @return raw data read from the file or null if the file is not found or the data has
-         *  been altered.
-         * @throws IOException if an error occurs. The input stream is always closed by the method
-         * even when an exception is encountered.
+         * @return buffered stream of the raw data, to be closed by the caller, or null if the file
+         * is not found.
+         * @throws IOException if an error occurs.
          */
-        public byte[] readRawData() throws IOException {
-            byte[] bytes = null;
+        public @Nullable InputStream openRead() throws IOException {
             try {
-                bytes = mAtomicFile.readFully();
+                return new BufferedInputStream(mAtomicFile.openRead());
             } catch (FileNotFoundException e) {
                 return null;
             }
-            return bytes;
         }
 
         /**
@@ -932,12 +1439,39 @@ public class WifiConfigStore {
          */
         public void writeBufferedRawData() throws IOException {
             if (mWriteData == null) return; // No data to write for this file.
+            writeRawData(mWriteData);
+            // Reset the pending write data after write.
+            mWriteData = null;
+        }
+
+        /**
+         * Take the data stored by {@link #storeRawDataToWrite(byte[])}, to write it with
+         * {@link #writeRawData(byte[])} instead of {@link #writeBufferedRawData()}.
+         *
+         * @return the data to write, or null if there is none.
+         */
+        public @Nullable byte[] takeRawDataToWrite() {
+            byte[] data = mWriteData;
+            mWriteData = null;
+            return data;
+        }
+
+        /**
+         * Write the provided raw data to the store file.
+         * This does not use the data stored by {@link #storeRawDataToWrite(byte[])}, so it can
+         * be called from another thread.
+         *
+         * @param data raw data to be written to the file.
+         * @throws IOException if an error occurs. The output stream is always closed by the method
+         * even when an exception is encountered.
+         */
+        public void writeRawData(@NonNull byte[] data) throws IOException {
             // Write the data to the atomic file.
             FileOutputStream out = null;
             try {
                 out = mAtomicFile.startWrite();
                 FileUtils.chmod(mFileName, FILE_MODE);
-                out.write(mWriteData);
+                out.write(data);
                 mAtomicFile.finishWrite(out);
             } catch (IOException e) {
                 if (out != null) {
@@ -945,8 +1479,6 @@ public class WifiConfigStore {
                 }
                 throw e;
             }
-            // Reset the pending write data after write.
-            mWriteData = null;
         }
     }
 
@@ -994,6 +1526,17 @@ public class WifiConfigStore {
          */
         void resetData();
 
+        /**
+         * Whether the data can be written with {@link BinaryXmlSerializer} when the binary store
+         * format is enabled, rather than as XML. That encoding only supports the elements,
+         * attributes and text written by {@link XmlUtil}.
+         *
+         * @return true to opt into the binary encoding, false otherwise.
+         */
+        default boolean supportsBinaryEncoding() {
+            return false;
+        }
+
         /**
          * Check if there is any new data to persist from the last write.
          *
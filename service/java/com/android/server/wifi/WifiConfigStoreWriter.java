@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import static java.lang.Math.toIntExact;
+
+import android.annotation.NonNull;
+import android.os.Handler;
+import android.util.Log;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.server.wifi.WifiConfigStore.StoreFile;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes the store files of {@link WifiConfigStore} on a dedicated I/O thread, so that the wifi
+ * thread only serializes the data.
+ *
+ * The data is double buffered: the wifi thread queues new data while the I/O thread writes the
+ * data queued before, and data queued for a store file replaces the data of the file not being
+ * written yet, so a burst of writes writes each file once. {@link #flush()} is the barrier
+ * waiting for all the data queued before it to be written.
+ */
+class WifiConfigStoreWriter {
+    private static final String TAG = "WifiConfigStoreWriter";
+
+    /**
+     * Maximum time {@link #flush()} waits for the pending writes.
+     */
+    @VisibleForTesting
+    static final long FLUSH_TIMEOUT_MS = 10_000;
+
+    private final Handler mHandler;
+    private final Clock mClock;
+    private final WifiMetrics mWifiMetrics;
+
+    private final Object mLock = new Object();
+    // Data to write, by store file in queuing order.
+    @GuardedBy("mLock")
+    private final Map<StoreFile, PendingWrite> mPendingWrites = new LinkedHashMap<>();
+    @GuardedBy("mLock")
+    private boolean mWriteScheduled = false;
+    // Sequence number of the last queued write, and of the last one written or superseded.
+    @GuardedBy("mLock")
+    private long mLastQueuedSequence = 0;
+    @GuardedBy("mLock")
+    private long mLastWrittenSequence = 0;
+    // First write failure since the last flush.
+    @GuardedBy("mLock")
+    private IOException mWriteFailure;
+    @GuardedBy("mLock")
+    private int mNumWrites = 0;
+    @GuardedBy("mLock")
+    private int mNumCoalescedWrites = 0;
+    @GuardedBy("mLock")
+    private int mNumFailedWrites = 0;
+
+    private static class PendingWrite {
+        public final byte[] data;
+        // Time the oldest data not written yet for the file was queued at.
+        public final long queuedTimeMs;
+
+        PendingWrite(byte[] data, long queuedTimeMs) {
+            this.data = data;
+            this.queuedTimeMs = queuedTimeMs;
+        }
+    }
+
+    /**
+     * @param handler Handler of the I/O thread writing the files.
+     */
+    WifiConfigStoreWriter(@NonNull Handler handler, @NonNull Clock clock,
+            @NonNull WifiMetrics wifiMetrics) {
+        mHandler = handler;
+        mClock = clock;
+        mWifiMetrics = wifiMetrics;
+    }
+
+    /**
+     * Queue |data| to be written to |storeFile|. It replaces the data queued for the file and not
+     * being written yet.
+     */
+    public void queueWrite(@NonNull StoreFile storeFile, @NonNull byte[] data) {
+        synchronized (mLock) {
+            mWifiMetrics.noteWifiConfigStoreWriteQueueDepth(mPendingWrites.size());
+            PendingWrite previous = mPendingWrites.get(storeFile);
+            if (previous != null) {
+                mNumCoalescedWrites++;
+            }
+            mPendingWrites.put(storeFile, new PendingWrite(data, previous != null
+                    ? previous.queuedTimeMs : mClock.getElapsedSinceBootMillis()));
+            mLastQueuedSequence++;
+            scheduleWriteLocked();
+        }
+    }
+
+    @GuardedBy("mLock")
+    private void scheduleWriteLocked() {
+        if (mWriteScheduled || mPendingWrites.isEmpty()) return;
+        mWriteScheduled = true;
+        mHandler.post(this::writePendingData);
+    }
+
+    /**
+     * Write the pending data, on the I/O thread.
+     */
+    private void writePendingData() {
+        Map<StoreFile, PendingWrite> writes;
+        long lastSequence;
+        synchronized (mLock) {
+            writes = new LinkedHashMap<>(mPendingWrites);
+            mPendingWrites.clear();
+            mWriteScheduled = false;
+            lastSequence = mLastQueuedSequence;
+        }
+        long writeStartTime = mClock.getElapsedSinceBootMillis();
+        Map<StoreFile, PendingWrite> failedWrites = new LinkedHashMap<>();
+        IOException failure = null;
+        for (Map.Entry<StoreFile, PendingWrite> write : writes.entrySet()) {
+            try {
+                write.getKey().writeRawData(write.getValue().data);
+                noteWriteLatency(write.getValue().queuedTimeMs);
+            } catch (IOException e) {
+                Log.e(TAG, "Writing " + write.getKey().getName() + " failed", e);
+                // The cached sections were not persisted, so they must all be written next time.
+                write.getKey().clearSectionCache();
+                failedWrites.put(write.getKey(), write.getValue());
+                if (failure == null) failure = e;
+            }
+        }
+        long writeTime = mClock.getElapsedSinceBootMillis() - writeStartTime;
+        try {
+            mWifiMetrics.noteWifiConfigStoreWriteDuration(toIntExact(writeTime));
+        } catch (ArithmeticException e) {
+            // Silently ignore on any overflow errors.
+        }
+        synchronized (mLock) {
+            mNumWrites += writes.size() - failedWrites.size();
+            mNumFailedWrites += failedWrites.size();
+            // Retry the failed writes with the next ones, unless newer data was queued meanwhile.
+            for (Map.Entry<StoreFile, PendingWrite> write : failedWrites.entrySet()) {
+                if (!mPendingWrites.containsKey(write.getKey())) {
+                    mPendingWrites.put(write.getKey(), write.getValue());
+                    mLastQueuedSequence++;
+                }
+            }
+            if (failure != null && mWriteFailure == null) {
+                mWriteFailure = failure;
+            }
+            mLastWrittenSequence = lastSequence;
+            mLock.notifyAll();
+        }
+    }
+
+    private void noteWriteLatency(long queuedTimeMs) {
+        try {
+            mWifiMetrics.noteWifiConfigStoreWriteLatency(
+                    toIntExact(mClock.getElapsedSinceBootMillis() - queuedTimeMs));
+        } catch (ArithmeticException e) {
+            // Silently ignore on any overflow errors.
+        }
+    }
+
+    /**
+     * Wait for all the data queued before the call to be written. Failed writes pending a retry
+     * are attempted again.
+     *
+     * Must not be called on the I/O thread.
+     *
+     * @throws IOException if any write failed since the last flush, or on timeout.
+     */
+    public void flush() throws IOException {
+        synchronized (mLock) {
+            long sequence = mLastQueuedSequence;
+            scheduleWriteLocked();
+            long deadline = mClock.getElapsedSinceBootMillis() + FLUSH_TIMEOUT_MS;
+            while (mLastWrittenSequence < sequence) {
+                long remaining = deadline - mClock.getElapsedSinceBootMillis();
+                if (remaining <= 0) {
+                    throw new IOException("Timed out waiting for the store file writes");
+                }
+                try {
+                    mLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for the writes");
+                }
+            }
+            IOException failure = mWriteFailure;
+            mWriteFailure = null;
+            if (failure != null) throw failure;
+        }
+    }
+
+    /**
+     * Dump the writer stats.
+     */
+    public void dump(PrintWriter pw) {
+        synchronized (mLock) {
+            pw.println("WifiConfigStoreWriter: pending=" + mPendingWrites.size()
+                    + " writes=" + mNumWrites
+                    + " coalesced=" + mNumCoalescedWrites
+                    + " failed=" + mNumFailedWrites);
+        }
+    }
+}
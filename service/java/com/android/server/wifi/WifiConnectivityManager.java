@@ -44,6 +44,8 @@ import android.util.Log;
 
 import com.android.internal.annotations.GuardedBy;
 import com.android.internal.annotations.VisibleForTesting;
+import com.android.server.wifi.scanner.ScanResultDelta;
+import com.android.server.wifi.scanner.ScanResultDeltaPublisher;
 import com.android.server.wifi.util.ScanResultUtil;
 import com.android.wifi.resources.R;
 
@@ -199,6 +201,8 @@ public class WifiConnectivityManager {
 
     private int mCurrentSingleScanScheduleIndex;
     private WifiChannelUtilization mWifiChannelUtilization;
+    private PartialScanChannelPlanner mPartialScanChannelPlanner;
+    private PnoNetworkListBuilder mPnoNetworkListBuilder;
     // Cached WifiCandidates used in high mobility state to avoid connecting to APs that are
     // moving relative to the user.
     private CachedWifiCandidates mCachedWifiCandidates = null;
@@ -308,6 +312,12 @@ public class WifiConnectivityManager {
         Set<String> bssidBlocklist = mBssidBlocklistMonitor.updateAndGetBssidBlocklistForSsid(
                 mWifiInfo.getSSID());
 
+        // Learn the channels of the connected network even if network selection is skipped.
+        if (isFullScan && mWifiState == WIFI_STATE_CONNECTED && isPartialScanPlannerEnabled()) {
+            mPartialScanChannelPlanner.updateFromFullBandScan(mWifiInfo.getNetworkId(),
+                    mWifiInfo.getSSID(), mWifiInfo.getBSSID(), scanDetails);
+        }
+
         if (mStateMachine.isSupplicantTransientState()) {
             localLog(listenerName
                     + " onResults: No network selection because supplicantTransientState is "
@@ -451,15 +461,63 @@ public class WifiConnectivityManager {
     // Note: This is the listener for all the available single scan results,
     //       including the ones initiated by WifiConnectivityManager and
     //       other modules.
-    private class AllSingleScanListener implements WifiScanner.ScanListener {
+    //
+    // When scan result deltas are enabled, full band results are processed from the
+    // ScanResultDelta published after them, which lets the ScanDetails of BSSIDs whose beacon
+    // did not change be reused instead of being parsed again. Partial scan results keep being
+    // processed from this listener, reusing the ScanDetails of the last delta where possible.
+    private class AllSingleScanListener implements WifiScanner.ScanListener,
+            ScanResultDeltaPublisher.Listener {
         private List<ScanDetail> mScanDetails = new ArrayList<ScanDetail>();
+        private List<ScanResult> mPendingScanResults = new ArrayList<>();
+        private Map<String, ScanDetail> mScanDetailsByBssid = new ArrayMap<>();
+        private boolean mUseScanResultDelta = false;
         private int mNumScanResultsIgnoredDueToSingleRadioChain = 0;
 
         public void clearScanDetails() {
             mScanDetails.clear();
+            mPendingScanResults.clear();
             mNumScanResultsIgnoredDueToSingleRadioChain = 0;
         }
 
+        public void setUseScanResultDelta(boolean useScanResultDelta) {
+            mUseScanResultDelta = useScanResultDelta;
+        }
+
+        private boolean shouldIgnoreSingleRadioChainResult(ScanResult scanResult) {
+            // When the scan result has radio chain info, ensure we throw away scan results
+            // not received with both radio chains (if |mUseSingleRadioChainScanResults| is
+            // false).
+            return !mContext.getResources().getBoolean(
+                    R.bool.config_wifi_framework_use_single_radio_chain_scan_results_network_selection)
+                    && scanResult.radioChainInfos != null
+                    && scanResult.radioChainInfos.length == 1;
+        }
+
+        @Override
+        public void onScanResultDelta(ScanResultDelta delta) {
+            delta.applyToScanDetails(mScanDetailsByBssid);
+            if (!mWifiEnabled || !mAutoJoinEnabled) {
+                clearScanDetails();
+                mWaitForFullBandScanResults = false;
+                return;
+            }
+            // We treat any full band scans (with DFS or not) as "full".
+            if (!WifiScanner.isFullBandScan(delta.getBandScanned(), true)) {
+                return;
+            }
+            clearScanDetails();
+            for (ScanResult scanResult : delta.getResults()) {
+                if (shouldIgnoreSingleRadioChainResult(scanResult)) {
+                    // Keep track of the number of dropped scan results for logging.
+                    mNumScanResultsIgnoredDueToSingleRadioChain++;
+                    continue;
+                }
+                mScanDetails.add(mScanDetailsByBssid.get(scanResult.BSSID));
+            }
+            processScanDetails(true, true);
+        }
+
         @Override
         public void onSuccess() {
         }
@@ -488,6 +546,29 @@ public class WifiConnectivityManager {
                 isFullBandScanResults =
                         WifiScanner.isFullBandScan(results[0].getBandScanned(), true);
             }
+            if (mUseScanResultDelta) {
+                if (isFullBandScanResults) {
+                    // Processed from the delta published right after these results.
+                    clearScanDetails();
+                    return;
+                }
+                for (ScanResult scanResult : mPendingScanResults) {
+                    ScanDetail previous = mScanDetailsByBssid.get(scanResult.BSSID);
+                    if (previous != null && previous.getNetworkDetail() != null
+                            && ScanResultDelta.isSameBeacon(previous.getScanResult(),
+                                    scanResult)) {
+                        mScanDetails.add(new ScanDetail(scanResult,
+                                previous.getNetworkDetail()));
+                    } else {
+                        mScanDetails.add(ScanResultUtil.toScanDetail(scanResult));
+                    }
+                }
+                mPendingScanResults.clear();
+            }
+            processScanDetails(isFullBandScanResults, results != null && results.length > 0);
+        }
+
+        private void processScanDetails(boolean isFullBandScanResults, boolean hasResults) {
             // Full band scan results only.
             if (mWaitForFullBandScanResults) {
                 if (!isFullBandScanResults) {
@@ -498,7 +579,7 @@ public class WifiConnectivityManager {
                     mWaitForFullBandScanResults = false;
                 }
             }
-            if (results != null && results.length > 0) {
+            if (hasResults) {
                 mWifiMetrics.incrementAvailableNetworksHistograms(mScanDetails,
                         isFullBandScanResults);
             }
@@ -559,17 +640,17 @@ public class WifiConnectivityManager {
                         + " capabilities " + fullScanResult.capabilities);
             }
 
-            // When the scan result has radio chain info, ensure we throw away scan results
-            // not received with both radio chains (if |mUseSingleRadioChainScanResults| is false).
-            if (!mContext.getResources().getBoolean(
-                    R.bool.config_wifi_framework_use_single_radio_chain_scan_results_network_selection)
-                    && fullScanResult.radioChainInfos != null
-                    && fullScanResult.radioChainInfos.length == 1) {
+            if (shouldIgnoreSingleRadioChainResult(fullScanResult)) {
                 // Keep track of the number of dropped scan results for logging.
                 mNumScanResultsIgnoredDueToSingleRadioChain++;
                 return;
             }
 
+            if (mUseScanResultDelta) {
+                // The band is only known once all results are received, defer the parsing.
+                mPendingScanResults.add(fullScanResult);
+                return;
+            }
             mScanDetails.add(ScanResultUtil.toScanDetail(fullScanResult));
         }
     }
@@ -727,6 +808,9 @@ public class WifiConnectivityManager {
         }
         @Override
         public void onNetworkRemoved(WifiConfiguration config) {
+            if (mPartialScanChannelPlanner != null) {
+                mPartialScanChannelPlanner.removeNetwork(config.networkId);
+            }
             triggerScanOnNetworkChanges();
         }
         @Override
@@ -792,9 +876,15 @@ public class WifiConnectivityManager {
         mBssidBlocklistMonitor = mWifiInjector.getBssidBlocklistMonitor();
         mWifiChannelUtilization = mWifiInjector.getWifiChannelUtilizationScan();
         mNetworkSelector.setWifiChannelUtilization(mWifiChannelUtilization);
+        mPartialScanChannelPlanner = mWifiInjector.getPartialScanChannelPlanner();
+        mPnoNetworkListBuilder = mWifiInjector.getPnoNetworkListBuilder();
         mWifiScoreCard = scoreCard;
     }
 
+    private boolean isPartialScanPlannerEnabled() {
+        return mPartialScanChannelPlanner != null && mPartialScanChannelPlanner.isEnabled();
+    }
+
     /** Initialize single scanning schedules, and validate them */
     private int[] initializeScanningSchedule(int state) {
         int[] scheduleSec;
@@ -1038,6 +1128,15 @@ public class WifiConnectivityManager {
         // Then get channels for the network.
         addChannelFromWifiScoreCard(channelSet, config, maxNumActiveChannelsForPartialScans,
                 CHANNEL_LIST_AGE_MS);
+        if (isPartialScanPlannerEnabled()) {
+            // Prefer the channels that historically produced candidates, if known.
+            Set<Integer> plannedChannelSet = mPartialScanChannelPlanner.planChannels(networkId,
+                    mWifiInfo.getFrequency(), maxNumActiveChannelsForPartialScans,
+                    channelSet.size());
+            if (plannedChannelSet != null) {
+                return plannedChannelSet;
+            }
+        }
         return channelSet;
     }
 
@@ -1425,6 +1524,16 @@ public class WifiConnectivityManager {
         Collections.sort(networks, mConfigManager.getScanListComparator());
         boolean pnoFrequencyCullingEnabled = mContext.getResources()
                 .getBoolean(R.bool.config_wifiPnoFrequencyCullingEnabled);
+        if (mPnoNetworkListBuilder != null && mPnoNetworkListBuilder.isEnabled()) {
+            List<PnoSettings.PnoNetwork> pnoList = mPnoNetworkListBuilder.build(networks,
+                    mContext.getResources().getInteger(R.integer.config_wifiMaxPnoSsidCount),
+                    MAX_PNO_SCAN_FREQUENCY_AGE_MS, pnoFrequencyCullingEnabled);
+            for (PnoSettings.PnoNetwork pnoNetwork : pnoList) {
+                localLog("retrievePnoNetworkList " + pnoNetwork.ssid + ":"
+                        + Arrays.toString(pnoNetwork.frequencies));
+            }
+            return pnoList;
+        }
 
         List<PnoSettings.PnoNetwork> pnoList = new ArrayList<>();
         Set<WifiScanner.PnoSettings.PnoNetwork> pnoSet = new HashSet<>();
@@ -1865,6 +1974,12 @@ public class WifiConnectivityManager {
         checkNotNull(mScanner);
         // Register for all single scan results
         mScanner.registerScanListener(new HandlerExecutor(mEventHandler), mAllSingleScanListener);
+        ScanResultDeltaPublisher deltaPublisher = mWifiInjector.getScanResultDeltaPublisher();
+        if (deltaPublisher != null && deltaPublisher.isEnabled()) {
+            mAllSingleScanListener.setUseScanResultDelta(true);
+            deltaPublisher.registerListener(new HandlerExecutor(mEventHandler),
+                    mAllSingleScanListener);
+        }
     }
 
     /**
@@ -1972,5 +2087,12 @@ public class WifiConnectivityManager {
         pw.println("WifiConnectivityManager - Log End ----");
         mOpenNetworkNotifier.dump(fd, pw, args);
         mBssidBlocklistMonitor.dump(fd, pw, args);
+        mNetworkSelector.dump(pw);
+        if (mPartialScanChannelPlanner != null) {
+            mPartialScanChannelPlanner.dump(pw);
+        }
+        if (mPnoNetworkListBuilder != null) {
+            mPnoNetworkListBuilder.dump(pw);
+        }
     }
 }
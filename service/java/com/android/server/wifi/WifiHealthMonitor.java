@@ -45,6 +45,8 @@ import com.android.server.wifi.proto.WifiScoreCardProto.SystemInfoStats;
 import com.android.server.wifi.proto.WifiStatsLog;
 import com.android.server.wifi.proto.nano.WifiMetricsProto.HealthMonitorFailureStats;
 import com.android.server.wifi.proto.nano.WifiMetricsProto.HealthMonitorMetrics;
+import com.android.server.wifi.scanner.ScanResultDelta;
+import com.android.server.wifi.scanner.ScanResultDeltaPublisher;
 import com.android.server.wifi.util.ScanResultUtil;
 
 import com.google.protobuf.InvalidProtocolBufferException;
@@ -55,7 +57,9 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.concurrent.NotThreadSafe;
 
@@ -114,6 +118,11 @@ public class WifiHealthMonitor {
     private boolean mWifiEnabled;
     private WifiSystemInfoStats mWifiSystemInfoStats;
     private ScanStats mFirstScanStats = new ScanStats();
+    // Band of each BSSID of the last full band scan and the resulting per band counts, patched from
+    // scan result deltas when they are enabled.
+    private final Map<String, Boolean> mIs24GHzByBssid = new HashMap<>();
+    private int mNumBssid2g = 0;
+    private int mNumBssidAbove2g = 0;
     // Detected significant increase of failure stats between daily data and historical data
     private FailureStats mFailureStatsIncrease = new FailureStats();
     // Detected significant decrease of failure stats between daily data and historical data
@@ -242,25 +251,89 @@ public class WifiHealthMonitor {
         if (mScanner != null) return;
         mScanner = mWifiInjector.getWifiScanner();
         if (mScanner == null) return;
+        ScanResultDeltaPublisher deltaPublisher = mWifiInjector.getScanResultDeltaPublisher();
+        if (deltaPublisher != null && deltaPublisher.isEnabled()) {
+            // Only the band of each BSSID is needed, so there is no need to parse the full
+            // results into ScanDetails.
+            deltaPublisher.registerListener(mHandler::post, this::handleScanResultDelta);
+            return;
+        }
         // Register for all single scan results
         mScanner.registerScanListener(new ScanListener());
     }
 
+    /**
+     * Patch the per band BSSID counts from |delta|, and report them if the delta is the result of
+     * a full band scan. Every delta is applied, even while wifi is disabled, to keep the counts in
+     * sync with the scanner.
+     */
+    private void handleScanResultDelta(ScanResultDelta delta) {
+        for (ScanResult scanResult : delta.getRemoved()) {
+            Boolean is24GHz = mIs24GHzByBssid.remove(scanResult.BSSID);
+            if (is24GHz != null) {
+                updateBssidCount(is24GHz, -1);
+            }
+        }
+        for (ScanResult scanResult : delta.getAdded()) {
+            putBssidBand(scanResult);
+        }
+        // Refreshed BSSIDs are on the same frequency, only updated ones may have changed band.
+        for (ScanResult scanResult : delta.getUpdated()) {
+            putBssidBand(scanResult);
+        }
+        if (!mWifiEnabled || !WifiScanner.isFullBandScan(delta.getBandScanned(), true)) {
+            return;
+        }
+        ScanStats scanStats = startScanStats();
+        scanStats.setNumBssidLastScan2g(mNumBssid2g);
+        scanStats.setNumBssidLastScanAbove2g(mNumBssidAbove2g);
+        finishScanStats(scanStats);
+    }
+
+    private void putBssidBand(ScanResult scanResult) {
+        boolean is24GHz = scanResult.is24GHz();
+        Boolean previous = mIs24GHzByBssid.put(scanResult.BSSID, is24GHz);
+        if (previous != null) {
+            updateBssidCount(previous, -1);
+        }
+        updateBssidCount(is24GHz, 1);
+    }
+
+    private void updateBssidCount(boolean is24GHz, int change) {
+        if (is24GHz) {
+            mNumBssid2g += change;
+        } else {
+            mNumBssidAbove2g += change;
+        }
+    }
+
     /**
      * Handle scan results when scan results come back from WiFi scanner.
      */
     private void handleScanResults(List<ScanDetail> scanDetails) {
+        ScanStats scanStats = startScanStats();
+        for (ScanDetail scanDetail : scanDetails) {
+            countScanResult(scanStats, scanDetail.getScanResult());
+        }
+        finishScanStats(scanStats);
+    }
+
+    private ScanStats startScanStats() {
         ScanStats scanStats = mWifiSystemInfoStats.getCurrScanStats();
         scanStats.clear();
         scanStats.setLastScanTimeMs(mClock.getWallClockMillis());
-        for (ScanDetail scanDetail : scanDetails) {
-            ScanResult scanResult = scanDetail.getScanResult();
-            if (scanResult.is24GHz()) {
-                scanStats.incrementNumBssidLastScan2g();
-            } else {
-                scanStats.incrementNumBssidLastScanAbove2g();
-            }
+        return scanStats;
+    }
+
+    private static void countScanResult(ScanStats scanStats, ScanResult scanResult) {
+        if (scanResult.is24GHz()) {
+            scanStats.incrementNumBssidLastScan2g();
+        } else {
+            scanStats.incrementNumBssidLastScanAbove2g();
         }
+    }
+
+    private void finishScanStats(ScanStats scanStats) {
         if (mFirstScanStats.getLastScanTimeMs() == TS_NONE) {
             mFirstScanStats.copy(scanStats);
         }
@@ -358,7 +431,8 @@ public class WifiHealthMonitor {
         int connectionDurationSec = 0;
         // Set the alarm for the next day
         scheduleDailyDetectionAlarm(DAILY_DETECTION_INTERVAL_MS);
-        List<WifiConfiguration> configuredNetworks = mWifiConfigManager.getConfiguredNetworks();
+        List<WifiConfiguration> configuredNetworks =
+                mWifiConfigManager.getConfiguredNetworksSnapshot();
         for (WifiConfiguration network : configuredNetworks) {
             if (isInvalidConfiguredNetwork(network)) {
                 continue;
@@ -510,7 +584,8 @@ public class WifiHealthMonitor {
      * Issue NetworkStats read request for all configured networks.
      */
     private void requestReadAllNetworks() {
-        List<WifiConfiguration> configuredNetworks = mWifiConfigManager.getConfiguredNetworks();
+        List<WifiConfiguration> configuredNetworks =
+                mWifiConfigManager.getConfiguredNetworksSnapshot();
         for (WifiConfiguration network : configuredNetworks) {
             if (isInvalidConfiguredNetwork(network)) {
                 continue;
@@ -531,7 +606,8 @@ public class WifiHealthMonitor {
      * Update NetworkStats of all configured networks after a SW build change is detected
      */
     private void updateAllNetworkAfterSwBuildChange() {
-        List<WifiConfiguration> configuredNetworks = mWifiConfigManager.getConfiguredNetworks();
+        List<WifiConfiguration> configuredNetworks =
+                mWifiConfigManager.getConfiguredNetworksSnapshot();
         for (WifiConfiguration network : configuredNetworks) {
             if (isInvalidConfiguredNetwork(network)) {
                 continue;
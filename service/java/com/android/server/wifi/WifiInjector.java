@@ -53,6 +53,7 @@ import com.android.server.wifi.p2p.WifiP2pMetrics;
 import com.android.server.wifi.p2p.WifiP2pMonitor;
 import com.android.server.wifi.p2p.WifiP2pNative;
 import com.android.server.wifi.rtt.RttMetrics;
+import com.android.server.wifi.scanner.ScanResultDeltaPublisher;
 import com.android.server.wifi.util.LruConnectionTracker;
 import com.android.server.wifi.util.NetdWrapper;
 import com.android.server.wifi.util.SettingsMigrationDataHolder;
@@ -141,6 +142,7 @@ public class WifiInjector {
     private final SelfRecovery mSelfRecovery;
     private final WakeupController mWakeupController;
     private final ScanRequestProxy mScanRequestProxy;
+    private final ScanResultDeltaPublisher mScanResultDeltaPublisher;
     private final SarManager mSarManager;
     private final BaseWifiDiagnostics mWifiDiagnostics;
     private final WifiDataStall mWifiDataStall;
@@ -157,6 +159,8 @@ public class WifiInjector {
     private final WifiCarrierInfoManager mWifiCarrierInfoManager;
     private WifiChannelUtilization mWifiChannelUtilizationScan;
     private WifiChannelUtilization mWifiChannelUtilizationConnected;
+    private PartialScanChannelPlanner mPartialScanChannelPlanner;
+    private PnoNetworkListBuilder mPnoNetworkListBuilder;
     private final KeyStore mKeyStore;
     private final ConnectionFailureNotificationBuilder mConnectionFailureNotificationBuilder;
     private final ThroughputPredictor mThroughputPredictor;
@@ -223,6 +227,8 @@ public class WifiInjector {
                 awareMetrics, rttMetrics, new WifiPowerMetrics(mBatteryStats), mWifiP2pMetrics,
                 mDppMetrics);
         mDeviceConfigFacade = new DeviceConfigFacade(mContext, wifiHandler, mWifiMetrics);
+        mScanResultDeltaPublisher = new ScanResultDeltaPublisher(
+                mDeviceConfigFacade.isScanResultDeltaEnabled());
         // Modules interacting with Native.
         mWifiMonitor = new WifiMonitor(this);
         mHalDeviceManager = new HalDeviceManager(mClock, wifiHandler);
@@ -258,6 +264,19 @@ public class WifiInjector {
         // New config store
         mWifiConfigStore = new WifiConfigStore(mContext, wifiHandler, mClock, mWifiMetrics,
                 WifiConfigStore.createSharedFiles(mFrameworkFacade.isNiapModeOn(mContext)));
+        mWifiConfigStore.setBinaryFormatEnabled(mDeviceConfigFacade.isBinaryConfigStoreEnabled());
+        if (mDeviceConfigFacade.isAsyncConfigStoreWriteEnabled()) {
+            HandlerThread configStoreWriterThread = new HandlerThread("WifiConfigStoreWriter");
+            configStoreWriterThread.start();
+            mWifiConfigStore.setWriter(new WifiConfigStoreWriter(
+                    new Handler(configStoreWriterThread.getLooper()), mClock, mWifiMetrics));
+        }
+        if (mDeviceConfigFacade.isParallelConfigStoreReadEnabled()) {
+            HandlerThread configStoreReaderThread = new HandlerThread("WifiConfigStoreReader");
+            configStoreReaderThread.start();
+            mWifiConfigStore.setReadExecutor(
+                    new HandlerExecutor(new Handler(configStoreReaderThread.getLooper())));
+        }
         SubscriptionManager subscriptionManager =
                 mContext.getSystemService(SubscriptionManager.class);
         mWifiCarrierInfoManager = new WifiCarrierInfoManager(makeTelephonyManager(),
@@ -290,6 +309,17 @@ public class WifiInjector {
         mWifiNetworkSelector = new WifiNetworkSelector(mContext, mWifiScoreCard, mScoringParams,
                 mWifiConfigManager, mClock, mConnectivityLocalLog, mWifiMetrics, mWifiNative,
                 mThroughputPredictor);
+        if (mDeviceConfigFacade.isConcurrentNetworkNominationEnabled()) {
+            // Only the saved network nominator runs concurrently, one thread is enough.
+            HandlerThread nominationThread = new HandlerThread("WifiNetworkNomination");
+            nominationThread.start();
+            mWifiNetworkSelector.setNominationExecutor(
+                    new HandlerExecutor(new Handler(nominationThread.getLooper())));
+        }
+        if (mDeviceConfigFacade.isThroughputPredictionCacheEnabled()) {
+            mWifiNetworkSelector.setThroughputPredictionCache(
+                    new ThroughputPredictionCache(mThroughputPredictor));
+        }
         CompatibilityScorer compatibilityScorer = new CompatibilityScorer(mScoringParams);
         mWifiNetworkSelector.registerCandidateScorer(compatibilityScorer);
         ScoreCardBasedScorer scoreCardBasedScorer = new ScoreCardBasedScorer(mScoringParams);
@@ -620,6 +650,10 @@ public class WifiInjector {
                 mScoringParams);
         mWifiMetrics.setBssidBlocklistMonitor(mBssidBlocklistMonitor);
         mWifiChannelUtilizationScan = new WifiChannelUtilization(mClock, mContext);
+        mPartialScanChannelPlanner = new PartialScanChannelPlanner(mWifiChannelUtilizationScan,
+                mDeviceConfigFacade.isPartialScanChannelPlannerEnabled());
+        mPnoNetworkListBuilder = new PnoNetworkListBuilder(mWifiConfigManager, mWifiScoreCard,
+                mClock, mDeviceConfigFacade.isCompactPnoNetworkListEnabled());
         return new WifiConnectivityManager(mContext, getScoringParams(),
                 clientModeImpl, this,
                 mWifiConfigManager, mWifiNetworkSuggestionsManager, clientModeImpl.getWifiInfo(),
@@ -774,6 +808,10 @@ public class WifiInjector {
         return mScanRequestProxy;
     }
 
+    public ScanResultDeltaPublisher getScanResultDeltaPublisher() {
+        return mScanResultDeltaPublisher;
+    }
+
     public Runtime getJavaRuntime() {
         return Runtime.getRuntime();
     }
@@ -813,6 +851,14 @@ public class WifiInjector {
         return mWifiChannelUtilizationScan;
     }
 
+    public PartialScanChannelPlanner getPartialScanChannelPlanner() {
+        return mPartialScanChannelPlanner;
+    }
+
+    public PnoNetworkListBuilder getPnoNetworkListBuilder() {
+        return mPnoNetworkListBuilder;
+    }
+
     public WifiNetworkScoreCache getWifiNetworkScoreCache() {
         return mWifiNetworkScoreCache;
     }
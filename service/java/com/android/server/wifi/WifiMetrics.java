@@ -234,6 +234,7 @@ public class WifiMetrics {
 
     public static final int MAX_STA_EVENTS = 768;
     @VisibleForTesting static final int MAX_USER_ACTION_EVENTS = 200;
+    @VisibleForTesting static final int MAX_BOOT_TIMELINE_EVENTS = 20;
     private LinkedList<StaEventWithTime> mStaEventList = new LinkedList<>();
     private LinkedList<UserActionEventWithTime> mUserActionEventList = new LinkedList<>();
     private WifiStatusBuilder mWifiStatusBuilder = new WifiStatusBuilder();
@@ -418,6 +419,15 @@ public class WifiMetrics {
     /** WifiConfigStore write duration histogram. */
     private SparseIntArray mWifiConfigStoreWriteDurationHistogram = new SparseIntArray();
 
+    /** WifiConfigStore write latency histogram, from queuing to the end of the write. */
+    private SparseIntArray mWifiConfigStoreWriteLatencyHistogram = new SparseIntArray();
+
+    /** WifiConfigStore write queue depth counts. */
+    private final IntCounter mWifiConfigStoreWriteQueueDepthCounts = new IntCounter();
+
+    /** Wifi boot steps, with their start time and duration. Only dumped, and kept on clear. */
+    private final LinkedList<String> mBootTimeline = new LinkedList<>();
+
     /** New  API surface metrics */
     private final WifiNetworkRequestApiLog mWifiNetworkRequestApiLog =
             new WifiNetworkRequestApiLog();
@@ -3749,6 +3759,14 @@ public class WifiMetrics {
                         + mWifiConfigStoreReadDurationHistogram.toString());
                 pw.println("mWifiConfigStoreWriteDurationHistogram:"
                         + mWifiConfigStoreWriteDurationHistogram.toString());
+                pw.println("mWifiConfigStoreWriteLatencyHistogram:"
+                        + mWifiConfigStoreWriteLatencyHistogram.toString());
+                pw.println("mWifiConfigStoreWriteQueueDepthCounts:"
+                        + mWifiConfigStoreWriteQueueDepthCounts);
+                pw.println("mBootTimeline:");
+                for (String event : mBootTimeline) {
+                    pw.println("  " + event);
+                }
 
                 pw.println("mLinkProbeSuccessRssiCounts:" + mLinkProbeSuccessRssiCounts);
                 pw.println("mLinkProbeFailureRssiCounts:" + mLinkProbeFailureRssiCounts);
@@ -4378,6 +4396,11 @@ public class WifiMetrics {
             mWifiLogProto.wifiConfigStoreIo.writeDurations =
                     makeWifiConfigStoreIODurationBucketArray(
                             mWifiConfigStoreWriteDurationHistogram);
+            mWifiLogProto.wifiConfigStoreIo.writeLatencies =
+                    makeWifiConfigStoreIODurationBucketArray(
+                            mWifiConfigStoreWriteLatencyHistogram);
+            mWifiLogProto.wifiConfigStoreIo.writeQueueDepths =
+                    mWifiConfigStoreWriteQueueDepthCounts.toProto();
 
             LinkProbeStats linkProbeStats = new LinkProbeStats();
             linkProbeStats.successRssiCounts = mLinkProbeSuccessRssiCounts.toProto();
@@ -4700,6 +4723,8 @@ public class WifiMetrics {
             mMeteredNetworkStatsBuilder.clear();
             mWifiConfigStoreReadDurationHistogram.clear();
             mWifiConfigStoreWriteDurationHistogram.clear();
+            mWifiConfigStoreWriteLatencyHistogram.clear();
+            mWifiConfigStoreWriteQueueDepthCounts.clear();
             mLinkProbeSuccessRssiCounts.clear();
             mLinkProbeFailureRssiCounts.clear();
             mLinkProbeSuccessLinkSpeedCounts.clear();
@@ -6089,6 +6114,46 @@ public class WifiMetrics {
         }
     }
 
+    /**
+     * Update wifi config store write latency, from queuing the write to the end of the write.
+     *
+     * @param timeMs Time it took to complete the operation, in milliseconds
+     */
+    public void noteWifiConfigStoreWriteLatency(int timeMs) {
+        synchronized (mLock) {
+            MetricsUtils.addValueToLinearHistogram(timeMs, mWifiConfigStoreWriteLatencyHistogram,
+                    WIFI_CONFIG_STORE_IO_DURATION_BUCKET_RANGES_MS);
+        }
+    }
+
+    /**
+     * Update wifi config store write queue depth.
+     *
+     * @param depth Number of store files with a write pending when a new write is queued
+     */
+    public void noteWifiConfigStoreWriteQueueDepth(int depth) {
+        synchronized (mLock) {
+            mWifiConfigStoreWriteQueueDepthCounts.increment(depth);
+        }
+    }
+
+    /**
+     * Add a step of the wifi boot to the boot timeline.
+     *
+     * @param name Name of the step
+     * @param startTimeMs Time the step started at, in milliseconds since boot
+     * @param durationMs Time it took to complete the step, in milliseconds
+     */
+    public void noteBootTimelineEvent(String name, long startTimeMs, long durationMs) {
+        synchronized (mLock) {
+            if (mBootTimeline.size() >= MAX_BOOT_TIMELINE_EVENTS) {
+                mBootTimeline.removeFirst();
+            }
+            mBootTimeline.add(name + ": start=" + startTimeMs + "ms duration=" + durationMs
+                    + "ms");
+        }
+    }
+
     /**
      * Logs the decision of a network selection algorithm when compared against another network
      * selection algorithm.
@@ -20,6 +20,7 @@ import static android.net.wifi.WifiManager.WIFI_FEATURE_OWE;
 
 import android.annotation.IntDef;
 import android.annotation.NonNull;
+import android.annotation.Nullable;
 import android.net.MacAddress;
 import android.net.TrafficStats;
 import android.net.apf.ApfCapabilities;
@@ -40,10 +41,13 @@ import android.util.ArraySet;
 import android.util.Log;
 
 import com.android.internal.annotations.Immutable;
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.util.HexDump;
 import com.android.server.wifi.hotspot2.NetworkDetail;
+import com.android.server.wifi.hotspot2.Utils;
 import com.android.server.wifi.util.FrameParser;
 import com.android.server.wifi.util.InformationElementUtil;
+import com.android.server.wifi.util.InformationElementView;
 import com.android.server.wifi.util.NativeUtil;
 import com.android.server.wifi.util.NetdWrapper;
 import com.android.server.wifi.util.NetdWrapper.NetdEventObserver;
@@ -89,6 +93,7 @@ public class WifiNative {
     private final WifiInjector mWifiInjector;
     private NetdWrapper mNetdWrapper;
     private boolean mVerboseLoggingEnabled = false;
+    private final ScanResultParseCache mScanResultParseCache = new ScanResultParseCache();
 
     public WifiNative(WifiVendorHal vendorHal,
                       SupplicantStaIfaceHal staIfaceHal, HostapdHal hostapdHal,
@@ -1474,6 +1479,25 @@ public class WifiNative {
     }
 
     private ArrayList<ScanDetail> convertNativeScanResults(List<NativeScanResult> nativeResults) {
+        ArrayList<ScanDetail> results = convertNativeScanResults(nativeResults,
+                mScanResultParseCache, isEnhancedOpenSupported());
+        if (mVerboseLoggingEnabled) {
+            Log.d(TAG, "get " + results.size() + " scan results from wificond");
+        }
+
+        return results;
+    }
+
+    /**
+     * Convert the native scan results reported by wificond to ScanDetails. Static so that the
+     * benchmarks measure this code.
+     *
+     * @param cache Parsed state of the previous scans, or null to always parse.
+     */
+    @VisibleForTesting
+    static ArrayList<ScanDetail> convertNativeScanResults(
+            @NonNull List<NativeScanResult> nativeResults, @Nullable ScanResultParseCache cache,
+            boolean isOweSupported) {
         ArrayList<ScanDetail> results = new ArrayList<>();
         for (NativeScanResult result : nativeResults) {
             WifiSsid wifiSsid = WifiSsid.createFromByteArray(result.getSsid());
@@ -1483,23 +1507,17 @@ public class WifiNative {
                 continue;
             }
             String bssid = bssidMac.toString();
-            ScanResult.InformationElement[] ies =
-                    InformationElementUtil.parseInformationElements(result.getInformationElements());
-            InformationElementUtil.Capabilities capabilities =
-                    new InformationElementUtil.Capabilities();
-            capabilities.from(ies, result.getCapabilities(), isEnhancedOpenSupported());
-            String flags = capabilities.generateCapabilitiesString();
-            NetworkDetail networkDetail;
-            try {
-                networkDetail = new NetworkDetail(bssid, ies, null, result.getFrequencyMhz());
-            } catch (IllegalArgumentException e) {
-                Log.e(TAG, "Illegal argument for scan result with bssid: " + bssid, e);
+            ScanResultParseCache.Entry parsed = parseScanResult(cache, bssid, result,
+                    isOweSupported);
+            if (parsed == null) {
                 continue;
             }
+            NetworkDetail networkDetail = parsed.networkDetail;
 
-            ScanDetail scanDetail = new ScanDetail(networkDetail, wifiSsid, bssid, flags,
-                    result.getSignalMbm() / 100, result.getFrequencyMhz(), result.getTsf(), ies,
-                    null, result.getInformationElements());
+            ScanDetail scanDetail = new ScanDetail(networkDetail, wifiSsid, bssid,
+                    parsed.capabilities, result.getSignalMbm() / 100, result.getFrequencyMhz(),
+                    result.getTsf(), parsed.informationElements, null,
+                    result.getInformationElements());
             ScanResult scanResult = scanDetail.getScanResult();
             scanResult.setWifiStandard(wifiModeToWifiStandard(networkDetail.getWifiMode()));
 
@@ -1515,11 +1533,57 @@ public class WifiNative {
             }
             results.add(scanDetail);
         }
-        if (mVerboseLoggingEnabled) {
-            Log.d(TAG, "get " + results.size() + " scan results from wificond");
+        return results;
+    }
+
+    /**
+     * Parse the IEs of a native scan result, reusing the result of a previous scan of the same
+     * BSSID when its IEs have not changed.
+     *
+     * @param cache Parsed state of the previous scans, or null to always parse.
+     * @return the parsed state, or null if the IEs are malformed.
+     */
+    @VisibleForTesting
+    static @Nullable ScanResultParseCache.Entry parseScanResult(
+            @Nullable ScanResultParseCache cache, @NonNull String bssid,
+            @NonNull NativeScanResult result, boolean isOweSupported) {
+        long bssidLong = Utils.parseMac(bssid);
+        byte[] rawIes = result.getInformationElements();
+        if (cache != null) {
+            ScanResultParseCache.Entry entry = cache.get(bssidLong, rawIes,
+                    result.getFrequencyMhz(), result.getCapabilities(), isOweSupported);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        // Index the raw IEs once; payloads are only copied out as they are parsed, and the
+        // copies are shared with the final ScanResult.informationElements array.
+        InformationElementView ieView = InformationElementView.parse(rawIes);
+        NetworkDetail networkDetail;
+        try {
+            networkDetail = new NetworkDetail(bssid, ieView, null, result.getFrequencyMhz());
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Illegal argument for scan result with bssid: " + bssid, e);
+            return null;
         }
+        ScanResult.InformationElement[] ies = ieView.toInformationElements();
+        InformationElementUtil.Capabilities capabilities =
+                new InformationElementUtil.Capabilities();
+        capabilities.from(ies, result.getCapabilities(), isOweSupported);
+        ScanResultParseCache.Entry entry = new ScanResultParseCache.Entry(networkDetail, ies,
+                capabilities.generateCapabilitiesString(), rawIes, result.getFrequencyMhz(),
+                result.getCapabilities(), isOweSupported);
+        if (cache != null) {
+            cache.put(bssidLong, entry);
+        }
+        return entry;
+    }
 
-        return results;
+    /**
+     * Dump the statistics of the scan result parse cache.
+     */
+    public void dumpScanResultParseCache(PrintWriter pw) {
+        mScanResultParseCache.dump(pw);
     }
 
     @WifiAnnotations.WifiStandard
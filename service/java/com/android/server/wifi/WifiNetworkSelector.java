@@ -43,13 +43,18 @@ import com.android.server.wifi.util.InformationElementUtil.BssLoad;
 import com.android.server.wifi.util.ScanResultUtil;
 import com.android.wifi.resources.R;
 
+import java.io.PrintWriter;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -103,9 +108,48 @@ public class WifiNetworkSelector {
     private final WifiNative mWifiNative;
 
     private final Map<String, WifiCandidates.CandidateScorer> mCandidateScorers = new ArrayMap<>();
+
+    /** Reasons a scan result is filtered out before the nominators run. */
+    @VisibleForTesting
+    public static final int FILTER_REASON_NONE = 0;
+    @VisibleForTesting
+    public static final int FILTER_REASON_INVALID_SSID = 1;
+    @VisibleForTesting
+    public static final int FILTER_REASON_BLOCKLISTED = 2;
+    @VisibleForTesting
+    public static final int FILTER_REASON_LOW_RSSI_24GHZ = 3;
+    @VisibleForTesting
+    public static final int FILTER_REASON_LOW_RSSI_5GHZ = 4;
+    @VisibleForTesting
+    public static final int FILTER_REASON_LOW_RSSI_6GHZ = 5;
+    @VisibleForTesting
+    public static final int FILTER_REASON_LOW_RSSI_OTHER = 6;
+    @VisibleForTesting
+    public static final int FILTER_REASON_MBO_ASSOC_DISALLOWED = 7;
+    private static final int NUM_FILTER_REASONS = 8;
+    private static final String[] FILTER_REASON_NAMES = {
+            "kept", "invalidSsid", "blocklisted", "lowRssi2.4GHz", "lowRssi5GHz", "lowRssi6GHz",
+            "lowRssiOther", "mboAssocDisallowed"};
+
+    @IntDef(prefix = {"FILTER_REASON_"}, value = {
+            FILTER_REASON_NONE,
+            FILTER_REASON_INVALID_SSID,
+            FILTER_REASON_BLOCKLISTED,
+            FILTER_REASON_LOW_RSSI_24GHZ,
+            FILTER_REASON_LOW_RSSI_5GHZ,
+            FILTER_REASON_LOW_RSSI_6GHZ,
+            FILTER_REASON_LOW_RSSI_OTHER,
+            FILTER_REASON_MBO_ASSOC_DISALLOWED})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface FilterReason {}
+
+    // Scan results per filter reason, in the last network selection and since boot.
+    private final int[] mLastFilterReasonCounts = new int[NUM_FILTER_REASONS];
+    private final long[] mTotalFilterReasonCounts = new long[NUM_FILTER_REASONS];
     private boolean mIsEnhancedOpenSupportedInitialized = false;
     private boolean mIsEnhancedOpenSupported;
     private ThroughputPredictor mThroughputPredictor;
+    @Nullable private ThroughputPredictionCache mThroughputPredictionCache;
     private boolean mIsBluetoothConnected = false;
     private WifiChannelUtilization mWifiChannelUtilization;
 
@@ -185,7 +229,49 @@ public class WifiNetworkSelector {
         }
     }
 
+    /**
+     * {@link NetworkNominator} which can evaluate the networks on a worker thread, concurrently
+     * with the other nominators, see {@link WifiNetworkSelector#setNominationExecutor(Executor)}.
+     */
+    public interface ConcurrentNetworkNominator extends NetworkNominator {
+        /**
+         * Evaluate the networks from the scan results like {@link #nominateNetworks}, on a worker
+         * thread.
+         *
+         * This must not modify any state, and must read the configured networks from
+         * |configuredNetworks| instead of WifiConfigManager. The connectable networks are kept in
+         * the returned {@link PendingNomination} until the network selection thread finishes it.
+         *
+         * @param configuredNetworks read-only snapshot of the configured networks, taken before
+         *                           any nominator runs
+         * @return the nomination to finish on the network selection thread.
+         */
+        @NonNull PendingNomination nominateNetworksConcurrently(List<ScanDetail> scanDetails,
+                List<WifiConfiguration> configuredNetworks,
+                WifiConfiguration currentNetwork, String currentBssid,
+                boolean connected, boolean untrustedNetworkAllowed);
+
+        /**
+         * Result of {@link #nominateNetworksConcurrently}.
+         */
+        interface PendingNomination {
+            /**
+             * Called on the network selection thread, in nominator registration order, to apply
+             * the changes skipped by {@link #nominateNetworksConcurrently} and report the
+             * connectable networks.
+             *
+             * @param scanDetails           a list of scan details constructed from the scan
+             *                              results
+             * @param onConnectableListener callback to record all of the connectable networks
+             */
+            void finish(List<ScanDetail> scanDetails,
+                    NetworkNominator.OnConnectableListener onConnectableListener);
+        }
+    }
+
     private final List<NetworkNominator> mNominators = new ArrayList<>(3);
+    // Runs the ConcurrentNetworkNominators, or null to run all nominators on the calling thread.
+    @Nullable private Executor mNominationExecutor;
 
     // A helper to log debugging information in the local log buffer, which can
     // be retrieved in bugreport.
@@ -365,70 +451,77 @@ public class WifiNetworkSelector {
         return (scanResult.level < mScoringParams.getEntryRssi(scanResult.frequency));
     }
 
+    /**
+     * Returns the reason |scanDetail| should not be considered by the nominators, or
+     * {@link #FILTER_REASON_NONE}. Evaluates every exclusion predicate of
+     * {@link #filterScanResults} in order, the first one that applies wins.
+     */
+    private @FilterReason int getFilterReason(ScanDetail scanDetail, Set<String> bssidBlacklist,
+            String currentBssid) {
+        ScanResult scanResult = scanDetail.getScanResult();
+        if (TextUtils.isEmpty(scanResult.SSID)) {
+            return FILTER_REASON_INVALID_SSID;
+        }
+        // The currently connected BSSID is always kept.
+        if (scanResult.BSSID.equals(currentBssid)) {
+            return FILTER_REASON_NONE;
+        }
+        if (bssidBlacklist.contains(scanResult.BSSID)) {
+            return FILTER_REASON_BLOCKLISTED;
+        }
+        // Skip network with too weak signals.
+        if (isSignalTooWeak(scanResult)) {
+            if (scanResult.is24GHz()) {
+                return FILTER_REASON_LOW_RSSI_24GHZ;
+            } else if (scanResult.is5GHz()) {
+                return FILTER_REASON_LOW_RSSI_5GHZ;
+            } else if (scanResult.is6GHz()) {
+                return FILTER_REASON_LOW_RSSI_6GHZ;
+            }
+            return FILTER_REASON_LOW_RSSI_OTHER;
+        }
+        // Skip BSS which is not accepting new connections.
+        NetworkDetail networkDetail = scanDetail.getNetworkDetail();
+        if (networkDetail != null && networkDetail.getMboAssociationDisallowedReasonCode()
+                != MboOceConstants.MBO_OCE_ATTRIBUTE_NOT_PRESENT) {
+            return FILTER_REASON_MBO_ASSOC_DISALLOWED;
+        }
+        return FILTER_REASON_NONE;
+    }
+
+    /**
+     * Filter out the scan results that should not be considered by the nominators, in a single
+     * pass over |scanDetails|. The number of scan results filtered out for each reason is kept
+     * in {@link #getLastFilterReasonCount(int)} rather than logged per BSSID.
+     */
     private List<ScanDetail> filterScanResults(List<ScanDetail> scanDetails,
             Set<String> bssidBlacklist, boolean isConnected, String currentBssid) {
-        List<ScanDetail> validScanDetails = new ArrayList<>();
-        StringBuffer noValidSsid = new StringBuffer();
-        StringBuffer blacklistedBssid = new StringBuffer();
-        StringBuffer lowRssi = new StringBuffer();
-        StringBuffer mboAssociationDisallowedBssid = new StringBuffer();
+        List<ScanDetail> validScanDetails = new ArrayList<>(scanDetails.size());
+        int[] reasonCounts = mLastFilterReasonCounts;
+        Arrays.fill(reasonCounts, 0);
         boolean scanResultsHaveCurrentBssid = false;
-        int numBssidFiltered = 0;
 
         for (ScanDetail scanDetail : scanDetails) {
-            ScanResult scanResult = scanDetail.getScanResult();
-
-            if (TextUtils.isEmpty(scanResult.SSID)) {
-                noValidSsid.append(scanResult.BSSID).append(" / ");
+            int reason = getFilterReason(scanDetail, bssidBlacklist, currentBssid);
+            reasonCounts[reason]++;
+            if (reason != FILTER_REASON_NONE) {
                 continue;
             }
-
             // Check if the scan results contain the currently connected BSSID
-            if (scanResult.BSSID.equals(currentBssid)) {
+            if (!scanResultsHaveCurrentBssid
+                    && scanDetail.getScanResult().BSSID.equals(currentBssid)) {
                 scanResultsHaveCurrentBssid = true;
-                validScanDetails.add(scanDetail);
-                continue;
             }
-
-            final String scanId = toScanId(scanResult);
-
-            if (bssidBlacklist.contains(scanResult.BSSID)) {
-                blacklistedBssid.append(scanId).append(" / ");
-                numBssidFiltered++;
-                continue;
-            }
-
-            // Skip network with too weak signals.
-            if (isSignalTooWeak(scanResult)) {
-                lowRssi.append(scanId);
-                if (scanResult.is24GHz()) {
-                    lowRssi.append("(2.4GHz)");
-                } else if (scanResult.is5GHz()) {
-                    lowRssi.append("(5GHz)");
-                } else if (scanResult.is6GHz()) {
-                    lowRssi.append("(6GHz)");
-                }
-                lowRssi.append(scanResult.level).append(" / ");
-                continue;
-            }
-
-            // Skip BSS which is not accepting new connections.
-            NetworkDetail networkDetail = scanDetail.getNetworkDetail();
-            if (networkDetail != null) {
-                if (networkDetail.getMboAssociationDisallowedReasonCode()
-                        != MboOceConstants.MBO_OCE_ATTRIBUTE_NOT_PRESENT) {
-                    mWifiMetrics
-                            .incrementNetworkSelectionFilteredBssidCountDueToMboAssocDisallowInd();
-                    mboAssociationDisallowedBssid.append(scanId).append("(")
-                            .append(networkDetail.getMboAssociationDisallowedReasonCode())
-                            .append(")").append(" / ");
-                    continue;
-                }
-            }
-
             validScanDetails.add(scanDetail);
         }
-        mWifiMetrics.incrementNetworkSelectionFilteredBssidCount(numBssidFiltered);
+        for (int reason = 0; reason < NUM_FILTER_REASONS; reason++) {
+            mTotalFilterReasonCounts[reason] += reasonCounts[reason];
+        }
+        mWifiMetrics.incrementNetworkSelectionFilteredBssidCount(
+                reasonCounts[FILTER_REASON_BLOCKLISTED]);
+        for (int i = 0; i < reasonCounts[FILTER_REASON_MBO_ASSOC_DISALLOWED]; i++) {
+            mWifiMetrics.incrementNetworkSelectionFilteredBssidCountDueToMboAssocDisallowInd();
+        }
 
         // WNS listens to all single scan results. Some scan requests may not include
         // the channel of the currently connected network, so the currently connected
@@ -442,24 +535,48 @@ public class WifiNetworkSelector {
             return validScanDetails;
         }
 
-        if (noValidSsid.length() != 0) {
-            localLog("Networks filtered out due to invalid SSID: " + noValidSsid);
+        if (validScanDetails.size() != scanDetails.size()) {
+            localLog("Networks filtered out: " + filterReasonCountsToString(reasonCounts));
         }
 
-        if (blacklistedBssid.length() != 0) {
-            localLog("Networks filtered out due to blocklist: " + blacklistedBssid);
-        }
+        return validScanDetails;
+    }
 
-        if (lowRssi.length() != 0) {
-            localLog("Networks filtered out due to low signal strength: " + lowRssi);
+    private static String filterReasonCountsToString(int[] reasonCounts) {
+        StringBuilder sb = new StringBuilder();
+        for (int reason = FILTER_REASON_NONE + 1; reason < NUM_FILTER_REASONS; reason++) {
+            if (reasonCounts[reason] == 0) continue;
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(FILTER_REASON_NAMES[reason]).append('=').append(reasonCounts[reason]);
         }
+        return sb.toString();
+    }
 
-        if (mboAssociationDisallowedBssid.length() != 0) {
-            localLog("Networks filtered out due to mbo association disallowed indication: "
-                    + mboAssociationDisallowedBssid);
-        }
+    /**
+     * Returns the number of scan results filtered out for |reason| by the last network
+     * selection, or kept if |reason| is {@link #FILTER_REASON_NONE}.
+     */
+    public int getLastFilterReasonCount(@FilterReason int reason) {
+        return mLastFilterReasonCounts[reason];
+    }
 
-        return validScanDetails;
+    /**
+     * Dump the scan result filter counters.
+     */
+    public void dump(PrintWriter pw) {
+        pw.println("WifiNetworkSelector:");
+        pw.println("  last filter: " + filterReasonCountsToString(mLastFilterReasonCounts)
+                + " kept=" + mLastFilterReasonCounts[FILTER_REASON_NONE]);
+        StringBuilder sb = new StringBuilder();
+        for (int reason = 0; reason < NUM_FILTER_REASONS; reason++) {
+            if (reason > 0) sb.append(", ");
+            sb.append(FILTER_REASON_NAMES[reason]).append('=')
+                    .append(mTotalFilterReasonCounts[reason]);
+        }
+        pw.println("  total filter: " + sb);
+        if (mThroughputPredictionCache != null) {
+            mThroughputPredictionCache.dump(pw);
+        }
     }
 
     private ScanDetail findScanDetailForBssid(List<ScanDetail> scanDetails,
@@ -566,7 +683,8 @@ public class WifiNetworkSelector {
     private boolean setLegacyUserConnectChoice(@NonNull final WifiConfiguration selected) {
         boolean change = false;
         String key = selected.getKey();
-        List<WifiConfiguration> configuredNetworks = mWifiConfigManager.getConfiguredNetworks();
+        List<WifiConfiguration> configuredNetworks =
+                mWifiConfigManager.getConfiguredNetworksSnapshot();
 
         for (WifiConfiguration network : configuredNetworks) {
             WifiConfiguration.NetworkSelectionStatus status = network.getNetworkSelectionStatus();
@@ -603,7 +721,8 @@ public class WifiNetworkSelector {
      * c) Log any disabled networks.
      */
     private void updateConfiguredNetworks() {
-        List<WifiConfiguration> configuredNetworks = mWifiConfigManager.getConfiguredNetworks();
+        List<WifiConfiguration> configuredNetworks =
+                mWifiConfigManager.getConfiguredNetworksSnapshot();
         if (configuredNetworks.size() == 0) {
             localLog("No configured networks.");
             return;
@@ -655,13 +774,12 @@ public class WifiNetworkSelector {
      */
     private WifiConfiguration overrideCandidateWithUserConnectChoice(
             @NonNull WifiConfiguration candidate) {
-        WifiConfiguration tempConfig = Preconditions.checkNotNull(candidate);
+        Preconditions.checkNotNull(candidate);
         WifiConfiguration originalCandidate = candidate;
         ScanResult scanResultCandidate = candidate.getNetworkSelectionStatus().getCandidate();
 
-        while (tempConfig.getNetworkSelectionStatus().getConnectChoice() != null) {
-            String key = tempConfig.getNetworkSelectionStatus().getConnectChoice();
-            tempConfig = mWifiConfigManager.getConfiguredNetwork(key);
+        for (String key : mWifiConfigManager.getConnectChoiceChain(candidate.getKey())) {
+            WifiConfiguration tempConfig = mWifiConfigManager.getConfiguredNetwork(key);
 
             if (tempConfig != null) {
                 WifiConfiguration.NetworkSelectionStatus tempStatus =
@@ -812,34 +930,18 @@ public class WifiNetworkSelector {
                     isFromCarrierOrPrivilegedApp(currentNetwork),
                     predictedTputMbps);
         }
-        for (NetworkNominator registeredNominator : mNominators) {
-            localLog("About to run " + registeredNominator.getName() + " :");
-            registeredNominator.nominateNetworks(
-                    new ArrayList<>(mFilteredNetworks), currentNetwork, currentBssid, connected,
-                    untrustedNetworkAllowed,
-                    (scanDetail, config) -> {
-                        WifiCandidates.Key key = wifiCandidates.keyFromScanDetailAndConfig(
-                                scanDetail, config);
-                        if (key != null) {
-                            boolean metered = isEverMetered(config, wifiInfo, scanDetail);
-                            // TODO(b/151981920) Saved passpoint candidates are marked ephemeral
-                            boolean added = wifiCandidates.add(key, config,
-                                    registeredNominator.getId(),
-                                    scanDetail.getScanResult().level,
-                                    scanDetail.getScanResult().frequency,
-                                    calculateLastSelectionWeight(config.networkId),
-                                    metered,
-                                    isFromCarrierOrPrivilegedApp(config),
-                                    predictThroughput(scanDetail));
-                            if (added) {
-                                mConnectableNetworks.add(Pair.create(scanDetail, config));
-                                mWifiConfigManager.updateScanDetailForNetwork(
-                                        config.networkId, scanDetail);
-                                mWifiMetrics.setNominatorForNetwork(config.networkId,
-                                        toProtoNominatorId(registeredNominator.getId()));
-                            }
-                        }
-                    });
+        if (mNominationExecutor == null) {
+            for (NetworkNominator registeredNominator : mNominators) {
+                localLog("About to run " + registeredNominator.getName() + " :");
+                registeredNominator.nominateNetworks(
+                        new ArrayList<>(mFilteredNetworks), currentNetwork, currentBssid,
+                        connected, untrustedNetworkAllowed,
+                        (scanDetail, config) -> addCandidate(wifiCandidates, wifiInfo,
+                                registeredNominator, scanDetail, config));
+            }
+        } else {
+            nominateConcurrently(wifiCandidates, wifiInfo, currentNetwork, currentBssid,
+                    connected, untrustedNetworkAllowed);
         }
         if (mConnectableNetworks.size() != wifiCandidates.size()) {
             localLog("Connectable: " + mConnectableNetworks.size()
@@ -848,6 +950,140 @@ public class WifiNetworkSelector {
         return wifiCandidates.getCandidates();
     }
 
+    private void addCandidate(WifiCandidates wifiCandidates, WifiInfo wifiInfo,
+            NetworkNominator nominator, ScanDetail scanDetail, WifiConfiguration config) {
+        WifiCandidates.Key key = wifiCandidates.keyFromScanDetailAndConfig(scanDetail, config);
+        if (key == null) {
+            return;
+        }
+        if (wifiCandidates.hasPreferredCandidate(key, nominator.getId())) {
+            return;
+        }
+        boolean metered = isEverMetered(config, wifiInfo, scanDetail);
+        // TODO(b/151981920) Saved passpoint candidates are marked ephemeral
+        boolean added = wifiCandidates.add(key, config,
+                nominator.getId(),
+                scanDetail.getScanResult().level,
+                scanDetail.getScanResult().frequency,
+                calculateLastSelectionWeight(config.networkId),
+                metered,
+                isFromCarrierOrPrivilegedApp(config),
+                predictThroughput(scanDetail));
+        if (added) {
+            mConnectableNetworks.add(Pair.create(scanDetail, config));
+            mWifiConfigManager.updateScanDetailForNetwork(config.networkId, scanDetail);
+            mWifiMetrics.setNominatorForNetwork(config.networkId,
+                    toProtoNominatorId(nominator.getId()));
+        }
+    }
+
+    /**
+     * Run the {@link ConcurrentNetworkNominator}s on {@link #mNominationExecutor} while the other
+     * nominators run on the calling thread. The concurrent nominators get their own copy of the
+     * filtered scan details and a snapshot of the configured networks. The nominations of all the
+     * nominators are added to the candidates in registration order once the concurrent
+     * nominators are done, so the candidates are the same as when the nominators run one after
+     * another.
+     */
+    private void nominateConcurrently(WifiCandidates wifiCandidates, WifiInfo wifiInfo,
+            WifiConfiguration currentNetwork, String currentBssid, boolean connected,
+            boolean untrustedNetworkAllowed) {
+        List<WifiConfiguration> configuredNetworks =
+                mWifiConfigManager.getConfiguredNetworksSnapshot();
+        int numNominators = mNominators.size();
+        List<FutureTask<ConcurrentNetworkNominator.PendingNomination>> tasks =
+                new ArrayList<>(numNominators);
+        for (NetworkNominator nominator : mNominators) {
+            if (!(nominator instanceof ConcurrentNetworkNominator)) {
+                tasks.add(null);
+                continue;
+            }
+            localLog("About to run " + nominator.getName() + " :");
+            List<ScanDetail> scanDetails = new ArrayList<>(mFilteredNetworks);
+            FutureTask<ConcurrentNetworkNominator.PendingNomination> task = new FutureTask<>(
+                    () -> ((ConcurrentNetworkNominator) nominator).nominateNetworksConcurrently(
+                            scanDetails, configuredNetworks, currentNetwork, currentBssid,
+                            connected, untrustedNetworkAllowed));
+            tasks.add(task);
+            mNominationExecutor.execute(task);
+        }
+        // Run the other nominators meanwhile, keeping their nominations for later.
+        List<List<Pair<ScanDetail, WifiConfiguration>>> nominations =
+                new ArrayList<>(numNominators);
+        for (int i = 0; i < numNominators; i++) {
+            if (tasks.get(i) != null) {
+                nominations.add(null);
+                continue;
+            }
+            NetworkNominator nominator = mNominators.get(i);
+            List<Pair<ScanDetail, WifiConfiguration>> nominated = new ArrayList<>();
+            localLog("About to run " + nominator.getName() + " :");
+            nominator.nominateNetworks(new ArrayList<>(mFilteredNetworks), currentNetwork,
+                    currentBssid, connected, untrustedNetworkAllowed,
+                    (scanDetail, config) -> nominated.add(Pair.create(scanDetail, config)));
+            nominations.add(nominated);
+        }
+        for (int i = 0; i < numNominators; i++) {
+            NetworkNominator nominator = mNominators.get(i);
+            NetworkNominator.OnConnectableListener onConnectableListener =
+                    (scanDetail, config) -> addCandidate(wifiCandidates, wifiInfo, nominator,
+                            scanDetail, config);
+            FutureTask<ConcurrentNetworkNominator.PendingNomination> task = tasks.get(i);
+            if (task == null) {
+                for (Pair<ScanDetail, WifiConfiguration> nominated : nominations.get(i)) {
+                    onConnectableListener.onConnectable(nominated.first, nominated.second);
+                }
+                continue;
+            }
+            ConcurrentNetworkNominator.PendingNomination pendingNomination =
+                    awaitNomination(task);
+            if (pendingNomination != null) {
+                pendingNomination.finish(new ArrayList<>(mFilteredNetworks),
+                        onConnectableListener);
+            } else {
+                localLog("Running " + nominator.getName() + " again on the selection thread");
+                nominator.nominateNetworks(new ArrayList<>(mFilteredNetworks), currentNetwork,
+                        currentBssid, connected, untrustedNetworkAllowed, onConnectableListener);
+            }
+        }
+    }
+
+    /**
+     * Wait for a nominator to complete. Exceptions thrown by the nominator are rethrown, as
+     * they would be when it runs on the calling thread. If interrupted, the nomination is
+     * cancelled and its result, if it still completes, is dropped.
+     *
+     * @return the nomination to finish, or null if interrupted while waiting.
+     */
+    private @Nullable ConcurrentNetworkNominator.PendingNomination awaitNomination(
+            FutureTask<ConcurrentNetworkNominator.PendingNomination> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Log.e(TAG, "Interrupted while waiting for a nominator", e);
+            task.cancel(true);
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Set the executor used to run the {@link ConcurrentNetworkNominator}s in parallel with the
+     * other nominators, or null to run every nominator on the calling thread.
+     */
+    public void setNominationExecutor(@Nullable Executor executor) {
+        mNominationExecutor = executor;
+    }
+
     /**
      * Using the registered Scorers, choose the best network from the list of Candidate(s).
      * The ScanDetailCache is also updated here.
@@ -1032,6 +1268,19 @@ public class WifiNetworkSelector {
                     mWifiChannelUtilization.getUtilizationRatio(
                             scanDetail.getScanResult().frequency);
         }
+        if (mThroughputPredictionCache != null) {
+            return mThroughputPredictionCache.predictThroughput(
+                    scanDetail.getScanResult().BSSID,
+                    mWifiNative.getDeviceWiphyCapabilities(mWifiNative.getClientInterfaceName()),
+                    scanDetail.getScanResult().getWifiStandard(),
+                    scanDetail.getScanResult().channelWidth,
+                    scanDetail.getScanResult().level,
+                    scanDetail.getScanResult().frequency,
+                    scanDetail.getNetworkDetail().getMaxNumberSpatialStreams(),
+                    scanDetail.getNetworkDetail().getChannelUtilization(),
+                    channelUtilizationLinkLayerStats,
+                    mIsBluetoothConnected);
+        }
         return mThroughputPredictor.predictThroughput(
                 mWifiNative.getDeviceWiphyCapabilities(mWifiNative.getClientInterfaceName()),
                 scanDetail.getScanResult().getWifiStandard(),
@@ -1111,6 +1360,15 @@ public class WifiNetworkSelector {
         mWifiChannelUtilization = wifiChannelUtilization;
     }
 
+    /**
+     * Memoize the predicted throughput of each BSSID in |throughputPredictionCache|, or predict
+     * it from scratch at every network selection if null.
+     */
+    public void setThroughputPredictionCache(
+            @Nullable ThroughputPredictionCache throughputPredictionCache) {
+        mThroughputPredictionCache = throughputPredictionCache;
+    }
+
     /**
      * Set whether bluetooth is in the connected state
      */
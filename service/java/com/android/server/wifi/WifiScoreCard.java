@@ -1576,6 +1576,17 @@ public class WifiScoreCard {
         return ans;
     }
 
+    /**
+     * Same as {@link #lookupNetwork(String)}, but returns null for a network without an entry
+     * instead of creating one and reading it from the memory store.
+     */
+    @Nullable PerNetwork peekNetwork(String ssid) {
+        if (ssid == null || WifiManager.UNKNOWN_SSID.equals(ssid)) {
+            return null;
+        }
+        return mApForNetwork.get(ssid);
+    }
+
     /**
      * Remove network from cache and memory store
      * @param ssid is the network SSID
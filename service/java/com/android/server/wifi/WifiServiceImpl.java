@@ -341,7 +341,11 @@ public class WifiServiceImpl extends BaseWifiService {
      */
     public void checkAndStartWifi() {
         mWifiThreadRunner.post(() -> {
-            if (!mWifiConfigManager.loadFromStore()) {
+            long loadStartTimeMs = mClock.getElapsedSinceBootMillis();
+            boolean loaded = mWifiConfigManager.loadFromStore();
+            mWifiMetrics.noteBootTimelineEvent("WifiConfigManager.loadFromStore",
+                    loadStartTimeMs, mClock.getElapsedSinceBootMillis() - loadStartTimeMs);
+            if (!loaded) {
                 Log.e(TAG, "Failed to load from config store");
             }
             // config store is read, check if verbose logging is enabled.
@@ -580,6 +584,8 @@ public class WifiServiceImpl extends BaseWifiService {
             // before memory store write triggered by mMemoryStoreImpl.stop().
             mWifiScoreCard.resetConnectionState();
             mMemoryStoreImpl.stop();
+            // Make sure the store file writes queued so far are not lost.
+            mWifiConfigManager.flushStore();
         });
     }
 
@@ -2209,9 +2215,15 @@ public class WifiServiceImpl extends BaseWifiService {
         if (mVerboseLoggingEnabled) {
             mLog.info("getPrivilegedConfiguredNetworks uid=%").c(callingUid).flush();
         }
-        List<WifiConfiguration> configs = mWifiThreadRunner.call(
-                () -> mWifiConfigManager.getConfiguredNetworksWithPasswords(),
+        List<WifiConfiguration> snapshot = mWifiThreadRunner.call(
+                () -> mWifiConfigManager.getConfiguredNetworksWithPasswordsSnapshot(),
                 Collections.emptyList());
+        // The snapshot is shared with the wifi stack, hand out copies. The snapshot is never
+        // updated in place, so they can be made off the wifi thread.
+        List<WifiConfiguration> configs = new ArrayList<>(snapshot.size());
+        for (WifiConfiguration config : snapshot) {
+            configs.add(new WifiConfiguration(config));
+        }
         return new ParceledListSlice<>(configs);
     }
 
@@ -10,6 +10,7 @@ import com.android.server.wifi.hotspot2.anqp.ANQPElement;
 import com.android.server.wifi.hotspot2.anqp.Constants;
 import com.android.server.wifi.hotspot2.anqp.RawByteElement;
 import com.android.server.wifi.util.InformationElementUtil;
+import com.android.server.wifi.util.InformationElementView;
 
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
@@ -17,7 +18,6 @@ import java.nio.CharBuffer;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -132,6 +132,15 @@ public class NetworkDetail {
 
     public NetworkDetail(String bssid, ScanResult.InformationElement[] infoElements,
             List<String> anqpLines, int freq) {
+        this(bssid, wrapInformationElements(infoElements), anqpLines, freq);
+    }
+
+    /**
+     * Build the network detail from a lazy view of the information elements. Only the elements
+     * this class parses are materialized from the underlying raw buffer.
+     */
+    public NetworkDetail(String bssid, InformationElementView infoElements,
+            List<String> anqpLines, int freq) {
         if (infoElements == null) {
             throw new IllegalArgumentException("Null information elements");
         }
@@ -177,57 +186,59 @@ public class NetworkDetail {
 
         RuntimeException exception = null;
 
-        ArrayList<Integer> iesFound = new ArrayList<Integer>();
+        boolean erpFound = false;
         try {
-            for (ScanResult.InformationElement ie : infoElements) {
-                iesFound.add(ie.id);
-                switch (ie.id) {
+            for (int i = 0; i < infoElements.size(); i++) {
+                switch (infoElements.getId(i)) {
                     case ScanResult.InformationElement.EID_SSID:
-                        ssidOctets = ie.bytes;
+                        ssidOctets = infoElements.getInformationElement(i).bytes;
+                        break;
+                    case ScanResult.InformationElement.EID_ERP:
+                        erpFound = true;
                         break;
                     case ScanResult.InformationElement.EID_BSS_LOAD:
-                        bssLoad.from(ie);
+                        bssLoad.from(infoElements.getInformationElement(i));
                         break;
                     case ScanResult.InformationElement.EID_HT_OPERATION:
-                        htOperation.from(ie);
+                        htOperation.from(infoElements.getInformationElement(i));
                         break;
                     case ScanResult.InformationElement.EID_VHT_OPERATION:
-                        vhtOperation.from(ie);
+                        vhtOperation.from(infoElements.getInformationElement(i));
                         break;
                     case ScanResult.InformationElement.EID_HT_CAPABILITIES:
-                        htCapabilities.from(ie);
+                        htCapabilities.from(infoElements.getInformationElement(i));
                         break;
                     case ScanResult.InformationElement.EID_VHT_CAPABILITIES:
-                        vhtCapabilities.from(ie);
+                        vhtCapabilities.from(infoElements.getInformationElement(i));
                         break;
                     case ScanResult.InformationElement.EID_INTERWORKING:
-                        interworking.from(ie);
+                        interworking.from(infoElements.getInformationElement(i));
                         break;
                     case ScanResult.InformationElement.EID_ROAMING_CONSORTIUM:
-                        roamingConsortium.from(ie);
+                        roamingConsortium.from(infoElements.getInformationElement(i));
                         break;
                     case ScanResult.InformationElement.EID_VSA:
-                        vsa.from(ie);
+                        vsa.from(infoElements.getInformationElement(i));
                         break;
                     case ScanResult.InformationElement.EID_EXTENDED_CAPS:
-                        extendedCapabilities.from(ie);
+                        extendedCapabilities.from(infoElements.getInformationElement(i));
                         break;
                     case ScanResult.InformationElement.EID_TIM:
-                        trafficIndicationMap.from(ie);
+                        trafficIndicationMap.from(infoElements.getInformationElement(i));
                         break;
                     case ScanResult.InformationElement.EID_SUPPORTED_RATES:
-                        supportedRates.from(ie);
+                        supportedRates.from(infoElements.getInformationElement(i));
                         break;
                     case ScanResult.InformationElement.EID_EXTENDED_SUPPORTED_RATES:
-                        extendedSupportedRates.from(ie);
+                        extendedSupportedRates.from(infoElements.getInformationElement(i));
                         break;
                     case ScanResult.InformationElement.EID_EXTENSION_PRESENT:
-                        switch(ie.idExt) {
+                        switch(infoElements.getIdExt(i)) {
                             case ScanResult.InformationElement.EID_EXT_HE_OPERATION:
-                                heOperation.from(ie);
+                                heOperation.from(infoElements.getInformationElement(i));
                                 break;
                             case ScanResult.InformationElement.EID_EXT_HE_CAPABILITIES:
-                                heCapabilities.from(ie);
+                                heCapabilities.from(infoElements.getInformationElement(i));
                                 break;
                             default:
                                 break;
@@ -364,7 +375,7 @@ public class NetworkDetail {
             mMaxRate = maxRateA > maxRateB ? maxRateA : maxRateB;
             mWifiMode = InformationElementUtil.WifiMode.determineMode(mPrimaryFreq, mMaxRate,
                     heOperation.isPresent(), vhtOperation.isPresent(), htOperation.isPresent(),
-                    iesFound.contains(ScanResult.InformationElement.EID_ERP));
+                    erpFound);
         } else {
             mWifiMode = 0;
             mMaxRate = 0;
@@ -385,12 +396,20 @@ public class NetworkDetail {
                     + ", VHT: " + String.valueOf(vhtOperation.isPresent())
                     + ", HT: " + String.valueOf(htOperation.isPresent())
                     + ", ERP: " + String.valueOf(
-                    iesFound.contains(ScanResult.InformationElement.EID_ERP))
+                    erpFound)
                     + ", SupportedRates: " + supportedRates.toString()
                     + " ExtendedSupportedRates: " + extendedSupportedRates.toString());
         }
     }
 
+    private static InformationElementView wrapInformationElements(
+            ScanResult.InformationElement[] infoElements) {
+        if (infoElements == null) {
+            throw new IllegalArgumentException("Null information elements");
+        }
+        return InformationElementView.wrap(infoElements);
+    }
+
     private static ByteBuffer getAndAdvancePayload(ByteBuffer data, int plLength) {
         ByteBuffer payload = data.duplicate().order(data.order());
         payload.limit(payload.position() + plLength);
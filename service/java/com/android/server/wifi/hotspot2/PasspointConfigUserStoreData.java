@@ -139,6 +139,11 @@ public class PasspointConfigUserStoreData implements WifiConfigStore.StoreData {
         return true;
     }
 
+    @Override
+    public boolean supportsBinaryEncoding() {
+        return true;
+    }
+
     @Override
     public String getName() {
         return XML_TAG_SECTION_HEADER_PASSPOINT_CONFIG_DATA;
@@ -52,6 +52,9 @@ import java.util.Set;
  * the last buckets (lower priority) are placed in the next best bucket until the number of buckets
  * is less than the number supported by the hardware.
  *
+ * <p>In {@link #SCHEDULER_MODE_COST_MODEL} the buckets to merge are instead picked to minimize the
+ * estimated time the radio spends scanning, see {@link #estimateScanTimeMsPerHour()}.
+ *
  * <p>Finally, the scheduler creates a WifiNative.ScanSettings from the list of buckets which may be
  * passed through the Wifi HAL.</p>
  *
@@ -70,6 +73,24 @@ public class BackgroundScanScheduler {
     public static final int DEFAULT_MAX_SCANS_TO_BATCH = 10;
     public static final int DEFAULT_MAX_AP_PER_SCAN = 32;
 
+    /**
+     * Buckets over the limit are merged into the next closest period bucket, lowest preference
+     * first.
+     */
+    public static final int SCHEDULER_MODE_GREEDY = 0;
+    /**
+     * Buckets over the limit are merged so that the estimated scan time of the resulting schedule
+     * is minimal. Never produces a schedule estimated to scan longer than
+     * {@link #SCHEDULER_MODE_GREEDY}.
+     */
+    public static final int SCHEDULER_MODE_COST_MODEL = 1;
+
+    /**
+     * Estimated fixed cost of each scan, in addition to the dwell time of the scanned channels.
+     */
+    private static final int SCAN_OVERHEAD_MS = 50;
+    private static final long MS_PER_HOUR = 60 * 60 * 1000;
+
     /**
      * Value that all scan periods must be an integer multiple of
      */
@@ -324,6 +345,7 @@ public class BackgroundScanScheduler {
     private int mMaxChannelsPerBucket = DEFAULT_MAX_CHANNELS_PER_BUCKET;
     private int mMaxBatch = DEFAULT_MAX_SCANS_TO_BATCH;
     private int mMaxApPerScan = DEFAULT_MAX_AP_PER_SCAN;
+    private int mSchedulerMode = SCHEDULER_MODE_GREEDY;
 
     public int getMaxBuckets() {
         return mMaxBuckets;
@@ -359,6 +381,18 @@ public class BackgroundScanScheduler {
         mMaxApPerScan = maxApPerScan;
     }
 
+    public int getSchedulerMode() {
+        return mSchedulerMode;
+    }
+
+    /**
+     * Set how buckets are compacted when there are more than the max buckets. Only applies to the
+     * next {@link #updateSchedule(Collection)}.
+     */
+    public void setSchedulerMode(int schedulerMode) {
+        mSchedulerMode = schedulerMode;
+    }
+
     private final BucketList mBuckets = new BucketList();
     private final ChannelHelper mChannelHelper;
     private WifiNative.ScanSettings mSchedule;
@@ -374,13 +408,36 @@ public class BackgroundScanScheduler {
      * Updates the schedule from the given set of requests.
      */
     public void updateSchedule(@NonNull Collection<ScanSettings> requests) {
+        if (mSchedulerMode != SCHEDULER_MODE_COST_MODEL) {
+            buildSchedule(requests, false);
+            return;
+        }
+        buildSchedule(requests, true);
+        WifiNative.ScanSettings costModelSchedule = mSchedule;
+        Map<ScanSettings, Bucket> costModelScheduledBuckets =
+                new HashMap<>(mSettingsToScheduledBucket);
+        long costModelScanTimeMs = estimateScanTimeMsPerHour();
+        // Keep the greedy schedule unless the cost model found a cheaper one.
+        buildSchedule(requests, false);
+        if (costModelScanTimeMs < estimateScanTimeMsPerHour()) {
+            mSchedule = costModelSchedule;
+            mSettingsToScheduledBucket.clear();
+            mSettingsToScheduledBucket.putAll(costModelScheduledBuckets);
+        }
+    }
+
+    private void buildSchedule(Collection<ScanSettings> requests, boolean useCostModel) {
         // create initial schedule
         mBuckets.clearAll();
         for (ScanSettings request : requests) {
             addScanToBuckets(request);
         }
 
-        compactBuckets(getMaxBuckets());
+        if (useCostModel) {
+            compactBucketsByCost(getMaxBuckets());
+        } else {
+            compactBuckets(getMaxBuckets());
+        }
 
         List<Bucket> bucketList = optimizeBuckets();
 
@@ -397,6 +454,22 @@ public class BackgroundScanScheduler {
         return mSchedule;
     }
 
+    /**
+     * Estimates the time per hour the radio spends scanning to execute the current schedule.
+     * Exponential back off buckets are counted at their initial period.
+     */
+    public long estimateScanTimeMsPerHour() {
+        int[] periods = new int[mSchedule.num_buckets];
+        List<Set<Integer>> channelSets = new ArrayList<>(mSchedule.num_buckets);
+        int numBuckets = 0;
+        for (int b = 0; b < mSchedule.num_buckets; b++) {
+            if (mSchedule.buckets[b].period_ms <= 0) continue;
+            periods[numBuckets++] = mSchedule.buckets[b].period_ms;
+            channelSets.add(getScannedChannels(mSchedule.buckets[b]));
+        }
+        return simulateScanTimeMsPerHour(Arrays.copyOf(periods, numBuckets), channelSets);
+    }
+
     /**
      * Returns true if the given scan result should be reported to a listener with the given
      * settings.
@@ -547,6 +620,204 @@ public class BackgroundScanScheduler {
         }
     }
 
+    /**
+     * Reduce the number of required buckets like {@link #compactBuckets(int)}, but at each step
+     * pick the merge that results in the lowest estimated scan time. A bucket may be merged into
+     * any active bucket with a shorter period, which never delays the requests it contains, or
+     * be moved as {@link #compactBuckets(int)} would.
+     */
+    private void compactBucketsByCost(int maxBuckets) {
+        int maxRegularBuckets = maxBuckets;
+        if (mBuckets.isActive(EXPONENTIAL_BACK_OFF_BUCKET_IDX)) {
+            maxRegularBuckets--;
+        }
+        if (mBuckets.getActiveRegularBucketCount() <= maxRegularBuckets) {
+            return;
+        }
+        List<ScanSettings>[] assignment = getBucketAssignment();
+        while (countActiveRegularBuckets(assignment) > maxRegularBuckets) {
+            List<ScanSettings>[] bestAssignment = createGreedyStepAssignment(assignment);
+            long bestCost = bestAssignment == null
+                    ? Long.MAX_VALUE : estimateAssignmentScanTimeMsPerHour(bestAssignment);
+            for (int from = 0; from < NUM_OF_REGULAR_BUCKETS; from++) {
+                if (assignment[from] == null) continue;
+                for (int to = 0; to < NUM_OF_REGULAR_BUCKETS; to++) {
+                    if (assignment[to] == null
+                            || PREDEFINED_BUCKET_PERIODS[to] >= PREDEFINED_BUCKET_PERIODS[from]) {
+                        continue;
+                    }
+                    List<ScanSettings>[] candidate = copyAssignment(assignment);
+                    candidate[to].addAll(candidate[from]);
+                    candidate[from] = null;
+                    long cost = estimateAssignmentScanTimeMsPerHour(candidate);
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        bestAssignment = candidate;
+                    }
+                }
+            }
+            if (bestAssignment == null) {
+                // Nothing left to merge into, fall back to the greedy compaction.
+                compactBuckets(maxBuckets);
+                return;
+            }
+            assignment = bestAssignment;
+        }
+
+        mBuckets.clearAll();
+        for (int i = 0; i < assignment.length; i++) {
+            if (assignment[i] == null) continue;
+            for (ScanSettings settings : assignment[i]) {
+                mBuckets.getOrCreate(i).addSettings(settings);
+            }
+        }
+    }
+
+    /**
+     * Settings of each active bucket, indexed like {@link #PREDEFINED_BUCKET_PERIODS}. Inactive
+     * buckets are null.
+     */
+    private List<ScanSettings>[] getBucketAssignment() {
+        List<ScanSettings>[] assignment = new List[mBuckets.size()];
+        for (int i = 0; i < mBuckets.size(); i++) {
+            if (mBuckets.isActive(i)) {
+                assignment[i] = new ArrayList<>(mBuckets.get(i).getSettingsList());
+            }
+        }
+        return assignment;
+    }
+
+    private static List<ScanSettings>[] copyAssignment(List<ScanSettings>[] assignment) {
+        List<ScanSettings>[] copy = new List[assignment.length];
+        for (int i = 0; i < assignment.length; i++) {
+            if (assignment[i] != null) {
+                copy[i] = new ArrayList<>(assignment[i]);
+            }
+        }
+        return copy;
+    }
+
+    private static int countActiveRegularBuckets(List<ScanSettings>[] assignment) {
+        int count = 0;
+        for (int i = 0; i < NUM_OF_REGULAR_BUCKETS; i++) {
+            if (assignment[i] != null) count++;
+        }
+        return count;
+    }
+
+    /**
+     * One step of {@link #compactBuckets(int)}: move the requests of the lowest preference
+     * bucket to their closest period among the higher preference buckets.
+     *
+     * @return the new assignment, or null if there is no higher preference bucket.
+     */
+    private static List<ScanSettings>[] createGreedyStepAssignment(
+            List<ScanSettings>[] assignment) {
+        List<ScanSettings>[] next = copyAssignment(assignment);
+        int last = NUM_OF_REGULAR_BUCKETS - 1;
+        while (last > 0 && next[last] == null) last--;
+        if (last == 0) return null;
+        for (ScanSettings scanRequest : next[last]) {
+            int index = findBestRegularBucketIndex(scanRequest.periodInMs, last);
+            if (next[index] == null) {
+                next[index] = new ArrayList<>();
+            }
+            next[index].add(scanRequest);
+        }
+        next[last] = null;
+        return next;
+    }
+
+    /**
+     * Estimates the scan time per hour of the buckets in |assignment|, as they would be passed to
+     * the HAL.
+     */
+    private long estimateAssignmentScanTimeMsPerHour(List<ScanSettings>[] assignment) {
+        int[] periods = new int[assignment.length];
+        List<Set<Integer>> channelSets = new ArrayList<>(assignment.length);
+        int numBuckets = 0;
+        for (int i = 0; i < assignment.length; i++) {
+            if (assignment[i] == null || assignment[i].isEmpty()) continue;
+            ChannelCollection channelCollection = mChannelHelper.createChannelCollection();
+            for (ScanSettings settings : assignment[i]) {
+                channelCollection.addChannels(settings);
+            }
+            WifiNative.BucketSettings bucketSettings = new WifiNative.BucketSettings();
+            channelCollection.fillBucketSettings(bucketSettings, getMaxChannelsPerBucket());
+            if (i == EXPONENTIAL_BACK_OFF_BUCKET_IDX) {
+                periods[numBuckets] = PREDEFINED_BUCKET_PERIODS[findBestRegularBucketIndex(
+                        assignment[i].get(0).periodInMs, NUM_OF_REGULAR_BUCKETS)];
+            } else {
+                periods[numBuckets] = PREDEFINED_BUCKET_PERIODS[i];
+            }
+            channelSets.add(getScannedChannels(bucketSettings));
+            numBuckets++;
+        }
+        return simulateScanTimeMsPerHour(Arrays.copyOf(periods, numBuckets), channelSets);
+    }
+
+    /**
+     * Frequencies the HAL will scan for |bucketSettings|.
+     */
+    private Set<Integer> getScannedChannels(WifiNative.BucketSettings bucketSettings) {
+        Set<Integer> channels = new ArraySet<>();
+        if (bucketSettings.band == WifiScanner.WIFI_BAND_UNSPECIFIED) {
+            for (int c = 0; c < bucketSettings.num_channels; c++) {
+                channels.add(bucketSettings.channels[c].frequency);
+            }
+        } else {
+            WifiScanner.ChannelSpec[][] bandChannels =
+                    mChannelHelper.getAvailableScanChannels(bucketSettings.band);
+            if (bandChannels != null) {
+                for (WifiScanner.ChannelSpec[] channelSpecs : bandChannels) {
+                    for (WifiScanner.ChannelSpec channelSpec : channelSpecs) {
+                        channels.add(channelSpec.frequency);
+                    }
+                }
+            }
+        }
+        return channels;
+    }
+
+    /**
+     * Simulates one hyperperiod of the buckets, one tick per base period. All buckets due at a
+     * tick are scanned together, so a channel is only counted once per tick.
+     */
+    private long simulateScanTimeMsPerHour(int[] periods, List<Set<Integer>> channelSets) {
+        if (periods.length == 0) return 0;
+        long basePeriod = periods[0];
+        long hyperPeriod = periods[0];
+        for (int period : periods) {
+            basePeriod = gcd(basePeriod, period);
+            hyperPeriod = hyperPeriod / gcd(hyperPeriod, period) * period;
+        }
+        Set<Integer> tickChannels = new ArraySet<>();
+        long scanTimeMs = 0;
+        for (long time = 0; time < hyperPeriod; time += basePeriod) {
+            tickChannels.clear();
+            for (int b = 0; b < periods.length; b++) {
+                if (time % periods[b] == 0) {
+                    tickChannels.addAll(channelSets.get(b));
+                }
+            }
+            if (tickChannels.isEmpty()) continue;
+            scanTimeMs += SCAN_OVERHEAD_MS;
+            for (int frequency : tickChannels) {
+                scanTimeMs += mChannelHelper.estimateChannelDwellTime(frequency);
+            }
+        }
+        return scanTimeMs * MS_PER_HOUR / hyperPeriod;
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
     /**
      * Clone the provided scan settings fields to a new ScanSettings object.
      */
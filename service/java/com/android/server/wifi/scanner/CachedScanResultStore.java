@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.scanner;
+
+import android.annotation.NonNull;
+import android.net.wifi.ScanResult;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Store for the scan results cached by {@link WifiScanningServiceImpl}.
+ *
+ * The results are kept as the {@link ScanResult} objects reported by the scanner rather than as
+ * columns of their fields: clients get complete results, information elements included, so the
+ * objects would have to be rebuilt on every request while their IEs and strings are still kept.
+ *
+ * Rows are indexed by age, as a sorted array of packed (timestamp offset in ms << ROW_BITS | row)
+ * longs, where the offset is from the oldest result, so expiring results only touches the rows
+ * that expired. The array of valid results handed out to clients is only rebuilt when a row
+ * expires or the results are replaced, see {@link #getResults(long)}. Not thread safe, must be
+ * accessed from the scanning thread.
+ */
+public class CachedScanResultStore {
+    private static final String TAG = "CachedScanResultStore";
+
+    // Any array index fits, leaving 32 bits for the timestamp offsets.
+    private static final int ROW_BITS = 31;
+    private static final long ROW_MASK = (1L << ROW_BITS) - 1;
+    private static final long MAX_TIMESTAMP_OFFSET_MS = (1L << (63 - ROW_BITS)) - 1;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final long mMaxAgeMs;
+
+    private int mSize;
+    private ScanResult[] mResults = new ScanResult[INITIAL_CAPACITY];
+    private boolean[] mExpired = new boolean[INITIAL_CAPACITY];
+    // (timestamp offset from mMinTimestampMs << ROW_BITS | row), sorted oldest first.
+    private long[] mAgeIndex = new long[INITIAL_CAPACITY];
+    private long mMinTimestampMs;
+    // Rows of mAgeIndex before this position have expired.
+    private int mAgeCursor;
+    private long mLastExpiryTimeMs = Long.MIN_VALUE;
+    // Valid results, in row order, built on demand.
+    private ScanResult[] mValidResults;
+
+    /**
+     * @param maxAgeMs results whose timestamp is at least this old are no longer returned.
+     */
+    public CachedScanResultStore(long maxAgeMs) {
+        mMaxAgeMs = maxAgeMs;
+    }
+
+    /**
+     * Replace the content of the store with |results|.
+     */
+    public void replaceAll(@NonNull ScanResult[] results) {
+        int count = results.length;
+        ensureCapacity(count);
+        if (count < mSize) {
+            // Do not hold on to the results of the previous scan.
+            Arrays.fill(mResults, count, mSize, null);
+        }
+        long minTimestampMs = Long.MAX_VALUE;
+        for (ScanResult result : results) {
+            minTimestampMs = Math.min(minTimestampMs, timestampMs(result));
+        }
+        mMinTimestampMs = minTimestampMs;
+        for (int row = 0; row < count; row++) {
+            ScanResult result = results[row];
+            mResults[row] = result;
+            mExpired[row] = false;
+            long offsetMs = timestampMs(result) - minTimestampMs;
+            if (offsetMs > MAX_TIMESTAMP_OFFSET_MS) {
+                // Results of one scan are not 49 days apart, the timestamp is bogus.
+                Log.w(TAG, "Timestamp of " + result.BSSID + " out of range: " + result.timestamp);
+                offsetMs = MAX_TIMESTAMP_OFFSET_MS;
+            }
+            mAgeIndex[row] = (offsetMs << ROW_BITS) | row;
+        }
+        mSize = count;
+        Arrays.sort(mAgeIndex, 0, count);
+        mAgeCursor = 0;
+        mLastExpiryTimeMs = Long.MIN_VALUE;
+        mValidResults = null;
+    }
+
+    /**
+     * Remove all results.
+     */
+    public void clear() {
+        Arrays.fill(mResults, 0, mSize, null);
+        mSize = 0;
+        mAgeCursor = 0;
+        mLastExpiryTimeMs = Long.MIN_VALUE;
+        mValidResults = null;
+    }
+
+    /**
+     * Number of rows, including expired ones.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Mark the rows older than the max age at |nowMs| as expired. Only the expired rows are
+     * visited, unless the clock went backwards.
+     *
+     * @return number of rows still valid.
+     */
+    public int expire(long nowMs) {
+        if (nowMs < mLastExpiryTimeMs) {
+            // Time went backwards, start over.
+            Arrays.fill(mExpired, 0, mSize, false);
+            mAgeCursor = 0;
+            mValidResults = null;
+        }
+        mLastExpiryTimeMs = nowMs;
+        while (mAgeCursor < mSize
+                && nowMs - (mMinTimestampMs + (mAgeIndex[mAgeCursor] >> ROW_BITS))
+                        >= mMaxAgeMs) {
+            mExpired[(int) (mAgeIndex[mAgeCursor] & ROW_MASK)] = true;
+            mAgeCursor++;
+            mValidResults = null;
+        }
+        return mSize - mAgeCursor;
+    }
+
+    /**
+     * Results that are not expired at |nowMs|, in the order they were reported by the scanner.
+     *
+     * @return a new array that can be handed out to clients.
+     */
+    public @NonNull ScanResult[] getResults(long nowMs) {
+        int validCount = expire(nowMs);
+        if (mValidResults == null) {
+            ScanResult[] valid = new ScanResult[validCount];
+            int index = 0;
+            for (int row = 0; row < mSize; row++) {
+                if (!mExpired[row]) {
+                    valid[index++] = mResults[row];
+                }
+            }
+            mValidResults = valid;
+        }
+        return mValidResults.clone();
+    }
+
+    /**
+     * All rows, including expired ones, for dumps. The returned list is a read only view of the
+     * store and is only valid until the next call to {@link #replaceAll(ScanResult[])} or
+     * {@link #clear()}.
+     */
+    public @NonNull List<ScanResult> toList() {
+        return Collections.unmodifiableList(Arrays.asList(mResults).subList(0, mSize));
+    }
+
+    /**
+     * Returns true if the row was expired by the last call to {@link #expire(long)}.
+     */
+    public boolean isExpired(int row) {
+        if (row < 0 || row >= mSize) {
+            throw new IndexOutOfBoundsException("row=" + row + " size=" + mSize);
+        }
+        return mExpired[row];
+    }
+
+    private static long timestampMs(ScanResult result) {
+        // Same conversion as the ScanResult.timestamp based filtering in WificondScannerImpl.
+        return Math.max(0, result.timestamp / 1000);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= mResults.length) return;
+        int newCapacity = (int) Math.min(Integer.MAX_VALUE - 8,
+                Math.max(capacity, 2L * mResults.length));
+        mResults = Arrays.copyOf(mResults, newCapacity);
+        mExpired = Arrays.copyOf(mExpired, newCapacity);
+        mAgeIndex = Arrays.copyOf(mAgeIndex, newCapacity);
+    }
+}
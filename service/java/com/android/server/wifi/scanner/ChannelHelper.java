@@ -38,6 +38,12 @@ public abstract class ChannelHelper {
      */
     public static final int SCAN_PERIOD_PER_CHANNEL_MS = 200;
 
+    /**
+     * The estimated period spent on a channel that can only be scanned passively (e.g. DFS),
+     * where the radio has to listen for beacons instead of sending probe requests.
+     */
+    public static final int PASSIVE_SCAN_PERIOD_PER_CHANNEL_MS = 300;
+
     protected static final WifiScanner.ChannelSpec[] NO_CHANNELS = new WifiScanner.ChannelSpec[0];
 
     /**
@@ -77,6 +83,13 @@ public abstract class ChannelHelper {
      */
     public abstract int estimateScanDuration(WifiScanner.ScanSettings settings);
 
+    /**
+     * Estimates the time the chip will dwell on the given channel during a scan.
+     */
+    public int estimateChannelDwellTime(int frequency) {
+        return SCAN_PERIOD_PER_CHANNEL_MS;
+    }
+
     /**
      * Update the channel information that this object has. The source of the update is
      * implementation dependent and may result in no change. Warning the behavior of a
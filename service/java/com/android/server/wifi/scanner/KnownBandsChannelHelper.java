@@ -157,6 +157,12 @@ public class KnownBandsChannelHelper extends ChannelHelper {
         }
     }
 
+    @Override
+    public int estimateChannelDwellTime(int frequency) {
+        return isDfsChannel(frequency)
+                ? PASSIVE_SCAN_PERIOD_PER_CHANNEL_MS : SCAN_PERIOD_PER_CHANNEL_MS;
+    }
+
     private boolean isDfsChannel(int frequency) {
         for (WifiScanner.ChannelSpec dfsChannel :
                 mBandsToChannels[WIFI_BAND_INDEX_5_GHZ_DFS_ONLY]) {
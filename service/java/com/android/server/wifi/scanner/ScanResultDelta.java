@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.scanner;
+
+import android.annotation.NonNull;
+import android.net.wifi.ScanResult;
+import android.net.wifi.WifiScanner;
+import android.text.TextUtils;
+
+import com.android.server.wifi.ScanDetail;
+import com.android.server.wifi.util.ScanResultUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Difference between two consecutive result sets of the same scan source, keyed by BSSID.
+ *
+ * Every BSSID of the new result set falls in exactly one of:
+ * <li> added: BSSID was not present in the previous set.
+ * <li> updated: BSSID was present, but its beacon content (SSID, frequency, channel, capabilities
+ *      or information elements) changed. Anything derived from the beacon must be rebuilt.
+ * <li> refreshed: BSSID was present with the same beacon content; only measurements such as RSSI
+ *      and timestamps changed. State derived from the beacon can be reused.
+ * Additionally, removed holds the previous results of BSSIDs that are no longer present.
+ *
+ * Instances are immutable and can be shared between threads.
+ */
+public final class ScanResultDelta {
+    private final @WifiScanner.WifiBand int mBandScanned;
+    private final List<ScanResult> mResults;
+    private final List<ScanResult> mAdded;
+    private final List<ScanResult> mUpdated;
+    private final List<ScanResult> mRefreshed;
+    private final List<ScanResult> mRemoved;
+
+    private ScanResultDelta(int bandScanned, List<ScanResult> results, List<ScanResult> added,
+            List<ScanResult> updated, List<ScanResult> refreshed, List<ScanResult> removed) {
+        mBandScanned = bandScanned;
+        mResults = Collections.unmodifiableList(results);
+        mAdded = Collections.unmodifiableList(added);
+        mUpdated = Collections.unmodifiableList(updated);
+        mRefreshed = Collections.unmodifiableList(refreshed);
+        mRemoved = Collections.unmodifiableList(removed);
+    }
+
+    /**
+     * Compute the delta of |current| against |previous|.
+     *
+     * @param previous previous result set keyed by BSSID, not modified.
+     * @param current new result set.
+     * @param bandScanned band of the scan that produced |current|.
+     */
+    public static @NonNull ScanResultDelta compute(@NonNull Map<String, ScanResult> previous,
+            @NonNull ScanResult[] current, int bandScanned) {
+        List<ScanResult> added = new ArrayList<>();
+        List<ScanResult> updated = new ArrayList<>();
+        List<ScanResult> refreshed = new ArrayList<>();
+        int matched = 0;
+        for (ScanResult result : current) {
+            ScanResult old = previous.get(result.BSSID);
+            if (old == null) {
+                added.add(result);
+            } else {
+                matched++;
+                if (isSameBeacon(old, result)) {
+                    refreshed.add(result);
+                } else {
+                    updated.add(result);
+                }
+            }
+        }
+        List<ScanResult> removed = new ArrayList<>();
+        if (matched < previous.size()) {
+            Map<String, ScanResult> currentByBssid = toMap(current);
+            for (Map.Entry<String, ScanResult> entry : previous.entrySet()) {
+                if (!currentByBssid.containsKey(entry.getKey())) {
+                    removed.add(entry.getValue());
+                }
+            }
+        }
+        return new ScanResultDelta(bandScanned, new ArrayList<>(Arrays.asList(current)), added,
+                updated, refreshed, removed);
+    }
+
+    /**
+     * Delta that removes every BSSID of |previous|, e.g. when the scanner is reset.
+     */
+    public static @NonNull ScanResultDelta removeAll(@NonNull Map<String, ScanResult> previous) {
+        return new ScanResultDelta(WifiScanner.WIFI_BAND_UNSPECIFIED, new ArrayList<>(),
+                new ArrayList<>(), new ArrayList<>(), new ArrayList<>(),
+                new ArrayList<>(previous.values()));
+    }
+
+    /**
+     * Index |results| by BSSID.
+     */
+    public static @NonNull Map<String, ScanResult> toMap(@NonNull ScanResult[] results) {
+        Map<String, ScanResult> map = new HashMap<>(results.length * 2);
+        for (ScanResult result : results) {
+            map.put(result.BSSID, result);
+        }
+        return map;
+    }
+
+    /**
+     * Returns true if both results advertise the same beacon content.
+     */
+    public static boolean isSameBeacon(@NonNull ScanResult a, @NonNull ScanResult b) {
+        return a.frequency == b.frequency
+                && a.channelWidth == b.channelWidth
+                && a.centerFreq0 == b.centerFreq0
+                && a.centerFreq1 == b.centerFreq1
+                && TextUtils.equals(a.SSID, b.SSID)
+                && TextUtils.equals(a.capabilities, b.capabilities)
+                && isSameInformationElements(a.informationElements, b.informationElements);
+    }
+
+    private static boolean isSameInformationElements(ScanResult.InformationElement[] a,
+            ScanResult.InformationElement[] b) {
+        // Results of unchanged beacons usually share the parsed array, see ScanResultParseCache.
+        if (a == b) return true;
+        if (a == null || b == null || a.length != b.length) return false;
+        for (int i = 0; i < a.length; i++) {
+            if (a[i].id != b[i].id || a[i].idExt != b[i].idExt
+                    || !Arrays.equals(a[i].bytes, b[i].bytes)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Apply this delta to a BSSID keyed map of scan results.
+     */
+    public void applyToScanResults(@NonNull Map<String, ScanResult> scanResults) {
+        for (ScanResult result : mRemoved) {
+            scanResults.remove(result.BSSID);
+        }
+        for (ScanResult result : mResults) {
+            scanResults.put(result.BSSID, result);
+        }
+    }
+
+    /**
+     * Apply this delta to a BSSID keyed map of scan details. Scan details of refreshed BSSIDs
+     * reuse the previously parsed {@link com.android.server.wifi.hotspot2.NetworkDetail};
+     * added and updated BSSIDs are parsed from their information elements.
+     */
+    public void applyToScanDetails(@NonNull Map<String, ScanDetail> scanDetails) {
+        for (ScanResult result : mRemoved) {
+            scanDetails.remove(result.BSSID);
+        }
+        for (ScanResult result : mAdded) {
+            scanDetails.put(result.BSSID, ScanResultUtil.toScanDetail(result));
+        }
+        for (ScanResult result : mUpdated) {
+            scanDetails.put(result.BSSID, ScanResultUtil.toScanDetail(result));
+        }
+        for (ScanResult result : mRefreshed) {
+            ScanDetail old = scanDetails.get(result.BSSID);
+            scanDetails.put(result.BSSID, old == null || old.getNetworkDetail() == null
+                    ? ScanResultUtil.toScanDetail(result)
+                    : new ScanDetail(result, old.getNetworkDetail()));
+        }
+    }
+
+    /**
+     * Band of the scan that produced this delta.
+     */
+    public @WifiScanner.WifiBand int getBandScanned() {
+        return mBandScanned;
+    }
+
+    /**
+     * Complete new result set, in the order reported by the scanner.
+     */
+    public @NonNull List<ScanResult> getResults() {
+        return mResults;
+    }
+
+    public @NonNull List<ScanResult> getAdded() {
+        return mAdded;
+    }
+
+    public @NonNull List<ScanResult> getUpdated() {
+        return mUpdated;
+    }
+
+    public @NonNull List<ScanResult> getRefreshed() {
+        return mRefreshed;
+    }
+
+    public @NonNull List<ScanResult> getRemoved() {
+        return mRemoved;
+    }
+
+    /**
+     * Returns true if nothing but measurements changed since the previous result set.
+     */
+    public boolean isBeaconContentUnchanged() {
+        return mAdded.isEmpty() && mUpdated.isEmpty() && mRemoved.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "ScanResultDelta{band=" + mBandScanned + " results=" + mResults.size()
+                + " added=" + mAdded.size() + " updated=" + mUpdated.size()
+                + " refreshed=" + mRefreshed.size() + " removed=" + mRemoved.size() + "}";
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.scanner;
+
+import android.annotation.NonNull;
+import android.net.wifi.ScanResult;
+import android.net.wifi.WifiScanner;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Delivers the full band single scan results of {@link WifiScanningServiceImpl}, i.e. the cached
+ * scan results, to in-process consumers as {@link ScanResultDelta}s, so that consumers only
+ * re-derive state for the BSSIDs that changed instead of re-processing every full result set.
+ *
+ * A newly registered listener first receives a delta adding the current result set.
+ */
+public class ScanResultDeltaPublisher {
+    private static final String TAG = "ScanResultDeltaPublisher";
+
+    /**
+     * Listener for scan result deltas.
+     */
+    public interface Listener {
+        /**
+         * Invoked on the executor passed at registration.
+         */
+        void onScanResultDelta(@NonNull ScanResultDelta delta);
+    }
+
+    private final boolean mEnabled;
+    private final Object mLock = new Object();
+    private final ArrayMap<Listener, Executor> mListeners = new ArrayMap<>();
+    private Map<String, ScanResult> mPreviousResults = new HashMap<>();
+    private long mPublishedCount = 0;
+    private long mUnchangedCount = 0;
+
+    public ScanResultDeltaPublisher(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    /**
+     * Returns true if consumers should use delta delivery instead of the full results delivered
+     * by {@link WifiScanner} listeners.
+     */
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Register a listener for scan result deltas.
+     */
+    public void registerListener(@NonNull Executor executor, @NonNull Listener listener) {
+        ScanResultDelta initial;
+        synchronized (mLock) {
+            mListeners.put(listener, executor);
+            initial = ScanResultDelta.compute(new HashMap<>(),
+                    mPreviousResults.values().toArray(new ScanResult[0]),
+                    WifiScanner.WIFI_BAND_UNSPECIFIED);
+        }
+        if (!initial.getResults().isEmpty()) {
+            executor.execute(() -> listener.onScanResultDelta(initial));
+        }
+    }
+
+    /**
+     * Unregister a listener.
+     */
+    public void unregisterListener(@NonNull Listener listener) {
+        synchronized (mLock) {
+            mListeners.remove(listener);
+        }
+    }
+
+    /**
+     * Publish a new result set.
+     */
+    public void publish(@NonNull ScanResult[] results, int bandScanned) {
+        if (!mEnabled) return;
+        synchronized (mLock) {
+            ScanResultDelta delta = ScanResultDelta.compute(mPreviousResults, results,
+                    bandScanned);
+            mPreviousResults = ScanResultDelta.toMap(results);
+            dispatchLocked(delta);
+        }
+    }
+
+    /**
+     * Drop the result set, publishing the removal of every known BSSID.
+     */
+    public void reset() {
+        if (!mEnabled) return;
+        synchronized (mLock) {
+            if (mPreviousResults.isEmpty()) return;
+            ScanResultDelta delta = ScanResultDelta.removeAll(mPreviousResults);
+            mPreviousResults = new HashMap<>();
+            dispatchLocked(delta);
+        }
+    }
+
+    private void dispatchLocked(ScanResultDelta delta) {
+        mPublishedCount++;
+        if (delta.isBeaconContentUnchanged()) {
+            mUnchangedCount++;
+        }
+        for (int i = 0; i < mListeners.size(); i++) {
+            Listener listener = mListeners.keyAt(i);
+            try {
+                mListeners.valueAt(i).execute(() -> listener.onScanResultDelta(delta));
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to dispatch scan result delta", e);
+            }
+        }
+    }
+
+    /**
+     * Dump the publisher state.
+     */
+    public void dump(PrintWriter pw) {
+        synchronized (mLock) {
+            pw.println("ScanResultDeltaPublisher: enabled=" + mEnabled
+                    + " listeners=" + mListeners.size()
+                    + " bssids=" + mPreviousResults.size()
+                    + " published=" + mPublishedCount
+                    + " unchanged=" + mUnchangedCount);
+        }
+    }
+}
@@ -56,6 +56,7 @@ import com.android.internal.util.State;
 import com.android.internal.util.StateMachine;
 import com.android.server.wifi.ClientModeImpl;
 import com.android.server.wifi.Clock;
+import com.android.server.wifi.DeviceConfigFacade;
 import com.android.server.wifi.FrameworkFacade;
 import com.android.server.wifi.WifiInjector;
 import com.android.server.wifi.WifiLog;
@@ -74,7 +75,6 @@ import com.android.server.wifi.util.WorkSourceUtil;
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
@@ -399,6 +399,8 @@ public class WifiScanningServiceImpl extends IWifiScanner.Stub {
     private final FrameworkFacade mFrameworkFacade;
     private final WifiPermissionsUtil mWifiPermissionsUtil;
     private final WifiNative mWifiNative;
+    private final ScanResultDeltaPublisher mScanResultDeltaPublisher;
+    private final DeviceConfigFacade mDeviceConfigFacade;
 
     WifiScanningServiceImpl(Context context, Looper looper,
             WifiScannerImpl.WifiScannerImplFactory scannerImplFactory,
@@ -417,6 +419,8 @@ public class WifiScanningServiceImpl extends IWifiScanner.Stub {
         mFrameworkFacade = wifiInjector.getFrameworkFacade();
         mWifiPermissionsUtil = wifiInjector.getWifiPermissionsUtil();
         mWifiNative = wifiInjector.getWifiNative();
+        mScanResultDeltaPublisher = wifiInjector.getScanResultDeltaPublisher();
+        mDeviceConfigFacade = wifiInjector.getDeviceConfigFacade();
         mPreviousSchedule = null;
     }
 
@@ -639,7 +643,8 @@ public class WifiScanningServiceImpl extends IWifiScanner.Stub {
         private RequestList<ScanSettings> mPendingScans = new RequestList<>();
 
         // Scan results cached from the last full single scan request.
-        private final List<ScanResult> mCachedScanResults = new ArrayList<>();
+        private final CachedScanResultStore mCachedScanResults =
+                new CachedScanResultStore(CACHED_SCAN_RESULTS_MAX_AGE_IN_MILLIS);
 
         // Tracks scan requests across multiple scanner impls.
         private final ScannerImplsTracker mScannerImplsTracker;
@@ -856,14 +861,9 @@ public class WifiScanningServiceImpl extends IWifiScanner.Stub {
              * @return Filtered list of scan results.
              */
             private ScanResult[] filterCachedScanResultsByAge() {
-                // Using ScanResult.timestamp here to ensure that we use the same fields as
-                // WificondScannerImpl for filtering stale results.
-                long currentTimeInMillis = mClock.getElapsedSinceBootMillis();
-                return mCachedScanResults.stream()
-                        .filter(scanResult
-                                -> ((currentTimeInMillis - (scanResult.timestamp / 1000))
-                                        < CACHED_SCAN_RESULTS_MAX_AGE_IN_MILLIS))
-                        .toArray(ScanResult[]::new);
+                // The store ages results by ScanResult.timestamp, to ensure that we use the same
+                // fields as WificondScannerImpl for filtering stale results.
+                return mCachedScanResults.getResults(mClock.getElapsedSinceBootMillis());
             }
         }
 
@@ -877,6 +877,9 @@ public class WifiScanningServiceImpl extends IWifiScanner.Stub {
             public void exit() {
                 // clear scan results when scan mode is not active
                 mCachedScanResults.clear();
+                if (mScanResultDeltaPublisher != null) {
+                    mScanResultDeltaPublisher.reset();
+                }
 
                 mWifiMetrics.incrementScanReturnEntry(
                         WifiMetricsProto.WifiLog.SCAN_FAILURE_INTERRUPTED,
@@ -1282,13 +1285,16 @@ public class WifiScanningServiceImpl extends IWifiScanner.Stub {
 
             // Cache full band (with DFS or not) scan results.
             if (WifiScanner.isFullBandScan(results.getBandScanned(), true)) {
-                mCachedScanResults.clear();
-                mCachedScanResults.addAll(Arrays.asList(results.getResults()));
+                mCachedScanResults.replaceAll(results.getResults());
+                if (mScanResultDeltaPublisher != null) {
+                    mScanResultDeltaPublisher.publish(results.getResults(),
+                            results.getBandScanned());
+                }
             }
         }
 
         List<ScanResult> getCachedScanResultsAsList() {
-            return mCachedScanResults;
+            return mCachedScanResults.toList();
         }
     }
 
@@ -1393,6 +1399,10 @@ public class WifiScanningServiceImpl extends IWifiScanner.Stub {
                         mChannelHelper = mScannerImpl.getChannelHelper();
 
                         mBackgroundScheduler = new BackgroundScanScheduler(mChannelHelper);
+                        if (mDeviceConfigFacade.isBackgroundScanCostModelEnabled()) {
+                            mBackgroundScheduler.setSchedulerMode(
+                                    BackgroundScanScheduler.SCHEDULER_MODE_COST_MODEL);
+                        }
 
                         WifiNative.ScanCapabilities capabilities =
                                 new WifiNative.ScanCapabilities();
@@ -2534,6 +2544,9 @@ public class WifiScanningServiceImpl extends IWifiScanner.Stub {
                 pw.println("  base period: " + schedule.base_period_ms);
                 pw.println("  max ap per scan: " + schedule.max_ap_per_scan);
                 pw.println("  batched scans: " + schedule.report_threshold_num_scans);
+                pw.println("  scheduler mode: " + mBackgroundScheduler.getSchedulerMode());
+                pw.println("  estimated scan time per hour: "
+                        + mBackgroundScheduler.estimateScanTimeMsPerHour() + "ms");
                 pw.println("  buckets:");
                 for (int b = 0; b < schedule.num_buckets; b++) {
                     WifiNative.BucketSettings bucket = schedule.buckets[b];
@@ -2557,6 +2570,10 @@ public class WifiScanningServiceImpl extends IWifiScanner.Stub {
             ScanResultUtil.dumpScanResults(pw, scanResults, nowMs);
             pw.println();
         }
+        if (mScanResultDeltaPublisher != null) {
+            mScanResultDeltaPublisher.dump(pw);
+            pw.println();
+        }
         for (WifiScannerImpl impl : mScannerImpls.values()) {
             impl.dump(fd, pw, args);
         }
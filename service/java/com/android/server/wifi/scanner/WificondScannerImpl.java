@@ -496,6 +496,7 @@ public class WificondScannerImpl extends WifiScannerImpl implements Handler.Call
                     }
                 }
             }
+            mWifiNative.dumpScanResultParseCache(pw);
             pw.println("");
         }
     }
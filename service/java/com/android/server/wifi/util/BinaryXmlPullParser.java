@@ -0,0 +1,434 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.util;
+
+import static com.android.server.wifi.util.BinaryXmlSerializer.TOKEN_ATTRIBUTE;
+import static com.android.server.wifi.util.BinaryXmlSerializer.TOKEN_END_TAG;
+import static com.android.server.wifi.util.BinaryXmlSerializer.TOKEN_START_TAG;
+import static com.android.server.wifi.util.BinaryXmlSerializer.TOKEN_TEXT;
+
+import android.annotation.NonNull;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@link XmlPullParser} reading the binary encoding written by {@link BinaryXmlSerializer}.
+ *
+ * The events are the same as the ones of a regular parser reading the XML written with the same
+ * calls, except that there is no whitespace text that was not explicitly written and empty
+ * element tags are reported as a start tag followed by an end tag.
+ */
+public class BinaryXmlPullParser implements XmlPullParser {
+    private static final int NO_TOKEN = -1;
+    // Initial size of the buffers of readBytes(), larger than most strings of the store files.
+    private static final int READ_BUFFER_SIZE = 4096;
+
+    private InputStream mIn;
+    private final List<String> mInternedStrings = new ArrayList<>();
+    private final List<String> mOpenTags = new ArrayList<>();
+    // Attribute names and values of the current start tag, interleaved.
+    private final List<String> mAttributes = new ArrayList<>();
+    private int mEventType = START_DOCUMENT;
+    private int mDepth = 0;
+    private String mName;
+    private String mText;
+    // Token read after the attributes of the current start tag, to be processed next.
+    private int mPendingToken = NO_TOKEN;
+
+    /**
+     * Read an unsigned varint written by {@link BinaryXmlSerializer#writeVarInt}.
+     *
+     * @throws EOFException if the stream ends before the varint does.
+     */
+    public static int readVarInt(@NonNull InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b < 0) throw new EOFException("Unexpected end of varint");
+            // The last byte only holds the 4 remaining bits of an int.
+            if (shift == 28 && (b & 0xf0) != 0) break;
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Read a length or count written as a varint, which cannot be negative.
+     *
+     * @throws IOException if the length is negative, i.e. the data is corrupted.
+     */
+    public static int readLength(@NonNull InputStream in) throws IOException {
+        int length = readVarInt(in);
+        if (length < 0) throw new IOException("Invalid length: " + length);
+        return length;
+    }
+
+    /**
+     * Read |length| bytes.
+     *
+     * The length comes from the data and is not trusted: the buffer grows as the bytes are
+     * read, so that a corrupted length fails at the end of the stream, or of the section of the
+     * store file being read, rather than allocating that much memory first.
+     *
+     * @throws EOFException if the stream ends before.
+     */
+    public static @NonNull byte[] readBytes(@NonNull InputStream in, int length)
+            throws IOException {
+        if (length < 0) throw new IOException("Invalid length: " + length);
+        byte[] bytes = new byte[Math.min(length, READ_BUFFER_SIZE)];
+        int pos = 0;
+        while (pos < length) {
+            if (pos == bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * bytes.length));
+            }
+            int amt = in.read(bytes, pos, bytes.length - pos);
+            if (amt < 0) throw new EOFException("Unexpected end of data");
+            pos += amt;
+        }
+        return bytes;
+    }
+
+    /**
+     * Read a string written by {@link BinaryXmlSerializer#writeString}.
+     */
+    public static @NonNull String readString(@NonNull InputStream in) throws IOException {
+        return new String(readBytes(in, readLength(in)), StandardCharsets.UTF_8);
+    }
+
+    private String readInternedString() throws IOException, XmlPullParserException {
+        int index = readVarInt(mIn);
+        if (index == 0) {
+            String value = readString(mIn);
+            mInternedStrings.add(value);
+            return value;
+        }
+        if (index < 0 || index > mInternedStrings.size()) {
+            throw new XmlPullParserException("Invalid string index: " + index);
+        }
+        return mInternedStrings.get(index - 1);
+    }
+
+    @Override
+    public void setFeature(String name, boolean state) throws XmlPullParserException {
+        if (state) throw new XmlPullParserException("Unsupported feature: " + name);
+    }
+
+    @Override
+    public boolean getFeature(String name) {
+        return false;
+    }
+
+    @Override
+    public void setProperty(String name, Object value) throws XmlPullParserException {
+        throw new XmlPullParserException("Unsupported property: " + name);
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return null;
+    }
+
+    @Override
+    public void setInput(Reader in) throws XmlPullParserException {
+        throw new XmlPullParserException("Binary input needs an InputStream");
+    }
+
+    @Override
+    public void setInput(InputStream inputStream, String inputEncoding) {
+        mIn = inputStream;
+        mInternedStrings.clear();
+        mOpenTags.clear();
+        mAttributes.clear();
+        mEventType = START_DOCUMENT;
+        mDepth = 0;
+        mName = null;
+        mText = null;
+        mPendingToken = NO_TOKEN;
+    }
+
+    @Override
+    public String getInputEncoding() {
+        return null;
+    }
+
+    @Override
+    public void defineEntityReplacementText(String entityName, String replacementText)
+            throws XmlPullParserException {
+        throw new XmlPullParserException("Entity references are not supported");
+    }
+
+    @Override
+    public int getNamespaceCount(int depth) {
+        return 0;
+    }
+
+    @Override
+    public String getNamespacePrefix(int pos) {
+        throw new IndexOutOfBoundsException("No namespaces");
+    }
+
+    @Override
+    public String getNamespaceUri(int pos) {
+        throw new IndexOutOfBoundsException("No namespaces");
+    }
+
+    @Override
+    public String getNamespace(String prefix) {
+        return null;
+    }
+
+    @Override
+    public int getDepth() {
+        return mDepth;
+    }
+
+    @Override
+    public String getPositionDescription() {
+        return TYPES[mEventType] + (mName != null ? " " + mName : "") + " at depth " + mDepth;
+    }
+
+    @Override
+    public int getLineNumber() {
+        return -1;
+    }
+
+    @Override
+    public int getColumnNumber() {
+        return -1;
+    }
+
+    @Override
+    public boolean isWhitespace() throws XmlPullParserException {
+        if (mEventType != TEXT) {
+            throw new XmlPullParserException("Not a text event: " + getPositionDescription());
+        }
+        return mText.trim().isEmpty();
+    }
+
+    @Override
+    public String getText() {
+        return mEventType == TEXT ? mText : null;
+    }
+
+    @Override
+    public char[] getTextCharacters(int[] holderForStartAndLength) {
+        String text = getText();
+        if (text == null) {
+            holderForStartAndLength[0] = -1;
+            holderForStartAndLength[1] = -1;
+            return null;
+        }
+        holderForStartAndLength[0] = 0;
+        holderForStartAndLength[1] = text.length();
+        return text.toCharArray();
+    }
+
+    @Override
+    public String getNamespace() {
+        return (mEventType == START_TAG || mEventType == END_TAG) ? "" : null;
+    }
+
+    @Override
+    public String getName() {
+        return (mEventType == START_TAG || mEventType == END_TAG) ? mName : null;
+    }
+
+    @Override
+    public String getPrefix() {
+        return null;
+    }
+
+    @Override
+    public boolean isEmptyElementTag() throws XmlPullParserException {
+        if (mEventType != START_TAG) {
+            throw new XmlPullParserException("Not a start tag: " + getPositionDescription());
+        }
+        return false;
+    }
+
+    @Override
+    public int getAttributeCount() {
+        return mEventType == START_TAG ? mAttributes.size() / 2 : -1;
+    }
+
+    @Override
+    public String getAttributeNamespace(int index) {
+        checkAttributeIndex(index);
+        return "";
+    }
+
+    @Override
+    public String getAttributeName(int index) {
+        checkAttributeIndex(index);
+        return mAttributes.get(2 * index);
+    }
+
+    @Override
+    public String getAttributePrefix(int index) {
+        checkAttributeIndex(index);
+        return null;
+    }
+
+    @Override
+    public String getAttributeType(int index) {
+        checkAttributeIndex(index);
+        return "CDATA";
+    }
+
+    @Override
+    public boolean isAttributeDefault(int index) {
+        checkAttributeIndex(index);
+        return false;
+    }
+
+    @Override
+    public String getAttributeValue(int index) {
+        checkAttributeIndex(index);
+        return mAttributes.get(2 * index + 1);
+    }
+
+    @Override
+    public String getAttributeValue(String namespace, String name) {
+        if (mEventType != START_TAG) {
+            throw new IndexOutOfBoundsException("Not a start tag: " + getPositionDescription());
+        }
+        if (namespace != null && !namespace.isEmpty()) return null;
+        for (int i = 0; i < mAttributes.size(); i += 2) {
+            if (mAttributes.get(i).equals(name)) {
+                return mAttributes.get(i + 1);
+            }
+        }
+        return null;
+    }
+
+    private void checkAttributeIndex(int index) {
+        if (mEventType != START_TAG || index < 0 || index >= mAttributes.size() / 2) {
+            throw new IndexOutOfBoundsException("Invalid attribute index " + index + " for "
+                    + getPositionDescription());
+        }
+    }
+
+    @Override
+    public int getEventType() {
+        return mEventType;
+    }
+
+    @Override
+    public int next() throws XmlPullParserException, IOException {
+        if (mEventType == END_DOCUMENT) {
+            throw new XmlPullParserException("Already at the end of the document");
+        }
+        if (mEventType == END_TAG) {
+            mDepth--;
+        }
+        mAttributes.clear();
+        mText = null;
+        int token = mPendingToken;
+        mPendingToken = NO_TOKEN;
+        if (token == NO_TOKEN) {
+            token = mIn.read();
+        }
+        switch (token) {
+            case -1:
+                if (!mOpenTags.isEmpty()) {
+                    throw new XmlPullParserException("Unexpected end of document in <"
+                            + mOpenTags.get(mOpenTags.size() - 1) + ">");
+                }
+                mName = null;
+                mEventType = END_DOCUMENT;
+                break;
+            case TOKEN_START_TAG:
+                mName = readInternedString();
+                mOpenTags.add(mName);
+                mDepth++;
+                while ((token = mIn.read()) == TOKEN_ATTRIBUTE) {
+                    mAttributes.add(readInternedString());
+                    mAttributes.add(readInternedString());
+                }
+                mPendingToken = token;
+                mEventType = START_TAG;
+                break;
+            case TOKEN_END_TAG:
+                if (mOpenTags.isEmpty()) {
+                    throw new XmlPullParserException("End tag without start tag");
+                }
+                mName = mOpenTags.remove(mOpenTags.size() - 1);
+                mEventType = END_TAG;
+                break;
+            case TOKEN_TEXT:
+                mName = null;
+                mText = readString(mIn);
+                mEventType = TEXT;
+                break;
+            default:
+                throw new XmlPullParserException("Invalid token: " + token);
+        }
+        return mEventType;
+    }
+
+    @Override
+    public int nextToken() throws XmlPullParserException, IOException {
+        return next();
+    }
+
+    @Override
+    public void require(int type, String namespace, String name) throws XmlPullParserException {
+        if (type != mEventType
+                || (namespace != null && !namespace.equals(getNamespace()))
+                || (name != null && !name.equals(getName()))) {
+            throw new XmlPullParserException("Expected " + TYPES[type] + " " + name + ", got "
+                    + getPositionDescription());
+        }
+    }
+
+    @Override
+    public String nextText() throws XmlPullParserException, IOException {
+        require(START_TAG, null, null);
+        String text = "";
+        if (next() == TEXT) {
+            text = mText;
+            next();
+        }
+        if (mEventType != END_TAG) {
+            throw new XmlPullParserException("Expected end tag, got " + getPositionDescription());
+        }
+        return text;
+    }
+
+    @Override
+    public int nextTag() throws XmlPullParserException, IOException {
+        next();
+        if (mEventType == TEXT && isWhitespace()) {
+            next();
+        }
+        if (mEventType != START_TAG && mEventType != END_TAG) {
+            throw new XmlPullParserException("Expected a tag, got " + getPositionDescription());
+        }
+        return mEventType;
+    }
+}
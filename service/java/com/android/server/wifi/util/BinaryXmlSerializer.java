@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.util;
+
+import android.annotation.NonNull;
+
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link XmlSerializer} writing a compact binary encoding of the XML events, which is read back
+ * by {@link BinaryXmlPullParser}.
+ *
+ * The encoding is a sequence of tokens, each starting with a token type byte:
+ * <li>{@link #TOKEN_START_TAG}: tag name.</li>
+ * <li>{@link #TOKEN_ATTRIBUTE}: attribute name and value, right after their start tag.</li>
+ * <li>{@link #TOKEN_END_TAG}: closes the innermost open tag.</li>
+ * <li>{@link #TOKEN_TEXT}: text.</li>
+ * Tag names, attribute names and attribute values are interned: the first occurrence of a
+ * string is written as index 0 followed by the string, and the next ones only as the index
+ * given to the string. Numbers are written as unsigned varints, and strings as their UTF-8 byte
+ * length followed by the bytes.
+ *
+ * Only the features used by {@link XmlUtil} are supported: no namespaces, comments, processing
+ * instructions or entity references.
+ */
+public class BinaryXmlSerializer implements XmlSerializer {
+    public static final int TOKEN_START_TAG = 1;
+    public static final int TOKEN_ATTRIBUTE = 2;
+    public static final int TOKEN_END_TAG = 3;
+    public static final int TOKEN_TEXT = 4;
+
+    private OutputStream mOut;
+    private final Map<String, Integer> mInternedStrings = new HashMap<>();
+    private final List<String> mOpenTags = new ArrayList<>();
+    // Attributes can only be written right after their start tag.
+    private boolean mInStartTag = false;
+
+    /**
+     * Write |value| as an unsigned varint: 7 bits per byte, least significant first, with the
+     * high bit set on all bytes but the last.
+     */
+    public static void writeVarInt(@NonNull OutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Write |value| as its UTF-8 byte length followed by the bytes.
+     */
+    public static void writeString(@NonNull OutputStream out, @NonNull String value)
+            throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeInternedString(String value) throws IOException {
+        Integer index = mInternedStrings.get(value);
+        if (index != null) {
+            writeVarInt(mOut, index);
+            return;
+        }
+        writeVarInt(mOut, 0);
+        writeString(mOut, value);
+        mInternedStrings.put(value, mInternedStrings.size() + 1);
+    }
+
+    private static void checkNoNamespace(String namespace) {
+        if (namespace != null && !namespace.isEmpty()) {
+            throw new UnsupportedOperationException("Namespaces are not supported");
+        }
+    }
+
+    @Override
+    public void setFeature(String name, boolean state) {
+        throw new IllegalArgumentException("Unsupported feature: " + name);
+    }
+
+    @Override
+    public boolean getFeature(String name) {
+        return false;
+    }
+
+    @Override
+    public void setProperty(String name, Object value) {
+        throw new IllegalArgumentException("Unsupported property: " + name);
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return null;
+    }
+
+    @Override
+    public void setOutput(OutputStream os, String encoding) {
+        mOut = os;
+        mInternedStrings.clear();
+        mOpenTags.clear();
+        mInStartTag = false;
+    }
+
+    @Override
+    public void setOutput(Writer writer) {
+        throw new UnsupportedOperationException("Binary output needs an OutputStream");
+    }
+
+    @Override
+    public void startDocument(String encoding, Boolean standalone) {
+        // Nothing to write, the encoding has no document header.
+    }
+
+    @Override
+    public void endDocument() throws IOException {
+        if (!mOpenTags.isEmpty()) {
+            throw new IllegalStateException("Unclosed tag: " + getName());
+        }
+        flush();
+    }
+
+    @Override
+    public void setPrefix(String prefix, String namespace) {
+        throw new UnsupportedOperationException("Namespaces are not supported");
+    }
+
+    @Override
+    public String getPrefix(String namespace, boolean generatePrefix) {
+        return null;
+    }
+
+    @Override
+    public int getDepth() {
+        return mOpenTags.size();
+    }
+
+    @Override
+    public String getNamespace() {
+        return null;
+    }
+
+    @Override
+    public String getName() {
+        return mOpenTags.isEmpty() ? null : mOpenTags.get(mOpenTags.size() - 1);
+    }
+
+    @Override
+    public XmlSerializer startTag(String namespace, String name) throws IOException {
+        checkNoNamespace(namespace);
+        mOut.write(TOKEN_START_TAG);
+        writeInternedString(name);
+        mOpenTags.add(name);
+        mInStartTag = true;
+        return this;
+    }
+
+    @Override
+    public XmlSerializer attribute(String namespace, String name, String value)
+            throws IOException {
+        checkNoNamespace(namespace);
+        if (!mInStartTag) {
+            throw new IllegalStateException("Attribute " + name + " not right after a start tag");
+        }
+        mOut.write(TOKEN_ATTRIBUTE);
+        writeInternedString(name);
+        writeInternedString(value);
+        return this;
+    }
+
+    @Override
+    public XmlSerializer endTag(String namespace, String name) throws IOException {
+        checkNoNamespace(namespace);
+        if (mOpenTags.isEmpty() || !mOpenTags.get(mOpenTags.size() - 1).equals(name)) {
+            throw new IllegalStateException("End tag " + name + " does not match start tag "
+                    + getName());
+        }
+        mOut.write(TOKEN_END_TAG);
+        mOpenTags.remove(mOpenTags.size() - 1);
+        mInStartTag = false;
+        return this;
+    }
+
+    @Override
+    public XmlSerializer text(String text) throws IOException {
+        mOut.write(TOKEN_TEXT);
+        writeString(mOut, text);
+        mInStartTag = false;
+        return this;
+    }
+
+    @Override
+    public XmlSerializer text(char[] buf, int start, int len) throws IOException {
+        return text(new String(buf, start, len));
+    }
+
+    @Override
+    public void cdsect(String text) throws IOException {
+        text(text);
+    }
+
+    @Override
+    public void entityRef(String text) {
+        throw new UnsupportedOperationException("Entity references are not supported");
+    }
+
+    @Override
+    public void processingInstruction(String text) {
+        throw new UnsupportedOperationException("Processing instructions are not supported");
+    }
+
+    @Override
+    public void comment(String text) {
+        // Dropped.
+    }
+
+    @Override
+    public void docdecl(String text) {
+        throw new UnsupportedOperationException("Document type declarations are not supported");
+    }
+
+    @Override
+    public void ignorableWhitespace(String text) {
+        // Dropped.
+    }
+
+    @Override
+    public void flush() throws IOException {
+        mOut.flush();
+    }
+}
@@ -41,44 +41,7 @@ public class InformationElementUtil {
     private static final String TAG = "InformationElementUtil";
     private static final boolean DBG = false;
     public static InformationElement[] parseInformationElements(byte[] bytes) {
-        if (bytes == null) {
-            return new InformationElement[0];
-        }
-        ByteBuffer data = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
-
-        ArrayList<InformationElement> infoElements = new ArrayList<>();
-        boolean found_ssid = false;
-        while (data.remaining() > 1) {
-            int eid = data.get() & Constants.BYTE_MASK;
-            int eidExt = 0;
-            int elementLength = data.get() & Constants.BYTE_MASK;
-
-            if (elementLength > data.remaining() || (eid == InformationElement.EID_SSID
-                    && found_ssid)) {
-                // APs often pad the data with bytes that happen to match that of the EID_SSID
-                // marker.  This is not due to a known issue for APs to incorrectly send the SSID
-                // name multiple times.
-                break;
-            }
-            if (eid == InformationElement.EID_SSID) {
-                found_ssid = true;
-            } else if (eid == InformationElement.EID_EXTENSION_PRESENT) {
-                if (elementLength == 0) {
-                    // Malformed IE, skipping
-                    break;
-                }
-                eidExt = data.get() & Constants.BYTE_MASK;
-                elementLength--;
-            }
-
-            InformationElement ie = new InformationElement();
-            ie.id = eid;
-            ie.idExt = eidExt;
-            ie.bytes = new byte[elementLength];
-            data.get(ie.bytes);
-            infoElements.add(ie);
-        }
-        return infoElements.toArray(new InformationElement[infoElements.size()]);
+        return InformationElementView.parse(bytes).toInformationElements();
     }
 
     /**
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.util;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.net.wifi.ScanResult.InformationElement;
+
+import com.android.server.wifi.hotspot2.anqp.Constants;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Read-only, lazily materialized view over the raw information element buffer of a scan result.
+ *
+ * The buffer is indexed once into (id, offset, length) slices. An {@link InformationElement}
+ * copy of a payload is only created when a caller asks for it, and is cached so that parsers
+ * and the final {@link android.net.wifi.ScanResult#informationElements} array share the same
+ * instance.
+ */
+public final class InformationElementView {
+    // Each element occupies INDEX_STRIDE ints in mIndex: (id | idExt << 8), offset, length.
+    private static final int INDEX_STRIDE = 3;
+    private static final int EXT_SHIFT = 8;
+
+    private static final InformationElementView EMPTY =
+            new InformationElementView(null, new int[0], 0, new InformationElement[0]);
+
+    private final byte[] mData;
+    private final int[] mIndex;
+    private final int mCount;
+    private final InformationElement[] mElements;
+    private int mMaterializedCount;
+    private InformationElement[] mAllElements;
+
+    private InformationElementView(byte[] data, int[] index, int count,
+            InformationElement[] elements) {
+        mData = data;
+        mIndex = index;
+        mCount = count;
+        mElements = elements;
+    }
+
+    /**
+     * Index the raw information element bytes without copying any payload.
+     * Malformed trailing data is handled the same way as
+     * {@link InformationElementUtil#parseInformationElements(byte[])}.
+     *
+     * @param bytes raw information elements as received from the driver, may be null
+     */
+    public static @NonNull InformationElementView parse(@Nullable byte[] bytes) {
+        if (bytes == null) {
+            return EMPTY;
+        }
+        int count = index(bytes, null);
+        if (count == 0) {
+            return EMPTY;
+        }
+        int[] index = new int[count * INDEX_STRIDE];
+        index(bytes, index);
+        return new InformationElementView(bytes, index, count, new InformationElement[count]);
+    }
+
+    /**
+     * Create a view over already materialized information elements.
+     *
+     * @param ies information elements, must not be null
+     */
+    public static @NonNull InformationElementView wrap(@NonNull InformationElement[] ies) {
+        int[] index = new int[ies.length * INDEX_STRIDE];
+        for (int i = 0; i < ies.length; i++) {
+            int base = i * INDEX_STRIDE;
+            index[base] = ies[i].id | (ies[i].idExt << EXT_SHIFT);
+            index[base + 1] = -1;
+            index[base + 2] = ies[i].bytes == null ? 0 : ies[i].bytes.length;
+        }
+        InformationElementView view = new InformationElementView(null, index, ies.length, ies);
+        view.mMaterializedCount = ies.length;
+        view.mAllElements = ies;
+        return view;
+    }
+
+    /**
+     * Walk the buffer and record (id, offset, length) of each element into |index|.
+     * When |index| is null, only count the elements.
+     *
+     * @return number of well formed elements found
+     */
+    private static int index(byte[] bytes, int[] index) {
+        int pos = 0;
+        int count = 0;
+        boolean foundSsid = false;
+        while (bytes.length - pos > 1) {
+            int eid = bytes[pos++] & Constants.BYTE_MASK;
+            int eidExt = 0;
+            int elementLength = bytes[pos++] & Constants.BYTE_MASK;
+
+            if (elementLength > bytes.length - pos
+                    || (eid == InformationElement.EID_SSID && foundSsid)) {
+                // APs often pad the data with bytes that happen to match that of the EID_SSID
+                // marker.
+                break;
+            }
+            if (eid == InformationElement.EID_SSID) {
+                foundSsid = true;
+            } else if (eid == InformationElement.EID_EXTENSION_PRESENT) {
+                if (elementLength == 0) {
+                    // Malformed IE, skipping
+                    break;
+                }
+                eidExt = bytes[pos++] & Constants.BYTE_MASK;
+                elementLength--;
+            }
+            if (index != null) {
+                int base = count * INDEX_STRIDE;
+                index[base] = eid | (eidExt << EXT_SHIFT);
+                index[base + 1] = pos;
+                index[base + 2] = elementLength;
+            }
+            pos += elementLength;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Number of information elements in the view.
+     */
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * Element ID of the element at |index|.
+     */
+    public int getId(int index) {
+        return mIndex[checkIndex(index) * INDEX_STRIDE] & Constants.BYTE_MASK;
+    }
+
+    /**
+     * Element ID extension of the element at |index|, 0 if the element is not an extension.
+     */
+    public int getIdExt(int index) {
+        return mIndex[checkIndex(index) * INDEX_STRIDE] >>> EXT_SHIFT;
+    }
+
+    /**
+     * Payload length of the element at |index|, excluding the element ID extension byte.
+     */
+    public int getLength(int index) {
+        return mIndex[checkIndex(index) * INDEX_STRIDE + 2];
+    }
+
+    /**
+     * Index of the first element with the given ID, or -1 if not present.
+     */
+    public int indexOf(int eid) {
+        for (int i = 0; i < mCount; i++) {
+            if ((mIndex[i * INDEX_STRIDE] & Constants.BYTE_MASK) == eid) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Index of the first extension element with the given extension ID, or -1 if not present.
+     */
+    public int indexOfExtension(int eidExt) {
+        int key = InformationElement.EID_EXTENSION_PRESENT | (eidExt << EXT_SHIFT);
+        for (int i = 0; i < mCount; i++) {
+            if (mIndex[i * INDEX_STRIDE] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Read-only little endian buffer over the payload of the element at |index|.
+     * This does not copy the payload.
+     */
+    public @NonNull ByteBuffer getPayload(int index) {
+        int base = checkIndex(index) * INDEX_STRIDE;
+        ByteBuffer payload;
+        if (mData == null || mIndex[base + 1] < 0) {
+            payload = ByteBuffer.wrap(getInformationElement(index).bytes);
+        } else {
+            payload = ByteBuffer.wrap(mData, mIndex[base + 1], mIndex[base + 2]).slice();
+        }
+        return payload.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Materialize the element at |index|. The returned instance is cached and shared with
+     * {@link #toInformationElements()}, so callers must not modify it.
+     */
+    public @NonNull InformationElement getInformationElement(int index) {
+        InformationElement ie = mElements[checkIndex(index)];
+        if (ie != null) {
+            return ie;
+        }
+        int base = index * INDEX_STRIDE;
+        int offset = mIndex[base + 1];
+        int length = mIndex[base + 2];
+        ie = new InformationElement();
+        ie.id = mIndex[base] & Constants.BYTE_MASK;
+        ie.idExt = mIndex[base] >>> EXT_SHIFT;
+        ie.bytes = new byte[length];
+        System.arraycopy(mData, offset, ie.bytes, 0, length);
+        mElements[index] = ie;
+        mMaterializedCount++;
+        return ie;
+    }
+
+    /**
+     * Materialize every element, e.g. to populate
+     * {@link android.net.wifi.ScanResult#informationElements}. Elements already materialized
+     * by earlier {@link #getInformationElement(int)} calls are reused.
+     */
+    public @NonNull InformationElement[] toInformationElements() {
+        if (mAllElements == null) {
+            for (int i = 0; i < mCount; i++) {
+                getInformationElement(i);
+            }
+            mAllElements = mElements;
+        }
+        return mAllElements;
+    }
+
+    /**
+     * Number of elements whose payload has been copied out of the raw buffer so far.
+     */
+    public int getMaterializedCount() {
+        return mMaterializedCount;
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= mCount) {
+            throw new IndexOutOfBoundsException("index=" + index + " size=" + mCount);
+        }
+        return index;
+    }
+}
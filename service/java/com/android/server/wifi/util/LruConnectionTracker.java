@@ -30,6 +30,8 @@ import com.android.wifi.resources.R;
 public class LruConnectionTracker {
     private final LruList<ScanResultMatchInfo> mList;
     private final Context mContext;
+    // Bumped on every change of the list, see getModificationCount().
+    private long mModificationCount = 0;
     public LruConnectionTracker(int size, Context context) {
         mList = new LruList<>(size);
         mContext = context;
@@ -47,6 +49,7 @@ public class LruConnectionTracker {
      */
     public void addNetwork(@NonNull WifiConfiguration config) {
         mList.add(ScanResultMatchInfo.fromWifiConfiguration(config));
+        mModificationCount++;
     }
 
     /**
@@ -54,6 +57,7 @@ public class LruConnectionTracker {
      */
     public void removeNetwork(@NonNull WifiConfiguration config) {
         mList.remove(ScanResultMatchInfo.fromWifiConfiguration(config));
+        mModificationCount++;
     }
 
     /**
@@ -69,4 +73,12 @@ public class LruConnectionTracker {
         }
         return index;
     }
+
+    /**
+     * Get the number of changes made to the list so far, so that callers can tell whether an
+     * ordering based on {@link #getAgeIndexOfNetwork(WifiConfiguration)} is still valid.
+     */
+    public long getModificationCount() {
+        return mModificationCount;
+    }
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import static org.junit.Assert.assertEquals;
+
+import android.net.wifi.ScanResult;
+import android.net.wifi.WifiConfiguration;
+import android.os.UserManager;
+import android.perftests.utils.BenchmarkState;
+import android.perftests.utils.PerfStatusReporter;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.filters.LargeTest;
+
+import com.android.server.wifi.benchmark.AllocationTracker;
+import com.android.server.wifi.util.ScanResultUtil;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Times {@link ConfigurationMap#getByScanResultForCurrentUser(ScanResult)} over a dense venue
+ * scan, against the {@link ScanResultMatchInfo} keyed lookup it replaced, and verifies the lookup
+ * does not allocate.
+ *
+ * Lives in the service package as {@link ConfigurationMap} can only be created from there.
+ */
+@LargeTest
+public class ConfigurationMapBenchmark {
+    private static final int NUM_NETWORKS = 200;
+    private static final int NUM_SCAN_RESULTS = 500;
+    private static final int ALLOC_ITERATIONS = 20;
+    private static final String[] CAPABILITIES = {
+            "[ESS]",
+            "[WPA2-PSK-CCMP][RSN-PSK-CCMP][ESS]",
+            "[RSN-PSK+SAE-CCMP][ESS]",
+            "[RSN-EAP-CCMP][ESS]",
+            "[RSN-OWE_TRANSITION-CCMP][ESS]",
+            "[WEP][ESS]"};
+
+    @Rule
+    public PerfStatusReporter mPerfStatusReporter = new PerfStatusReporter();
+
+    private ConfigurationMap mConfigurationMap;
+    private Map<ScanResultMatchInfo, WifiConfiguration> mMatchInfoMap;
+    private ScanResult[] mScanResults;
+
+    @Before
+    public void setUp() {
+        UserManager userManager = InstrumentationRegistry.getContext()
+                .getSystemService(UserManager.class);
+        mConfigurationMap = new ConfigurationMap(userManager);
+        mMatchInfoMap = new HashMap<>();
+        mScanResults = new ScanResult[NUM_SCAN_RESULTS];
+        for (int i = 0; i < NUM_SCAN_RESULTS; i++) {
+            ScanResult scanResult = new ScanResult();
+            // Half of the scanned SSIDs are saved.
+            scanResult.SSID = "Network-" + (i % (2 * NUM_NETWORKS));
+            scanResult.BSSID = String.format("02:00:00:00:%02x:%02x", i >> 8, i & 0xff);
+            scanResult.capabilities = CAPABILITIES[i % CAPABILITIES.length];
+            mScanResults[i] = scanResult;
+            if (i < NUM_NETWORKS) {
+                WifiConfiguration config = ScanResultUtil.createNetworkFromScanResult(scanResult);
+                config.networkId = i;
+                config.shared = true;
+                if (ScanResultUtil.isScanResultForWepNetwork(scanResult)) {
+                    config.wepKeys[0] = "\"abcde\"";
+                }
+                mConfigurationMap.put(config);
+                mMatchInfoMap.put(ScanResultMatchInfo.fromWifiConfiguration(config), config);
+            }
+        }
+    }
+
+    private int lookupAll() {
+        int matches = 0;
+        for (ScanResult scanResult : mScanResults) {
+            if (mConfigurationMap.getByScanResultForCurrentUser(scanResult) != null) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    private int lookupAllByMatchInfo() {
+        int matches = 0;
+        for (ScanResult scanResult : mScanResults) {
+            if (mMatchInfoMap.get(ScanResultMatchInfo.fromScanResult(scanResult)) != null) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    @Test
+    public void timeIndexLookup() {
+        BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            lookupAll();
+        }
+    }
+
+    @Test
+    public void timeMatchInfoLookup() {
+        BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            lookupAllByMatchInfo();
+        }
+    }
+
+    /**
+     * Both lookups find the same networks, and the index does not allocate.
+     */
+    @Test
+    public void allocations() {
+        assertEquals(lookupAllByMatchInfo(), lookupAll());
+        AllocationTracker.measureAndReport("match_info_lookup", ALLOC_ITERATIONS,
+                NUM_SCAN_RESULTS, this::lookupAllByMatchInfo);
+        AllocationTracker.Result index = AllocationTracker.measureAndReport("index_lookup",
+                ALLOC_ITERATIONS, NUM_SCAN_RESULTS, this::lookupAll);
+        assertEquals(0, index.allocationsPerOp);
+    }
+}
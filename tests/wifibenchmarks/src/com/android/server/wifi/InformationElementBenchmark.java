@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import static org.junit.Assert.assertTrue;
+
+import android.net.wifi.ScanResult.InformationElement;
+import android.net.wifi.nl80211.NativeScanResult;
+import android.perftests.utils.BenchmarkState;
+import android.perftests.utils.PerfStatusReporter;
+
+import androidx.test.filters.LargeTest;
+
+import com.android.server.wifi.benchmark.AllocationTracker;
+import com.android.server.wifi.benchmark.SyntheticScanCorpus;
+import com.android.server.wifi.hotspot2.NetworkDetail;
+import com.android.server.wifi.util.InformationElementUtil;
+import com.android.server.wifi.util.InformationElementView;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Compares the IE parsing of a scan result done by
+ * {@link WifiNative#parseScanResult(ScanResultParseCache, String, NativeScanResult, boolean)},
+ * which goes through {@link InformationElementView}, against the same parsing done with the
+ * eager {@link InformationElementUtil#parseInformationElements(byte[])}. Both build the
+ * {@link NetworkDetail}, the capabilities string and the
+ * {@link android.net.wifi.ScanResult#informationElements} array.
+ */
+@LargeTest
+public class InformationElementBenchmark {
+    private static final int NUM_BSSIDS = 400;
+    private static final int ALLOC_ITERATIONS = 20;
+
+    @Rule
+    public PerfStatusReporter mPerfStatusReporter = new PerfStatusReporter();
+
+    private List<NativeScanResult> mNativeResults;
+
+    @Before
+    public void setUp() {
+        mNativeResults = new SyntheticScanCorpus(0).buildNativeScanResults(NUM_BSSIDS);
+    }
+
+    private void parseEager() {
+        for (NativeScanResult result : mNativeResults) {
+            InformationElement[] ies = InformationElementUtil.parseInformationElements(
+                    result.getInformationElements());
+            new NetworkDetail(result.getBssid().toString(), ies, null, result.getFrequencyMhz());
+            InformationElementUtil.Capabilities capabilities =
+                    new InformationElementUtil.Capabilities();
+            capabilities.from(ies, result.getCapabilities(), false);
+            capabilities.generateCapabilitiesString();
+        }
+    }
+
+    private void parseProduction() {
+        for (NativeScanResult result : mNativeResults) {
+            WifiNative.parseScanResult(null, result.getBssid().toString(), result, false);
+        }
+    }
+
+    @Test
+    public void timeEagerParse() {
+        BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            parseEager();
+        }
+    }
+
+    @Test
+    public void timeProductionParse() {
+        BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            parseProduction();
+        }
+    }
+
+    /**
+     * Report allocations of both parsers; the production path must not allocate more.
+     */
+    @Test
+    public void allocations() {
+        AllocationTracker.Result eager = AllocationTracker.measureAndReport(
+                "eager_scan_result_parse", ALLOC_ITERATIONS, NUM_BSSIDS, this::parseEager);
+        AllocationTracker.Result production = AllocationTracker.measureAndReport(
+                "production_scan_result_parse", ALLOC_ITERATIONS, NUM_BSSIDS,
+                this::parseProduction);
+        assertTrue(production.bytesPerOp <= eager.bytesPerOp);
+    }
+}
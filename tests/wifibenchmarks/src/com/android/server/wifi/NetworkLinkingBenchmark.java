@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import static org.junit.Assert.assertEquals;
+
+import android.perftests.utils.BenchmarkState;
+import android.perftests.utils.PerfStatusReporter;
+
+import androidx.test.filters.LargeTest;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Times finding the networks a network may be linked with, as done by
+ * {@link WifiConfigManager} for every scan result of a saved network, with the
+ * {@link NetworkLinkingIndex} against comparing the network with every other saved network.
+ *
+ * Lives in the service package as {@link NetworkLinkingIndex} is package-private.
+ */
+@LargeTest
+public class NetworkLinkingBenchmark {
+    private static final int BSSIDS_PER_NETWORK = 2;
+    private static final int BSSID_MATCH_LENGTH =
+            WifiConfigManager.LINK_CONFIGURATION_BSSID_MATCH_LENGTH;
+
+    @Rule
+    public PerfStatusReporter mPerfStatusReporter = new PerfStatusReporter();
+
+    private String[] mGateways;
+    private String[][] mBssids;
+    private NetworkLinkingIndex mIndex;
+
+    /**
+     * Build |numNetworks| networks with a few BSSIDs each. One in 8 networks is the other band
+     * of the previous network, sharing its gateway and BSSID prefix, and one in 4 has no known
+     * gateway.
+     */
+    private void setUpNetworks(int numNetworks) {
+        Random random = new Random(0);
+        mGateways = new String[numNetworks];
+        mBssids = new String[numNetworks][BSSIDS_PER_NETWORK];
+        mIndex = new NetworkLinkingIndex(BSSID_MATCH_LENGTH);
+        for (int i = 0; i < numNetworks; i++) {
+            boolean dualBandPeer = i > 0 && (i - 1) % 8 == 0;
+            String prefix = dualBandPeer ? mBssids[i - 1][0].substring(0, BSSID_MATCH_LENGTH)
+                    : String.format("%02x:%02x:%02x:%02x:%02x:%02x", random.nextInt(256),
+                            random.nextInt(256), random.nextInt(256), random.nextInt(256),
+                            random.nextInt(256), random.nextInt(256))
+                            .substring(0, BSSID_MATCH_LENGTH);
+            for (int j = 0; j < BSSIDS_PER_NETWORK; j++) {
+                mBssids[i][j] = prefix + String.format("%x", random.nextInt(16));
+                mIndex.addBssid(i, mBssids[i][j]);
+            }
+            if (dualBandPeer) {
+                mGateways[i] = mGateways[i - 1];
+            } else if (i % 4 != 0) {
+                mGateways[i] = String.format("02:00:00:00:%02x:%02x", i >> 8, i & 0xff);
+            }
+            mIndex.setDefaultGateway(i, mGateways[i]);
+        }
+    }
+
+    private int countIndexed(int networkId) {
+        return mIndex.getLinkCandidates(networkId).size();
+    }
+
+    private Set<Integer> findPairwise(int networkId) {
+        Set<Integer> candidates = new HashSet<>();
+        for (int other = 0; other < mBssids.length; other++) {
+            if (other == networkId) continue;
+            if (mGateways[networkId] != null
+                    && mGateways[networkId].equals(mGateways[other])) {
+                candidates.add(other);
+                continue;
+            }
+            bssids:
+            for (String bssid : mBssids[networkId]) {
+                for (String otherBssid : mBssids[other]) {
+                    if (bssid.regionMatches(true, 0, otherBssid, 0, BSSID_MATCH_LENGTH)) {
+                        candidates.add(other);
+                        break bssids;
+                    }
+                }
+            }
+        }
+        return candidates;
+    }
+
+    private void timeIndexed(int numNetworks) {
+        setUpNetworks(numNetworks);
+        BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        int networkId = 0;
+        while (state.keepRunning()) {
+            countIndexed(networkId);
+            networkId = (networkId + 1) % numNetworks;
+        }
+    }
+
+    private void timePairwise(int numNetworks) {
+        setUpNetworks(numNetworks);
+        BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        int networkId = 0;
+        while (state.keepRunning()) {
+            findPairwise(networkId);
+            networkId = (networkId + 1) % numNetworks;
+        }
+    }
+
+    @Test
+    public void timeIndexed100() {
+        timeIndexed(100);
+    }
+
+    @Test
+    public void timeIndexed500() {
+        timeIndexed(500);
+    }
+
+    @Test
+    public void timeIndexed1000() {
+        timeIndexed(1000);
+    }
+
+    @Test
+    public void timePairwise100() {
+        timePairwise(100);
+    }
+
+    @Test
+    public void timePairwise500() {
+        timePairwise(500);
+    }
+
+    @Test
+    public void timePairwise1000() {
+        timePairwise(1000);
+    }
+
+    /**
+     * The index finds the same networks as the pairwise comparison.
+     */
+    @Test
+    public void sameCandidates() {
+        setUpNetworks(1000);
+        for (int i = 0; i < mBssids.length; i++) {
+            assertEquals(findPairwise(i), new HashSet<>(mIndex.getLinkCandidates(i)));
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import android.net.wifi.ScanResult;
+import android.net.wifi.nl80211.NativeScanResult;
+import android.perftests.utils.BenchmarkState;
+import android.perftests.utils.PerfStatusReporter;
+
+import androidx.test.filters.LargeTest;
+
+import com.android.server.wifi.benchmark.AllocationTracker;
+import com.android.server.wifi.benchmark.SyntheticScanCorpus;
+import com.android.server.wifi.util.ScanResultUtil;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Replays synthetic dense venue scans through the scan result processing pipeline, from the
+ * {@link NativeScanResult}s reported by wificond to the {@link ScanResultMatchInfo} used to
+ * match results against saved networks:
+ * <ol>
+ * <li>native result to {@link ScanDetail} with
+ * {@link WifiNative#convertNativeScanResults(List, ScanResultParseCache, boolean)}, with a cold
+ * and a warm {@link ScanResultParseCache};</li>
+ * <li>{@link ScanResult} to {@link ScanDetail}, as done by scan result consumers with
+ * {@link ScanResultUtil#toScanDetail(ScanResult)};</li>
+ * <li>{@link ScanResultMatchInfo#fromScanResult(ScanResult)}.</li>
+ * </ol>
+ * Each stage is timed per scan (ns/op) and its allocations are reported per BSSID.
+ */
+@LargeTest
+@RunWith(Parameterized.class)
+public class ScanPipelineBenchmark {
+    private static final int ALLOC_ITERATIONS = 10;
+
+    @Parameterized.Parameters(name = "bssids={0}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][] {{50}, {500}, {2000}});
+    }
+
+    @Parameterized.Parameter
+    public int mNumBssids;
+
+    @Rule
+    public PerfStatusReporter mPerfStatusReporter = new PerfStatusReporter();
+
+    private List<NativeScanResult> mNativeResults;
+    private ScanResult[] mScanResults;
+    private ScanResultParseCache mWarmCache;
+
+    @Before
+    public void setUp() {
+        mNativeResults = new SyntheticScanCorpus(0).buildNativeScanResults(mNumBssids);
+        mWarmCache = new ScanResultParseCache(mNumBssids);
+        List<ScanDetail> details = convert(mWarmCache);
+        mScanResults = new ScanResult[details.size()];
+        for (int i = 0; i < mScanResults.length; i++) {
+            mScanResults[i] = details.get(i).getScanResult();
+        }
+    }
+
+    private List<ScanDetail> convert(ScanResultParseCache cache) {
+        return WifiNative.convertNativeScanResults(mNativeResults, cache, false);
+    }
+
+    private void convertCold() {
+        convert(null);
+    }
+
+    private void convertWarm() {
+        convert(mWarmCache);
+    }
+
+    private void toScanDetails() {
+        for (ScanResult result : mScanResults) {
+            ScanResultUtil.toScanDetail(result);
+        }
+    }
+
+    private void toMatchInfos() {
+        for (ScanResult result : mScanResults) {
+            ScanResultMatchInfo.fromScanResult(result);
+        }
+    }
+
+    @Test
+    public void timeNativeToScanDetailCold() {
+        BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            convertCold();
+        }
+    }
+
+    @Test
+    public void timeNativeToScanDetailWarm() {
+        BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            convertWarm();
+        }
+    }
+
+    @Test
+    public void timeScanResultToScanDetail() {
+        BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            toScanDetails();
+        }
+    }
+
+    @Test
+    public void timeScanResultMatchInfo() {
+        BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            toMatchInfos();
+        }
+    }
+
+    /**
+     * Report the allocations of each stage per BSSID.
+     */
+    @Test
+    public void allocations() {
+        String prefix = "bssids_" + mNumBssids + "_";
+        AllocationTracker.measureAndReport(prefix + "native_to_scan_detail_cold",
+                ALLOC_ITERATIONS, mNumBssids, this::convertCold);
+        AllocationTracker.measureAndReport(prefix + "native_to_scan_detail_warm",
+                ALLOC_ITERATIONS, mNumBssids, this::convertWarm);
+        AllocationTracker.measureAndReport(prefix + "scan_result_to_scan_detail",
+                ALLOC_ITERATIONS, mNumBssids, this::toScanDetails);
+        AllocationTracker.measureAndReport(prefix + "scan_result_match_info",
+                ALLOC_ITERATIONS, mNumBssids, this::toMatchInfos);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import static org.junit.Assert.assertEquals;
+
+import android.net.wifi.ScanResult;
+import android.perftests.utils.BenchmarkState;
+import android.perftests.utils.PerfStatusReporter;
+
+import androidx.test.filters.LargeTest;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Times the throughput prediction of a selection cycle worth of candidates, with the
+ * precomputed tables of {@link ThroughputPredictor} against the arithmetic they replace.
+ *
+ * Lives in the service package as both paths are package-private.
+ */
+@LargeTest
+public class ThroughputPredictorBenchmark {
+    private static final int NUM_CANDIDATES = 500;
+    private static final int[] STANDARDS = {ScanResult.WIFI_STANDARD_LEGACY,
+            ScanResult.WIFI_STANDARD_11N, ScanResult.WIFI_STANDARD_11AC,
+            ScanResult.WIFI_STANDARD_11AX};
+    private static final int[] CHANNEL_WIDTHS = {ScanResult.CHANNEL_WIDTH_20MHZ,
+            ScanResult.CHANNEL_WIDTH_40MHZ, ScanResult.CHANNEL_WIDTH_80MHZ,
+            ScanResult.CHANNEL_WIDTH_160MHZ};
+
+    @Rule
+    public PerfStatusReporter mPerfStatusReporter = new PerfStatusReporter();
+
+    private final int[] mStandards = new int[NUM_CANDIDATES];
+    private final int[] mChannelWidths = new int[NUM_CANDIDATES];
+    private final int[] mRssis = new int[NUM_CANDIDATES];
+    private final int[] mNss = new int[NUM_CANDIDATES];
+    private final int[] mUtilizations = new int[NUM_CANDIDATES];
+
+    @Before
+    public void setUp() {
+        Random random = new Random(0);
+        for (int i = 0; i < NUM_CANDIDATES; i++) {
+            mStandards[i] = STANDARDS[random.nextInt(STANDARDS.length)];
+            mChannelWidths[i] = CHANNEL_WIDTHS[random.nextInt(CHANNEL_WIDTHS.length)];
+            mRssis[i] = -95 + random.nextInt(60);
+            mNss[i] = 1 + random.nextInt(4);
+            mUtilizations[i] = random.nextInt(256);
+        }
+    }
+
+    private long lookUpAll() {
+        long sum = 0;
+        for (int i = 0; i < NUM_CANDIDATES; i++) {
+            sum += ThroughputPredictor.lookUpThroughput(mStandards[i], mChannelWidths[i],
+                    mRssis[i], mNss[i], mUtilizations[i]);
+        }
+        return sum;
+    }
+
+    private long calculateAll() {
+        long sum = 0;
+        for (int i = 0; i < NUM_CANDIDATES; i++) {
+            sum += ThroughputPredictor.calculateThroughput(mStandards[i], mChannelWidths[i],
+                    mRssis[i], mNss[i], mUtilizations[i]);
+        }
+        return sum;
+    }
+
+    @Test
+    public void timeLookUp() {
+        assertEquals(calculateAll(), lookUpAll());
+        BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            lookUpAll();
+        }
+    }
+
+    @Test
+    public void timeCalculation() {
+        BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            calculateAll();
+        }
+    }
+}
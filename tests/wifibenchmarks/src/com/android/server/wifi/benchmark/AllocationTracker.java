@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.benchmark;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.os.Debug;
+
+import androidx.test.InstrumentationRegistry;
+
+/**
+ * Counts allocations made on the calling thread by an operation and reports them as
+ * instrumentation status, next to the timings reported by PerfStatusReporter.
+ */
+public final class AllocationTracker {
+    private static final int WARMUP_ITERATIONS = 16;
+
+    private AllocationTracker() { /* not constructable */ }
+
+    /** Result of a measurement. */
+    public static final class Result {
+        public final long allocationsPerOp;
+        public final long bytesPerOp;
+
+        Result(long allocationsPerOp, long bytesPerOp) {
+            this.allocationsPerOp = allocationsPerOp;
+            this.bytesPerOp = bytesPerOp;
+        }
+    }
+
+    /**
+     * Run |op| |iterations| times and return the average allocations per run.
+     */
+    @SuppressWarnings("deprecation")
+    public static Result measure(int iterations, Runnable op) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            op.run();
+        }
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+        for (int i = 0; i < iterations; i++) {
+            op.run();
+        }
+        Debug.stopAllocCounting();
+        return new Result(Debug.getThreadAllocCount() / iterations,
+                Debug.getThreadAllocSize() / iterations);
+    }
+
+    /**
+     * Measure |op| and report the result under |name|.
+     *
+     * @param unitsPerOp number of units (e.g. BSSIDs) processed by one run of |op|, used to
+     *                   additionally report allocations per unit.
+     */
+    public static Result measureAndReport(String name, int iterations, int unitsPerOp,
+            Runnable op) {
+        Result result = measure(iterations, op);
+        Bundle status = new Bundle();
+        status.putLong(name + "_allocs_per_op", result.allocationsPerOp);
+        status.putLong(name + "_bytes_per_op", result.bytesPerOp);
+        if (unitsPerOp > 0) {
+            status.putLong(name + "_bytes_per_unit", result.bytesPerOp / unitsPerOp);
+        }
+        InstrumentationRegistry.getInstrumentation().sendStatus(Activity.RESULT_OK, status);
+        return result;
+    }
+}
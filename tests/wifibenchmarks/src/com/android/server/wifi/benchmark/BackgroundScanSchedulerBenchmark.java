@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.benchmark;
+
+import static org.junit.Assert.assertTrue;
+
+import android.app.Activity;
+import android.net.wifi.WifiScanner;
+import android.os.Bundle;
+import android.perftests.utils.BenchmarkState;
+import android.perftests.utils.PerfStatusReporter;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.filters.LargeTest;
+
+import com.android.server.wifi.scanner.BackgroundScanScheduler;
+import com.android.server.wifi.scanner.ChannelHelper;
+import com.android.server.wifi.scanner.PresetKnownBandsChannelHelper;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the estimated scan time of the schedules built by the greedy and the cost model
+ * modes of {@link BackgroundScanScheduler} over a corpus of request mixes, and times
+ * {@link BackgroundScanScheduler#updateSchedule} in both modes.
+ */
+@LargeTest
+public class BackgroundScanSchedulerBenchmark {
+    private static final int NUM_MIXES = 200;
+    private static final int MAX_REQUESTS_PER_MIX = 10;
+    private static final int MAX_BUCKETS = 4;
+    private static final int MAX_CHANNELS_PER_BUCKET = 16;
+    private static final int[] REQUESTED_PERIODS_MS = {
+            10000, 20000, 30000, 40000, 60000, 90000, 120000, 300000, 600000, 1200000, 3600000};
+    private static final int[] BANDS = {
+            WifiScanner.WIFI_BAND_24_GHZ,
+            WifiScanner.WIFI_BAND_5_GHZ,
+            WifiScanner.WIFI_BAND_BOTH,
+            WifiScanner.WIFI_BAND_BOTH_WITH_DFS};
+    private static final int[] CHANNELS_24_GHZ = {
+            2412, 2417, 2422, 2427, 2432, 2437, 2442, 2447, 2452, 2457, 2462};
+    private static final int[] CHANNELS_5_GHZ = {
+            5180, 5200, 5220, 5240, 5745, 5765, 5785, 5805, 5825};
+    private static final int[] CHANNELS_DFS = {
+            5260, 5280, 5300, 5320, 5500, 5520, 5540, 5560, 5580, 5660, 5680, 5700, 5720};
+
+    @Rule
+    public PerfStatusReporter mPerfStatusReporter = new PerfStatusReporter();
+
+    private ChannelHelper mChannelHelper;
+    private List<List<WifiScanner.ScanSettings>> mMixes;
+
+    @Before
+    public void setUp() {
+        mChannelHelper = new PresetKnownBandsChannelHelper(CHANNELS_24_GHZ, CHANNELS_5_GHZ,
+                CHANNELS_DFS, new int[0]);
+        Random random = new Random(0);
+        mMixes = new ArrayList<>(NUM_MIXES);
+        for (int m = 0; m < NUM_MIXES; m++) {
+            int numRequests = 1 + random.nextInt(MAX_REQUESTS_PER_MIX);
+            List<WifiScanner.ScanSettings> mix = new ArrayList<>(numRequests);
+            for (int r = 0; r < numRequests; r++) {
+                mix.add(createRequest(random));
+            }
+            mMixes.add(mix);
+        }
+    }
+
+    private WifiScanner.ScanSettings createRequest(Random random) {
+        WifiScanner.ScanSettings settings = new WifiScanner.ScanSettings();
+        settings.periodInMs = REQUESTED_PERIODS_MS[random.nextInt(REQUESTED_PERIODS_MS.length)];
+        settings.numBssidsPerScan = 16;
+        settings.reportEvents = WifiScanner.REPORT_EVENT_AFTER_EACH_SCAN;
+        if (random.nextInt(4) == 0) {
+            settings.band = BANDS[random.nextInt(BANDS.length)];
+        } else {
+            settings.band = WifiScanner.WIFI_BAND_UNSPECIFIED;
+            int[][] channelLists = {CHANNELS_24_GHZ, CHANNELS_5_GHZ, CHANNELS_DFS};
+            int numChannels = 1 + random.nextInt(4);
+            settings.channels = new WifiScanner.ChannelSpec[numChannels];
+            for (int c = 0; c < numChannels; c++) {
+                int[] channels = channelLists[random.nextInt(channelLists.length)];
+                settings.channels[c] =
+                        new WifiScanner.ChannelSpec(channels[random.nextInt(channels.length)]);
+            }
+        }
+        if (random.nextInt(8) == 0) {
+            settings.maxPeriodInMs = settings.periodInMs * 8;
+            settings.stepCount = 2;
+        }
+        return settings;
+    }
+
+    private BackgroundScanScheduler createScheduler(int schedulerMode) {
+        BackgroundScanScheduler scheduler = new BackgroundScanScheduler(mChannelHelper);
+        scheduler.setMaxBuckets(MAX_BUCKETS);
+        scheduler.setMaxChannelsPerBucket(MAX_CHANNELS_PER_BUCKET);
+        scheduler.setSchedulerMode(schedulerMode);
+        return scheduler;
+    }
+
+    private void scheduleAllMixes(BackgroundScanScheduler scheduler) {
+        for (List<WifiScanner.ScanSettings> mix : mMixes) {
+            scheduler.updateSchedule(mix);
+        }
+    }
+
+    /**
+     * Report the total estimated scan time of both modes over the corpus; the cost model must
+     * never be estimated to scan longer than the greedy scheduler.
+     */
+    @Test
+    public void scanTime() {
+        BackgroundScanScheduler greedy =
+                createScheduler(BackgroundScanScheduler.SCHEDULER_MODE_GREEDY);
+        BackgroundScanScheduler costModel =
+                createScheduler(BackgroundScanScheduler.SCHEDULER_MODE_COST_MODEL);
+        long greedyScanTimeMs = 0;
+        long costModelScanTimeMs = 0;
+        int improvedMixes = 0;
+        for (List<WifiScanner.ScanSettings> mix : mMixes) {
+            greedy.updateSchedule(mix);
+            costModel.updateSchedule(mix);
+            long greedyMixScanTimeMs = greedy.estimateScanTimeMsPerHour();
+            long costModelMixScanTimeMs = costModel.estimateScanTimeMsPerHour();
+            assertTrue(costModelMixScanTimeMs <= greedyMixScanTimeMs);
+            if (costModelMixScanTimeMs < greedyMixScanTimeMs) {
+                improvedMixes++;
+            }
+            greedyScanTimeMs += greedyMixScanTimeMs;
+            costModelScanTimeMs += costModelMixScanTimeMs;
+        }
+        Bundle status = new Bundle();
+        status.putLong("greedy_scan_ms_per_hour", greedyScanTimeMs / NUM_MIXES);
+        status.putLong("cost_model_scan_ms_per_hour", costModelScanTimeMs / NUM_MIXES);
+        status.putInt("cost_model_improved_mixes", improvedMixes);
+        InstrumentationRegistry.getInstrumentation().sendStatus(Activity.RESULT_OK, status);
+    }
+
+    @Test
+    public void timeGreedyUpdateSchedule() {
+        BackgroundScanScheduler scheduler =
+                createScheduler(BackgroundScanScheduler.SCHEDULER_MODE_GREEDY);
+        BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            scheduleAllMixes(scheduler);
+        }
+    }
+
+    @Test
+    public void timeCostModelUpdateSchedule() {
+        BackgroundScanScheduler scheduler =
+                createScheduler(BackgroundScanScheduler.SCHEDULER_MODE_COST_MODEL);
+        BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            scheduleAllMixes(scheduler);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.benchmark;
+
+import android.net.wifi.ScanResult.InformationElement;
+import android.net.wifi.nl80211.NativeScanResult;
+import android.net.wifi.nl80211.RadioChainInfo;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic generator of beacon information elements resembling a dense venue: a handful of
+ * ESSes with many BSSIDs each, mixing legacy, HT, VHT and HE APs with RSN and vendor elements.
+ */
+public final class SyntheticScanCorpus {
+    private static final int NUM_ESS = 24;
+    private static final int[] FREQUENCIES = {
+            2412, 2437, 2462, 5180, 5200, 5220, 5240, 5260, 5500, 5745, 5765, 5785, 5805};
+    // ESS, privacy, short slot time.
+    private static final int CAPABILITY = 0x0411;
+    private static final byte[] RSN_PSK_CCMP = new byte[] {
+            (byte) 0x01, (byte) 0x00, (byte) 0x00, (byte) 0x0f, (byte) 0xac, (byte) 0x04,
+            (byte) 0x01, (byte) 0x00, (byte) 0x00, (byte) 0x0f, (byte) 0xac, (byte) 0x04,
+            (byte) 0x01, (byte) 0x00, (byte) 0x00, (byte) 0x0f, (byte) 0xac, (byte) 0x02,
+            (byte) 0x00, (byte) 0x00};
+    private static final byte[] RSN_EAP_CCMP = new byte[] {
+            (byte) 0x01, (byte) 0x00, (byte) 0x00, (byte) 0x0f, (byte) 0xac, (byte) 0x04,
+            (byte) 0x01, (byte) 0x00, (byte) 0x00, (byte) 0x0f, (byte) 0xac, (byte) 0x04,
+            (byte) 0x01, (byte) 0x00, (byte) 0x00, (byte) 0x0f, (byte) 0xac, (byte) 0x01,
+            (byte) 0x00, (byte) 0x00};
+    private static final byte[] WMM_VSA = new byte[] {
+            (byte) 0x00, (byte) 0x50, (byte) 0xf2, (byte) 0x02, (byte) 0x01, (byte) 0x01,
+            (byte) 0x80, (byte) 0x00, (byte) 0x03, (byte) 0xa4, (byte) 0x00, (byte) 0x00,
+            (byte) 0x27, (byte) 0xa4, (byte) 0x00, (byte) 0x00, (byte) 0x42, (byte) 0x43,
+            (byte) 0x5e, (byte) 0x00, (byte) 0x62, (byte) 0x32, (byte) 0x2f, (byte) 0x00};
+
+    private final Random mRandom;
+
+    public SyntheticScanCorpus(long seed) {
+        mRandom = new Random(seed);
+    }
+
+    /**
+     * Raw information elements for the |index|-th BSSID of the venue.
+     */
+    public byte[] buildInformationElements(int index) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        String ssid = "Venue-" + (index % NUM_ESS);
+        int generation = index % 4; // 0: legacy, 1: HT, 2: VHT, 3: HE
+        writeElement(out, InformationElement.EID_SSID,
+                ssid.getBytes(StandardCharsets.UTF_8));
+        writeElement(out, InformationElement.EID_SUPPORTED_RATES, new byte[] {
+                (byte) 0x82, (byte) 0x84, (byte) 0x8b, (byte) 0x96,
+                (byte) 0x0c, (byte) 0x12, (byte) 0x18, (byte) 0x24});
+        writeElement(out, InformationElement.EID_TIM, new byte[] {
+                (byte) 0x00, (byte) 0x01, (byte) 0x00, (byte) 0x00});
+        writeElement(out, InformationElement.EID_BSS_LOAD, new byte[] {
+                (byte) mRandom.nextInt(64), (byte) 0x00, (byte) mRandom.nextInt(256),
+                (byte) 0x00, (byte) 0x00});
+        writeElement(out, InformationElement.EID_RSN,
+                index % 3 == 0 ? RSN_EAP_CCMP : RSN_PSK_CCMP);
+        if (generation >= 1) {
+            writeElement(out, InformationElement.EID_HT_CAPABILITIES, randomBytes(26));
+            byte[] htOperation = randomBytes(22);
+            htOperation[0] = (byte) (36 + 4 * (index % 8));
+            htOperation[1] = (byte) 0x05;
+            writeElement(out, InformationElement.EID_HT_OPERATION, htOperation);
+        }
+        if (generation >= 2) {
+            byte[] vhtCapabilities = randomBytes(12);
+            writeElement(out, InformationElement.EID_VHT_CAPABILITIES, vhtCapabilities);
+            writeElement(out, InformationElement.EID_VHT_OPERATION, new byte[] {
+                    (byte) 0x01, (byte) 42, (byte) 0x00, (byte) 0xfc, (byte) 0xff});
+        }
+        if (generation >= 3) {
+            writeExtensionElement(out, InformationElement.EID_EXT_HE_CAPABILITIES,
+                    randomBytes(21));
+            writeExtensionElement(out, InformationElement.EID_EXT_HE_OPERATION, new byte[] {
+                    (byte) 0x04, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0xfc,
+                    (byte) 0xff});
+        }
+        writeElement(out, InformationElement.EID_EXTENDED_CAPS, new byte[] {
+                (byte) 0x04, (byte) 0x00, (byte) 0x08, (byte) 0x00,
+                (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x40});
+        writeElement(out, InformationElement.EID_VSA, WMM_VSA);
+        // Opaque vendor elements that the framework never parses.
+        for (int i = 0; i < 3; i++) {
+            writeElement(out, InformationElement.EID_VSA, randomBytes(24 + mRandom.nextInt(40)));
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Native scan results of a venue with |count| BSSIDs, as reported by wificond.
+     */
+    public List<NativeScanResult> buildNativeScanResults(int count) {
+        List<NativeScanResult> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            NativeScanResult result = new NativeScanResult();
+            result.ssid = ("Venue-" + (i % NUM_ESS)).getBytes(StandardCharsets.UTF_8);
+            result.bssid = new byte[] {(byte) 0x02, (byte) 0x00, (byte) 0x5e,
+                    (byte) (i >> 16), (byte) (i >> 8), (byte) i};
+            result.infoElement = buildInformationElements(i);
+            result.frequency = FREQUENCIES[i % FREQUENCIES.length];
+            result.signalMbm = -(4000 + mRandom.nextInt(5000));
+            result.tsf = 1000000L * i + mRandom.nextInt(1000000);
+            result.capability = CAPABILITY;
+            result.associated = false;
+            result.radioChainInfos = new ArrayList<>(Arrays.asList(
+                    new RadioChainInfo(0, result.signalMbm / 100),
+                    new RadioChainInfo(1, result.signalMbm / 100 - 2)));
+            results.add(result);
+        }
+        return results;
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        mRandom.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static void writeElement(ByteArrayOutputStream out, int id, byte[] payload) {
+        out.write(id);
+        out.write(payload.length);
+        out.write(payload, 0, payload.length);
+    }
+
+    private static void writeExtensionElement(ByteArrayOutputStream out, int idExt,
+            byte[] payload) {
+        out.write(InformationElement.EID_EXTENSION_PRESENT);
+        out.write(payload.length + 1);
+        out.write(idExt);
+        out.write(payload, 0, payload.length);
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.net.MacAddress;
+
+import com.android.server.wifi.WifiCandidates.Candidate;
+import com.android.server.wifi.WifiCandidates.CandidateScorer;
+import com.android.server.wifi.WifiCandidates.ScoredCandidate;
+
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Replays recorded candidate sets through {@link CandidateScorer}s, to compare their choices
+ * and cost offline.
+ *
+ * Snapshots are text, so that candidate sets captured from {@link WifiCandidates#getCandidates()}
+ * with {@link #serialize(String, Collection)} can be checked in and replayed without a device:
+ * <pre>
+ * # comment
+ * snapshot &lt;name&gt;
+ * ssid=%22Home%22,security=2,bssid=02:00:00:00:00:01,networkId=1,rssi=-60,frequency=5180,...
+ * </pre>
+ * One candidate per line, fields are comma separated name=value pairs with URL encoded values.
+ * Fields which are omitted keep the defaults of {@link ConcreteCandidate}.
+ *
+ * Runs on the host JVM, CPU time is read from {@link ThreadMXBean}.
+ */
+public class CandidateScorerReplay {
+    private static final String SNAPSHOT_PREFIX = "snapshot ";
+    private static final String COMMENT_PREFIX = "#";
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * A named, recorded candidate set.
+     */
+    public static class Snapshot {
+        public final String name;
+        public final List<Candidate> candidates;
+
+        public Snapshot(@NonNull String name, @NonNull List<Candidate> candidates) {
+            this.name = name;
+            this.candidates = candidates;
+        }
+    }
+
+    /**
+     * Outcome of a snapshot for one scorer.
+     */
+    public static class Choice {
+        public final String snapshotName;
+        /** Key of the chosen candidate, or null if the scorer did not choose any. */
+        @Nullable public final WifiCandidates.Key chosenKey;
+        public final double chosenScore;
+        /** Max minus min of the scores of the snapshot candidates, each scored alone. */
+        public final double scoreSpread;
+
+        Choice(String snapshotName, @Nullable WifiCandidates.Key chosenKey, double chosenScore,
+                double scoreSpread) {
+            this.snapshotName = snapshotName;
+            this.chosenKey = chosenKey;
+            this.chosenScore = chosenScore;
+            this.scoreSpread = scoreSpread;
+        }
+    }
+
+    /**
+     * Outcome of all the snapshots for one scorer.
+     */
+    public static class ScorerReport {
+        public final String identifier;
+        public final List<Choice> choices = new ArrayList<>();
+        /** Thread CPU time spent in scoreCandidates() over all snapshots and iterations. */
+        public long cpuTimeNanos;
+
+        ScorerReport(String identifier) {
+            this.identifier = identifier;
+        }
+    }
+
+    private final List<CandidateScorer> mScorers;
+    private final int mIterations;
+
+    /**
+     * @param scorers the scorers to compare, typically those registered with
+     *                {@link WifiNetworkSelector#registerCandidateScorer(CandidateScorer)}.
+     * @param iterations number of times each snapshot is scored for the CPU time measurement.
+     */
+    public CandidateScorerReplay(@NonNull List<CandidateScorer> scorers, int iterations) {
+        mScorers = scorers;
+        mIterations = Math.max(1, iterations);
+    }
+
+    /**
+     * Replay |snapshots| through every scorer.
+     */
+    public List<ScorerReport> replay(@NonNull List<Snapshot> snapshots) {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        List<ScorerReport> reports = new ArrayList<>(mScorers.size());
+        for (CandidateScorer scorer : mScorers) {
+            ScorerReport report = new ScorerReport(scorer.getIdentifier());
+            for (Snapshot snapshot : snapshots) {
+                ScoredCandidate chosen = null;
+                long start = threadMXBean.getCurrentThreadCpuTime();
+                for (int i = 0; i < mIterations; i++) {
+                    chosen = scorer.scoreCandidates(snapshot.candidates);
+                }
+                report.cpuTimeNanos += threadMXBean.getCurrentThreadCpuTime() - start;
+                report.choices.add(new Choice(snapshot.name,
+                        chosen == null ? null : chosen.candidateKey,
+                        chosen == null ? Double.NEGATIVE_INFINITY : chosen.value,
+                        getScoreSpread(scorer, snapshot.candidates)));
+            }
+            reports.add(report);
+        }
+        return reports;
+    }
+
+    private static double getScoreSpread(CandidateScorer scorer, List<Candidate> candidates) {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (Candidate candidate : candidates) {
+            ScoredCandidate scored = scorer.scoreCandidates(Collections.singletonList(candidate));
+            if (scored == null || scored.candidateKey == null) continue;
+            min = Math.min(min, scored.value);
+            max = Math.max(max, scored.value);
+        }
+        return max >= min ? max - min : 0.0;
+    }
+
+    /**
+     * Print |reports| as a table of the chosen candidates, followed by the CPU time per scorer.
+     */
+    public static void dump(@NonNull List<ScorerReport> reports, @NonNull PrintWriter pw) {
+        for (ScorerReport report : reports) {
+            pw.println("Scorer " + report.identifier + ": cpuTimeNs=" + report.cpuTimeNanos);
+            for (Choice choice : report.choices) {
+                pw.println("  " + choice.snapshotName
+                        + " chosen=" + keyToString(choice.chosenKey)
+                        + " score=" + choice.chosenScore
+                        + " spread=" + choice.scoreSpread);
+            }
+        }
+    }
+
+    private static String keyToString(@Nullable WifiCandidates.Key key) {
+        if (key == null) return "none";
+        return key.matchInfo.networkSsid + "/" + key.bssid + "/" + key.networkId;
+    }
+
+    /**
+     * Serialize |candidates| as snapshot |name|, in the format read by {@link #parse(String)}.
+     */
+    public static String serialize(@NonNull String name,
+            @NonNull Collection<Candidate> candidates) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(SNAPSHOT_PREFIX).append(name).append('\n');
+        for (Candidate c : candidates) {
+            WifiCandidates.Key key = c.getKey();
+            if (key != null) {
+                sb.append("ssid=").append(encode(key.matchInfo.networkSsid))
+                        .append(",security=").append(key.matchInfo.networkType)
+                        .append(",bssid=").append(key.bssid)
+                        .append(',');
+            }
+            sb.append("networkId=").append(c.getNetworkConfigId())
+                    .append(",nominator=").append(c.getNominatorId())
+                    .append(",rssi=").append(c.getScanRssi())
+                    .append(",frequency=").append(c.getFrequency())
+                    .append(",throughput=").append(c.getPredictedThroughputMbps())
+                    .append(",internet=").append(c.getEstimatedPercentInternetAvailability())
+                    .append(",lastSelectionWeight=").append(c.getLastSelectionWeight())
+                    .append(",open=").append(c.isOpenNetwork())
+                    .append(",current=").append(c.isCurrentNetwork())
+                    .append(",currentBssid=").append(c.isCurrentBssid())
+                    .append(",passpoint=").append(c.isPasspoint())
+                    .append(",ephemeral=").append(c.isEphemeral())
+                    .append(",trusted=").append(c.isTrusted())
+                    .append(",carrierOrPrivileged=").append(c.isCarrierOrPrivileged())
+                    .append(",metered=").append(c.isMetered())
+                    .append(",noInternet=").append(c.hasNoInternetAccess())
+                    .append(",noInternetExpected=").append(c.isNoInternetAccessExpected())
+                    .append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Parse the snapshots of |text|.
+     *
+     * @throws IllegalArgumentException if a line is malformed.
+     */
+    public static List<Snapshot> parse(@NonNull String text) {
+        List<Snapshot> snapshots = new ArrayList<>();
+        Snapshot current = null;
+        for (String line : text.split("\n")) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith(COMMENT_PREFIX)) continue;
+            if (line.startsWith(SNAPSHOT_PREFIX)) {
+                current = new Snapshot(line.substring(SNAPSHOT_PREFIX.length()).trim(),
+                        new ArrayList<>());
+                snapshots.add(current);
+                continue;
+            }
+            if (current == null) {
+                throw new IllegalArgumentException("Candidate outside of a snapshot: " + line);
+            }
+            current.candidates.add(parseCandidate(line));
+        }
+        return snapshots;
+    }
+
+    private static ConcreteCandidate parseCandidate(String line) {
+        ConcreteCandidate candidate = new ConcreteCandidate();
+        ScanResultMatchInfo matchInfo = null;
+        MacAddress bssid = null;
+        int networkId = -1;
+        for (String field : line.split(",")) {
+            int eq = field.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Malformed field '" + field + "' in " + line);
+            }
+            String name = field.substring(0, eq).trim();
+            String value = decode(field.substring(eq + 1).trim());
+            switch (name) {
+                case "ssid":
+                    if (matchInfo == null) matchInfo = new ScanResultMatchInfo();
+                    matchInfo.networkSsid = value;
+                    break;
+                case "security":
+                    if (matchInfo == null) matchInfo = new ScanResultMatchInfo();
+                    matchInfo.networkType = Integer.parseInt(value);
+                    break;
+                case "bssid":
+                    bssid = MacAddress.fromString(value);
+                    break;
+                case "networkId":
+                    networkId = Integer.parseInt(value);
+                    candidate.setNetworkConfigId(networkId);
+                    break;
+                case "nominator":
+                    candidate.setNominatorId(Integer.parseInt(value));
+                    break;
+                case "rssi":
+                    candidate.setScanRssi(Integer.parseInt(value));
+                    break;
+                case "frequency":
+                    candidate.setFrequency(Integer.parseInt(value));
+                    break;
+                case "throughput":
+                    candidate.setPredictedThroughputMbps(Integer.parseInt(value));
+                    break;
+                case "internet":
+                    candidate.setEstimatedPercentInternetAvailability(Integer.parseInt(value));
+                    break;
+                case "lastSelectionWeight":
+                    candidate.setLastSelectionWeight(Double.parseDouble(value));
+                    break;
+                case "open":
+                    candidate.setOpenNetwork(Boolean.parseBoolean(value));
+                    break;
+                case "current":
+                    candidate.setCurrentNetwork(Boolean.parseBoolean(value));
+                    break;
+                case "currentBssid":
+                    candidate.setCurrentBssid(Boolean.parseBoolean(value));
+                    break;
+                case "passpoint":
+                    candidate.setPasspoint(Boolean.parseBoolean(value));
+                    break;
+                case "ephemeral":
+                    candidate.setEphemeral(Boolean.parseBoolean(value));
+                    break;
+                case "trusted":
+                    candidate.setTrusted(Boolean.parseBoolean(value));
+                    break;
+                case "carrierOrPrivileged":
+                    candidate.setCarrierOrPrivileged(Boolean.parseBoolean(value));
+                    break;
+                case "metered":
+                    candidate.setMetered(Boolean.parseBoolean(value));
+                    break;
+                case "noInternet":
+                    candidate.setNoInternetAccess(Boolean.parseBoolean(value));
+                    break;
+                case "noInternetExpected":
+                    candidate.setNoInternetAccessExpected(Boolean.parseBoolean(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown field '" + name + "' in " + line);
+            }
+        }
+        if (matchInfo != null && bssid != null) {
+            candidate.setKey(new WifiCandidates.Key(matchInfo, bssid, networkId));
+        }
+        return candidate;
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(String.valueOf(value), ENCODING);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, ENCODING);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
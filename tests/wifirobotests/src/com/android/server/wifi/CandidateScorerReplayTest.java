@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import android.net.MacAddress;
+
+import com.android.server.wifi.WifiCandidates.Candidate;
+import com.android.server.wifi.WifiCandidates.CandidateScorer;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.CandidateScorerReplay}.
+ *
+ * Replays a small recorded corpus through the built-in scorers and checks their choices
+ * against the expected winners.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class CandidateScorerReplayTest {
+    private static final int ITERATIONS = 10;
+    private static final MacAddress STRONG_BSSID = MacAddress.fromString("02:00:00:00:00:01");
+    private static final MacAddress CURRENT_BSSID = MacAddress.fromString("02:00:00:00:01:01");
+    private static final MacAddress STRONG_2G_BSSID = MacAddress.fromString("02:00:00:00:03:01");
+    private static final MacAddress WEAK_5G_BSSID = MacAddress.fromString("02:00:00:00:03:02");
+
+    private static final String CORPUS = ""
+            + "# Same network, one BSSID clearly better than the other.\n"
+            + "snapshot strong_vs_weak\n"
+            + "ssid=%22Home%22,security=2,bssid=02:00:00:00:00:01,networkId=1,nominator=0,"
+            + "rssi=-50,frequency=5180,throughput=433\n"
+            + "ssid=%22Home%22,security=2,bssid=02:00:00:00:00:02,networkId=1,nominator=0,"
+            + "rssi=-85,frequency=2412,throughput=6\n"
+            + "\n"
+            + "# Connected network against a slightly stronger open network.\n"
+            + "snapshot current_vs_open\n"
+            + "ssid=%22Office+5G%22,security=3,bssid=02:00:00:00:01:01,networkId=2,nominator=0,"
+            + "rssi=-67,frequency=5745,throughput=200,current=true,currentBssid=true\n"
+            + "ssid=%22Cafe%22,security=0,bssid=02:00:00:00:02:01,networkId=3,nominator=0,"
+            + "rssi=-62,frequency=2437,throughput=72,open=true\n"
+            + "\n"
+            + "# Strong 2.4 GHz against a weaker 5 GHz BSSID, the scorers disagree on this one.\n"
+            + "snapshot strong_2g_vs_weak_5g\n"
+            + "ssid=%22Home%22,security=2,bssid=02:00:00:00:03:01,networkId=1,nominator=0,"
+            + "rssi=-45,frequency=2412,throughput=72\n"
+            + "ssid=%22Home%22,security=2,bssid=02:00:00:00:03:02,networkId=1,nominator=0,"
+            + "rssi=-72,frequency=5180,throughput=300\n";
+
+    /** Expected winner of each snapshot in CORPUS, by scorer identifier. */
+    private static final Map<String, MacAddress[]> EXPECTED_WINNERS = new HashMap<>();
+    static {
+        // The RSSI based scorers saturate at the good RSSI, which leaves the 2.4 GHz BSSID
+        // ahead despite the 5 GHz award.
+        EXPECTED_WINNERS.put("CompatibilityScorer",
+                new MacAddress[] {STRONG_BSSID, CURRENT_BSSID, STRONG_2G_BSSID});
+        EXPECTED_WINNERS.put("ScoreCardBasedScorer",
+                new MacAddress[] {STRONG_BSSID, CURRENT_BSSID, STRONG_2G_BSSID});
+        // BubbleFunScorer discounts 2.4 GHz, ThroughputScorer saturates at the lower
+        // sufficient RSSI, both pick the 5 GHz BSSID.
+        EXPECTED_WINNERS.put("BubbleFunScorer",
+                new MacAddress[] {STRONG_BSSID, CURRENT_BSSID, WEAK_5G_BSSID});
+        EXPECTED_WINNERS.put("ThroughputScorer",
+                new MacAddress[] {STRONG_BSSID, CURRENT_BSSID, WEAK_5G_BSSID});
+    }
+
+    private List<CandidateScorer> mScorers;
+
+    @Before
+    public void setUp() throws Exception {
+        mScorers = new ArrayList<>();
+        mScorers.add(new CompatibilityScorer(createScoringParams()));
+        mScorers.add(new ScoreCardBasedScorer(createScoringParams()));
+        mScorers.add(new BubbleFunScorer(createScoringParams()));
+        mScorers.add(new ThroughputScorer(createScoringParams()));
+    }
+
+    private static ScoringParams createScoringParams() {
+        ScoringParams scoringParams = new ScoringParams();
+        scoringParams.update("");
+        return scoringParams;
+    }
+
+    /**
+     * Verify a serialized snapshot parses back to the same candidates.
+     */
+    @Test
+    public void serializeRoundTrip() {
+        List<CandidateScorerReplay.Snapshot> snapshots = CandidateScorerReplay.parse(CORPUS);
+        assertEquals(3, snapshots.size());
+
+        CandidateScorerReplay.Snapshot snapshot = snapshots.get(1);
+        List<CandidateScorerReplay.Snapshot> reparsed = CandidateScorerReplay.parse(
+                CandidateScorerReplay.serialize(snapshot.name, snapshot.candidates));
+
+        assertEquals("\"Office 5G\"", snapshot.candidates.get(0).getKey().matchInfo.networkSsid);
+        assertEquals(1, reparsed.size());
+        assertEquals(snapshot.name, reparsed.get(0).name);
+        assertEquals(snapshot.candidates.size(), reparsed.get(0).candidates.size());
+        for (int i = 0; i < snapshot.candidates.size(); i++) {
+            Candidate expected = snapshot.candidates.get(i);
+            Candidate actual = reparsed.get(0).candidates.get(i);
+            assertEquals(expected.getKey(), actual.getKey());
+            assertEquals(expected.getScanRssi(), actual.getScanRssi());
+            assertEquals(expected.getFrequency(), actual.getFrequency());
+            assertEquals(expected.getPredictedThroughputMbps(),
+                    actual.getPredictedThroughputMbps());
+            assertEquals(expected.isOpenNetwork(), actual.isOpenNetwork());
+            assertEquals(expected.isCurrentNetwork(), actual.isCurrentNetwork());
+            assertEquals(expected.isCurrentBssid(), actual.isCurrentBssid());
+        }
+    }
+
+    /**
+     * Verify every scorer reports a choice and a spread for every snapshot, and picks the
+     * expected winner.
+     */
+    @Test
+    public void replayThroughAllScorers() {
+        CandidateScorerReplay replay = new CandidateScorerReplay(mScorers, ITERATIONS);
+
+        List<CandidateScorerReplay.ScorerReport> reports =
+                replay.replay(CandidateScorerReplay.parse(CORPUS));
+
+        assertEquals(mScorers.size(), reports.size());
+        for (CandidateScorerReplay.ScorerReport report : reports) {
+            MacAddress[] expectedWinners = EXPECTED_WINNERS.get(report.identifier);
+            assertNotNull(report.identifier, expectedWinners);
+            assertEquals(expectedWinners.length, report.choices.size());
+            assertTrue(report.cpuTimeNanos >= 0);
+            for (int i = 0; i < expectedWinners.length; i++) {
+                CandidateScorerReplay.Choice choice = report.choices.get(i);
+                String message = report.identifier + " " + choice.snapshotName;
+                assertNotNull(message, choice.chosenKey);
+                assertEquals(message, expectedWinners[i], choice.chosenKey.bssid);
+                assertTrue(message, choice.scoreSpread > 0);
+            }
+        }
+
+        StringWriter sw = new StringWriter();
+        CandidateScorerReplay.dump(reports, new PrintWriter(sw, true));
+        System.out.println(sw);
+    }
+
+    /**
+     * Verify malformed snapshots are rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void parseRejectsUnknownField() {
+        CandidateScorerReplay.parse("snapshot bad\nrssi=-50,color=blue\n");
+    }
+}
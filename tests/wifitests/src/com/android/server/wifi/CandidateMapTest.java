@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.filters.SmallTest;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.CandidateMap}.
+ */
+@SmallTest
+public class CandidateMapTest extends WifiBaseTest {
+    private static final long BSSID_BASE = 0x02005e000000L;
+    private static final int NUM_NETWORKS = 10;
+
+    private CandidateMap mMap;
+
+    @Before
+    public void setUp() throws Exception {
+        mMap = new CandidateMap();
+    }
+
+    private static ConcreteCandidate createCandidate(int networkId) {
+        return new ConcreteCandidate().setNetworkConfigId(networkId);
+    }
+
+    private static int getGroupSize(CandidateMap map, int networkId) {
+        for (int i = 0; i < map.groupCount(); i++) {
+            List<WifiCandidates.Candidate> group = map.groupAt(i);
+            if (group.get(0).getNetworkConfigId() == networkId) return group.size();
+        }
+        return 0;
+    }
+
+    /**
+     * Verify candidates are found by BSSID and network id, and replaced in place.
+     */
+    @Test
+    public void putGetAndReplace() {
+        ConcreteCandidate candidate1 = createCandidate(1);
+        ConcreteCandidate candidate2 = createCandidate(2);
+        assertNull(mMap.put(BSSID_BASE, 1, candidate1));
+        // Same BSSID, other network.
+        assertNull(mMap.put(BSSID_BASE, 2, candidate2));
+
+        assertSame(candidate1, mMap.get(BSSID_BASE, 1));
+        assertSame(candidate2, mMap.get(BSSID_BASE, 2));
+        assertNull(mMap.get(BSSID_BASE + 1, 1));
+
+        ConcreteCandidate replacement = createCandidate(1);
+        assertSame(candidate1, mMap.put(BSSID_BASE, 1, replacement));
+        assertEquals(2, mMap.size());
+        assertSame(replacement, mMap.valueAt(0));
+        assertEquals(2, mMap.groupCount());
+        assertSame(replacement, mMap.groupAt(0).get(0));
+    }
+
+    /**
+     * Verify a candidate is only removed by the instance stored in the map.
+     */
+    @Test
+    public void removeOnlyStoredInstance() {
+        ConcreteCandidate candidate = createCandidate(1);
+        mMap.put(BSSID_BASE, 1, candidate);
+
+        assertFalse(mMap.remove(BSSID_BASE, 1, createCandidate(1)));
+        assertFalse(mMap.remove(BSSID_BASE, 2, candidate));
+        assertTrue(mMap.remove(BSSID_BASE, 1, candidate));
+        assertFalse(mMap.remove(BSSID_BASE, 1, candidate));
+
+        assertEquals(0, mMap.size());
+        assertEquals(0, mMap.groupCount());
+    }
+
+    /**
+     * Verify lookups, groups and removals stay consistent through growth and many removals in
+     * colliding probe sequences.
+     */
+    @Test
+    public void manyCandidates() {
+        int count = 2000;
+        List<ConcreteCandidate> candidates = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ConcreteCandidate candidate = createCandidate(i % NUM_NETWORKS);
+            candidates.add(candidate);
+            mMap.put(BSSID_BASE + i, i % NUM_NETWORKS, candidate);
+        }
+        assertEquals(count, mMap.size());
+        assertEquals(NUM_NETWORKS, mMap.groupCount());
+        assertEquals(count / NUM_NETWORKS, getGroupSize(mMap, 3));
+
+        List<Integer> order = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, new Random(0));
+        boolean[] removed = new boolean[count];
+        for (int i : order.subList(0, count / 2)) {
+            assertTrue(mMap.remove(BSSID_BASE + i, i % NUM_NETWORKS, candidates.get(i)));
+            removed[i] = true;
+        }
+
+        assertEquals(count / 2, mMap.size());
+        int groupTotal = 0;
+        for (int i = 0; i < mMap.groupCount(); i++) {
+            groupTotal += mMap.groupAt(i).size();
+        }
+        assertEquals(count / 2, groupTotal);
+        for (int i = 0; i < count; i++) {
+            WifiCandidates.Candidate expected = removed[i] ? null : candidates.get(i);
+            assertSame("index " + i, expected, mMap.get(BSSID_BASE + i, i % NUM_NETWORKS));
+        }
+    }
+}
@@ -334,6 +334,79 @@ public class ConfigurationMapTest extends WifiBaseTest {
         assertNull(mConfigs.getByScanResultForCurrentUser(scanResult));
     }
 
+    /**
+     * Verifies that {@link ConfigurationMap#getByScanResultForCurrentUser(ScanResult)} matches
+     * transition mode scan results with the networks of the older security type, but prefers a
+     * network of the exact security type.
+     */
+    @Test
+    public void testScanResultMatchesTransitionModeNetworks() {
+        WifiConfiguration pskConfig = WifiConfigurationTestUtil.createPskNetwork();
+        pskConfig.networkId = 1;
+        mConfigs.put(pskConfig);
+        WifiConfiguration openConfig = WifiConfigurationTestUtil.createOpenNetwork();
+        openConfig.networkId = 2;
+        mConfigs.put(openConfig);
+
+        ScanResult pskSaeScanResult = createScanResultForNetwork(pskConfig);
+        pskSaeScanResult.capabilities = "[RSN-PSK+SAE-CCMP][ESS]";
+        assertEquals(pskConfig, mConfigs.getByScanResultForCurrentUser(pskSaeScanResult));
+        ScanResult oweScanResult = createScanResultForNetwork(openConfig);
+        oweScanResult.capabilities = "[RSN-OWE_TRANSITION-CCMP][ESS]";
+        assertEquals(openConfig, mConfigs.getByScanResultForCurrentUser(oweScanResult));
+
+        // SAE only scan results do not match the PSK network.
+        ScanResult saeScanResult = createScanResultForNetwork(pskConfig);
+        saeScanResult.capabilities = "[RSN-SAE-CCMP][ESS]";
+        assertNull(mConfigs.getByScanResultForCurrentUser(saeScanResult));
+
+        WifiConfiguration saeConfig = WifiConfigurationTestUtil.createSaeNetwork(pskConfig.SSID);
+        saeConfig.networkId = 3;
+        mConfigs.put(saeConfig);
+        assertEquals(saeConfig, mConfigs.getByScanResultForCurrentUser(pskSaeScanResult));
+        assertEquals(saeConfig, mConfigs.getByScanResultForCurrentUser(saeScanResult));
+    }
+
+    /**
+     * Verifies that updating the security type of a network removes its previous match.
+     */
+    @Test
+    public void testScanResultDoesNotMatchAfterNetworkUpdate() {
+        WifiConfiguration config = WifiConfigurationTestUtil.createOpenNetwork();
+        config.networkId = 5;
+        ScanResult scanResult = createScanResultForNetwork(config);
+        mConfigs.put(config);
+        assertNotNull(mConfigs.getByScanResultForCurrentUser(scanResult));
+
+        WifiConfiguration updatedConfig = new WifiConfiguration(config);
+        updatedConfig.allowedKeyManagement.clear();
+        updatedConfig.allowedKeyManagement.set(WifiConfiguration.KeyMgmt.WPA_PSK);
+        mConfigs.put(updatedConfig);
+        assertNull(mConfigs.getByScanResultForCurrentUser(scanResult));
+    }
+
+    /**
+     * Verifies that the networks matched for scan results follow the current user.
+     */
+    @Test
+    public void testScanResultMatchFollowsNewUser() {
+        WifiConfiguration config = WifiConfigurationTestUtil.createPskNetwork();
+        config.shared = false;
+        config.creatorUid = UserHandle.getUid(10, 1000);
+        ScanResult scanResult = createScanResultForNetwork(config);
+        mConfigs.put(config);
+        assertNull(mConfigs.getByScanResultForCurrentUser(scanResult));
+        assertNull(mConfigs.getForCurrentUser(config.networkId));
+
+        mConfigs.setNewUser(10);
+        assertEquals(config, mConfigs.getByScanResultForCurrentUser(scanResult));
+        assertEquals(config, mConfigs.getForCurrentUser(config.networkId));
+
+        mConfigs.setNewUser(11);
+        assertNull(mConfigs.getByScanResultForCurrentUser(scanResult));
+        assertEquals(0, mConfigs.sizeForCurrentUser());
+    }
+
     @Test
     public void testScanResultDoesNotMatchForWifiNetworkSpecifier() {
         // Add regular saved network, this should create a scan result match info cache entry.
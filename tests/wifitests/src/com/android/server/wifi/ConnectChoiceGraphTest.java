@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.filters.SmallTest;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.ConnectChoiceGraph}.
+ */
+@SmallTest
+public class ConnectChoiceGraphTest extends WifiBaseTest {
+    private static final String KEY_A = "\"A\"WPA_PSK";
+    private static final String KEY_B = "\"B\"WPA_PSK";
+    private static final String KEY_C = "\"C\"WPA_PSK";
+    private static final String KEY_D = "\"D\"WPA_PSK";
+
+    private ConnectChoiceGraph mGraph;
+
+    @Before
+    public void setUp() throws Exception {
+        mGraph = new ConnectChoiceGraph();
+    }
+
+    /**
+     * Verify the chain follows the connect choices, and is kept until an edge it goes through
+     * changes.
+     */
+    @Test
+    public void chainUpdatedOnEdgeChange() {
+        mGraph.setConnectChoice(KEY_A, KEY_B);
+        mGraph.setConnectChoice(KEY_B, KEY_C);
+        mGraph.setConnectChoice(KEY_D, KEY_C);
+
+        assertEquals(Arrays.asList(KEY_B, KEY_C), mGraph.getChoiceChain(KEY_A));
+        assertEquals(Collections.emptyList(), mGraph.getChoiceChain(KEY_C));
+        // Memoized, and kept by a change the chain does not go through.
+        assertSame(mGraph.getChoiceChain(KEY_A), mGraph.getChoiceChain(KEY_A));
+        mGraph.setConnectChoice(KEY_D, null);
+        assertEquals(Arrays.asList(KEY_B, KEY_C), mGraph.getChoiceChain(KEY_A));
+
+        // A change downstream is seen upstream.
+        mGraph.setConnectChoice(KEY_C, KEY_D);
+        assertEquals(Arrays.asList(KEY_B, KEY_C, KEY_D), mGraph.getChoiceChain(KEY_A));
+
+        mGraph.removeNetwork(KEY_B);
+        assertEquals(Arrays.asList(KEY_B), mGraph.getChoiceChain(KEY_A));
+        assertNull(mGraph.getConnectChoice(KEY_B));
+    }
+
+    /**
+     * Verify a cycle of connect choices ends the chain instead of looping.
+     */
+    @Test
+    public void cycleEndsChain() {
+        mGraph.setConnectChoice(KEY_A, KEY_B);
+        mGraph.setConnectChoice(KEY_B, KEY_C);
+        mGraph.setConnectChoice(KEY_C, KEY_A);
+
+        assertEquals(Arrays.asList(KEY_B, KEY_C), mGraph.getChoiceChain(KEY_A));
+        assertEquals(Arrays.asList(KEY_C, KEY_A), mGraph.getChoiceChain(KEY_B));
+    }
+
+    /**
+     * Verify the networks choosing a network are tracked through changes.
+     */
+    @Test
+    public void networksChoosing() {
+        mGraph.setConnectChoice(KEY_A, KEY_C);
+        mGraph.setConnectChoice(KEY_B, KEY_C);
+        assertEquals(new HashSet<>(Arrays.asList(KEY_A, KEY_B)),
+                mGraph.getNetworksChoosing(KEY_C));
+
+        mGraph.setConnectChoice(KEY_A, KEY_D);
+        assertEquals(new HashSet<>(Arrays.asList(KEY_B)), mGraph.getNetworksChoosing(KEY_C));
+        assertEquals(new HashSet<>(Arrays.asList(KEY_A)), mGraph.getNetworksChoosing(KEY_D));
+
+        mGraph.clear();
+        assertTrue(mGraph.getNetworksChoosing(KEY_C).isEmpty());
+        assertTrue(mGraph.getChoiceChain(KEY_A).isEmpty());
+    }
+}
@@ -211,6 +211,15 @@ public class DeviceConfigFacadeTest extends WifiBaseTest {
                 mDeviceConfigFacade.getMinConfirmationDurationSendHighScoreMs());
         assertEquals(DeviceConfigFacade.DEFAULT_RSSI_THRESHOLD_NOT_SEND_LOW_SCORE_TO_CS_DBM,
                 mDeviceConfigFacade.getRssiThresholdNotSendLowScoreToCsDbm());
+        assertEquals(false, mDeviceConfigFacade.isScanResultDeltaEnabled());
+        assertEquals(false, mDeviceConfigFacade.isBackgroundScanCostModelEnabled());
+        assertEquals(false, mDeviceConfigFacade.isPartialScanChannelPlannerEnabled());
+        assertEquals(false, mDeviceConfigFacade.isConcurrentNetworkNominationEnabled());
+        assertEquals(false, mDeviceConfigFacade.isThroughputPredictionCacheEnabled());
+        assertEquals(false, mDeviceConfigFacade.isCompactPnoNetworkListEnabled());
+        assertEquals(false, mDeviceConfigFacade.isBinaryConfigStoreEnabled());
+        assertEquals(false, mDeviceConfigFacade.isAsyncConfigStoreWriteEnabled());
+        assertEquals(false, mDeviceConfigFacade.isParallelConfigStoreReadEnabled());
     }
 
     /**
@@ -319,6 +328,24 @@ public class DeviceConfigFacadeTest extends WifiBaseTest {
                 anyInt())).thenReturn(1000);
         when(DeviceConfig.getInt(anyString(), eq("rssi_threshold_not_send_low_score_to_cs_dbm"),
                 anyInt())).thenReturn(-70);
+        when(DeviceConfig.getBoolean(anyString(), eq("scan_result_delta_enabled"),
+                anyBoolean())).thenReturn(true);
+        when(DeviceConfig.getBoolean(anyString(), eq("background_scan_cost_model_enabled"),
+                anyBoolean())).thenReturn(true);
+        when(DeviceConfig.getBoolean(anyString(), eq("partial_scan_channel_planner_enabled"),
+                anyBoolean())).thenReturn(true);
+        when(DeviceConfig.getBoolean(anyString(), eq("concurrent_network_nomination_enabled"),
+                anyBoolean())).thenReturn(true);
+        when(DeviceConfig.getBoolean(anyString(), eq("throughput_prediction_cache_enabled"),
+                anyBoolean())).thenReturn(true);
+        when(DeviceConfig.getBoolean(anyString(), eq("compact_pno_network_list_enabled"),
+                anyBoolean())).thenReturn(true);
+        when(DeviceConfig.getBoolean(anyString(), eq("binary_config_store_enabled"),
+                anyBoolean())).thenReturn(true);
+        when(DeviceConfig.getBoolean(anyString(), eq("async_config_store_write_enabled"),
+                anyBoolean())).thenReturn(true);
+        when(DeviceConfig.getBoolean(anyString(), eq("parallel_config_store_read_enabled"),
+                anyBoolean())).thenReturn(true);
         mOnPropertiesChangedListenerCaptor.getValue().onPropertiesChanged(null);
 
         // Verifying fields are updated to the new values
@@ -378,5 +405,14 @@ public class DeviceConfigFacadeTest extends WifiBaseTest {
         assertEquals(4000, mDeviceConfigFacade.getMinConfirmationDurationSendLowScoreMs());
         assertEquals(1000, mDeviceConfigFacade.getMinConfirmationDurationSendHighScoreMs());
         assertEquals(-70, mDeviceConfigFacade.getRssiThresholdNotSendLowScoreToCsDbm());
+        assertEquals(true, mDeviceConfigFacade.isScanResultDeltaEnabled());
+        assertEquals(true, mDeviceConfigFacade.isBackgroundScanCostModelEnabled());
+        assertEquals(true, mDeviceConfigFacade.isPartialScanChannelPlannerEnabled());
+        assertEquals(true, mDeviceConfigFacade.isConcurrentNetworkNominationEnabled());
+        assertEquals(true, mDeviceConfigFacade.isThroughputPredictionCacheEnabled());
+        assertEquals(true, mDeviceConfigFacade.isCompactPnoNetworkListEnabled());
+        assertEquals(true, mDeviceConfigFacade.isBinaryConfigStoreEnabled());
+        assertEquals(true, mDeviceConfigFacade.isAsyncConfigStoreWriteEnabled());
+        assertEquals(true, mDeviceConfigFacade.isParallelConfigStoreReadEnabled());
     }
 }
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.filters.SmallTest;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.NetworkLinkingIndex}.
+ */
+@SmallTest
+public class NetworkLinkingIndexTest extends WifiBaseTest {
+    private static final String TEST_GATEWAY_1 = "02:00:00:00:00:01";
+    private static final String TEST_GATEWAY_2 = "02:00:00:00:00:02";
+
+    private NetworkLinkingIndex mIndex;
+
+    @Before
+    public void setUp() throws Exception {
+        mIndex = new NetworkLinkingIndex(WifiConfigManager.LINK_CONFIGURATION_BSSID_MATCH_LENGTH);
+    }
+
+    /**
+     * Verify networks are found through a shared default gateway, and no longer once the gateway
+     * changes.
+     */
+    @Test
+    public void candidatesByGateway() {
+        mIndex.setDefaultGateway(1, TEST_GATEWAY_1);
+        mIndex.setDefaultGateway(2, TEST_GATEWAY_1);
+        mIndex.setDefaultGateway(3, TEST_GATEWAY_2);
+
+        assertEquals(new HashSet<>(Arrays.asList(2)), mIndex.getLinkCandidates(1));
+
+        mIndex.setDefaultGateway(2, TEST_GATEWAY_2);
+        assertTrue(mIndex.getLinkCandidates(1).isEmpty());
+        assertEquals(new HashSet<>(Arrays.asList(3)), mIndex.getLinkCandidates(2));
+    }
+
+    /**
+     * Verify networks are found through BSSIDs sharing a prefix regardless of case, and no longer
+     * once removed.
+     */
+    @Test
+    public void candidatesByBssidPrefix() {
+        mIndex.addBssid(1, "af:89:56:34:56:67");
+        mIndex.addBssid(2, "AF:89:56:34:56:68");
+        mIndex.addBssid(3, "af:89:56:34:45:67");
+        // Network 4 shares the prefix through its second BSSID only.
+        mIndex.addBssid(4, "02:00:00:00:00:01");
+        mIndex.addBssid(4, "af:89:56:34:56:6a");
+
+        assertEquals(new HashSet<>(Arrays.asList(2, 4)), mIndex.getLinkCandidates(1));
+
+        mIndex.removeNetwork(2);
+        assertEquals(new HashSet<>(Arrays.asList(4)), mIndex.getLinkCandidates(1));
+        mIndex.clearAllBssids();
+        assertTrue(mIndex.getLinkCandidates(1).isEmpty());
+    }
+}
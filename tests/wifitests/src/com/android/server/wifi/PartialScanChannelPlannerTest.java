@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.when;
+
+import android.net.wifi.WifiSsid;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.wifi.util.InformationElementUtil.BssLoad;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.PartialScanChannelPlanner}.
+ */
+@SmallTest
+public class PartialScanChannelPlannerTest extends WifiBaseTest {
+    private static final int TEST_NETWORK_ID = 5;
+    private static final String TEST_SSID = "\"test_ssid\"";
+    private static final String TEST_BSSID = "02:00:00:00:00:00";
+    private static final int CURRENT_FREQ = 2412;
+
+    @Mock private WifiChannelUtilization mWifiChannelUtilization;
+    private PartialScanChannelPlanner mPlanner;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(mWifiChannelUtilization.getUtilizationRatio(anyInt())).thenReturn(BssLoad.INVALID);
+        mPlanner = new PartialScanChannelPlanner(mWifiChannelUtilization, true);
+    }
+
+    private static ScanDetail createScanDetail(String ssid, String bssid, int frequency) {
+        return new ScanDetail(WifiSsid.createFromAsciiEncoded(ssid), bssid, "", -60, frequency,
+                0, 0);
+    }
+
+    /**
+     * BSSIDs of the network on 5180 (x17), 5745 (x2) and 2437 (x2), plus the connected BSSID
+     * and BSSIDs of another network.
+     */
+    private static List<ScanDetail> createScanDetails() {
+        String ssid = TEST_SSID.substring(1, TEST_SSID.length() - 1);
+        List<ScanDetail> scanDetails = new ArrayList<>();
+        scanDetails.add(createScanDetail(ssid, TEST_BSSID, CURRENT_FREQ));
+        int bssid = 1;
+        for (int i = 0; i < 17; i++) {
+            scanDetails.add(createScanDetail(ssid, String.format("02:00:00:00:00:%02x", bssid++),
+                    5180));
+        }
+        for (int i = 0; i < 2; i++) {
+            scanDetails.add(createScanDetail(ssid, String.format("02:00:00:00:00:%02x", bssid++),
+                    5745));
+            scanDetails.add(createScanDetail(ssid, String.format("02:00:00:00:00:%02x", bssid++),
+                    2437));
+            scanDetails.add(createScanDetail("other_ssid",
+                    String.format("02:00:00:00:00:%02x", bssid++), 5500));
+        }
+        return scanDetails;
+    }
+
+    private void scanFullBand(int times) {
+        for (int i = 0; i < times; i++) {
+            mPlanner.updateFromFullBandScan(TEST_NETWORK_ID, TEST_SSID, TEST_BSSID,
+                    createScanDetails());
+        }
+    }
+
+    /**
+     * Verify no channels are planned until enough full band scans were seen.
+     */
+    @Test
+    public void noPlanWithoutHistory() {
+        assertNull(mPlanner.planChannels(TEST_NETWORK_ID, CURRENT_FREQ, 0, 5));
+        scanFullBand(PartialScanChannelPlanner.MIN_FULL_SCANS - 1);
+        assertNull(mPlanner.planChannels(TEST_NETWORK_ID, CURRENT_FREQ, 0, 5));
+    }
+
+    /**
+     * Verify the plan is the connected channel plus the smallest set of channels capturing the
+     * target share of the BSSIDs of the network.
+     */
+    @Test
+    public void planSmallestChannelSetReachingTarget() {
+        scanFullBand(PartialScanChannelPlanner.MIN_FULL_SCANS);
+
+        Set<Integer> channels = mPlanner.planChannels(TEST_NETWORK_ID, CURRENT_FREQ, 0, 5);
+
+        // 5180 holds 81% of the yield, one of the two other channels is needed to reach 90%.
+        assertEquals(3, channels.size());
+        assertTrue(channels.contains(CURRENT_FREQ));
+        assertTrue(channels.contains(5180));
+        assertEquals(3.0, mPlanner.getAveragePlannedChannels(), 0.0);
+    }
+
+    /**
+     * Verify busy channels rank after idle channels of the same yield, and the channel limit
+     * is respected.
+     */
+    @Test
+    public void busyChannelsRankLower() {
+        when(mWifiChannelUtilization.getUtilizationRatio(5745))
+                .thenReturn(BssLoad.MAX_CHANNEL_UTILIZATION);
+        when(mWifiChannelUtilization.getUtilizationRatio(2437)).thenReturn(0);
+        scanFullBand(PartialScanChannelPlanner.MIN_FULL_SCANS);
+
+        assertEquals(new HashSet<>(Arrays.asList(CURRENT_FREQ, 5180, 2437)),
+                mPlanner.planChannels(TEST_NETWORK_ID, CURRENT_FREQ, 0, 5));
+        assertEquals(new HashSet<>(Arrays.asList(CURRENT_FREQ, 5180)),
+                mPlanner.planChannels(TEST_NETWORK_ID, CURRENT_FREQ, 2, 5));
+    }
+
+    /**
+     * Verify the hit rate counts the BSSIDs of full band scans found on planned channels.
+     */
+    @Test
+    public void hitRateOfPlannedChannels() {
+        assertEquals(-1.0, mPlanner.getHitRate(), 0.0);
+        scanFullBand(PartialScanChannelPlanner.MIN_FULL_SCANS);
+        mPlanner.planChannels(TEST_NETWORK_ID, CURRENT_FREQ, 2, 5);
+
+        scanFullBand(1);
+
+        // 17 of the 21 BSSIDs are on 5180.
+        assertEquals(17.0 / 21, mPlanner.getHitRate(), 0.001);
+    }
+
+    /**
+     * Verify missing scan details or SSID are ignored, and do not count as a full band scan.
+     */
+    @Test
+    public void nullInputsIgnored() {
+        for (int i = 0; i < PartialScanChannelPlanner.MIN_FULL_SCANS; i++) {
+            mPlanner.updateFromFullBandScan(TEST_NETWORK_ID, TEST_SSID, TEST_BSSID, null);
+            mPlanner.updateFromFullBandScan(TEST_NETWORK_ID, null, TEST_BSSID,
+                    createScanDetails());
+        }
+        assertNull(mPlanner.planChannels(TEST_NETWORK_ID, CURRENT_FREQ, 0, 5));
+    }
+
+    /**
+     * Verify the history of a removed network is dropped.
+     */
+    @Test
+    public void removeNetworkDropsHistory() {
+        scanFullBand(PartialScanChannelPlanner.MIN_FULL_SCANS);
+        mPlanner.removeNetwork(TEST_NETWORK_ID);
+        assertNull(mPlanner.planChannels(TEST_NETWORK_ID, CURRENT_FREQ, 0, 5));
+    }
+}
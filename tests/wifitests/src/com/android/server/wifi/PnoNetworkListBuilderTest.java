@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import static com.android.server.wifi.WifiScoreCard.CNT_CONNECTION_ATTEMPT;
+import static com.android.server.wifi.WifiScoreCard.CNT_CONNECTION_FAILURE;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.net.wifi.WifiConfiguration;
+import android.net.wifi.WifiScanner.PnoSettings.PnoNetwork;
+
+import androidx.test.filters.SmallTest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.PnoNetworkListBuilder}.
+ */
+@SmallTest
+public class PnoNetworkListBuilderTest extends WifiBaseTest {
+    private static final long MAX_FREQUENCY_AGE_MS = 60_000;
+    private static final long TEST_NOW_MS = 1_000_000;
+    private static final int TEST_FREQUENCY_1 = 2412;
+    private static final int TEST_FREQUENCY_2 = 5180;
+    private static final int TEST_FREQUENCY_3 = 5745;
+
+    @Mock private WifiConfigManager mWifiConfigManager;
+    @Mock private WifiScoreCard mWifiScoreCard;
+    @Mock private Clock mClock;
+
+    private PnoNetworkListBuilder mBuilder;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(mClock.getWallClockMillis()).thenReturn(TEST_NOW_MS);
+        mBuilder = new PnoNetworkListBuilder(mWifiConfigManager, mWifiScoreCard, mClock, true);
+    }
+
+    /**
+     * Link a score card entry with |successes| successful connections and |frequencies| to
+     * |config|.
+     */
+    private void setUpScoreCard(WifiConfiguration config, int successes,
+            Integer... frequencies) {
+        WifiScoreCard.NetworkConnectionStats stats = new WifiScoreCard.NetworkConnectionStats();
+        for (int i = 0; i < successes + 1; i++) {
+            stats.incrementCount(CNT_CONNECTION_ATTEMPT);
+        }
+        stats.incrementCount(CNT_CONNECTION_FAILURE);
+        WifiScoreCard.PerNetwork perNetwork = mock(WifiScoreCard.PerNetwork.class);
+        when(perNetwork.getStatsCurrBuild()).thenReturn(stats);
+        when(perNetwork.getStatsPrevBuild()).thenReturn(new WifiScoreCard.NetworkConnectionStats());
+        when(perNetwork.getFrequencies(anyLong())).thenReturn(Arrays.asList(frequencies));
+        when(mWifiScoreCard.peekNetwork(config.SSID)).thenReturn(perNetwork);
+    }
+
+    /**
+     * Add a scan detail seen |ageMs| ago on |frequency| to the scan detail cache of |config|.
+     */
+    private void setUpScanDetailCache(WifiConfiguration config, int frequency, long ageMs) {
+        ScanDetailCache cache = new ScanDetailCache(config, 10, 5);
+        cache.put(new ScanDetail(null, "02:00:00:00:00:01", "", -60, frequency, 0,
+                TEST_NOW_MS - ageMs));
+        when(mWifiConfigManager.getScanDetailCacheForNetwork(config.networkId)).thenReturn(cache);
+    }
+
+    /**
+     * Verify the networks are ranked by successful connections, keeping the given order for
+     * ties, and the list is limited to the max number of networks.
+     */
+    @Test
+    public void rankedBySuccessesAndLimited() {
+        WifiConfiguration network1 = WifiConfigurationTestUtil.createPskNetwork();
+        WifiConfiguration network2 = WifiConfigurationTestUtil.createPskNetwork();
+        WifiConfiguration network3 = WifiConfigurationTestUtil.createPskNetwork();
+        setUpScoreCard(network1, 1);
+        setUpScoreCard(network2, 5);
+        setUpScoreCard(network3, 1);
+
+        List<PnoNetwork> pnoList = mBuilder.build(
+                Arrays.asList(network1, network2, network3), 3, MAX_FREQUENCY_AGE_MS, true);
+        assertEquals(3, pnoList.size());
+        assertEquals(network2.SSID, pnoList.get(0).ssid);
+        assertEquals(network1.SSID, pnoList.get(1).ssid);
+        assertEquals(network3.SSID, pnoList.get(2).ssid);
+
+        pnoList = mBuilder.build(
+                Arrays.asList(network1, network2, network3), 2, MAX_FREQUENCY_AGE_MS, true);
+        assertEquals(2, pnoList.size());
+        assertEquals(network2.SSID, pnoList.get(0).ssid);
+        assertEquals(network1.SSID, pnoList.get(1).ssid);
+    }
+
+    /**
+     * Verify the frequencies come from both the score card and the recent scan details.
+     */
+    @Test
+    public void frequenciesFromScoreCardAndScanDetailCache() {
+        WifiConfiguration network1 = WifiConfigurationTestUtil.createPskNetwork();
+        network1.networkId = 1;
+        WifiConfiguration network2 = WifiConfigurationTestUtil.createPskNetwork();
+        network2.networkId = 2;
+        setUpScoreCard(network1, 1, TEST_FREQUENCY_1);
+        setUpScanDetailCache(network1, TEST_FREQUENCY_2, MAX_FREQUENCY_AGE_MS / 2);
+        setUpScoreCard(network2, 0);
+        // Too old to be used.
+        setUpScanDetailCache(network2, TEST_FREQUENCY_3, MAX_FREQUENCY_AGE_MS * 2);
+
+        List<PnoNetwork> pnoList = mBuilder.build(
+                Arrays.asList(network1, network2), 16, MAX_FREQUENCY_AGE_MS, true);
+        int[] frequencies = pnoList.get(0).frequencies;
+        Arrays.sort(frequencies);
+        assertArrayEquals(new int[] {TEST_FREQUENCY_1, TEST_FREQUENCY_2}, frequencies);
+        assertEquals(0, pnoList.get(1).frequencies.length);
+    }
+
+    /**
+     * Verify networks with the same SSID but another security type share one entry, which
+     * matches all the frequencies if one of the networks has none known.
+     */
+    @Test
+    public void sameSsidMerged() {
+        WifiConfiguration psk = WifiConfigurationTestUtil.createPskNetwork();
+        psk.networkId = 1;
+        WifiConfiguration open = WifiConfigurationTestUtil.createOpenNetwork(psk.SSID);
+        open.networkId = 2;
+        WifiConfiguration other = WifiConfigurationTestUtil.createOpenNetwork();
+        other.networkId = 3;
+        // The score card is shared by the networks with the same SSID.
+        setUpScoreCard(psk, 2);
+        setUpScanDetailCache(psk, TEST_FREQUENCY_1, 0);
+        setUpScoreCard(other, 0, TEST_FREQUENCY_2);
+
+        List<PnoNetwork> pnoList = mBuilder.build(
+                new ArrayList<>(Arrays.asList(psk, open, other)), 2, MAX_FREQUENCY_AGE_MS, true);
+        assertEquals(2, pnoList.size());
+        assertEquals(psk.SSID, pnoList.get(0).ssid);
+        assertEquals(PnoNetwork.AUTH_CODE_PSK | PnoNetwork.AUTH_CODE_OPEN,
+                pnoList.get(0).authBitField);
+        assertEquals(0, pnoList.get(0).frequencies.length);
+        assertEquals(other.SSID, pnoList.get(1).ssid);
+        assertArrayEquals(new int[] {TEST_FREQUENCY_2}, pnoList.get(1).frequencies);
+
+        assertEquals(Collections.emptyList(),
+                mBuilder.build(Collections.emptyList(), 2, MAX_FREQUENCY_AGE_MS, true));
+    }
+
+    /**
+     * Verify no frequencies are given to the entries when PNO frequency culling is disabled.
+     */
+    @Test
+    public void noFrequenciesWhenCullingDisabled() {
+        WifiConfiguration network = WifiConfigurationTestUtil.createPskNetwork();
+        network.networkId = 1;
+        setUpScoreCard(network, 1, TEST_FREQUENCY_1);
+        setUpScanDetailCache(network, TEST_FREQUENCY_2, 0);
+
+        List<PnoNetwork> pnoList = mBuilder.build(
+                Arrays.asList(network), 16, MAX_FREQUENCY_AGE_MS, false);
+        assertEquals(1, pnoList.size());
+        assertEquals(network.SSID, pnoList.get(0).ssid);
+        assertEquals(0, pnoList.get(0).frequencies.length);
+    }
+
+    /**
+     * Verify networks without a score card entry are ranked last and building the list does
+     * not create entries for them.
+     */
+    @Test
+    public void networksWithoutScoreCardNotCreated() {
+        WifiConfiguration known = WifiConfigurationTestUtil.createPskNetwork();
+        known.networkId = 1;
+        WifiConfiguration unknown = WifiConfigurationTestUtil.createPskNetwork();
+        unknown.networkId = 2;
+        setUpScoreCard(known, 1, TEST_FREQUENCY_1);
+        setUpScanDetailCache(unknown, TEST_FREQUENCY_2, 0);
+
+        List<PnoNetwork> pnoList = mBuilder.build(
+                Arrays.asList(unknown, known), 16, MAX_FREQUENCY_AGE_MS, true);
+        assertEquals(2, pnoList.size());
+        assertEquals(known.SSID, pnoList.get(0).ssid);
+        assertEquals(unknown.SSID, pnoList.get(1).ssid);
+        assertArrayEquals(new int[] {TEST_FREQUENCY_2}, pnoList.get(1).frequencies);
+        verify(mWifiScoreCard, never()).lookupNetwork(any());
+    }
+}
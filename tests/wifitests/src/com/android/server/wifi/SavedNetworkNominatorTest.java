@@ -19,6 +19,7 @@ package com.android.server.wifi;
 import static com.android.server.wifi.WifiConfigurationTestUtil.SECURITY_NONE;
 import static com.android.server.wifi.WifiConfigurationTestUtil.SECURITY_PSK;
 
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.*;
 
 import android.net.wifi.WifiConfiguration;
@@ -346,4 +347,54 @@ public class SavedNetworkNominatorTest extends WifiBaseTest {
                 null, null, true, false, mOnConnectableListener);
         verify(mOnConnectableListener).onConnectable(any(), any());
     }
+
+    /**
+     * Verify the concurrent nomination only reads the configured network snapshot until the
+     * returned nomination is finished, and nominates the same networks as
+     * {@link SavedNetworkNominator#nominateNetworks}.
+     */
+    @Test
+    public void concurrentNominationMatchesSequentialNomination() {
+        String[] ssids = {"\"test1\"", "\"test2\"", "\"test3\""};
+        String[] bssids = {"6c:f3:7f:ae:8c:f3", "6c:f3:7f:ae:8c:f4", "6c:f3:7f:ae:8c:f5"};
+        int[] freqs = {2470, 2437, 5180};
+        String[] caps = {"[WPA2-PSK][ESS]", "[WPA2-PSK][ESS]", "[ESS]"};
+        int[] levels = {RSSI_LEVEL, RSSI_LEVEL, RSSI_LEVEL};
+        int[] securities = {SECURITY_PSK, SECURITY_PSK, SECURITY_NONE};
+
+        ScanDetailsAndWifiConfigs scanDetailsAndConfigs =
+                WifiNetworkSelectorTestUtil.setupScanDetailsAndConfigStore(ssids, bssids,
+                        freqs, caps, levels, securities, mWifiConfigManager, mClock);
+        List<ScanDetail> scanDetails = scanDetailsAndConfigs.getScanDetails();
+        WifiConfiguration[] savedConfigs = scanDetailsAndConfigs.getWifiConfigs();
+        savedConfigs[1].allowAutojoin = false;
+        List<WifiConfiguration> configuredNetworks =
+                mWifiConfigManager.getConfiguredNetworksSnapshot();
+
+        WifiNetworkSelector.ConcurrentNetworkNominator.PendingNomination pendingNomination =
+                mSavedNetworkNominator.nominateNetworksConcurrently(scanDetails,
+                        configuredNetworks, null, null, true, false);
+        verify(mWifiConfigManager, never()).getConfiguredNetworkForScanDetailAndCache(any());
+        verify(mWifiConfigManager, never()).isNetworkTemporarilyDisabledByUser(any());
+        verify(mPasspointNetworkNominateHelper, never())
+                .getPasspointNetworkCandidates(any(), anyBoolean());
+
+        pendingNomination.finish(scanDetails, mOnConnectableListener);
+        verify(mWifiConfigManager, times(3)).getConfiguredNetworkForScanDetailAndCache(any());
+        verify(mOnConnectableListener, times(2)).onConnectable(any(),
+                mWifiConfigurationArgumentCaptor.capture());
+        List<WifiConfiguration> concurrent = mWifiConfigurationArgumentCaptor.getAllValues();
+        assertEquals(savedConfigs[0].networkId, concurrent.get(0).networkId);
+        assertEquals(savedConfigs[2].networkId, concurrent.get(1).networkId);
+
+        reset(mOnConnectableListener);
+        mWifiConfigurationArgumentCaptor = ArgumentCaptor.forClass(WifiConfiguration.class);
+        mSavedNetworkNominator.nominateNetworks(scanDetails,
+                null, null, true, false, mOnConnectableListener);
+        verify(mOnConnectableListener, times(2)).onConnectable(any(),
+                mWifiConfigurationArgumentCaptor.capture());
+        List<WifiConfiguration> sequential = mWifiConfigurationArgumentCaptor.getAllValues();
+        assertEquals(savedConfigs[0].networkId, sequential.get(0).networkId);
+        assertEquals(savedConfigs[2].networkId, sequential.get(1).networkId);
+    }
 }
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.net.wifi.WifiConfiguration;
+import android.net.wifi.WifiSsid;
+
+import androidx.test.filters.SmallTest;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.ScanDetailCache}.
+ */
+@SmallTest
+public class ScanDetailCacheTest extends WifiBaseTest {
+    private static final int MAX_SIZE = 6;
+    private static final int TRIM_SIZE = 4;
+    private static final String TEST_SSID = "\"TestSsid\"";
+
+    private ScanDetailCache mCache;
+
+    @Before
+    public void setUp() throws Exception {
+        mCache = new ScanDetailCache(new WifiConfiguration(), MAX_SIZE, TRIM_SIZE);
+    }
+
+    private static String bssid(int index) {
+        return String.format("02:00:00:00:00:%02x", index);
+    }
+
+    private static ScanDetail createScanDetail(int index, long seen) {
+        return new ScanDetail(WifiSsid.createFromAsciiEncoded(TEST_SSID), bssid(index),
+                "[WPA2-PSK-CCMP]", -60, 2412, 0, seen);
+    }
+
+    /**
+     * Verify the oldest entries are evicted once the cache reaches its max size.
+     */
+    @Test
+    public void putEvictsOldestEntries() {
+        // Insert out of age order.
+        int[] order = {3, 0, 5, 1, 4, 2};
+        for (int index : order) {
+            mCache.put(createScanDetail(index, 1000 + index));
+        }
+        assertEquals(MAX_SIZE, mCache.size());
+
+        mCache.put(createScanDetail(6, 1006));
+
+        assertEquals(TRIM_SIZE + 1, mCache.size());
+        assertNull(mCache.getScanDetail(bssid(0)));
+        assertNull(mCache.getScanDetail(bssid(1)));
+        for (int index = 2; index <= 6; index++) {
+            assertNotNull(mCache.getScanDetail(bssid(index)));
+        }
+    }
+
+    /**
+     * Verify entries replaced by a newer scan or seen again are aged by their latest sighting.
+     */
+    @Test
+    public void evictionUsesLatestSighting() {
+        for (int index = 0; index < MAX_SIZE - 1; index++) {
+            mCache.put(createScanDetail(index, 1000 + index));
+        }
+        // Replace the oldest entry with a newer one, and mark the second oldest as seen now.
+        mCache.put(createScanDetail(0, 2000));
+        mCache.getScanDetail(bssid(1)).setSeen();
+        mCache.put(createScanDetail(5, 1005));
+
+        mCache.put(createScanDetail(6, 1006));
+
+        assertEquals(TRIM_SIZE + 1, mCache.size());
+        assertNotNull(mCache.getScanDetail(bssid(0)));
+        assertNotNull(mCache.getScanDetail(bssid(1)));
+        assertNull(mCache.getScanDetail(bssid(2)));
+        assertNull(mCache.getScanDetail(bssid(3)));
+    }
+
+    /**
+     * Verify repeated scans of the same BSSIDs do not grow the cache, and removed entries are
+     * not evicted again.
+     */
+    @Test
+    public void repeatedPutsAndRemove() {
+        for (int scan = 0; scan < 100; scan++) {
+            for (int index = 0; index < TRIM_SIZE; index++) {
+                mCache.put(createScanDetail(index, 1000 * scan + index));
+            }
+        }
+        assertEquals(TRIM_SIZE, mCache.size());
+        mCache.remove(bssid(0));
+        assertEquals(TRIM_SIZE - 1, mCache.size());
+
+        for (int index = TRIM_SIZE; index < MAX_SIZE + 1; index++) {
+            mCache.put(createScanDetail(index, 1000000 + index));
+        }
+        mCache.put(createScanDetail(MAX_SIZE + 1, 1000000 + MAX_SIZE + 1));
+
+        assertEquals(TRIM_SIZE + 1, mCache.size());
+        assertNull(mCache.getScanDetail(bssid(1)));
+        assertNull(mCache.getScanDetail(bssid(2)));
+        assertTrue(mCache.toString().contains(bssid(MAX_SIZE + 1)));
+    }
+}
@@ -44,6 +44,7 @@ import android.os.test.TestLooper;
 
 import androidx.test.filters.SmallTest;
 
+import com.android.server.wifi.scanner.ScanResultDeltaPublisher;
 import com.android.server.wifi.util.WifiPermissionsUtil;
 
 import org.junit.After;
@@ -389,6 +390,44 @@ public class ScanRequestProxyTest extends WifiBaseTest {
         verify(mWifiMetrics, times(2)).incrementExternalAppOneshotScanRequestsCount();
     }
 
+    /**
+     * Verify full band results are patched from the scan result delta publisher when enabled,
+     * instead of being taken from a global scan listener.
+     */
+    @Test
+    public void testScanSuccessWithScanResultDelta() {
+        ScanResultDeltaPublisher publisher = new ScanResultDeltaPublisher(true);
+        when(mWifiInjector.getScanResultDeltaPublisher()).thenReturn(publisher);
+        mScanRequestProxy.enableScanning(true, false);
+        mInOrder.verify(mWifiScanner, never()).registerScanListener(any(), any());
+        mInOrder.verify(mWifiScanner).setScanningEnabled(true);
+        validateScanAvailableBroadcastSent(true);
+
+        ScanResult resultA = createScanResult("11:22:33:44:55:01", 2412, -50);
+        ScanResult resultB = createScanResult("11:22:33:44:55:02", 5180, -60);
+        ScanResult resultC = createScanResult("11:22:33:44:55:03", 5200, -70);
+        publisher.publish(new ScanResult[]{resultA, resultB}, WifiScanner.WIFI_BAND_ALL);
+        mLooper.dispatchAll();
+        validateScanResultsAvailableBroadcastSent(true);
+        ScanTestUtil.assertScanResultsEquals(new ScanResult[]{resultA, resultB},
+                mScanRequestProxy.getScanResults().stream().toArray(ScanResult[]::new));
+
+        // A is gone, B is refreshed with a new RSSI and C is new.
+        ScanResult refreshedB = createScanResult("11:22:33:44:55:02", 5180, -55);
+        publisher.publish(new ScanResult[]{refreshedB, resultC}, WifiScanner.WIFI_BAND_ALL);
+        mLooper.dispatchAll();
+        validateScanResultsAvailableBroadcastSent(true);
+        ScanTestUtil.assertScanResultsEquals(new ScanResult[]{refreshedB, resultC},
+                mScanRequestProxy.getScanResults().stream().toArray(ScanResult[]::new));
+    }
+
+    private static ScanResult createScanResult(String bssid, int freq, int rssi) {
+        ScanResult result = ScanTestUtil.createScanResult(freq);
+        result.BSSID = bssid;
+        result.level = rssi;
+        return result;
+    }
+
     /**
      * Verify processing of a new scan request after a previous scan success.
      * Verify that we send out two broadcasts (two successes).
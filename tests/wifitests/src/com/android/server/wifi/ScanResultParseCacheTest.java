@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.net.wifi.ScanResult;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.wifi.hotspot2.NetworkDetail;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.ScanResultParseCache}.
+ */
+@SmallTest
+public class ScanResultParseCacheTest extends WifiBaseTest {
+    private static final long TEST_BSSID_1 = 0x112233445566L;
+    private static final long TEST_BSSID_2 = 0x112233445567L;
+    private static final long TEST_BSSID_3 = 0x112233445568L;
+    private static final byte[] TEST_IES = new byte[] {0x00, 0x02, 'a', 'b'};
+    private static final int TEST_FREQUENCY = 5180;
+    private static final int TEST_BEACON_CAP = 0x11;
+
+    @Mock private NetworkDetail mNetworkDetail;
+    private ScanResultParseCache mCache;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        mCache = new ScanResultParseCache(2);
+    }
+
+    private ScanResultParseCache.Entry createEntry(byte[] rawIes) {
+        return new ScanResultParseCache.Entry(mNetworkDetail,
+                new ScanResult.InformationElement[0], "[ESS]", rawIes, TEST_FREQUENCY,
+                TEST_BEACON_CAP, false);
+    }
+
+    /**
+     * Verify an entry is returned for identical IEs, including from a different array instance.
+     */
+    @Test
+    public void hitOnIdenticalIes() {
+        ScanResultParseCache.Entry entry = createEntry(TEST_IES);
+        assertNull(mCache.get(TEST_BSSID_1, TEST_IES, TEST_FREQUENCY, TEST_BEACON_CAP, false));
+        mCache.put(TEST_BSSID_1, entry);
+
+        assertSame(entry, mCache.get(TEST_BSSID_1, TEST_IES.clone(), TEST_FREQUENCY,
+                TEST_BEACON_CAP, false));
+        assertEquals(1, mCache.getHitCount());
+        assertEquals(1, mCache.getMissCount());
+        assertEquals(0, mCache.getStaleCount());
+    }
+
+    /**
+     * Verify a change in any of the parse inputs invalidates the entry.
+     */
+    @Test
+    public void staleOnChangedInputs() {
+        byte[] changedIes = new byte[] {0x00, 0x02, 'a', 'c'};
+        mCache.put(TEST_BSSID_1, createEntry(TEST_IES));
+        assertNull(mCache.get(TEST_BSSID_1, changedIes, TEST_FREQUENCY, TEST_BEACON_CAP, false));
+        assertEquals(0, mCache.size());
+
+        mCache.put(TEST_BSSID_1, createEntry(TEST_IES));
+        assertNull(mCache.get(TEST_BSSID_1, TEST_IES, TEST_FREQUENCY + 20, TEST_BEACON_CAP,
+                false));
+        mCache.put(TEST_BSSID_1, createEntry(TEST_IES));
+        assertNull(mCache.get(TEST_BSSID_1, TEST_IES, TEST_FREQUENCY, 0, false));
+        mCache.put(TEST_BSSID_1, createEntry(TEST_IES));
+        assertNull(mCache.get(TEST_BSSID_1, TEST_IES, TEST_FREQUENCY, TEST_BEACON_CAP, true));
+        assertEquals(4, mCache.getStaleCount());
+        assertEquals(0, mCache.getHitCount());
+    }
+
+    /**
+     * Verify the least recently used BSSID is evicted once the cache is full.
+     */
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        mCache.put(TEST_BSSID_1, createEntry(TEST_IES));
+        mCache.put(TEST_BSSID_2, createEntry(TEST_IES));
+        // Touch BSSID 1 so that BSSID 2 becomes the eldest.
+        mCache.get(TEST_BSSID_1, TEST_IES, TEST_FREQUENCY, TEST_BEACON_CAP, false);
+        mCache.put(TEST_BSSID_3, createEntry(TEST_IES));
+
+        assertEquals(2, mCache.size());
+        assertNull(mCache.get(TEST_BSSID_2, TEST_IES, TEST_FREQUENCY, TEST_BEACON_CAP, false));
+        assertSame(mNetworkDetail, mCache.get(TEST_BSSID_1, TEST_IES, TEST_FREQUENCY,
+                TEST_BEACON_CAP, false).networkDetail);
+    }
+
+    /**
+     * Verify the counters are dumped.
+     */
+    @Test
+    public void dumpIncludesCounters() {
+        mCache.put(TEST_BSSID_1, createEntry(TEST_IES));
+        mCache.get(TEST_BSSID_1, TEST_IES, TEST_FREQUENCY, TEST_BEACON_CAP, false);
+        StringWriter sw = new StringWriter();
+        mCache.dump(new PrintWriter(sw));
+        assertTrue(sw.toString().contains("hits=1"));
+        assertTrue(sw.toString().contains("misses=0"));
+    }
+}
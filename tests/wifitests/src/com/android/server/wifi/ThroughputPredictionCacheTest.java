@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import static com.android.server.wifi.util.InformationElementUtil.BssLoad.INVALID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.net.wifi.ScanResult;
+import android.net.wifi.nl80211.DeviceWiphyCapabilities;
+
+import androidx.test.filters.SmallTest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.ThroughputPredictionCache}.
+ */
+@SmallTest
+public class ThroughputPredictionCacheTest extends WifiBaseTest {
+    private static final String TEST_BSSID = "02:00:00:00:00:01";
+    private static final int TEST_FREQ = 5180;
+    private static final int TEST_RSSI = -60;
+    private static final int TEST_THROUGHPUT_MBPS = 433;
+
+    @Mock private ThroughputPredictor mThroughputPredictor;
+    @Mock private DeviceWiphyCapabilities mDeviceCapabilities;
+    private ThroughputPredictionCache mCache;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(mThroughputPredictor.predictThroughput(any(), anyInt(), anyInt(), anyInt(),
+                anyInt(), anyInt(), anyInt(), anyInt(), anyBoolean()))
+                .thenReturn(TEST_THROUGHPUT_MBPS);
+        mCache = new ThroughputPredictionCache(mThroughputPredictor);
+    }
+
+    private int predict(String bssid, int rssi, int linkLayerStatsUtilization) {
+        return mCache.predictThroughput(bssid, mDeviceCapabilities,
+                ScanResult.WIFI_STANDARD_11AC, ScanResult.CHANNEL_WIDTH_80MHZ, rssi, TEST_FREQ,
+                2, INVALID, linkLayerStatsUtilization, false);
+    }
+
+    private void verifyPredictions(int times) {
+        verify(mThroughputPredictor, times(times)).predictThroughput(any(), anyInt(), anyInt(),
+                anyInt(), anyInt(), anyInt(), anyInt(), anyInt(), anyBoolean());
+    }
+
+    /**
+     * Verify the throughput is predicted once for unchanged inputs.
+     */
+    @Test
+    public void unchangedInputsHit() {
+        assertEquals(-1.0, mCache.getHitRate(), 0.0);
+
+        assertEquals(TEST_THROUGHPUT_MBPS, predict(TEST_BSSID, TEST_RSSI, 30));
+        assertEquals(TEST_THROUGHPUT_MBPS, predict(TEST_BSSID, TEST_RSSI, 30));
+        assertEquals(TEST_THROUGHPUT_MBPS, predict(TEST_BSSID, TEST_RSSI, 30));
+
+        verifyPredictions(1);
+        assertEquals(2.0 / 3, mCache.getHitRate(), 0.001);
+    }
+
+    /**
+     * Verify an RSSI or channel utilization change predicts again.
+     */
+    @Test
+    public void changedInputsMiss() {
+        predict(TEST_BSSID, TEST_RSSI, 30);
+        predict(TEST_BSSID, TEST_RSSI - 1, 30);
+        predict(TEST_BSSID, TEST_RSSI - 1, 60);
+        predict(TEST_BSSID, TEST_RSSI - 1, 60);
+
+        verifyPredictions(3);
+        assertEquals(1, mCache.size());
+    }
+
+    /**
+     * Verify the least recently used BSSID is evicted once the cache is full.
+     */
+    @Test
+    public void leastRecentlyUsedIsEvicted() {
+        String firstBssid = "02:00:00:00:ff:ff";
+        predict(firstBssid, TEST_RSSI, 30);
+        for (int i = 0; i < ThroughputPredictionCache.MAX_ENTRIES; i++) {
+            predict(String.format("02:00:00:00:%02x:%02x", i >> 8, i & 0xff), TEST_RSSI, 30);
+        }
+        assertEquals(ThroughputPredictionCache.MAX_ENTRIES, mCache.size());
+
+        predict(firstBssid, TEST_RSSI, 30);
+
+        verifyPredictions(ThroughputPredictionCache.MAX_ENTRIES + 2);
+        StringWriter sw = new StringWriter();
+        mCache.dump(new PrintWriter(sw));
+        assertTrue(sw.toString().contains("evictions=2"));
+    }
+}
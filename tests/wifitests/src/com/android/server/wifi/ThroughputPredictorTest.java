@@ -26,6 +26,7 @@ import static org.mockito.Mockito.when;
 
 import android.content.Context;
 import android.net.wifi.ScanResult;
+import android.net.wifi.WifiInfo;
 import android.net.wifi.nl80211.DeviceWiphyCapabilities;
 
 import androidx.test.filters.SmallTest;
@@ -373,4 +374,43 @@ public class ThroughputPredictorTest extends WifiBaseTest {
         assertEquals(2881, mThroughputPredictor.predictRxThroughput(mConnectionCap,
                 -10, 5180, INVALID));
     }
+
+    /**
+     * Verify the table lookup matches the arithmetic for every standard, channel width, number
+     * of spatial streams, SNR and channel utilization.
+     */
+    @Test
+    public void verifyLookUpMatchesCalculation() {
+        int[] standards = {ScanResult.WIFI_STANDARD_LEGACY, ScanResult.WIFI_STANDARD_11N,
+                ScanResult.WIFI_STANDARD_11AC, ScanResult.WIFI_STANDARD_11AX};
+        int[] channelWidths = {ScanResult.CHANNEL_WIDTH_20MHZ, ScanResult.CHANNEL_WIDTH_40MHZ,
+                ScanResult.CHANNEL_WIDTH_80MHZ, ScanResult.CHANNEL_WIDTH_160MHZ,
+                ScanResult.CHANNEL_WIDTH_80MHZ_PLUS_MHZ};
+        // Every scan RSSI, plus the RSSI used to predict the max throughput.
+        int[] rssis = new int[-WifiInfo.INVALID_RSSI + 2];
+        for (int i = 0; i <= -WifiInfo.INVALID_RSSI; i++) {
+            rssis[i] = WifiInfo.INVALID_RSSI + i;
+        }
+        rssis[rssis.length - 1] = WifiInfo.MAX_RSSI;
+        for (int standard : standards) {
+            for (int channelWidth : channelWidths) {
+                for (int nss = 1; nss <= 8; nss++) {
+                    for (int rssi : rssis) {
+                        for (int utilization = MIN_CHANNEL_UTILIZATION;
+                                utilization <= MAX_CHANNEL_UTILIZATION; utilization++) {
+                            int expected = ThroughputPredictor.calculateThroughput(standard,
+                                    channelWidth, rssi, nss, utilization);
+                            int actual = ThroughputPredictor.lookUpThroughput(standard,
+                                    channelWidth, rssi, nss, utilization);
+                            if (expected != actual) {
+                                assertEquals("standard=" + standard + " width=" + channelWidth
+                                        + " nss=" + nss + " rssi=" + rssi
+                                        + " utilization=" + utilization, expected, actual);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
 }
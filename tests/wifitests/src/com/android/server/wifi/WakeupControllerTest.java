@@ -16,6 +16,8 @@
 
 package com.android.server.wifi;
 
+import static com.google.common.truth.Truth.assertThat;
+
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
@@ -24,6 +26,7 @@ import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -39,6 +42,7 @@ import android.provider.Settings;
 
 import androidx.test.filters.SmallTest;
 
+import com.android.server.wifi.scanner.ScanResultDeltaPublisher;
 import com.android.server.wifi.util.ScanResultUtil;
 import com.android.server.wifi.util.WifiConfigStoreEncryptionUtil;
 
@@ -55,6 +59,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
@@ -601,7 +606,7 @@ public class WakeupControllerTest extends WifiBaseTest {
         // unlock wakeup lock
         when(mWakeupLock.isUnlocked()).thenReturn(true);
         // do not find viable network
-        when(mWakeupEvaluator.findViableNetwork(any(), any())).thenReturn(null);
+        when(mWakeupEvaluator.findViableNetwork(any(), any(), any())).thenReturn(null);
 
         initializeWakeupController(true /* enabled */);
         mWakeupController.start();
@@ -615,7 +620,7 @@ public class WakeupControllerTest extends WifiBaseTest {
         // incoming scan results
         scanListener.onResults(mTestScanDatas);
 
-        verify(mWakeupEvaluator).findViableNetwork(any(), any());
+        verify(mWakeupEvaluator).findViableNetwork(any(), any(), any());
         verifyDoesNotEnableWifi();
     }
 
@@ -651,7 +656,7 @@ public class WakeupControllerTest extends WifiBaseTest {
         // unlock wakeup lock
         when(mWakeupLock.isUnlocked()).thenReturn(true);
         // find viable network
-        when(mWakeupEvaluator.findViableNetwork(any(), any())).thenReturn(mTestScanResult);
+        when(mWakeupEvaluator.findViableNetwork(any(), any(), any())).thenReturn(mTestScanResult);
 
         initializeWakeupController(true /* enabled */);
         mWakeupController.start();
@@ -665,11 +670,56 @@ public class WakeupControllerTest extends WifiBaseTest {
         // incoming scan results
         scanListener.onResults(mTestScanDatas);
 
-        verify(mWakeupEvaluator).findViableNetwork(any(), any());
+        verify(mWakeupEvaluator).findViableNetwork(any(), any(), any());
         verify(mWifiSettingsStore).handleWifiToggled(true /* wifiEnabled */);
         verify(mWifiWakeMetrics).recordWakeupEvent(1 /* numScans */);
     }
 
+    /**
+     * Verify that when scan result deltas are enabled, the controller patches its non DFS scan
+     * results from the deltas instead of registering a scan listener.
+     */
+    @Test
+    public void onScanResultDeltaPatchesScanResults() {
+        ScanResultDeltaPublisher publisher = new ScanResultDeltaPublisher(true);
+        when(mWifiInjector.getScanResultDeltaPublisher()).thenReturn(publisher);
+        when(mWakeupLock.isUnlocked()).thenReturn(true);
+        when(mWakeupEvaluator.findViableNetwork(any(), any(), any())).thenReturn(null);
+
+        initializeWakeupController(true /* enabled */);
+        mWakeupController.start();
+        verify(mWifiScanner, never()).registerScanListener(any(), any());
+
+        ScanResult savedNetwork = createOpenScanResult(SAVED_SSID, 2412);
+        savedNetwork.BSSID = "11:22:33:44:55:01";
+        ScanResult dfsNetwork = createOpenScanResult(SAVED_SSID, DFS_CHANNEL_FREQ);
+        dfsNetwork.BSSID = "11:22:33:44:55:02";
+        publisher.publish(new ScanResult[]{savedNetwork, dfsNetwork}, WifiScanner.WIFI_BAND_ALL);
+        mLooper.dispatchAll();
+
+        Set<ScanResultMatchInfo> expectedMatchInfos =
+                Collections.singleton(ScanResultMatchInfo.fromScanResult(savedNetwork));
+        ArgumentCaptor<Collection<ScanResult>> scanResultsCaptor =
+                ArgumentCaptor.forClass(Collection.class);
+        verify(mWakeupLock).update(eq(expectedMatchInfos));
+        verify(mWakeupEvaluator).findViableNetwork(scanResultsCaptor.capture(), any(), any());
+        assertThat(scanResultsCaptor.getValue()).containsExactly(savedNetwork);
+
+        // The saved network is refreshed with a new RSSI.
+        ScanResult refreshedNetwork = createOpenScanResult(SAVED_SSID, 2412);
+        refreshedNetwork.BSSID = savedNetwork.BSSID;
+        refreshedNetwork.level = -40;
+        publisher.publish(new ScanResult[]{refreshedNetwork, dfsNetwork},
+                WifiScanner.WIFI_BAND_ALL);
+        mLooper.dispatchAll();
+
+        verify(mWakeupLock, times(2)).update(eq(expectedMatchInfos));
+        verify(mWakeupEvaluator, times(2)).findViableNetwork(
+                scanResultsCaptor.capture(), any(), any());
+        assertThat(scanResultsCaptor.getValue()).containsExactly(refreshedNetwork);
+        verifyDoesNotEnableWifi();
+    }
+
     /**
      * Verify that the controller will not do any work if the user store has not been read.
      */
@@ -691,7 +741,7 @@ public class WakeupControllerTest extends WifiBaseTest {
         verify(mWakeupLock, never()).update(any());
         verify(mWakeupLock, never()).isUnlocked();
         verify(mWakeupOnboarding, never()).maybeShowNotification();
-        verify(mWakeupEvaluator, never()).findViableNetwork(any(), any());
+        verify(mWakeupEvaluator, never()).findViableNetwork(any(), any(), any());
     }
 
     @Test
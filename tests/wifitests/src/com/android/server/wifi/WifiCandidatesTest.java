@@ -36,6 +36,9 @@ import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.util.Collection;
+import java.util.List;
+
 /**
  * Unit tests for {@link com.android.server.wifi.WifiCandidates}.
  */
@@ -122,6 +125,50 @@ public class WifiCandidatesTest extends WifiBaseTest {
         assertEquals(1, mWifiCandidates.getCandidates().size());
     }
 
+    /**
+     * Verify the candidates and the grouped candidates are views that follow later changes.
+     */
+    @Test
+    public void testCandidateViewsFollowChanges() {
+        List<WifiCandidates.Candidate> candidates = mWifiCandidates.getCandidates();
+        Collection<Collection<WifiCandidates.Candidate>> groups =
+                mWifiCandidates.getGroupedCandidates();
+        assertTrue(candidates.isEmpty());
+        assertTrue(groups.isEmpty());
+
+        assertTrue(mWifiCandidates.add(mScanDetail1, mConfig1, 2, 0.0, false, 100));
+        assertEquals(1, candidates.size());
+        assertEquals(1, groups.size());
+        assertEquals(mConfig1.networkId, candidates.get(0).getNetworkConfigId());
+
+        assertTrue(mWifiCandidates.remove(candidates.get(0)));
+        assertTrue(candidates.isEmpty());
+        assertTrue(groups.isEmpty());
+    }
+
+    /**
+     * Verify hasPreferredCandidate() only reports a candidate of the same BSSID and network from
+     * a preferred nominator.
+     */
+    @Test
+    public void testHasPreferredCandidate() {
+        WifiCandidates.Key key1 = mWifiCandidates.keyFromScanDetailAndConfig(
+                mScanDetail1, mConfig1);
+        assertFalse(mWifiCandidates.hasPreferredCandidate(key1, 2));
+        assertTrue(mWifiCandidates.add(mScanDetail1, mConfig1, 2, 0.0, false, 100));
+
+        assertFalse(mWifiCandidates.hasPreferredCandidate(key1, 1));
+        assertFalse(mWifiCandidates.hasPreferredCandidate(key1, 2));
+        assertTrue(mWifiCandidates.hasPreferredCandidate(key1, 3));
+        // Same network, other BSSID.
+        mScanResult2.SSID = mScanResult1.SSID;
+        mScanResult2.BSSID = mScanResult1.BSSID.replace('1', '2');
+        WifiCandidates.Key key2 = mWifiCandidates.keyFromScanDetailAndConfig(
+                mScanDetail2, mConfig1);
+        assertFalse(mWifiCandidates.hasPreferredCandidate(key2, 3));
+        assertEquals(0, mWifiCandidates.getFaultCount());
+    }
+
     /**
      * Make sure we catch SSID mismatch due to quoting error
      */
@@ -337,6 +337,179 @@ public class WifiConfigManagerTest extends WifiBaseTest {
         assertEquals(WifiConfiguration.Status.DISABLED, retrievedNetworks.get(0).status);
     }
 
+    /**
+     * Verifies that {@link WifiConfigManager#getConfiguredNetworksSnapshot()} is reused until a
+     * network changes, and that {@link WifiConfigManager#getConfiguredNetworksGeneration()}
+     * moves on every change.
+     */
+    @Test
+    public void testConfiguredNetworksSnapshotRebuiltOnChange() {
+        WifiConfiguration openNetwork = WifiConfigurationTestUtil.createOpenNetwork();
+        verifyAddNetworkToWifiConfigManager(openNetwork);
+        long generation = mWifiConfigManager.getConfiguredNetworksGeneration();
+
+        List<WifiConfiguration> snapshot = mWifiConfigManager.getConfiguredNetworksSnapshot();
+        WifiConfigurationTestUtil.assertConfigurationsEqualForConfigManagerAddOrUpdate(
+                Arrays.asList(openNetwork), snapshot);
+        // Reading the networks keeps the snapshot.
+        mWifiConfigManager.getConfiguredNetwork(openNetwork.networkId);
+        mWifiConfigManager.getConfiguredNetworks();
+        assertSame(snapshot, mWifiConfigManager.getConfiguredNetworksSnapshot());
+        assertEquals(generation, mWifiConfigManager.getConfiguredNetworksGeneration());
+
+        openNetwork.hiddenSSID = true;
+        verifyUpdateNetworkToWifiConfigManagerWithoutIpChange(openNetwork);
+        assertNotEquals(generation, mWifiConfigManager.getConfiguredNetworksGeneration());
+        List<WifiConfiguration> updatedSnapshot =
+                mWifiConfigManager.getConfiguredNetworksSnapshot();
+        assertNotSame(snapshot, updatedSnapshot);
+        assertTrue(updatedSnapshot.get(0).hiddenSSID);
+        // The previous snapshot is not updated in place.
+        assertFalse(snapshot.get(0).hiddenSSID);
+
+        verifyRemoveNetworkFromWifiConfigManager(openNetwork);
+        assertTrue(mWifiConfigManager.getConfiguredNetworksSnapshot().isEmpty());
+    }
+
+    /**
+     * Verifies that the configured network snapshots mask the passwords like
+     * {@link WifiConfigManager#getConfiguredNetworks()} and cannot be modified.
+     */
+    @Test
+    public void testConfiguredNetworksSnapshotPasswords() {
+        WifiConfiguration pskNetwork = WifiConfigurationTestUtil.createPskNetwork();
+        verifyAddNetworkToWifiConfigManager(pskNetwork);
+
+        List<WifiConfiguration> snapshot = mWifiConfigManager.getConfiguredNetworksSnapshot();
+        assertEquals(WifiConfigManager.PASSWORD_MASK, snapshot.get(0).preSharedKey);
+        List<WifiConfiguration> snapshotWithPasswords =
+                mWifiConfigManager.getConfiguredNetworksWithPasswordsSnapshot();
+        assertEquals(pskNetwork.preSharedKey, snapshotWithPasswords.get(0).preSharedKey);
+
+        try {
+            snapshot.clear();
+            fail("Snapshot should not be modifiable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Verifies that the scan detail lookups and updates of a network selection cycle, and an
+     * RSSI poll, keep the configured network snapshot.
+     */
+    @Test
+    public void testConfiguredNetworksSnapshotKeptAcrossSelectionAndRssiPoll() {
+        WifiConfiguration openNetwork = WifiConfigurationTestUtil.createOpenNetwork();
+        NetworkUpdateResult result = verifyAddNetworkToWifiConfigManager(openNetwork);
+        List<WifiConfiguration> snapshot = mWifiConfigManager.getConfiguredNetworksSnapshot();
+        long generation = mWifiConfigManager.getConfiguredNetworksGeneration();
+
+        // Nominators match and cache the scan details, the selector caches the candidates.
+        ScanDetail scanDetail = createScanDetailForNetwork(openNetwork, TEST_BSSID, TEST_RSSI,
+                TEST_FREQUENCY_1);
+        assertNotNull(mWifiConfigManager.getConfiguredNetworkForScanDetailAndCache(scanDetail));
+        mWifiConfigManager.updateScanDetailForNetwork(result.getNetworkId(), scanDetail);
+        // RSSI poll once connected.
+        WifiInfo wifiInfo = mock(WifiInfo.class);
+        when(wifiInfo.getNetworkId()).thenReturn(result.getNetworkId());
+        when(wifiInfo.getBSSID()).thenReturn(TEST_BSSID);
+        when(wifiInfo.getRssi()).thenReturn(TEST_RSSI - 10);
+        mWifiConfigManager.updateScanDetailCacheFromWifiInfo(wifiInfo);
+
+        assertEquals(1, mWifiConfigManager.getScanDetailCacheForNetwork(
+                result.getNetworkId()).size());
+        assertSame(snapshot, mWifiConfigManager.getConfiguredNetworksSnapshot());
+        assertEquals(generation, mWifiConfigManager.getConfiguredNetworksGeneration());
+    }
+
+    /**
+     * Verifies that every public setter of a configured network drops the configured network
+     * snapshots and moves the generation.
+     */
+    @Test
+    public void testConfiguredNetworksSnapshotDroppedByEverySetter() {
+        WifiConfiguration openNetwork = WifiConfigurationTestUtil.createOpenNetwork();
+        int networkId = verifyAddNetworkToWifiConfigManager(openNetwork).getNetworkId();
+        ScanResult scanResult = createScanDetailForNetwork(openNetwork).getScanResult();
+        when(mClock.getElapsedSinceBootMillis())
+                .thenReturn(TEST_ELAPSED_UPDATE_NETWORK_SELECTION_TIME_MILLIS);
+
+        verifySnapshotDroppedBy(() -> mWifiConfigManager.updateNetworkSelectionStatus(
+                networkId, NetworkSelectionStatus.DISABLED_ASSOCIATION_REJECTION));
+        verifySnapshotDroppedBy(() -> mWifiConfigManager.updateNetworkSelectionStatus(
+                networkId, NetworkSelectionStatus.DISABLED_NONE));
+        verifySnapshotDroppedBy(() -> mWifiConfigManager.disableNetwork(
+                networkId, TEST_CREATOR_UID, TEST_CREATOR_NAME));
+        verifySnapshotDroppedBy(() -> mWifiConfigManager.enableNetwork(
+                networkId, false, TEST_CREATOR_UID, TEST_CREATOR_NAME));
+        verifySnapshotDroppedBy(() -> mWifiConfigManager.allowAutojoin(networkId, false));
+        verifySnapshotDroppedBy(() -> mWifiConfigManager.updateLastConnectUid(
+                networkId, TEST_CREATOR_UID));
+        verifySnapshotDroppedBy(() -> mWifiConfigManager.updateNetworkAfterConnect(networkId));
+        verifySnapshotDroppedBy(() -> mWifiConfigManager.updateNetworkAfterDisconnect(networkId));
+        verifySnapshotDroppedBy(() -> mWifiConfigManager.setNetworkDefaultGwMacAddress(
+                networkId, TEST_DEFAULT_GW_MAC_ADDRESS));
+        verifySnapshotDroppedBy(() -> mWifiConfigManager.setNetworkCandidateScanResult(
+                networkId, scanResult, 54));
+        verifySnapshotDroppedBy(() -> mWifiConfigManager.clearNetworkCandidateScanResult(
+                networkId));
+        verifySnapshotDroppedBy(() -> mWifiConfigManager.setNetworkConnectChoice(
+                networkId, "\"Other\"NONE"));
+        verifySnapshotDroppedBy(() -> mWifiConfigManager.clearNetworkConnectChoice(networkId));
+        verifySnapshotDroppedBy(() -> mWifiConfigManager.incrementNetworkNoInternetAccessReports(
+                networkId));
+        verifySnapshotDroppedBy(() -> mWifiConfigManager.setNetworkValidatedInternetAccess(
+                networkId, true));
+        verifySnapshotDroppedBy(() -> mWifiConfigManager.setNetworkNoInternetAccessExpected(
+                networkId, true));
+        verifySnapshotDroppedBy(() -> mWifiConfigManager.setRecentFailureAssociationStatus(
+                networkId, ClientModeImpl.REASON_CODE_AP_UNABLE_TO_HANDLE_NEW_STA));
+        verifySnapshotDroppedBy(() -> mWifiConfigManager.clearRecentFailureReason(networkId));
+        verifySnapshotDroppedBy(() -> mWifiConfigManager.updateRandomizedMacExpireTime(
+                mWifiConfigManager.getConfiguredNetwork(networkId), 3600));
+    }
+
+    /**
+     * Verifies that the listeners notified of a network selection status change find the change
+     * in the configured network snapshot, when the network is re-enabled by
+     * {@link WifiConfigManager#tryEnableNetwork(int)}.
+     */
+    @Test
+    public void testConfiguredNetworksSnapshotUpToDateForTryEnableNetworkListeners() {
+        WifiConfiguration openNetwork = WifiConfigurationTestUtil.createOpenNetwork();
+        NetworkUpdateResult result = verifyAddNetworkToWifiConfigManager(openNetwork);
+        verifyDisableNetwork(result, NetworkSelectionStatus.DISABLED_ASSOCIATION_REJECTION);
+        when(mBssidBlocklistMonitor.updateAndGetNumBlockedBssidsForSsid(anyString())).thenReturn(0);
+        // Cache the snapshot of the temporarily disabled network.
+        assertTrue(mWifiConfigManager.getConfiguredNetworksSnapshot().get(0)
+                .getNetworkSelectionStatus().isNetworkTemporaryDisabled());
+
+        List<Boolean> enabledInSnapshot = new ArrayList<>();
+        doAnswer(invocation -> {
+            enabledInSnapshot.add(mWifiConfigManager.getConfiguredNetworksSnapshot().get(0)
+                    .getNetworkSelectionStatus().isNetworkEnabled());
+            return null;
+        }).when(mWcmListener).onNetworkEnabled(any());
+        assertTrue(mWifiConfigManager.tryEnableNetwork(result.getNetworkId()));
+
+        assertEquals(Arrays.asList(true), enabledInSnapshot);
+    }
+
+    private void verifySnapshotDroppedBy(Runnable setter) {
+        List<WifiConfiguration> snapshot = mWifiConfigManager.getConfiguredNetworksSnapshot();
+        List<WifiConfiguration> snapshotWithPasswords =
+                mWifiConfigManager.getConfiguredNetworksWithPasswordsSnapshot();
+        long generation = mWifiConfigManager.getConfiguredNetworksGeneration();
+
+        setter.run();
+
+        assertNotEquals(generation, mWifiConfigManager.getConfiguredNetworksGeneration());
+        assertNotSame(snapshot, mWifiConfigManager.getConfiguredNetworksSnapshot());
+        assertNotSame(snapshotWithPasswords,
+                mWifiConfigManager.getConfiguredNetworksWithPasswordsSnapshot());
+    }
+
     /**
      * Verifies the addition of a WAPI-PSK network using
      * {@link WifiConfigManager#addOrUpdateNetwork(WifiConfiguration, int)}
@@ -3670,6 +3843,36 @@ public class WifiConfigManagerTest extends WifiBaseTest {
         assertTrue(mWifiConfigManager.getConfiguredNetworks().isEmpty());
     }
 
+    /**
+     * Verifies that {@link WifiConfigManager#getConnectChoiceChain(String)} follows the connect
+     * choices set and is updated when a network in the chain is removed.
+     */
+    @Test
+    public void testConnectChoiceChain() throws Exception {
+        WifiConfiguration network1 = WifiConfigurationTestUtil.createOpenNetwork();
+        WifiConfiguration network2 = WifiConfigurationTestUtil.createPskNetwork();
+        WifiConfiguration network3 = WifiConfigurationTestUtil.createPskNetwork();
+        verifyAddNetworkToWifiConfigManager(network1);
+        verifyAddNetworkToWifiConfigManager(network2);
+        verifyAddNetworkToWifiConfigManager(network3);
+
+        assertTrue(mWifiConfigManager.setNetworkConnectChoice(
+                network1.networkId, network2.getKey()));
+        assertTrue(mWifiConfigManager.setNetworkConnectChoice(
+                network2.networkId, network3.getKey()));
+        assertEquals(Arrays.asList(network2.getKey(), network3.getKey()),
+                mWifiConfigManager.getConnectChoiceChain(network1.getKey()));
+
+        // Removing network 3 clears the connect choice of network 2 only.
+        assertTrue(mWifiConfigManager.removeNetwork(
+                network3.networkId, TEST_CREATOR_UID, TEST_CREATOR_NAME));
+        assertEquals(Arrays.asList(network2.getKey()),
+                mWifiConfigManager.getConnectChoiceChain(network1.getKey()));
+
+        assertTrue(mWifiConfigManager.clearNetworkConnectChoice(network1.networkId));
+        assertTrue(mWifiConfigManager.getConnectChoiceChain(network1.getKey()).isEmpty());
+    }
+
     /**
      * Verifies that the connect choice is removed from all networks when
      * {@link WifiConfigManager#removeNetwork(int, int)} is invoked.
@@ -3916,6 +4119,114 @@ public class WifiConfigManagerTest extends WifiBaseTest {
         assertEquals(network1.SSID, hiddenNetworks.get(2).ssid);
     }
 
+    /**
+     * Verifies the list returned by {@link WifiConfigManager#retrieveHiddenNetworkList()} is
+     * kept while nothing changes, and rebuilt when a network or the connection order changes.
+     */
+    @Test
+    public void testRetrieveHiddenListCached() {
+        WifiConfiguration network1 = WifiConfigurationTestUtil.createPskHiddenNetwork();
+        WifiConfiguration network2 = WifiConfigurationTestUtil.createOpenHiddenNetwork();
+        verifyAddNetworkToWifiConfigManager(network1);
+        verifyAddNetworkToWifiConfigManager(network2);
+
+        List<WifiScanner.ScanSettings.HiddenNetwork> hiddenNetworks =
+                mWifiConfigManager.retrieveHiddenNetworkList();
+        assertEquals(2, hiddenNetworks.size());
+        assertSame(hiddenNetworks, mWifiConfigManager.retrieveHiddenNetworkList());
+
+        // A change of the connection order alone reorders the list.
+        mLruConnectionTracker.addNetwork(network2);
+        hiddenNetworks = mWifiConfigManager.retrieveHiddenNetworkList();
+        assertEquals(network2.SSID, hiddenNetworks.get(0).ssid);
+        mLruConnectionTracker.addNetwork(network1);
+        hiddenNetworks = mWifiConfigManager.retrieveHiddenNetworkList();
+        assertEquals(network1.SSID, hiddenNetworks.get(0).ssid);
+        assertSame(hiddenNetworks, mWifiConfigManager.retrieveHiddenNetworkList());
+
+        // Removing a network drops it from the list.
+        verifyRemoveNetworkFromWifiConfigManager(network1);
+        hiddenNetworks = mWifiConfigManager.retrieveHiddenNetworkList();
+        assertEquals(1, hiddenNetworks.size());
+        assertEquals(network2.SSID, hiddenNetworks.get(0).ssid);
+    }
+
+    /**
+     * Verifies the list returned by {@link WifiConfigManager#retrieveHiddenNetworkList()} is
+     * kept across a network selection cycle that leaves the hidden networks in the same state,
+     * even though the selection moves the configured networks generation.
+     */
+    @Test
+    public void testRetrieveHiddenListKeptAcrossSelection() {
+        WifiConfiguration network1 = WifiConfigurationTestUtil.createPskHiddenNetwork();
+        WifiConfiguration network2 = WifiConfigurationTestUtil.createOpenHiddenNetwork();
+        verifyAddNetworkToWifiConfigManager(network1);
+        verifyAddNetworkToWifiConfigManager(network2);
+        ScanResult scanResult = createScanDetailForNetwork(network2).getScanResult();
+
+        // The first selection marks network2 as seen, which moves it up.
+        simulateNetworkSelection(network1, network2, scanResult);
+        List<WifiScanner.ScanSettings.HiddenNetwork> hiddenNetworks =
+                mWifiConfigManager.retrieveHiddenNetworkList();
+        assertEquals(network2.SSID, hiddenNetworks.get(0).ssid);
+        long generation = mWifiConfigManager.getConfiguredNetworksGeneration();
+
+        simulateNetworkSelection(network1, network2, scanResult);
+        assertNotEquals(generation, mWifiConfigManager.getConfiguredNetworksGeneration());
+        assertSame(hiddenNetworks, mWifiConfigManager.retrieveHiddenNetworkList());
+    }
+
+    /**
+     * Verifies the list returned by {@link WifiConfigManager#retrieveHiddenNetworkList()} is
+     * rebuilt when the seen flag or the selection status of a hidden network changes.
+     */
+    @Test
+    public void testRetrieveHiddenListRebuiltOnSeenAndSelectionStatusChange() {
+        WifiConfiguration network1 = WifiConfigurationTestUtil.createPskHiddenNetwork();
+        WifiConfiguration network2 = WifiConfigurationTestUtil.createOpenHiddenNetwork();
+        verifyAddNetworkToWifiConfigManager(network1);
+        verifyAddNetworkToWifiConfigManager(network2);
+        ScanResult scanResult = createScanDetailForNetwork(network2).getScanResult();
+        List<WifiScanner.ScanSettings.HiddenNetwork> hiddenNetworks =
+                mWifiConfigManager.retrieveHiddenNetworkList();
+
+        // network2 is seen, which moves it up.
+        simulateNetworkSelection(network1, network2, scanResult);
+        List<WifiScanner.ScanSettings.HiddenNetwork> updatedHiddenNetworks =
+                mWifiConfigManager.retrieveHiddenNetworkList();
+        assertNotSame(hiddenNetworks, updatedHiddenNetworks);
+        assertEquals(network2.SSID, updatedHiddenNetworks.get(0).ssid);
+
+        // network2 is disabled, which moves it down.
+        hiddenNetworks = updatedHiddenNetworks;
+        assertTrue(mWifiConfigManager.updateNetworkSelectionStatus(
+                network2.networkId, NetworkSelectionStatus.DISABLED_BY_WIFI_MANAGER));
+        updatedHiddenNetworks = mWifiConfigManager.retrieveHiddenNetworkList();
+        assertNotSame(hiddenNetworks, updatedHiddenNetworks);
+        assertEquals(network1.SSID, updatedHiddenNetworks.get(0).ssid);
+
+        // network2 is no longer seen.
+        hiddenNetworks = updatedHiddenNetworks;
+        assertTrue(mWifiConfigManager.clearNetworkCandidateScanResult(network1.networkId));
+        assertTrue(mWifiConfigManager.clearNetworkCandidateScanResult(network2.networkId));
+        updatedHiddenNetworks = mWifiConfigManager.retrieveHiddenNetworkList();
+        assertNotSame(hiddenNetworks, updatedHiddenNetworks);
+        assertEquals(network1.SSID, updatedHiddenNetworks.get(0).ssid);
+        assertSame(updatedHiddenNetworks, mWifiConfigManager.retrieveHiddenNetworkList());
+    }
+
+    /**
+     * Clears the candidates of |network1| and |network2|, and sets |scanResult| as the candidate
+     * of |network2|, as a network selection does.
+     */
+    private void simulateNetworkSelection(WifiConfiguration network1, WifiConfiguration network2,
+            ScanResult scanResult) {
+        assertTrue(mWifiConfigManager.clearNetworkCandidateScanResult(network1.networkId));
+        assertTrue(mWifiConfigManager.clearNetworkCandidateScanResult(network2.networkId));
+        assertTrue(mWifiConfigManager.setNetworkCandidateScanResult(network2.networkId,
+                scanResult, 54));
+    }
+
     /**
      * Verifies the addition of network configurations using
      * {@link WifiConfigManager#addOrUpdateNetwork(WifiConfiguration, int)} with same SSID and
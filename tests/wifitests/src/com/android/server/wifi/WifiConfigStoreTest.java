@@ -44,6 +44,7 @@ import com.android.server.wifi.util.XmlUtil;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.MockitoSession;
@@ -52,6 +53,7 @@ import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlSerializer;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -60,6 +62,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Executor;
 
 /**
  * Unit tests for {@link com.android.server.wifi.WifiConfigStore}.
@@ -417,6 +420,220 @@ public class WifiConfigStoreTest extends WifiBaseTest {
         verify(mWifiMetrics).noteWifiConfigStoreWriteDuration(anyInt());
     }
 
+    /**
+     * Tests the read API behaviour after a write to the store files in the binary format.
+     * Expected behaviour: The files are in the binary format and the read should return the
+     * same data that was last written, even once the binary format is disabled.
+     */
+    @Test
+    public void testReadAfterWriteInBinaryFormat() throws Exception {
+        mWifiConfigStore.setBinaryFormatEnabled(true);
+        mWifiConfigStore.registerStoreData(mSharedStoreData);
+        mWifiConfigStore.registerStoreData(mUserStoreData);
+        mWifiConfigStore.switchUserStoresAndRead(mUserStores);
+
+        mUserStoreData.setData(TEST_USER_DATA);
+        mSharedStoreData.setData(TEST_SHARE_DATA);
+        mWifiConfigStore.write(true);
+        assertArrayEquals("WCSB".getBytes(StandardCharsets.US_ASCII),
+                Arrays.copyOf(mSharedStore.getStoreBytes(), 4));
+        assertArrayEquals("WCSB".getBytes(StandardCharsets.US_ASCII),
+                Arrays.copyOf(mUserStore.getStoreBytes(), 4));
+
+        mWifiConfigStore.setBinaryFormatEnabled(false);
+        mWifiConfigStore.read();
+        assertEquals(TEST_USER_DATA, mUserStoreData.getData());
+        assertEquals(TEST_SHARE_DATA, mSharedStoreData.getData());
+    }
+
+    /**
+     * Tests that in the binary format, the sections of the store data with no new data are not
+     * serialized again, and the store file is not written again when no section changed.
+     */
+    @Test
+    public void testIncrementalWriteInBinaryFormat() throws Exception {
+        mWifiConfigStore.setBinaryFormatEnabled(true);
+        StoreData otherStoreData = mock(StoreData.class);
+        when(otherStoreData.getStoreFileId())
+                .thenReturn(WifiConfigStore.STORE_FILE_SHARED_GENERAL);
+        when(otherStoreData.getName()).thenReturn("otherStoreData");
+        when(otherStoreData.hasNewDataToSerialize()).thenReturn(true);
+        mWifiConfigStore.registerStoreData(mSharedStoreData);
+        mWifiConfigStore.registerStoreData(otherStoreData);
+
+        mSharedStoreData.setData(TEST_SHARE_DATA);
+        mWifiConfigStore.write(true);
+        assertTrue(mSharedStore.isStoreWritten());
+        verify(otherStoreData).serializeData(any(), any());
+
+        // Only |mSharedStoreData| changed: |otherStoreData| is not serialized again.
+        when(otherStoreData.hasNewDataToSerialize()).thenReturn(false);
+        mSharedStoreData.setData(TEST_USER_DATA);
+        mSharedStore.storeRawDataToWrite(null);
+        mWifiConfigStore.write(true);
+        assertTrue(mSharedStore.isStoreWritten());
+        verify(otherStoreData).serializeData(any(), any());
+
+        // |mSharedStoreData| is serialized again but has the same data: no write.
+        mSharedStore.storeRawDataToWrite(null);
+        mWifiConfigStore.write(true);
+        assertNull(mSharedStore.getStoreBytes());
+        verify(mWifiMetrics, times(2)).noteWifiConfigStoreWriteDuration(anyInt());
+
+        mWifiConfigStore.setBinaryFormatEnabled(false);
+        mSharedStore.storeRawDataToWrite(null);
+        mWifiConfigStore.write(true);
+        assertTrue(mSharedStore.isStoreWritten());
+    }
+
+    /**
+     * Tests that a store file read in the XML format is migrated to the binary format on the
+     * next write, even without new data.
+     */
+    @Test
+    public void testMigrationToBinaryFormatOnNextWrite() throws Exception {
+        mWifiConfigStore.registerStoreData(mSharedStoreData);
+        mSharedStoreData.setData(TEST_SHARE_DATA);
+        mWifiConfigStore.write(true);
+        assertFalse(new String(mSharedStore.getStoreBytes(), StandardCharsets.UTF_8)
+                .startsWith("WCSB"));
+
+        mWifiConfigStore.setBinaryFormatEnabled(true);
+        mWifiConfigStore.read();
+        mSharedStoreData.setHasAnyNewData(false);
+        mWifiConfigStore.write(true);
+        assertTrue(new String(mSharedStore.getStoreBytes(), StandardCharsets.UTF_8)
+                .startsWith("WCSB"));
+
+        mWifiConfigStore.read();
+        assertEquals(TEST_SHARE_DATA, mSharedStoreData.getData());
+    }
+
+    /**
+     * Tests that a truncated binary store file is rejected as corrupted, wherever it is cut.
+     */
+    @Test
+    public void testReadTruncatedFileInBinaryFormatThrows() throws Exception {
+        mWifiConfigStore.setBinaryFormatEnabled(true);
+        mWifiConfigStore.registerStoreData(mSharedStoreData);
+        mSharedStoreData.setData(TEST_SHARE_DATA);
+        mWifiConfigStore.write(true);
+        byte[] data = mSharedStore.getStoreBytes();
+
+        // Past the magic, which makes shorter files be read as XML.
+        for (int length = 5; length < data.length; length++) {
+            mSharedStore.storeRawDataToWrite(Arrays.copyOf(data, length));
+            try {
+                mWifiConfigStore.read();
+                fail("Truncation to " + length + " bytes not rejected");
+            } catch (XmlPullParserException | IOException e) {
+                // Expected.
+            }
+        }
+    }
+
+    /**
+     * Tests that the sections of a binary store file with no registered store data are skipped
+     * while reading the file, and the sections after them are still read.
+     */
+    @Test
+    public void testReadSkipsUnknownSectionInBinaryFormat() throws Exception {
+        mWifiConfigStore.setBinaryFormatEnabled(true);
+        StoreData otherStoreData = mock(StoreData.class);
+        when(otherStoreData.getStoreFileId())
+                .thenReturn(WifiConfigStore.STORE_FILE_SHARED_GENERAL);
+        when(otherStoreData.getName()).thenReturn("otherStoreData");
+        when(otherStoreData.hasNewDataToSerialize()).thenReturn(true);
+        doAnswer(invocation -> {
+            XmlSerializer out = invocation.getArgument(0);
+            XmlUtil.writeNextValue(out, "OtherData", TEST_USER_DATA);
+            return null;
+        }).when(otherStoreData).serializeData(any(), any());
+        mWifiConfigStore.registerStoreData(otherStoreData);
+        mWifiConfigStore.registerStoreData(mSharedStoreData);
+        mSharedStoreData.setData(TEST_SHARE_DATA);
+        mWifiConfigStore.write(true);
+
+        // Read the file with only |mSharedStoreData| registered.
+        mWifiConfigStore = new WifiConfigStore(mContext, new Handler(mLooper.getLooper()), mClock,
+                mWifiMetrics, Arrays.asList(mSharedStore, mSharedSoftApStore));
+        mSharedStoreData.resetData();
+        mWifiConfigStore.registerStoreData(mSharedStoreData);
+        mWifiConfigStore.read();
+        assertEquals(TEST_SHARE_DATA, mSharedStoreData.getData());
+    }
+
+    /**
+     * Tests that with a read executor, all the store files are opened on it and the data read is
+     * the same data that was last written.
+     */
+    @Test
+    public void testReadWithReadExecutor() throws Exception {
+        Executor executor = mock(Executor.class);
+        doAnswer(invocation -> {
+            ((Runnable) invocation.getArgument(0)).run();
+            return null;
+        }).when(executor).execute(any());
+        mWifiConfigStore.registerStoreData(mSharedStoreData);
+        mWifiConfigStore.registerStoreData(mUserStoreData);
+        mWifiConfigStore.setUserStores(mUserStores);
+        mUserStoreData.setData(TEST_USER_DATA);
+        mSharedStoreData.setData(TEST_SHARE_DATA);
+        mWifiConfigStore.write(true);
+
+        mWifiConfigStore.setReadExecutor(executor);
+        mWifiConfigStore.read();
+        assertEquals(TEST_USER_DATA, mUserStoreData.getData());
+        assertEquals(TEST_SHARE_DATA, mSharedStoreData.getData());
+        // 2 shared and 2 user store files.
+        verify(executor, times(4)).execute(any());
+    }
+
+    /**
+     * Tests that with a read executor, a store file larger than the part read ahead is read in
+     * full while it is parsed.
+     */
+    @Test
+    public void testReadLargeFileWithReadExecutor() throws Exception {
+        StringBuilder largeData = new StringBuilder();
+        while (largeData.length() < 64 * 1024) {
+            largeData.append(TEST_SHARE_DATA);
+        }
+        mWifiConfigStore.registerStoreData(mSharedStoreData);
+        mSharedStoreData.setData(largeData.toString());
+        mWifiConfigStore.write(true);
+
+        mWifiConfigStore.setReadExecutor(Runnable::run);
+        mSharedStoreData.resetData();
+        mWifiConfigStore.read();
+        assertEquals(largeData.toString(), mSharedStoreData.getData());
+    }
+
+    /**
+     * Tests that with a writer, the serialized data is queued to the writer instead of written,
+     * and forced writes and reads wait for the writer.
+     */
+    @Test
+    public void testWriteWithWriter() throws Exception {
+        WifiConfigStoreWriter writer = mock(WifiConfigStoreWriter.class);
+        mWifiConfigStore.setWriter(writer);
+        mWifiConfigStore.registerStoreData(mSharedStoreData);
+        mSharedStoreData.setData(TEST_SHARE_DATA);
+
+        mWifiConfigStore.write(false);
+        verify(writer, never()).queueWrite(any(), any());
+        verify(writer, never()).flush();
+
+        mWifiConfigStore.write(true);
+        verify(writer).queueWrite(eq(mSharedStore), eq(mSharedStore.getStoreBytes()));
+        verify(writer).flush();
+        assertFalse(mSharedStore.isStoreWritten());
+        verify(mWifiMetrics, never()).noteWifiConfigStoreWriteDuration(anyInt());
+
+        mWifiConfigStore.read();
+        verify(writer, times(2)).flush();
+    }
+
     /**
      * Tests the read API behaviour when the shared store file is empty and the user store
      * is not yet visible (user not yet unlocked).
@@ -433,7 +650,7 @@ public class WifiConfigStoreTest extends WifiBaseTest {
                 .thenReturn(WifiConfigStore.STORE_FILE_USER_GENERAL);
 
         // Reading the mock store without a write should simulate the file not found case because
-        // |readRawData| would return null.
+        // |openRead| would return null.
         mWifiConfigStore.registerStoreData(sharedStoreData);
         mWifiConfigStore.registerStoreData(userStoreData);
         mWifiConfigStore.read();
@@ -460,7 +677,7 @@ public class WifiConfigStoreTest extends WifiBaseTest {
                 .thenReturn(WifiConfigStore.STORE_FILE_USER_GENERAL);
 
         // Reading the mock store without a write should simulate the file not found case because
-        // |readRawData| would return null.
+        // |openRead| would return null.
         mWifiConfigStore.registerStoreData(sharedStoreData);
         mWifiConfigStore.registerStoreData(userStoreData);
         // Read both share and user config store.
@@ -976,10 +1193,16 @@ public class WifiConfigStoreTest extends WifiBaseTest {
                         eq(WifiConfigStore.ENCRYPT_CREDENTIALS_CONFIG_STORE_DATA_VERSION), any());
 
         // Verify we did not read from the real store files.
-        verify(sharedStoreFile1, never()).readRawData();
-        verify(sharedStoreFile2, never()).readRawData();
-        verify(userStoreFile1, never()).readRawData();
-        verify(userStoreFile2, never()).readRawData();
+        verify(sharedStoreFile1, never()).openRead();
+        verify(sharedStoreFile2, never()).openRead();
+        verify(userStoreFile1, never()).openRead();
+        verify(userStoreFile2, never()).openRead();
+
+        // Verify the shared store files are loaded before the user store files are migrated.
+        InOrder inOrder = inOrder(sharedStoreData, userStoreFile1);
+        inOrder.verify(sharedStoreData).deserializeData(any(XmlPullParser.class), anyInt(),
+                anyInt(), any());
+        inOrder.verify(userStoreFile1).writeBufferedRawData();
     }
 
     /**
@@ -995,8 +1218,8 @@ public class WifiConfigStoreTest extends WifiBaseTest {
         }
 
         @Override
-        public byte[] readRawData() {
-            return mStoreBytes;
+        public InputStream openRead() {
+            return mStoreBytes == null ? null : new ByteArrayInputStream(mStoreBytes);
         }
 
         @Override
@@ -1012,6 +1235,11 @@ public class WifiConfigStoreTest extends WifiBaseTest {
             }
         }
 
+        @Override
+        public byte[] takeRawDataToWrite() {
+            return mStoreBytes;
+        }
+
         public byte[] getStoreBytes() {
             return mStoreBytes;
         }
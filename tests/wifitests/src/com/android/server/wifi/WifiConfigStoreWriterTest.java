@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.verify;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.UserHandle;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.wifi.WifiConfigStore.StoreFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.WifiConfigStoreWriter}.
+ */
+@SmallTest
+public class WifiConfigStoreWriterTest extends WifiBaseTest {
+    private static final byte[] TEST_DATA_1 = {1};
+    private static final byte[] TEST_DATA_2 = {2};
+    private static final byte[] TEST_DATA_3 = {3};
+    private static final String TEST_SECTION = "TestSection";
+
+    @Mock private Clock mClock;
+    @Mock private WifiMetrics mWifiMetrics;
+
+    private HandlerThread mHandlerThread;
+    private WifiConfigStoreWriter mWriter;
+
+    /**
+     * Store file recording the writes instead of writing to the file, and which can block or
+     * fail them.
+     */
+    private static class RecordingStoreFile extends StoreFile {
+        public final List<byte[]> writes = new ArrayList<>();
+        public CountDownLatch writeStarted = new CountDownLatch(1);
+        public CountDownLatch unblockWrite = new CountDownLatch(0);
+        public int numFailuresLeft = 0;
+
+        RecordingStoreFile() {
+            super(new File("RecordingStoreFile"), WifiConfigStore.STORE_FILE_SHARED_GENERAL,
+                    UserHandle.ALL, null);
+        }
+
+        @Override
+        public void writeRawData(byte[] data) throws IOException {
+            writeStarted.countDown();
+            try {
+                unblockWrite.await(WifiConfigStoreWriter.FLUSH_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            if (numFailuresLeft > 0) {
+                numFailuresLeft--;
+                throw new IOException("Test failure");
+            }
+            synchronized (writes) {
+                writes.add(data);
+            }
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        mHandlerThread = new HandlerThread("WifiConfigStoreWriterTest");
+        mHandlerThread.start();
+        mWriter = new WifiConfigStoreWriter(new Handler(mHandlerThread.getLooper()), mClock,
+                mWifiMetrics);
+    }
+
+    @After
+    public void cleanup() {
+        mHandlerThread.quitSafely();
+    }
+
+    /**
+     * Verify the queued data is written to the file once flushed.
+     */
+    @Test
+    public void writeAndFlush() throws Exception {
+        File file = File.createTempFile("WifiConfigStoreWriterTest", null);
+        file.deleteOnExit();
+        StoreFile storeFile = new StoreFile(file, WifiConfigStore.STORE_FILE_SHARED_GENERAL,
+                UserHandle.ALL, null);
+
+        mWriter.queueWrite(storeFile, TEST_DATA_1);
+        mWriter.flush();
+        assertArrayEquals(TEST_DATA_1, Files.readAllBytes(file.toPath()));
+        verify(mWifiMetrics).noteWifiConfigStoreWriteQueueDepth(0);
+        verify(mWifiMetrics).noteWifiConfigStoreWriteLatency(anyInt());
+        verify(mWifiMetrics).noteWifiConfigStoreWriteDuration(anyInt());
+    }
+
+    /**
+     * Verify the data queued for a file while it is written replaces the data queued before it,
+     * and only the latest data is written next.
+     */
+    @Test
+    public void writesCoalesced() throws Exception {
+        RecordingStoreFile storeFile = new RecordingStoreFile();
+        storeFile.unblockWrite = new CountDownLatch(1);
+
+        mWriter.queueWrite(storeFile, TEST_DATA_1);
+        storeFile.writeStarted.await(WifiConfigStoreWriter.FLUSH_TIMEOUT_MS,
+                TimeUnit.MILLISECONDS);
+        mWriter.queueWrite(storeFile, TEST_DATA_2);
+        mWriter.queueWrite(storeFile, TEST_DATA_3);
+        storeFile.unblockWrite.countDown();
+        mWriter.flush();
+
+        assertEquals(2, storeFile.writes.size());
+        assertArrayEquals(TEST_DATA_1, storeFile.writes.get(0));
+        assertArrayEquals(TEST_DATA_3, storeFile.writes.get(1));
+        verify(mWifiMetrics).noteWifiConfigStoreWriteQueueDepth(1);
+    }
+
+    /**
+     * Verify a failed write is reported by the next flush and retried by the one after, and the
+     * sections cached for the file are dropped, since they were not persisted.
+     */
+    @Test
+    public void failedWriteReportedAndRetried() throws Exception {
+        RecordingStoreFile storeFile = new RecordingStoreFile();
+        storeFile.numFailuresLeft = 1;
+        storeFile.replaceSectionCache(Collections.singletonMap(TEST_SECTION, TEST_DATA_2));
+
+        mWriter.queueWrite(storeFile, TEST_DATA_1);
+        try {
+            mWriter.flush();
+            fail("Expected IOException");
+        } catch (IOException e) {
+            // Expected.
+        }
+        assertEquals(0, storeFile.writes.size());
+        assertNull(storeFile.getCachedSection(TEST_SECTION));
+
+        mWriter.flush();
+        assertEquals(1, storeFile.writes.size());
+        assertArrayEquals(TEST_DATA_1, storeFile.writes.get(0));
+        verify(mWifiMetrics, atLeastOnce()).noteWifiConfigStoreWriteDuration(anyInt());
+    }
+}
@@ -54,6 +54,7 @@ import android.util.LocalLog;
 import androidx.test.filters.SmallTest;
 
 import com.android.server.wifi.hotspot2.PasspointManager;
+import com.android.server.wifi.scanner.ScanResultDeltaPublisher;
 import com.android.server.wifi.util.LruConnectionTracker;
 import com.android.server.wifi.util.ScanResultUtil;
 import com.android.wifi.resources.R;
@@ -199,6 +200,8 @@ public class WifiConnectivityManagerTest extends WifiBaseTest {
     @Mock private WifiNetworkSuggestionsManager mWifiNetworkSuggestionsManager;
     @Mock private BssidBlocklistMonitor mBssidBlocklistMonitor;
     @Mock private WifiChannelUtilization mWifiChannelUtilization;
+    @Mock private PartialScanChannelPlanner mPartialScanChannelPlanner;
+    @Mock private PnoNetworkListBuilder mPnoNetworkListBuilder;
     @Mock private ScoringParams mScoringParams;
     @Mock private WifiScoreCard mWifiScoreCard;
     @Mock private PasspointManager mPasspointManager;
@@ -441,6 +444,38 @@ public class WifiConnectivityManagerTest extends WifiBaseTest {
                 CANDIDATE_NETWORK_ID, Process.WIFI_UID, CANDIDATE_BSSID);
     }
 
+    /**
+     *  Wifi enters disconnected state while screen is on, with scan result deltas enabled.
+     *
+     * Expected behavior: WifiConnectivityManager defers the full band results of the
+     * scanner to the published ScanResultDelta and only then calls
+     * ClientModeImpl.startConnectToNetwork().
+     */
+    @Test
+    public void enterWifiDisconnectedStateWhenScreenOnWithScanResultDelta() {
+        ScanResultDeltaPublisher publisher = new ScanResultDeltaPublisher(true);
+        when(mWifiInjector.getScanResultDeltaPublisher()).thenReturn(publisher);
+        mWifiConnectivityManager = createConnectivityManager();
+        mWifiConnectivityManager.setTrustedConnectionAllowed(true);
+        mWifiConnectivityManager.setWifiEnabled(true);
+        mWifiConnectivityManager.handleScreenStateChanged(true);
+
+        mWifiConnectivityManager.handleConnectionStateChanged(
+                WifiConnectivityManager.WIFI_STATE_DISCONNECTED);
+        verify(mClientModeImpl, never()).startConnectToNetwork(
+                CANDIDATE_NETWORK_ID, Process.WIFI_UID, CANDIDATE_BSSID);
+
+        ScanResult scanResult = new ScanResult(WifiSsid.createFromAsciiEncoded(CANDIDATE_SSID),
+                CANDIDATE_SSID, CANDIDATE_BSSID, 1245, 0, "some caps",
+                -78, 2450, 1025, 22, 33, 20, 0, 0, true);
+        scanResult.informationElements = new InformationElement[0];
+        publisher.publish(new ScanResult[] {scanResult}, WifiScanner.WIFI_BAND_ALL);
+        mLooper.dispatchAll();
+
+        verify(mClientModeImpl).startConnectToNetwork(
+                CANDIDATE_NETWORK_ID, Process.WIFI_UID, CANDIDATE_BSSID);
+    }
+
     /**
      *  Wifi enters connected state while screen is on.
      *
@@ -3118,6 +3153,34 @@ public class WifiConnectivityManagerTest extends WifiBaseTest {
         assertEquals(network1.SSID, pnoNetworks.get(2).ssid);
     }
 
+    /**
+     * Verifies {@link WifiConnectivityManager#retrievePnoNetworkList()} returns the list built
+     * by {@link PnoNetworkListBuilder} when enabled, limited to the max PNO SSID count.
+     */
+    @Test
+    public void testRetrievePnoListUsesBuilder() {
+        when(mPnoNetworkListBuilder.isEnabled()).thenReturn(true);
+        when(mWifiInjector.getPnoNetworkListBuilder()).thenReturn(mPnoNetworkListBuilder);
+        mWifiConnectivityManager = createConnectivityManager();
+        mResources.setInteger(R.integer.config_wifiMaxPnoSsidCount, 16);
+        mResources.setBoolean(R.bool.config_wifiPnoFrequencyCullingEnabled, true);
+        WifiConfiguration network1 = WifiConfigurationTestUtil.createEapNetwork();
+        WifiConfiguration network2 = WifiConfigurationTestUtil.createPskNetwork();
+        mLruConnectionTracker.addNetwork(network1);
+        mLruConnectionTracker.addNetwork(network2);
+        when(mWifiConfigManager.getSavedNetworks(anyInt()))
+                .thenReturn(new ArrayList<>(Arrays.asList(network1, network2)));
+        List<WifiScanner.PnoSettings.PnoNetwork> builtList = Arrays.asList(
+                WifiConfigurationUtil.createPnoNetwork(network1));
+        when(mPnoNetworkListBuilder.build(any(), anyInt(), anyLong(), anyBoolean()))
+                .thenReturn(builtList);
+
+        assertEquals(builtList, mWifiConnectivityManager.retrievePnoNetworkList());
+        // The builder is given the networks in scan list order.
+        verify(mPnoNetworkListBuilder).build(eq(Arrays.asList(network2, network1)), eq(16),
+                anyLong(), eq(true));
+    }
+
     private List<List<Integer>> linkScoreCardFreqsToNetwork(WifiConfiguration... configs) {
         List<List<Integer>> results = new ArrayList<>();
         int i = 0;
@@ -3217,6 +3280,80 @@ public class WifiConnectivityManagerTest extends WifiBaseTest {
         assertFalse(results.contains(freqs.get(0).get(2)));
     }
 
+    /**
+     * Verifies {@link WifiConnectivityManager#fetchChannelSetForNetworkForPartialScan(int)}
+     * returns the channels planned by {@link PartialScanChannelPlanner} when enabled, and
+     * falls back to the score card channels when the planner has no plan.
+     */
+    @Test
+    public void testFetchChannelSetForNetworkUsesPlannedChannels() {
+        when(mPartialScanChannelPlanner.isEnabled()).thenReturn(true);
+        when(mWifiInjector.getPartialScanChannelPlanner()).thenReturn(mPartialScanChannelPlanner);
+        mWifiConnectivityManager = createConnectivityManager();
+        WifiConfiguration configuration = WifiConfigurationTestUtil.createOpenNetwork();
+        configuration.networkId = TEST_CONNECTED_NETWORK_ID;
+        when(mWifiConfigManager.getConfiguredNetwork(TEST_CONNECTED_NETWORK_ID))
+                .thenReturn(configuration);
+        List<List<Integer>> freqs = linkScoreCardFreqsToNetwork(configuration);
+        mWifiInfo.setFrequency(TEST_CURRENT_CONNECTED_FREQUENCY);
+
+        assertEquals(freqs.get(0).size() + 1, mWifiConnectivityManager
+                .fetchChannelSetForNetworkForPartialScan(configuration.networkId).size());
+
+        Set<Integer> plannedFreqs = new HashSet<>(Arrays.asList(
+                TEST_CURRENT_CONNECTED_FREQUENCY, 5180));
+        when(mPartialScanChannelPlanner.planChannels(eq(TEST_CONNECTED_NETWORK_ID),
+                eq(TEST_CURRENT_CONNECTED_FREQUENCY), anyInt(), anyInt()))
+                .thenReturn(plannedFreqs);
+        assertEquals(plannedFreqs, mWifiConnectivityManager
+                .fetchChannelSetForNetworkForPartialScan(configuration.networkId));
+        verify(mPartialScanChannelPlanner, times(2)).planChannels(TEST_CONNECTED_NETWORK_ID,
+                TEST_CURRENT_CONNECTED_FREQUENCY, mResources.getInteger(R.integer
+                        .config_wifi_framework_associated_partial_scan_max_num_active_channels),
+                freqs.get(0).size() + 1);
+    }
+
+    /**
+     * Verifies full band scans made while connected feed {@link PartialScanChannelPlanner} with
+     * the BSSIDs of the connected network even when network selection is skipped.
+     */
+    @Test
+    public void testFullBandScanFeedsPartialScanPlannerWithoutSelection() {
+        PartialScanChannelPlanner planner =
+                new PartialScanChannelPlanner(mWifiChannelUtilization, true);
+        when(mWifiInjector.getPartialScanChannelPlanner()).thenReturn(planner);
+        mWifiConnectivityManager = createConnectivityManager();
+        mWifiConnectivityManager.setTrustedConnectionAllowed(true);
+        mWifiConnectivityManager.setWifiEnabled(true);
+        // Network selection is skipped, e.g. because the connected network is sufficient.
+        when(mWifiNS.getCandidatesFromScan(any(), any(), any(), anyBoolean(), anyBoolean(),
+                anyBoolean())).thenReturn(null);
+
+        String ssid = "connected_ssid";
+        mWifiInfo.setNetworkId(TEST_CONNECTED_NETWORK_ID);
+        mWifiInfo.setSSID(WifiSsid.createFromAsciiEncoded(ssid));
+        mWifiInfo.setBSSID(CANDIDATE_BSSID);
+        mWifiInfo.setFrequency(TEST_CURRENT_CONNECTED_FREQUENCY);
+        ScanResult connected = new ScanResult(WifiSsid.createFromAsciiEncoded(ssid), ssid,
+                CANDIDATE_BSSID, 1245, 0, "", -50, TEST_CURRENT_CONNECTED_FREQUENCY, 1025, 22, 33,
+                20, 0, 0, true);
+        connected.informationElements = new InformationElement[0];
+        ScanResult other = new ScanResult(WifiSsid.createFromAsciiEncoded(ssid), ssid,
+                "6c:f3:7f:ae:8c:f4", 1245, 0, "", -60, 5180, 1025, 22, 33, 20, 0, 0, true);
+        other.informationElements = new InformationElement[0];
+        when(mScanData.getResults()).thenReturn(new ScanResult[] {connected, other});
+
+        mWifiConnectivityManager.handleConnectionStateChanged(
+                WifiConnectivityManager.WIFI_STATE_CONNECTED);
+        for (int i = 0; i < PartialScanChannelPlanner.MIN_FULL_SCANS; i++) {
+            mWifiConnectivityManager.forceConnectivityScan(null);
+        }
+
+        assertEquals(new HashSet<>(Arrays.asList(TEST_CURRENT_CONNECTED_FREQUENCY, 5180)),
+                planner.planChannels(TEST_CONNECTED_NETWORK_ID, TEST_CURRENT_CONNECTED_FREQUENCY,
+                        0, 1));
+    }
+
     @Test
     public void restartPnoScanForNetworkChanges() {
         mWifiConnectivityManager.setWifiEnabled(true);
@@ -32,6 +32,7 @@ import android.content.pm.ModuleInfo;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.net.MacAddress;
+import android.net.wifi.ScanResult;
 import android.net.wifi.ScanResult.InformationElement;
 import android.net.wifi.WifiConfiguration;
 import android.net.wifi.WifiScanner;
@@ -54,6 +55,7 @@ import com.android.server.wifi.WifiScoreCard.PerNetwork;
 import com.android.server.wifi.proto.WifiScoreCardProto.SystemInfoStats;
 import com.android.server.wifi.proto.WifiStatsLog;
 import com.android.server.wifi.proto.nano.WifiMetricsProto.HealthMonitorMetrics;
+import com.android.server.wifi.scanner.ScanResultDeltaPublisher;
 
 
 import org.junit.Before;
@@ -224,6 +226,7 @@ public class WifiHealthMonitorTest extends WifiBaseTest {
     private WifiConfigManager mockConfigManager() {
         WifiConfigManager wifiConfigManager = mock(WifiConfigManager.class);
         when(wifiConfigManager.getConfiguredNetworks()).thenReturn(mConfiguredNetworks);
+        when(wifiConfigManager.getConfiguredNetworksSnapshot()).thenReturn(mConfiguredNetworks);
         when(wifiConfigManager.findScanRssi(anyInt(), anyInt()))
                 .thenReturn(-53);
 
@@ -674,6 +677,39 @@ public class WifiHealthMonitorTest extends WifiBaseTest {
         assertEquals(2, scanStats.getNumBssidLastScan2g());
     }
 
+    /**
+     * Check if the per band counts are patched from scan result deltas when they are enabled.
+     */
+    @Test
+    public void testFullBandScanWithScanResultDelta() throws Exception {
+        ScanResultDeltaPublisher publisher = new ScanResultDeltaPublisher(true);
+        when(mWifiInjector.getScanResultDeltaPublisher()).thenReturn(publisher);
+        millisecondsPass(5000);
+        mWifiHealthMonitor.setWifiEnabled(true);
+        verify(mWifiScanner, never()).registerScanListener(any());
+
+        ScanResult[] results = ScanTestUtil.createScanDatas(
+                new int[][]{{5150, 5175, 2412, 2437}}, new int[]{0})[0].getResults();
+        for (int i = 0; i < results.length; i++) {
+            results[i].BSSID = "11:22:33:44:55:0" + i;
+        }
+        publisher.publish(results, WifiScanner.WIFI_BAND_ALL);
+        mLooper.dispatchAll();
+        ScanStats scanStats = mWifiHealthMonitor.getWifiSystemInfoStats().getCurrScanStats();
+        assertEquals(1_500_000_005_000L, scanStats.getLastScanTimeMs());
+        assertEquals(2, scanStats.getNumBssidLastScanAbove2g());
+        assertEquals(2, scanStats.getNumBssidLastScan2g());
+
+        // The first 2.4 GHz BSSID is gone and the first 5 GHz BSSID moves to 2.4 GHz.
+        ScanResult moved = new ScanResult(results[0]);
+        moved.frequency = 2462;
+        publisher.publish(new ScanResult[]{moved, results[1], results[3]},
+                WifiScanner.WIFI_BAND_ALL);
+        mLooper.dispatchAll();
+        assertEquals(1, scanStats.getNumBssidLastScanAbove2g());
+        assertEquals(2, scanStats.getNumBssidLastScan2g());
+    }
+
     /**
      * Check if scan results are reported correctly after 2G only scan.
      */
@@ -4093,6 +4093,51 @@ public class WifiMetricsTest extends WifiBaseTest {
         assertEquals(2, mDecodedProto.wifiConfigStoreIo.writeDurations[2].count);
     }
 
+    /**
+     * Test the generation of the 'WifiConfigStoreIO' write latency histogram and queue depth
+     * counts.
+     */
+    @Test
+    public void testWifiConfigStoreWriteLatenciesAndQueueDepths() throws Exception {
+        mWifiMetrics.noteWifiConfigStoreWriteLatency(10);
+        mWifiMetrics.noteWifiConfigStoreWriteLatency(20);
+        mWifiMetrics.noteWifiConfigStoreWriteLatency(400);
+        mWifiMetrics.noteWifiConfigStoreWriteQueueDepth(0);
+        mWifiMetrics.noteWifiConfigStoreWriteQueueDepth(0);
+        mWifiMetrics.noteWifiConfigStoreWriteQueueDepth(2);
+
+        dumpProtoAndDeserialize();
+
+        assertEquals(2, mDecodedProto.wifiConfigStoreIo.writeLatencies.length);
+        assertEquals(50, mDecodedProto.wifiConfigStoreIo.writeLatencies[0].rangeEndMs);
+        assertEquals(2, mDecodedProto.wifiConfigStoreIo.writeLatencies[0].count);
+        assertEquals(300, mDecodedProto.wifiConfigStoreIo.writeLatencies[1].rangeStartMs);
+        assertEquals(1, mDecodedProto.wifiConfigStoreIo.writeLatencies[1].count);
+
+        assertEquals(2, mDecodedProto.wifiConfigStoreIo.writeQueueDepths.length);
+        assertEquals(0, mDecodedProto.wifiConfigStoreIo.writeQueueDepths[0].key);
+        assertEquals(2, mDecodedProto.wifiConfigStoreIo.writeQueueDepths[0].count);
+        assertEquals(2, mDecodedProto.wifiConfigStoreIo.writeQueueDepths[1].key);
+        assertEquals(1, mDecodedProto.wifiConfigStoreIo.writeQueueDepths[1].count);
+    }
+
+    /**
+     * Test the boot timeline is dumped, and only keeps the latest events.
+     */
+    @Test
+    public void testBootTimeline() throws Exception {
+        for (int i = 0; i <= WifiMetrics.MAX_BOOT_TIMELINE_EVENTS; i++) {
+            mWifiMetrics.noteBootTimelineEvent("Step" + i, 1000 + i, 20);
+        }
+        mWifiMetrics.clear();
+
+        String dump = getStateDump();
+        assertStringContains(dump, "mBootTimeline:");
+        assertStringContains(dump, "Step1: start=1001ms duration=20ms");
+        assertStringContains(dump, "Step" + WifiMetrics.MAX_BOOT_TIMELINE_EVENTS + ": start=");
+        assertFalse(dump.contains("Step0: "));
+    }
+
     /**
      * Test link probe metrics.
      */
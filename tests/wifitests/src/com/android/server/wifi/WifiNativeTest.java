@@ -20,6 +20,8 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -794,6 +796,32 @@ public class WifiNativeTest extends WifiBaseTest {
         }
     }
 
+    /**
+     * Verifies that getScanResults() reuses the parsed IEs of a BSSID whose IEs did not change
+     * between scans, and reparses them when they do.
+     */
+    @Test
+    public void testGetScanResultsReusesParsedIes() {
+        NativeScanResult nativeScanResult = createMockNativeScanResult();
+        when(mWificondControl.getScanResults(anyString(), anyInt()))
+                .thenReturn(Arrays.asList(nativeScanResult));
+
+        ScanDetail first = mWifiNative.getScanResults(WIFI_IFACE_NAME).get(0);
+        ScanDetail second = mWifiNative.getScanResults(WIFI_IFACE_NAME).get(0);
+        assertSame(first.getNetworkDetail(), second.getNetworkDetail());
+        assertSame(first.getScanResult().informationElements,
+                second.getScanResult().informationElements);
+        assertEquals(first.getScanResult().capabilities, second.getScanResult().capabilities);
+
+        NativeScanResult changedScanResult = createMockNativeScanResult();
+        changedScanResult.frequency = TEST_FREQUENCY + 5;
+        when(mWificondControl.getScanResults(anyString(), anyInt()))
+                .thenReturn(Arrays.asList(changedScanResult));
+        ScanDetail third = mWifiNative.getScanResults(WIFI_IFACE_NAME).get(0);
+        assertNotSame(first.getNetworkDetail(), third.getNetworkDetail());
+        assertEquals(TEST_FREQUENCY + 5, third.getScanResult().frequency);
+    }
+
     /**
      * Verifies that getScanResults() can parse NativeScanResult from wificond correctly,
      * when there is radio chain info.
@@ -28,6 +28,7 @@ import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
 import android.annotation.NonNull;
+import android.annotation.Nullable;
 import android.content.Context;
 import android.net.wifi.ScanResult;
 import android.net.wifi.SupplicantState;
@@ -56,6 +57,12 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Unit tests for {@link com.android.server.wifi.WifiNetworkSelector}.
@@ -229,6 +236,83 @@ public class WifiNetworkSelectorTest extends WifiBaseTest {
         }
     }
 
+    /**
+     * Nominates the scan details at the given indexes, after an optional delay.
+     */
+    private static class IndexNetworkNominator implements WifiNetworkSelector.NetworkNominator {
+        protected final long mDelayMs;
+        protected final int[] mIndexes;
+        protected final WifiConfiguration[] mConfigs;
+        private final int mId;
+        // Called at the start of the nomination, if not null.
+        public Runnable onNominationStarted;
+
+        IndexNetworkNominator(int id, long delayMs, int[] indexes, WifiConfiguration[] configs) {
+            mId = id;
+            mDelayMs = delayMs;
+            mIndexes = indexes;
+            mConfigs = configs;
+        }
+
+        @Override
+        public @NominatorId int getId() {
+            return mId;
+        }
+
+        @Override
+        public String getName() {
+            return "IndexNetworkNominator" + mId;
+        }
+
+        @Override
+        public void update(List<ScanDetail> scanDetails) {}
+
+        @Override
+        public void nominateNetworks(List<ScanDetail> scanDetails,
+                WifiConfiguration currentNetwork, String currentBssid, boolean connected,
+                boolean untrustedNetworkAllowed,
+                @NonNull OnConnectableListener onConnectableListener) {
+            startNomination();
+            for (int index : mIndexes) {
+                onConnectableListener.onConnectable(scanDetails.get(index), mConfigs[index]);
+            }
+        }
+
+        protected void startNomination() {
+            if (onNominationStarted != null) {
+                onNominationStarted.run();
+            }
+            if (mDelayMs > 0) {
+                SystemClock.sleep(mDelayMs);
+            }
+        }
+    }
+
+    /**
+     * {@link IndexNetworkNominator} running on the nomination executor.
+     */
+    private static class ConcurrentIndexNetworkNominator extends IndexNetworkNominator
+            implements WifiNetworkSelector.ConcurrentNetworkNominator {
+        ConcurrentIndexNetworkNominator(int id, long delayMs, int[] indexes,
+                WifiConfiguration[] configs) {
+            super(id, delayMs, indexes, configs);
+        }
+
+        @Override
+        public @NonNull PendingNomination nominateNetworksConcurrently(
+                List<ScanDetail> scanDetails, List<WifiConfiguration> configuredNetworks,
+                WifiConfiguration currentNetwork, String currentBssid, boolean connected,
+                boolean untrustedNetworkAllowed) {
+            startNomination();
+            return (selectionScanDetails, onConnectableListener) -> {
+                for (int index : mIndexes) {
+                    onConnectableListener.onConnectable(selectionScanDetails.get(index),
+                            mConfigs[index]);
+                }
+            };
+        }
+    }
+
     private WifiNetworkSelector mWifiNetworkSelector = null;
     private DummyNetworkNominator mDummyNominator = new DummyNetworkNominator();
     @Mock private WifiConfigManager mWifiConfigManager;
@@ -595,7 +679,7 @@ public class WifiNetworkSelectorTest extends WifiBaseTest {
         WifiConfiguration candidate = mWifiNetworkSelector.selectNetwork(candidates);
         verify(mWifiMetrics).incrementNetworkSelectionFilteredBssidCount(0);
 
-        verify(mWifiConfigManager).getConfiguredNetworks();
+        verify(mWifiConfigManager).getConfiguredNetworksSnapshot();
         verify(mWifiConfigManager, times(savedConfigs.length)).tryEnableNetwork(anyInt());
         verify(mWifiConfigManager, times(savedConfigs.length))
                 .clearNetworkCandidateScanResult(anyInt());
@@ -634,6 +718,196 @@ public class WifiNetworkSelectorTest extends WifiBaseTest {
         assertTrue(mWifiNetworkSelector.getConnectableScanDetails().isEmpty());
     }
 
+    private WifiNetworkSelector createNetworkSelectorWithoutNominators() {
+        return new WifiNetworkSelector(mContext, mWifiScoreCard, mScoringParams,
+                mWifiConfigManager, mClock, mLocalLog, mWifiMetrics, mWifiNative,
+                mThroughputPredictor);
+    }
+
+    private List<String> getCandidatesWithIndexNominators(ScanDetailsAndWifiConfigs
+            scanDetailsAndConfigs, @Nullable Executor executor) {
+        WifiNetworkSelector networkSelector = createNetworkSelectorWithoutNominators();
+        WifiConfiguration[] configs = scanDetailsAndConfigs.getWifiConfigs();
+        // The slowest nominator runs first and the nominations overlap, so that the candidates
+        // depend on the merge order.
+        networkSelector.registerNetworkNominator(new ConcurrentIndexNetworkNominator(
+                WifiNetworkSelector.NetworkNominator.NOMINATOR_ID_SAVED, 50,
+                new int[] {0, 1}, configs));
+        networkSelector.registerNetworkNominator(new ConcurrentIndexNetworkNominator(
+                WifiNetworkSelector.NetworkNominator.NOMINATOR_ID_SUGGESTION, 0,
+                new int[] {1, 2}, configs));
+        networkSelector.registerNetworkNominator(new IndexNetworkNominator(
+                WifiNetworkSelector.NetworkNominator.NOMINATOR_ID_SCORED, 0,
+                new int[] {2, 0}, configs));
+        networkSelector.setNominationExecutor(executor);
+        List<String> candidates = new ArrayList<>();
+        for (WifiCandidates.Candidate candidate : networkSelector.getCandidatesFromScan(
+                scanDetailsAndConfigs.getScanDetails(), new HashSet<>(), mWifiInfo, false, true,
+                false)) {
+            candidates.add(candidate.toString());
+        }
+        return candidates;
+    }
+
+    /**
+     * Verify running the concurrent nominators on an executor yields the same candidates,
+     * in the same order, as running all nominators one after another.
+     */
+    @Test
+    public void concurrentNominationMatchesSequentialNomination() {
+        String[] ssids = {"\"test1\"", "\"test2\"", "\"test3\""};
+        String[] bssids = {"6c:f3:7f:ae:8c:f3", "6c:f3:7f:ae:8c:f4", "6c:f3:7f:ae:8c:f5"};
+        int[] freqs = {2437, 5180, 5200};
+        String[] caps = {"[WPA2-PSK][ESS]", "[WPA2-PSK][ESS]", "[WPA2-PSK][ESS]"};
+        int[] levels = {mThresholdQualifiedRssi2G + 8, mThresholdQualifiedRssi5G + 8,
+                mThresholdQualifiedRssi5G + 10};
+        int[] securities = {SECURITY_PSK, SECURITY_PSK, SECURITY_PSK};
+        ScanDetailsAndWifiConfigs scanDetailsAndConfigs =
+                WifiNetworkSelectorTestUtil.setupScanDetailsAndConfigStore(ssids, bssids,
+                        freqs, caps, levels, securities, mWifiConfigManager, mClock);
+
+        List<String> sequential = getCandidatesWithIndexNominators(scanDetailsAndConfigs, null);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<String> concurrent =
+                    getCandidatesWithIndexNominators(scanDetailsAndConfigs, executor);
+            assertEquals(3, sequential.size());
+            assertEquals(sequential, concurrent);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private ScanDetailsAndWifiConfigs setupTwoNetworks() {
+        String[] ssids = {"\"test1\"", "\"test2\""};
+        String[] bssids = {"6c:f3:7f:ae:8c:f3", "6c:f3:7f:ae:8c:f4"};
+        int[] freqs = {2437, 5180};
+        String[] caps = {"[WPA2-PSK][ESS]", "[WPA2-PSK][ESS]"};
+        int[] levels = {mThresholdQualifiedRssi2G + 8, mThresholdQualifiedRssi5G + 8};
+        int[] securities = {SECURITY_PSK, SECURITY_PSK};
+        return WifiNetworkSelectorTestUtil.setupScanDetailsAndConfigStore(ssids, bssids,
+                freqs, caps, levels, securities, mWifiConfigManager, mClock);
+    }
+
+    /**
+     * Verify the nominators running on the calling thread run while the concurrent nominator
+     * registered before them is still running on the executor.
+     */
+    @Test
+    public void concurrentNominationOverlapsOtherNominators() throws Exception {
+        ScanDetailsAndWifiConfigs scanDetailsAndConfigs = setupTwoNetworks();
+        WifiConfiguration[] configs = scanDetailsAndConfigs.getWifiConfigs();
+        WifiNetworkSelector networkSelector = createNetworkSelectorWithoutNominators();
+        CountDownLatch otherNominatorStarted = new CountDownLatch(1);
+        AtomicBoolean overlapped = new AtomicBoolean(false);
+        ConcurrentIndexNetworkNominator concurrentNominator = new ConcurrentIndexNetworkNominator(
+                WifiNetworkSelector.NetworkNominator.NOMINATOR_ID_SAVED, 0, new int[] {0},
+                configs);
+        // Blocks until the other nominator starts, which it can only do meanwhile.
+        concurrentNominator.onNominationStarted = () -> {
+            try {
+                overlapped.set(otherNominatorStarted.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        IndexNetworkNominator otherNominator = new IndexNetworkNominator(
+                WifiNetworkSelector.NetworkNominator.NOMINATOR_ID_SCORED, 0, new int[] {1},
+                configs);
+        otherNominator.onNominationStarted = otherNominatorStarted::countDown;
+        networkSelector.registerNetworkNominator(concurrentNominator);
+        networkSelector.registerNetworkNominator(otherNominator);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        networkSelector.setNominationExecutor(executor);
+        try {
+            List<WifiCandidates.Candidate> candidates = networkSelector
+                    .getCandidatesFromScan(scanDetailsAndConfigs.getScanDetails(),
+                            new HashSet<>(), mWifiInfo, false, true, false);
+            assertTrue(overlapped.get());
+            assertEquals(2, candidates.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Verify a concurrent nomination is cancelled if the selection thread is interrupted while
+     * waiting for it, and the nominator runs again on the selection thread instead, so its
+     * candidates are not dropped.
+     */
+    @Test
+    public void interruptedConcurrentNominationRunsOnSelectionThread() throws Exception {
+        ScanDetailsAndWifiConfigs scanDetailsAndConfigs = setupTwoNetworks();
+        WifiConfiguration[] configs = scanDetailsAndConfigs.getWifiConfigs();
+        WifiNetworkSelector networkSelector = createNetworkSelectorWithoutNominators();
+        CountDownLatch workerInterrupted = new CountDownLatch(1);
+        ConcurrentIndexNetworkNominator concurrentNominator = new ConcurrentIndexNetworkNominator(
+                WifiNetworkSelector.NetworkNominator.NOMINATOR_ID_SAVED, 0, new int[] {0, 1},
+                configs);
+        Thread selectionThread = Thread.currentThread();
+        concurrentNominator.onNominationStarted = () -> {
+            if (Thread.currentThread() == selectionThread) return;
+            try {
+                new CountDownLatch(1).await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                workerInterrupted.countDown();
+            }
+        };
+        networkSelector.registerNetworkNominator(concurrentNominator);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        networkSelector.setNominationExecutor(executor);
+        try {
+            selectionThread.interrupt();
+            List<WifiCandidates.Candidate> candidates = networkSelector
+                    .getCandidatesFromScan(scanDetailsAndConfigs.getScanDetails(),
+                            new HashSet<>(), mWifiInfo, false, true, false);
+            // The interrupt is kept for the caller.
+            assertTrue(Thread.interrupted());
+            assertEquals(2, candidates.size());
+            assertTrue(workerInterrupted.await(5, TimeUnit.SECONDS));
+        } finally {
+            Thread.interrupted();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Verify the scan results filtered out before the nominators run are counted per reason.
+     */
+    @Test
+    public void filterReasonsAreCounted() {
+        String[] ssids = {"\"test1\"", "\"test2\"", "\"test3\"", "\"test4\""};
+        String[] bssids = {"6c:f3:7f:ae:8c:f3", "6c:f3:7f:ae:8c:f4", "6c:f3:7f:ae:8c:f5",
+                "6c:f3:7f:ae:8c:f6"};
+        int[] freqs = {5180, 2437, 5180, 5200};
+        String[] caps = {"[WPA2-PSK][ESS]", "[WPA2-PSK][ESS]", "[WPA2-PSK][ESS]",
+                "[WPA2-PSK][ESS]"};
+        int[] levels = {mThresholdQualifiedRssi5G + 8, mThresholdMinimumRssi2G - 1,
+                mThresholdMinimumRssi5G - 1, mThresholdQualifiedRssi5G + 8};
+        int[] securities = {SECURITY_PSK, SECURITY_PSK, SECURITY_PSK, SECURITY_PSK};
+
+        ScanDetailsAndWifiConfigs scanDetailsAndConfigs =
+                WifiNetworkSelectorTestUtil.setupScanDetailsAndConfigStore(ssids, bssids,
+                    freqs, caps, levels, securities, mWifiConfigManager, mClock);
+        HashSet<String> blacklist = new HashSet<String>();
+        blacklist.add(bssids[0]);
+
+        mWifiNetworkSelector.getCandidatesFromScan(scanDetailsAndConfigs.getScanDetails(),
+                blacklist, mWifiInfo, false, true, false);
+
+        assertEquals(1, mWifiNetworkSelector.getLastFilterReasonCount(
+                WifiNetworkSelector.FILTER_REASON_NONE));
+        assertEquals(1, mWifiNetworkSelector.getLastFilterReasonCount(
+                WifiNetworkSelector.FILTER_REASON_BLOCKLISTED));
+        assertEquals(1, mWifiNetworkSelector.getLastFilterReasonCount(
+                WifiNetworkSelector.FILTER_REASON_LOW_RSSI_24GHZ));
+        assertEquals(1, mWifiNetworkSelector.getLastFilterReasonCount(
+                WifiNetworkSelector.FILTER_REASON_LOW_RSSI_5GHZ));
+        assertEquals(0, mWifiNetworkSelector.getLastFilterReasonCount(
+                WifiNetworkSelector.FILTER_REASON_INVALID_SSID));
+        verify(mWifiMetrics).incrementNetworkSelectionFilteredBssidCount(1);
+    }
+
     /**
      * Wifi network selector doesn't recommend any network if the currently connected one
      * doesn't show up in the scan results.
@@ -324,7 +324,7 @@ public class WifiNetworkSelectorTestUtil {
                         return null;
                     }
                 });
-        when(wifiConfigManager.getConfiguredNetworks())
+        when(wifiConfigManager.getConfiguredNetworksSnapshot())
                 .then(new AnswerWithArguments() {
                     public List<WifiConfiguration> answer() {
                         List<WifiConfiguration> savedNetworks = new ArrayList<>();
@@ -364,6 +364,29 @@ public class WifiNetworkSelectorTestUtil {
                         }
                     }
                 });
+        when(wifiConfigManager.getConnectChoiceChain(anyString()))
+                .then(new AnswerWithArguments() {
+                    public List<String> answer(String configKey) {
+                        List<String> chain = new ArrayList<>();
+                        String key = configKey;
+                        while (key != null) {
+                            String choice = null;
+                            for (WifiConfiguration config : configs) {
+                                if (TextUtils.equals(config.getKey(), key)) {
+                                    choice = config.getNetworkSelectionStatus()
+                                            .getConnectChoice();
+                                }
+                            }
+                            if (choice == null || choice.equals(configKey)
+                                    || chain.contains(choice)) {
+                                break;
+                            }
+                            chain.add(choice);
+                            key = choice;
+                        }
+                        return chain;
+                    }
+                });
         when(wifiConfigManager.clearNetworkConnectChoice(anyInt()))
                 .then(new AnswerWithArguments() {
                     public boolean answer(int netId) {
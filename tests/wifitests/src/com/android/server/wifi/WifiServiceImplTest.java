@@ -45,6 +45,7 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -1229,6 +1230,20 @@ public class WifiServiceImplTest extends WifiBaseTest {
         verify(mActiveModeWarden, never()).wifiToggled();
     }
 
+    /**
+     * Verify the time taken to load the config store at boot is added to the boot timeline.
+     */
+    @Test
+    public void testLoadFromStoreAddedToBootTimeline() {
+        when(mSettingsStore.isWifiToggleEnabled()).thenReturn(false);
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(1000L, 1200L);
+        mWifiServiceImpl.checkAndStartWifi();
+        mLooper.dispatchAll();
+        verify(mWifiConfigManager).loadFromStore();
+        verify(mWifiMetrics).noteBootTimelineEvent("WifiConfigManager.loadFromStore", 1000L,
+                200L);
+    }
+
     @Test
     public void testWifiVerboseLoggingInitialization() {
         when(mSettingsStore.isWifiToggleEnabled()).thenReturn(false);
@@ -1743,7 +1758,7 @@ public class WifiServiceImplTest extends WifiBaseTest {
      */
     @Test
     public void testPrivilegedConfiguredNetworkListAreEmptyFromAppWithoutPermission() {
-        when(mWifiConfigManager.getConfiguredNetworksWithPasswords())
+        when(mWifiConfigManager.getConfiguredNetworksWithPasswordsSnapshot())
                 .thenReturn(TEST_WIFI_CONFIGURATION_LIST);
 
         doThrow(new SecurityException()).when(mWifiPermissionsUtil).enforceCanAccessScanResults(
@@ -1763,7 +1778,7 @@ public class WifiServiceImplTest extends WifiBaseTest {
      */
     @Test
     public void testPrivilegedConfiguredNetworkListAreEmptyOnSecurityException() {
-        when(mWifiConfigManager.getConfiguredNetworksWithPasswords())
+        when(mWifiConfigManager.getConfiguredNetworksWithPasswordsSnapshot())
                 .thenReturn(TEST_WIFI_CONFIGURATION_LIST);
 
         doThrow(new SecurityException()).when(mWifiPermissionsUtil).enforceCanAccessScanResults(
@@ -1783,7 +1798,7 @@ public class WifiServiceImplTest extends WifiBaseTest {
      */
     @Test
     public void testPrivilegedConfiguredNetworkListAreVisibleFromPermittedApp() {
-        when(mWifiConfigManager.getConfiguredNetworksWithPasswords())
+        when(mWifiConfigManager.getConfiguredNetworksWithPasswordsSnapshot())
                 .thenReturn(TEST_WIFI_CONFIGURATION_LIST);
 
         mLooper.startAutoDispatch();
@@ -1793,6 +1808,10 @@ public class WifiServiceImplTest extends WifiBaseTest {
 
         WifiConfigurationTestUtil.assertConfigurationsEqualForBackup(
                 TEST_WIFI_CONFIGURATION_LIST, configs.getList());
+        // The shared snapshot objects must not be handed out.
+        for (int i = 0; i < TEST_WIFI_CONFIGURATION_LIST.size(); i++) {
+            assertNotSame(TEST_WIFI_CONFIGURATION_LIST.get(i), configs.getList().get(i));
+        }
     }
 
     /**
@@ -653,6 +653,88 @@ public class BackgroundScanSchedulerTest extends WifiBaseTest {
         assertChannels(combinedBucketChannelSet, expectedBucketChannelSet);
     }
 
+    /**
+     * Verify the cost model merges the 60s bucket into the 30s bucket, which already scans the
+     * same channels, instead of moving the 3840s request to the 480s bucket like the greedy
+     * scheduler does.
+     */
+    @Test
+    public void costModelMergesBucketsWithLowestScanTime() {
+        ArrayList<ScanSettings> requests = new ArrayList<>();
+        requests.add(createRequest(channelsToSpec(2400, 2450), 30000, 0, 20,
+                WifiScanner.REPORT_EVENT_AFTER_EACH_SCAN));
+        requests.add(createRequest(channelsToSpec(2400, 2450), 60000, 0, 20,
+                WifiScanner.REPORT_EVENT_AFTER_EACH_SCAN));
+        requests.add(createRequest(channelsToSpec(5150), 3840000, 0, 20,
+                WifiScanner.REPORT_EVENT_AFTER_EACH_SCAN));
+        mScheduler.setMaxBuckets(2);
+
+        mScheduler.updateSchedule(requests);
+        WifiNative.ScanSettings greedySchedule = mScheduler.getSchedule();
+        long greedyScanTimeMs = mScheduler.estimateScanTimeMsPerHour();
+        assertBuckets(greedySchedule, 2);
+        assertEquals(480000, greedySchedule.buckets[1].period_ms);
+
+        mScheduler.setSchedulerMode(BackgroundScanScheduler.SCHEDULER_MODE_COST_MODEL);
+        mScheduler.updateSchedule(requests);
+        WifiNative.ScanSettings schedule = mScheduler.getSchedule();
+
+        assertEquals("base_period_ms", 30000, schedule.base_period_ms);
+        assertBuckets(schedule, 2);
+        assertEquals(30000, schedule.buckets[0].period_ms);
+        assertEquals(3840000, schedule.buckets[1].period_ms);
+        for (ScanSettings request : requests) {
+            assertSettingsSatisfied(schedule, request, true, false);
+        }
+        assertTrue(mScheduler.estimateScanTimeMsPerHour() < greedyScanTimeMs);
+    }
+
+    /**
+     * Verify the cost model keeps the greedy schedule when no merge is estimated to be cheaper.
+     */
+    @Test
+    public void costModelKeepsGreedyScheduleWhenCheaper() {
+        ArrayList<ScanSettings> requests = new ArrayList<>();
+        requests.add(createRequest(channelsToSpec(2400), 30000, 0, 20,
+                WifiScanner.REPORT_EVENT_AFTER_EACH_SCAN));
+        requests.add(createRequest(channelsToSpec(2450), 10000, 0, 20,
+                WifiScanner.REPORT_EVENT_AFTER_EACH_SCAN));
+        requests.add(createRequest(channelsToSpec(5150), 120000, 0, 20,
+                WifiScanner.REPORT_EVENT_AFTER_EACH_SCAN));
+        mScheduler.setMaxBuckets(2);
+
+        mScheduler.updateSchedule(requests);
+        WifiNative.ScanSettings greedySchedule = mScheduler.getSchedule();
+        long greedyScanTimeMs = mScheduler.estimateScanTimeMsPerHour();
+
+        mScheduler.setSchedulerMode(BackgroundScanScheduler.SCHEDULER_MODE_COST_MODEL);
+        mScheduler.updateSchedule(requests);
+
+        assertNativeScanSettingsEquals(greedySchedule, mScheduler.getSchedule());
+        assertEquals(greedyScanTimeMs, mScheduler.estimateScanTimeMsPerHour());
+    }
+
+    /**
+     * Verify the scan time estimate counts channels shared by buckets due at the same time once.
+     */
+    @Test
+    public void estimateScanTimeCountsSharedChannelsOnce() {
+        mScheduler.updateSchedule(Collections.emptyList());
+        assertEquals(0, mScheduler.estimateScanTimeMsPerHour());
+
+        ArrayList<ScanSettings> requests = new ArrayList<>();
+        requests.add(createRequest(channelsToSpec(2400), 30000, 0, 20,
+                WifiScanner.REPORT_EVENT_AFTER_EACH_SCAN));
+        mScheduler.updateSchedule(requests);
+        long singleRequestScanTimeMs = mScheduler.estimateScanTimeMsPerHour();
+        assertTrue(singleRequestScanTimeMs > 0);
+
+        requests.add(createRequest(channelsToSpec(2400), 60000, 0, 20,
+                WifiScanner.REPORT_EVENT_AFTER_EACH_SCAN));
+        mScheduler.updateSchedule(requests);
+        assertEquals(singleRequestScanTimeMs, mScheduler.estimateScanTimeMsPerHour());
+    }
+
     protected Set<Integer> getAllChannels(BucketSettings bucket) {
         KnownBandsChannelCollection collection = mChannelHelper.createChannelCollection();
         collection.addChannels(bucket);
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.scanner;
+
+import static com.android.server.wifi.ScanTestUtil.createScanResult;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import android.net.wifi.ScanResult;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.wifi.WifiBaseTest;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.scanner.CachedScanResultStore}.
+ */
+@SmallTest
+public class CachedScanResultStoreTest extends WifiBaseTest {
+    private static final long MAX_AGE_MS = 1000;
+
+    private CachedScanResultStore mStore;
+
+    @Before
+    public void setUp() throws Exception {
+        mStore = new CachedScanResultStore(MAX_AGE_MS);
+    }
+
+    private static ScanResult createResult(String bssid, String ssid, int freq, long timestampMs) {
+        ScanResult result = createScanResult(freq);
+        result.BSSID = bssid;
+        result.SSID = ssid;
+        result.timestamp = timestampMs * 1000;
+        return result;
+    }
+
+    /**
+     * Verify duplicate BSSIDs are all kept, in scanner order.
+     */
+    @Test
+    public void duplicateBssidsAreKept() {
+        ScanResult[] results = new ScanResult[] {
+                createResult("02:00:00:00:00:01", "ssid", 2412, 100),
+                createResult("02:00:00:00:00:02", "ssid", 2437, 100),
+                createResult("02:00:00:00:00:01", "ssid", 5180, 100)};
+        mStore.replaceAll(results);
+        assertEquals(3, mStore.size());
+        assertArrayEquals(results, mStore.getResults(100));
+    }
+
+    /**
+     * Verify expired results are not returned, in scanner order, and the clock going backwards
+     * restores them.
+     */
+    @Test
+    public void getResultsFiltersByAge() {
+        ScanResult old = createResult("02:00:00:00:00:01", "ssid1", 2412, 100);
+        ScanResult recent = createResult("02:00:00:00:00:02", "ssid2", 2437, 900);
+        ScanResult newest = createResult("02:00:00:00:00:03", "ssid3", 5180, 1000);
+        mStore.replaceAll(new ScanResult[] {newest, old, recent});
+
+        assertArrayEquals(new ScanResult[] {newest, old, recent}, mStore.getResults(1000));
+        assertEquals(2, mStore.expire(1100));
+        assertTrue(mStore.isExpired(1));
+        assertFalse(mStore.isExpired(0));
+        assertArrayEquals(new ScanResult[] {newest, recent}, mStore.getResults(1100));
+        assertArrayEquals(new ScanResult[0], mStore.getResults(2000));
+
+        assertArrayEquals(new ScanResult[] {newest, old, recent}, mStore.getResults(1000));
+        // Callers get their own copy of the array.
+        assertNotSame(mStore.getResults(1000), mStore.getResults(1000));
+        // Expired results are still dumped.
+        mStore.expire(5000);
+        assertEquals(Arrays.asList(newest, old, recent), mStore.toList());
+    }
+
+    /**
+     * Verify clear drops all results.
+     */
+    @Test
+    public void clearRemovesAll() {
+        mStore.replaceAll(new ScanResult[] {createResult("02:00:00:00:00:01", "ssid", 2412, 100)});
+        mStore.clear();
+        assertEquals(0, mStore.size());
+        assertTrue(mStore.toList().isEmpty());
+        assertEquals(0, mStore.getResults(100).length);
+    }
+
+    /**
+     * Verify the store grows past its initial capacity.
+     */
+    @Test
+    public void growsPastInitialCapacity() {
+        ScanResult[] results = new ScanResult[200];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = createResult(String.format("02:00:00:00:%02x:%02x", i / 256, i % 256),
+                    "ssid" + i, 2412, 100);
+        }
+        mStore.replaceAll(results);
+        assertEquals(200, mStore.size());
+        assertArrayEquals(results, mStore.getResults(100));
+        mStore.replaceAll(new ScanResult[] {results[5]});
+        assertEquals(1, mStore.size());
+        assertArrayEquals(new ScanResult[] {results[5]}, mStore.getResults(100));
+    }
+
+    /**
+     * Verify more results than fit in 16 bits of row index are all kept, and aged correctly.
+     */
+    @Test
+    public void keepsMoreThan65536Results() {
+        ScanResult[] results = new ScanResult[(1 << 16) + 10];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = createResult("02:00:00:00:00:01", "ssid", 2412, i < 10 ? 100 : 900);
+        }
+        mStore.replaceAll(results);
+        assertEquals(results.length, mStore.size());
+        assertEquals(results.length, mStore.getResults(1000).length);
+        assertEquals(results.length - 10, mStore.expire(1100));
+        assertTrue(mStore.isExpired(9));
+        assertFalse(mStore.isExpired(10));
+        assertFalse(mStore.isExpired(results.length - 1));
+    }
+
+    /**
+     * Verify results are aged by their timestamp long after boot.
+     */
+    @Test
+    public void agesLateTimestamps() {
+        // 100 days after boot.
+        long bootTimeMs = 100L * 24 * 60 * 60 * 1000;
+        ScanResult old = createResult("02:00:00:00:00:01", "ssid1", 2412, bootTimeMs);
+        ScanResult recent = createResult("02:00:00:00:00:02", "ssid2", 2437, bootTimeMs + 500);
+        mStore.replaceAll(new ScanResult[] {recent, old});
+
+        assertArrayEquals(new ScanResult[] {recent, old}, mStore.getResults(bootTimeMs + 900));
+        assertArrayEquals(new ScanResult[] {recent}, mStore.getResults(bootTimeMs + 1000));
+        assertArrayEquals(new ScanResult[0], mStore.getResults(bootTimeMs + 1500));
+    }
+}
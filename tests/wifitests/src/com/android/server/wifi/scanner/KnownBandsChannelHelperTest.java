@@ -99,6 +99,19 @@ public class KnownBandsChannelHelperTest {
             assertEquals(ChannelHelper.SCAN_PERIOD_PER_CHANNEL_MS * CHANNELS_24_GHZ.length,
                     mChannelHelper.estimateScanDuration(testSettings));
         }
+
+        /**
+         * check DFS channels are estimated to dwell longer than active channels
+         */
+        @Test
+        public void channelDwellTime() {
+            assertEquals(ChannelHelper.SCAN_PERIOD_PER_CHANNEL_MS,
+                    mChannelHelper.estimateChannelDwellTime(2412));
+            assertEquals(ChannelHelper.SCAN_PERIOD_PER_CHANNEL_MS,
+                    mChannelHelper.estimateChannelDwellTime(5160));
+            assertEquals(ChannelHelper.PASSIVE_SCAN_PERIOD_PER_CHANNEL_MS,
+                    mChannelHelper.estimateChannelDwellTime(5600));
+        }
     }
 
     /**
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.scanner;
+
+import static com.android.server.wifi.ScanTestUtil.createScanResult;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import android.net.wifi.ScanResult;
+import android.net.wifi.WifiScanner;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.wifi.WifiBaseTest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.scanner.ScanResultDeltaPublisher}.
+ */
+@SmallTest
+public class ScanResultDeltaPublisherTest extends WifiBaseTest {
+    private static final Executor DIRECT_EXECUTOR = Runnable::run;
+
+    @Mock private ScanResultDeltaPublisher.Listener mListener;
+    private ArgumentCaptor<ScanResultDelta> mDeltaCaptor =
+            ArgumentCaptor.forClass(ScanResultDelta.class);
+    private ScanResultDeltaPublisher mPublisher;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        mPublisher = new ScanResultDeltaPublisher(true);
+    }
+
+    private static ScanResult createResult(String bssid, int freq) {
+        ScanResult result = createScanResult(freq);
+        result.BSSID = bssid;
+        return result;
+    }
+
+    /**
+     * Verify successive result sets are delivered as deltas against the previous set.
+     */
+    @Test
+    public void publishDeliversDeltaAgainstPreviousResults() {
+        mPublisher.registerListener(DIRECT_EXECUTOR, mListener);
+        ScanResult first = createResult("02:00:00:00:00:01", 2412);
+        mPublisher.publish(new ScanResult[] {first}, WifiScanner.WIFI_BAND_ALL);
+        mPublisher.publish(new ScanResult[] {createResult("02:00:00:00:00:02", 5180)},
+                WifiScanner.WIFI_BAND_ALL);
+
+        verify(mListener, times(2)).onScanResultDelta(mDeltaCaptor.capture());
+        assertEquals(1, mDeltaCaptor.getAllValues().get(0).getAdded().size());
+        ScanResultDelta second = mDeltaCaptor.getAllValues().get(1);
+        assertEquals(1, second.getAdded().size());
+        assertEquals(1, second.getRemoved().size());
+        assertEquals(first, second.getRemoved().get(0));
+    }
+
+    /**
+     * Verify a listener registered late first receives the current results.
+     */
+    @Test
+    public void registerDeliversCurrentResults() {
+        mPublisher.publish(new ScanResult[] {createResult("02:00:00:00:00:01", 2412)},
+                WifiScanner.WIFI_BAND_ALL);
+        mPublisher.registerListener(DIRECT_EXECUTOR, mListener);
+        verify(mListener).onScanResultDelta(mDeltaCaptor.capture());
+        assertEquals(1, mDeltaCaptor.getValue().getAdded().size());
+        assertEquals(WifiScanner.WIFI_BAND_UNSPECIFIED, mDeltaCaptor.getValue().getBandScanned());
+    }
+
+    /**
+     * Verify reset publishes the removal of all results and unregistered listeners are not
+     * invoked.
+     */
+    @Test
+    public void resetAndUnregister() {
+        mPublisher.registerListener(DIRECT_EXECUTOR, mListener);
+        mPublisher.publish(new ScanResult[] {createResult("02:00:00:00:00:01", 2412)},
+                WifiScanner.WIFI_BAND_ALL);
+        mPublisher.reset();
+        verify(mListener, times(2)).onScanResultDelta(mDeltaCaptor.capture());
+        assertEquals(1, mDeltaCaptor.getValue().getRemoved().size());
+        assertTrue(mDeltaCaptor.getValue().getResults().isEmpty());
+
+        mPublisher.unregisterListener(mListener);
+        mPublisher.publish(new ScanResult[] {createResult("02:00:00:00:00:01", 2412)},
+                WifiScanner.WIFI_BAND_ALL);
+        verify(mListener, times(2)).onScanResultDelta(any());
+    }
+
+    /**
+     * Verify nothing is published when the feature is disabled.
+     */
+    @Test
+    public void disabledPublisherIsNoOp() {
+        mPublisher = new ScanResultDeltaPublisher(false);
+        mPublisher.registerListener(DIRECT_EXECUTOR, mListener);
+        mPublisher.publish(new ScanResult[] {createResult("02:00:00:00:00:01", 2412)},
+                WifiScanner.WIFI_BAND_ALL);
+        verify(mListener, never()).onScanResultDelta(any());
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.scanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.net.wifi.ScanResult;
+import android.net.wifi.ScanResult.InformationElement;
+import android.net.wifi.WifiScanner;
+import android.net.wifi.WifiSsid;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.wifi.ScanDetail;
+import com.android.server.wifi.WifiBaseTest;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.scanner.ScanResultDelta}.
+ */
+@SmallTest
+public class ScanResultDeltaTest extends WifiBaseTest {
+    private static final String TEST_BSSID_1 = "02:00:00:00:00:01";
+    private static final String TEST_BSSID_2 = "02:00:00:00:00:02";
+    private static final String TEST_BSSID_3 = "02:00:00:00:00:03";
+
+    private static ScanResult createScanResult(String bssid, String ssid, int freq, int rssi) {
+        ScanResult result = new ScanResult(WifiSsid.createFromAsciiEncoded(ssid), ssid, bssid,
+                0, 0, "[ESS]", rssi, freq, 0, 0, 0, 0, 0, 0, false);
+        InformationElement ie = new InformationElement();
+        ie.id = InformationElement.EID_SSID;
+        ie.bytes = ssid.getBytes(StandardCharsets.UTF_8);
+        result.informationElements = new InformationElement[] {ie};
+        return result;
+    }
+
+    /**
+     * Verify each BSSID is classified as added, updated, refreshed or removed.
+     */
+    @Test
+    public void computeClassifiesBssids() {
+        ScanResult[] previous = new ScanResult[] {
+                createScanResult(TEST_BSSID_1, "ssid1", 2412, -50),
+                createScanResult(TEST_BSSID_2, "ssid2", 5180, -60)};
+        ScanResult refreshed = createScanResult(TEST_BSSID_1, "ssid1", 2412, -70);
+        ScanResult added = createScanResult(TEST_BSSID_3, "ssid3", 2437, -40);
+        ScanResultDelta delta = ScanResultDelta.compute(ScanResultDelta.toMap(previous),
+                new ScanResult[] {refreshed, added}, WifiScanner.WIFI_BAND_ALL);
+
+        assertEquals(WifiScanner.WIFI_BAND_ALL, delta.getBandScanned());
+        assertEquals(2, delta.getResults().size());
+        assertEquals(1, delta.getAdded().size());
+        assertSame(added, delta.getAdded().get(0));
+        assertEquals(1, delta.getRefreshed().size());
+        assertSame(refreshed, delta.getRefreshed().get(0));
+        assertTrue(delta.getUpdated().isEmpty());
+        assertEquals(1, delta.getRemoved().size());
+        assertSame(previous[1], delta.getRemoved().get(0));
+        assertFalse(delta.isBeaconContentUnchanged());
+    }
+
+    /**
+     * Verify a change of SSID, frequency or information elements marks the BSSID as updated.
+     */
+    @Test
+    public void beaconChangeMarksUpdated() {
+        ScanResult previous = createScanResult(TEST_BSSID_1, "ssid1", 2412, -50);
+        Map<String, ScanResult> previousMap = ScanResultDelta.toMap(new ScanResult[] {previous});
+
+        ScanResult changedFreq = createScanResult(TEST_BSSID_1, "ssid1", 2437, -50);
+        assertEquals(1, ScanResultDelta.compute(previousMap, new ScanResult[] {changedFreq},
+                WifiScanner.WIFI_BAND_ALL).getUpdated().size());
+
+        ScanResult changedSsid = createScanResult(TEST_BSSID_1, "ssid2", 2412, -50);
+        assertEquals(1, ScanResultDelta.compute(previousMap, new ScanResult[] {changedSsid},
+                WifiScanner.WIFI_BAND_ALL).getUpdated().size());
+
+        ScanResult changedIes = createScanResult(TEST_BSSID_1, "ssid1", 2412, -50);
+        changedIes.informationElements[0].bytes = new byte[] {'x'};
+        assertEquals(1, ScanResultDelta.compute(previousMap, new ScanResult[] {changedIes},
+                WifiScanner.WIFI_BAND_ALL).getUpdated().size());
+
+        ScanResult sameBeacon = createScanResult(TEST_BSSID_1, "ssid1", 2412, -80);
+        ScanResultDelta delta = ScanResultDelta.compute(previousMap,
+                new ScanResult[] {sameBeacon}, WifiScanner.WIFI_BAND_ALL);
+        assertTrue(delta.isBeaconContentUnchanged());
+    }
+
+    /**
+     * Verify applying a delta to scan details reuses the network detail of refreshed BSSIDs.
+     */
+    @Test
+    public void applyToScanDetailsReusesNetworkDetail() {
+        ScanResult previous = createScanResult(TEST_BSSID_1, "ssid1", 2412, -50);
+        ScanResult removed = createScanResult(TEST_BSSID_2, "ssid2", 5180, -60);
+        Map<String, ScanDetail> scanDetails = new HashMap<>();
+        ScanResultDelta.compute(new HashMap<>(), new ScanResult[] {previous, removed},
+                WifiScanner.WIFI_BAND_ALL).applyToScanDetails(scanDetails);
+        ScanDetail previousDetail = scanDetails.get(TEST_BSSID_1);
+
+        ScanResult refreshed = createScanResult(TEST_BSSID_1, "ssid1", 2412, -70);
+        ScanResultDelta.compute(ScanResultDelta.toMap(new ScanResult[] {previous, removed}),
+                new ScanResult[] {refreshed}, WifiScanner.WIFI_BAND_ALL)
+                .applyToScanDetails(scanDetails);
+
+        assertEquals(1, scanDetails.size());
+        ScanDetail refreshedDetail = scanDetails.get(TEST_BSSID_1);
+        assertNotSame(previousDetail, refreshedDetail);
+        assertSame(previousDetail.getNetworkDetail(), refreshedDetail.getNetworkDetail());
+        assertSame(refreshed, refreshedDetail.getScanResult());
+    }
+
+    /**
+     * Verify the removal delta removes every known BSSID.
+     */
+    @Test
+    public void removeAllRemovesEveryBssid() {
+        Map<String, ScanResult> scanResults = ScanResultDelta.toMap(new ScanResult[] {
+                createScanResult(TEST_BSSID_1, "ssid1", 2412, -50),
+                createScanResult(TEST_BSSID_2, "ssid2", 5180, -60)});
+        ScanResultDelta delta = ScanResultDelta.removeAll(scanResults);
+
+        assertEquals(2, delta.getRemoved().size());
+        assertTrue(delta.getResults().isEmpty());
+        delta.applyToScanResults(scanResults);
+        assertTrue(scanResults.isEmpty());
+    }
+}
@@ -78,6 +78,7 @@ import com.android.internal.util.AsyncChannel;
 import com.android.internal.util.Protocol;
 import com.android.internal.util.test.BidirectionalAsyncChannel;
 import com.android.server.wifi.Clock;
+import com.android.server.wifi.DeviceConfigFacade;
 import com.android.server.wifi.DppMetrics;
 import com.android.server.wifi.FakeWifiLog;
 import com.android.server.wifi.FrameworkFacade;
@@ -141,6 +142,8 @@ public class WifiScanningServiceTest extends WifiBaseTest {
     @Mock WifiPermissionsUtil mWifiPermissionsUtil;
     @Mock DppMetrics mDppMetrics;
     @Mock WifiNative mWifiNative;
+    @Mock ScanResultDeltaPublisher mScanResultDeltaPublisher;
+    @Mock DeviceConfigFacade mDeviceConfigFacade;
     ChannelHelper mChannelHelper0;
     ChannelHelper mChannelHelper1;
     WifiMetrics mWifiMetrics;
@@ -192,6 +195,8 @@ public class WifiScanningServiceTest extends WifiBaseTest {
         when(mWifiNative.getClientInterfaceNames())
                 .thenReturn(new ArraySet<>(Arrays.asList(TEST_IFACE_NAME_0)));
         when(mWifiInjector.getWifiNative()).thenReturn(mWifiNative);
+        when(mWifiInjector.getScanResultDeltaPublisher()).thenReturn(mScanResultDeltaPublisher);
+        when(mWifiInjector.getDeviceConfigFacade()).thenReturn(mDeviceConfigFacade);
         when(mContext.checkPermission(eq(Manifest.permission.NETWORK_STACK),
                 anyInt(), eq(Binder.getCallingUid())))
                 .thenReturn(PERMISSION_GRANTED);
@@ -1823,6 +1828,23 @@ public class WifiScanningServiceTest extends WifiBaseTest {
         assertEquals(results2.size(), expectedSingleResult.getRawScanResults().length);
     }
 
+    /**
+     * Verify that full band single scan results are published as a scan result delta.
+     */
+    @Test
+    public void publishFullSingleScanResultsAsDelta() throws Exception {
+        int scanBand = WifiScanner.WIFI_BAND_ALL & ~WifiScanner.WIFI_BAND_5_GHZ_DFS_ONLY;
+        WifiScanner.ScanSettings requestSettings = createRequest(scanBand, 0, 0, 20,
+                WifiScanner.REPORT_EVENT_AFTER_EACH_SCAN);
+        ScanResults expectedResults = ScanResults.create(0, scanBand, 2412, 5160, 5175);
+        doSuccessfulSingleScan(requestSettings,
+                               computeSingleScanNativeSettings(requestSettings),
+                               expectedResults);
+
+        verify(mScanResultDeltaPublisher).publish(
+                eq(expectedResults.getScanData().getResults()), eq(scanBand));
+    }
+
     /**
      * Verify that the newest partial scan results are not returned by
      * WifiService.getSingleScanResults.
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.net.wifi.WifiConfiguration;
+import android.util.Pair;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.internal.util.FastXmlSerializer;
+import com.android.server.wifi.WifiBaseTest;
+import com.android.server.wifi.WifiConfigurationTestUtil;
+import com.android.server.wifi.util.XmlUtil.WifiConfigurationXmlUtil;
+
+import org.junit.Test;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.util.BinaryXmlSerializer} and
+ * {@link com.android.server.wifi.util.BinaryXmlPullParser}.
+ */
+@SmallTest
+public class BinaryXmlSerializerTest extends WifiBaseTest {
+    private static final String TEST_DOC_HEADER = "BinaryXmlSerializerTest";
+
+    private static byte[] serializeWifiConfiguration(XmlSerializer out,
+            WifiConfiguration configuration) throws IOException, XmlPullParserException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        out.setOutput(outputStream, StandardCharsets.UTF_8.name());
+        XmlUtil.writeDocumentStart(out, TEST_DOC_HEADER);
+        WifiConfigurationXmlUtil.writeToXmlForConfigStore(out, configuration, null);
+        XmlUtil.writeDocumentEnd(out, TEST_DOC_HEADER);
+        return outputStream.toByteArray();
+    }
+
+    private static XmlPullParser newParser(byte[] data) throws XmlPullParserException {
+        XmlPullParser in = new BinaryXmlPullParser();
+        in.setInput(new ByteArrayInputStream(data), null);
+        return in;
+    }
+
+    /**
+     * Verify a network written with {@link XmlUtil} is read back identical, and takes less
+     * space than the XML text.
+     */
+    @Test
+    public void wifiConfigurationRoundTrip() throws Exception {
+        WifiConfiguration configuration = WifiConfigurationTestUtil.createPskNetwork();
+        configuration.linkedConfigurations = new HashMap<>();
+        configuration.linkedConfigurations.put("linked", 1);
+
+        byte[] data = serializeWifiConfiguration(new BinaryXmlSerializer(), configuration);
+        XmlPullParser in = newParser(data);
+        XmlUtil.gotoDocumentStart(in, TEST_DOC_HEADER);
+        Pair<String, WifiConfiguration> retrieved =
+                WifiConfigurationXmlUtil.parseFromXml(in, in.getDepth(), false, null);
+        assertEquals(retrieved.first, retrieved.second.getKey());
+        WifiConfigurationTestUtil.assertConfigurationEqualForConfigStore(
+                configuration, retrieved.second);
+
+        byte[] xmlData = serializeWifiConfiguration(new FastXmlSerializer(), configuration);
+        assertTrue(data.length < xmlData.length);
+    }
+
+    /**
+     * Verify the value types used by the store files survive the round trip.
+     */
+    @Test
+    public void valuesRoundTrip() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        XmlSerializer out = new BinaryXmlSerializer();
+        out.setOutput(outputStream, null);
+        XmlUtil.writeDocumentStart(out, TEST_DOC_HEADER);
+        XmlUtil.writeNextValue(out, "Int", 300);
+        XmlUtil.writeNextValue(out, "Long", Long.MAX_VALUE);
+        XmlUtil.writeNextValue(out, "Boolean", true);
+        XmlUtil.writeNextValue(out, "String", "été & <summer>");
+        XmlUtil.writeNextValue(out, "EmptyString", "");
+        XmlUtil.writeNextValue(out, "Null", null);
+        XmlUtil.writeNextValue(out, "Bytes", new byte[] {1, 2, (byte) 0xff});
+        XmlUtil.writeNextValue(out, "Longs", new long[] {1L, -1L});
+        XmlUtil.writeDocumentEnd(out, TEST_DOC_HEADER);
+
+        XmlPullParser in = newParser(outputStream.toByteArray());
+        XmlUtil.gotoDocumentStart(in, TEST_DOC_HEADER);
+        assertEquals(300, XmlUtil.readNextValueWithName(in, "Int"));
+        assertEquals(Long.MAX_VALUE, XmlUtil.readNextValueWithName(in, "Long"));
+        assertEquals(true, XmlUtil.readNextValueWithName(in, "Boolean"));
+        assertEquals("été & <summer>", XmlUtil.readNextValueWithName(in, "String"));
+        assertEquals("", XmlUtil.readNextValueWithName(in, "EmptyString"));
+        assertNull(XmlUtil.readNextValueWithName(in, "Null"));
+        assertArrayEquals(new byte[] {1, 2, (byte) 0xff},
+                (byte[]) XmlUtil.readNextValueWithName(in, "Bytes"));
+        assertArrayEquals(new long[] {1L, -1L},
+                (long[]) XmlUtil.readNextValueWithName(in, "Longs"));
+    }
+
+    /**
+     * Verify varints of all sizes are read back.
+     */
+    @Test
+    public void varIntRoundTrip() throws Exception {
+        int[] values = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, -1};
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        for (int value : values) {
+            BinaryXmlSerializer.writeVarInt(outputStream, value);
+        }
+        ByteArrayInputStream inputStream = new ByteArrayInputStream(outputStream.toByteArray());
+        for (int value : values) {
+            assertEquals(value, BinaryXmlPullParser.readVarInt(inputStream));
+        }
+    }
+
+    /**
+     * Verify attributes are rejected once the start tag has content.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void attributeAfterTextThrows() throws Exception {
+        XmlSerializer out = new BinaryXmlSerializer();
+        out.setOutput(new ByteArrayOutputStream(), null);
+        out.startTag(null, "Tag");
+        out.text("text");
+        out.attribute(null, "name", "value");
+    }
+
+    /**
+     * Verify truncated data is reported as a parse error.
+     */
+    @Test(expected = XmlPullParserException.class)
+    public void truncatedDataThrows() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        XmlSerializer out = new BinaryXmlSerializer();
+        out.setOutput(outputStream, null);
+        XmlUtil.writeDocumentStart(out, TEST_DOC_HEADER);
+        XmlUtil.writeNextValue(out, "Int", 1);
+        XmlUtil.writeDocumentEnd(out, TEST_DOC_HEADER);
+        byte[] data = outputStream.toByteArray();
+        byte[] truncated = new byte[data.length - 1];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+
+        XmlPullParser in = newParser(truncated);
+        XmlUtil.gotoDocumentStart(in, TEST_DOC_HEADER);
+        XmlUtil.readNextValueWithName(in, "Int");
+        while (in.next() != XmlPullParser.END_DOCUMENT) {
+            // Read to the end.
+        }
+    }
+
+    /**
+     * Parse |data| to the end, returning whether it was rejected as corrupted.
+     */
+    private static boolean isRejected(byte[] data) {
+        try {
+            XmlPullParser in = newParser(data);
+            while (in.next() != XmlPullParser.END_DOCUMENT) {
+                // Read to the end.
+            }
+            return false;
+        } catch (XmlPullParserException | IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Verify a negative string length is rejected.
+     */
+    @Test(expected = IOException.class)
+    public void negativeLengthThrows() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        outputStream.write(BinaryXmlSerializer.TOKEN_TEXT);
+        BinaryXmlSerializer.writeVarInt(outputStream, -1);
+
+        newParser(outputStream.toByteArray()).next();
+    }
+
+    /**
+     * Verify a string length larger than the data fails at the end of the data, without
+     * allocating a buffer of that length first.
+     */
+    @Test(expected = EOFException.class)
+    public void oversizedLengthThrows() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        BinaryXmlSerializer.writeVarInt(outputStream, Integer.MAX_VALUE);
+        outputStream.write(new byte[] {'a', 'b', 'c'});
+
+        BinaryXmlPullParser.readString(new ByteArrayInputStream(outputStream.toByteArray()));
+    }
+
+    /**
+     * Verify varints longer than an int are rejected.
+     */
+    @Test(expected = IOException.class)
+    public void overlongVarIntThrows() throws Exception {
+        BinaryXmlPullParser.readVarInt(new ByteArrayInputStream(
+                new byte[] {(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x1f}));
+    }
+
+    /**
+     * Verify every truncation of a serialized network, and random corruptions of it, are either
+     * parsed or rejected with an {@link XmlPullParserException} or {@link IOException}, never
+     * with another exception.
+     */
+    @Test
+    public void truncatedAndCorruptedDataRejected() throws Exception {
+        WifiConfiguration configuration = WifiConfigurationTestUtil.createPskNetwork();
+        byte[] data = serializeWifiConfiguration(new BinaryXmlSerializer(), configuration);
+        assertFalse(isRejected(data));
+        for (int length = 0; length < data.length; length++) {
+            // Truncated in a tag or a string, or with tags left open.
+            if (length > 0 && !isRejected(Arrays.copyOf(data, length))) {
+                fail("Truncation to " + length + " bytes not rejected");
+            }
+        }
+        Random random = new Random(0);
+        for (int i = 0; i < 1000; i++) {
+            byte[] corrupted = data.clone();
+            corrupted[random.nextInt(corrupted.length)] = (byte) random.nextInt(256);
+            isRejected(corrupted);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.net.wifi.ScanResult.InformationElement;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.wifi.WifiBaseTest;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.util.InformationElementView}.
+ */
+@SmallTest
+public class InformationElementViewTest extends WifiBaseTest {
+    // SSID "abc", Supported Rates {0x82}, HE Operation (extension) with 2 byte payload,
+    // BSS Load with 5 byte payload.
+    private static final byte[] TEST_IES = new byte[] {
+            (byte) 0x00, (byte) 0x03, 'a', 'b', 'c',
+            (byte) 0x01, (byte) 0x01, (byte) 0x82,
+            (byte) 0xff, (byte) 0x03, (byte) 0x24, (byte) 0x11, (byte) 0x22,
+            (byte) 0x0b, (byte) 0x05, (byte) 0x01, (byte) 0x00, (byte) 0x40, (byte) 0x00,
+            (byte) 0x00};
+
+    /**
+     * Verify the view indexes the buffer without copying any payload.
+     */
+    @Test
+    public void parseIndexesWithoutMaterializing() {
+        InformationElementView view = InformationElementView.parse(TEST_IES);
+
+        assertEquals(4, view.size());
+        assertEquals(InformationElement.EID_SSID, view.getId(0));
+        assertEquals(InformationElement.EID_SUPPORTED_RATES, view.getId(1));
+        assertEquals(InformationElement.EID_EXTENSION_PRESENT, view.getId(2));
+        assertEquals(InformationElement.EID_EXT_HE_OPERATION, view.getIdExt(2));
+        assertEquals(2, view.getLength(2));
+        assertEquals(InformationElement.EID_BSS_LOAD, view.getId(3));
+        assertEquals(3, view.indexOf(InformationElement.EID_BSS_LOAD));
+        assertEquals(2, view.indexOfExtension(InformationElement.EID_EXT_HE_OPERATION));
+        assertEquals(-1, view.indexOf(InformationElement.EID_VSA));
+        assertEquals(0, view.getMaterializedCount());
+    }
+
+    /**
+     * Verify payload slices expose the element bytes and are read only.
+     */
+    @Test(expected = ReadOnlyBufferException.class)
+    public void payloadIsReadOnlySlice() {
+        InformationElementView view = InformationElementView.parse(TEST_IES);
+        ByteBuffer payload = view.getPayload(2);
+
+        assertEquals(2, payload.remaining());
+        assertEquals((byte) 0x11, payload.get(0));
+        assertEquals((byte) 0x22, payload.get(1));
+        assertEquals(0, view.getMaterializedCount());
+        payload.put(0, (byte) 0);
+    }
+
+    /**
+     * Verify materialized elements are cached and reused by the full array.
+     */
+    @Test
+    public void materializedElementsAreShared() {
+        InformationElementView view = InformationElementView.parse(TEST_IES);
+        InformationElement ssid = view.getInformationElement(0);
+
+        assertArrayEquals("abc".getBytes(), ssid.bytes);
+        assertEquals(1, view.getMaterializedCount());
+        assertSame(ssid, view.getInformationElement(0));
+
+        InformationElement[] all = view.toInformationElements();
+        assertEquals(4, all.length);
+        assertSame(ssid, all[0]);
+        assertEquals(4, view.getMaterializedCount());
+        assertSame(all, view.toInformationElements());
+    }
+
+    /**
+     * Verify the view produces the same elements as the legacy parser, including the handling of
+     * trailing padding.
+     */
+    @Test
+    public void matchesInformationElementUtil() {
+        InformationElement[] expected = InformationElementUtil.parseInformationElements(TEST_IES);
+        InformationElement[] actual = InformationElementView.parse(TEST_IES)
+                .toInformationElements();
+
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i].id, actual[i].id);
+            assertEquals(expected[i].idExt, actual[i].idExt);
+            assertArrayEquals(expected[i].bytes, actual[i].bytes);
+        }
+    }
+
+    /**
+     * Verify a second SSID element or a truncated element ends parsing.
+     */
+    @Test
+    public void stopsAtMalformedData() {
+        byte[] ies = new byte[] {
+                (byte) 0x00, (byte) 0x01, 'a',
+                (byte) 0x00, (byte) 0x01, 'b',
+                (byte) 0x01, (byte) 0x05, (byte) 0x82};
+        assertEquals(1, InformationElementView.parse(ies).size());
+
+        ies = new byte[] {(byte) 0x01, (byte) 0x05, (byte) 0x82};
+        assertEquals(0, InformationElementView.parse(ies).size());
+
+        ies = new byte[] {(byte) 0xff, (byte) 0x00};
+        assertEquals(0, InformationElementView.parse(ies).size());
+    }
+
+    /**
+     * Verify a null buffer yields an empty view.
+     */
+    @Test
+    public void parseNull() {
+        InformationElementView view = InformationElementView.parse(null);
+        assertEquals(0, view.size());
+        assertEquals(0, view.toInformationElements().length);
+    }
+
+    /**
+     * Verify wrapping existing elements exposes them without copying.
+     */
+    @Test
+    public void wrapExistingElements() {
+        InformationElement[] ies = InformationElementUtil.parseInformationElements(TEST_IES);
+        InformationElementView view = InformationElementView.wrap(ies);
+
+        assertEquals(ies.length, view.size());
+        assertEquals(InformationElement.EID_EXT_HE_OPERATION, view.getIdExt(2));
+        assertSame(ies[3], view.getInformationElement(3));
+        assertSame(ies, view.toInformationElements());
+        assertTrue(view.getPayload(1).get(0) == (byte) 0x82);
+    }
+}
@@ -112,4 +112,17 @@ public class LruConnectionTrackerTest {
         assertTrue(mList.isMostRecentlyConnected(network3));
         assertTrue(mList.isMostRecentlyConnected(network4));
     }
+
+    @Test
+    public void testModificationCount() {
+        WifiConfiguration network = WifiConfigurationTestUtil.createOpenNetwork();
+        long count = mList.getModificationCount();
+        mList.getAgeIndexOfNetwork(network);
+        assertEquals(count, mList.getModificationCount());
+        mList.addNetwork(network);
+        assertTrue(mList.getModificationCount() > count);
+        count = mList.getModificationCount();
+        mList.removeNetwork(network);
+        assertTrue(mList.getModificationCount() > count);
+    }
 }